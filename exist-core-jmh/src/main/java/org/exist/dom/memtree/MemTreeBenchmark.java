@@ -0,0 +1,115 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.dom.memtree;
+
+import org.exist.dom.QName;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.XMLConstants;
+
+/**
+ * Measures the construction of in-memory documents, as done by element
+ * constructors in a loop. The names are the same objects for every
+ * element, as those of the constructors in a compiled query.
+ *
+ * Run with the GC profiler, i.e. <code>-prof gc</code>, to see the bytes
+ * allocated per document, which is the main cost of large temporary trees.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class MemTreeBenchmark {
+
+    private static final QName ROOT = new QName("root", XMLConstants.NULL_NS_URI);
+    private static final QName ITEM = new QName("item", XMLConstants.NULL_NS_URI);
+    private static final QName NAME = new QName("name", XMLConstants.NULL_NS_URI);
+    private static final QName ID = new QName("id", XMLConstants.NULL_NS_URI);
+    private static final QName TYPE = new QName("type", XMLConstants.NULL_NS_URI);
+
+    @Param({ "10", "1000" })
+    private int items;
+
+    private String[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ids = new String[items];
+        for (int i = 0; i < items; i++) {
+            ids[i] = "id" + i;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public DocumentImpl build() {
+        final MemTreeBuilder builder = new MemTreeBuilder();
+        builder.startDocument();
+        builder.startElement(ROOT, null);
+        for (int i = 0; i < items; i++) {
+            builder.startElement(ITEM, null);
+            builder.addAttribute(ID, ids[i]);
+            builder.addAttribute(TYPE, "item");
+            builder.startElement(NAME, null);
+            builder.characters(ids[i]);
+            builder.endElement();
+            builder.endElement();
+        }
+        builder.endElement();
+        builder.endDocument();
+        return builder.getDocument();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int readAttributes() {
+        final DocumentImpl doc = build();
+        int length = 0;
+        for (int i = 0; i < doc.nextAttr; i++) {
+            length += doc.getAttributeValue(i).length();
+        }
+        return length;
+    }
+
+    /**
+     * Reads each attribute value several times, as a query does which filters
+     * by an attribute and then serializes the result.
+     */
+    @Benchmark
+    @Threads(1)
+    public int readAttributesRepeatedly() {
+        final DocumentImpl doc = build();
+        int length = 0;
+        for (int n = 0; n < 3; n++) {
+            for (int i = 0; i < doc.nextAttr; i++) {
+                length += doc.getAttributeValue(i).length();
+            }
+        }
+        return length;
+    }
+
+    public static void main(final String args[]) {
+        // NOTE: just for running with the java debugger
+        final MemTreeBenchmark benchmark = new MemTreeBenchmark();
+        benchmark.items = 10;
+        benchmark.setUp();
+        benchmark.build();
+        benchmark.readAttributes();
+        benchmark.readAttributesRepeatedly();
+    }
+}
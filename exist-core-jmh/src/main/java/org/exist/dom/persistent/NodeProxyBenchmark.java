@@ -0,0 +1,98 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.dom.persistent;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BenchmarkDatabase;
+import org.exist.storage.DBBroker;
+import org.exist.xquery.XPathException;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Node;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures the retrieval of persistent nodes from the DOM file
+ * through a {@link NodeProxy}, i.e. of nodes which were selected
+ * by an index or a path step and are then accessed by a query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class NodeProxyBenchmark {
+
+    @Param({"//item/name"})
+    private String path;
+
+    private DBBroker broker;
+    private NodeProxy[] nodes;
+
+    @Setup(Level.Trial)
+    public void setUp(final BenchmarkDatabase database) throws EXistException, XPathException, PermissionDeniedException {
+        broker = database.getBroker();
+
+        final NodeSet selected = database.select(broker, path);
+        nodes = new NodeProxy[selected.getLength()];
+        int i = 0;
+        for (final NodeProxy node : selected) {
+            nodes[i++] = new NodeProxy(node);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (broker != null) {
+            broker.close();
+            broker = null;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Node getNode() {
+        return randomNode().getNode();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String getStringValue() {
+        return randomNode().getStringValue();
+    }
+
+    private NodeProxy randomNode() {
+        return nodes[ThreadLocalRandom.current().nextInt(nodes.length)];
+    }
+
+    public static void main(final String args[]) throws Exception {
+        // NOTE: just for running with the java debugger
+        final BenchmarkDatabase database = new BenchmarkDatabase(10, 100, 42);
+        database.start();
+        try {
+            final NodeProxyBenchmark benchmark = new NodeProxyBenchmark();
+            benchmark.path = "//item/name";
+            benchmark.setUp(database);
+            benchmark.getNode();
+            benchmark.getStringValue();
+            benchmark.tearDown();
+        } finally {
+            database.stop();
+        }
+    }
+}
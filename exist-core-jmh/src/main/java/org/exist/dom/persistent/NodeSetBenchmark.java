@@ -0,0 +1,137 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.dom.persistent;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BenchmarkDatabase;
+import org.exist.storage.DBBroker;
+import org.exist.xquery.XPathException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+
+/**
+ * Compares building, sorting and merging of the {@link NewArrayNodeSet}
+ * and the {@link ExtArrayNodeSet}.
+ *
+ * The nodes are the {@code name} and {@code price} elements of the
+ * benchmark collection. They are added in a reproducible random order,
+ * so that the sets have to be sorted into document order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class NodeSetBenchmark {
+
+    @Param({"new", "ext"})
+    private String type;
+
+    private DBBroker broker;
+    private NodeProxy[] shuffled;
+    private NodeSet names;
+    private NodeSet prices;
+
+    @Setup(Level.Trial)
+    public void setUp(final BenchmarkDatabase database) throws EXistException, XPathException, PermissionDeniedException {
+        broker = database.getBroker();
+
+        final NodeProxy[] nameNodes = toArray(database.select(broker, "//item/name"));
+        final NodeProxy[] priceNodes = toArray(database.select(broker, "//item/price"));
+
+        names = newNodeSet();
+        for (final NodeProxy node : nameNodes) {
+            names.add(node);
+        }
+        prices = newNodeSet();
+        for (final NodeProxy node : priceNodes) {
+            prices.add(node);
+        }
+
+        shuffled = new NodeProxy[nameNodes.length + priceNodes.length];
+        System.arraycopy(nameNodes, 0, shuffled, 0, nameNodes.length);
+        System.arraycopy(priceNodes, 0, shuffled, nameNodes.length, priceNodes.length);
+        final Random random = new Random(shuffled.length);
+        for (int i = shuffled.length - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final NodeProxy tmp = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = tmp;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (broker != null) {
+            broker.close();
+            broker = null;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public NodeSet addAndSort() {
+        final AbstractArrayNodeSet set = newNodeSet();
+        for (final NodeProxy node : shuffled) {
+            set.add(node);
+        }
+        set.sort();
+        return set;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public NodeSet union() {
+        return names.union(prices);
+    }
+
+    private AbstractArrayNodeSet newNodeSet() {
+        if ("ext".equals(type)) {
+            return new ExtArrayNodeSet();
+        }
+        return new NewArrayNodeSet();
+    }
+
+    private static NodeProxy[] toArray(final NodeSet nodeSet) {
+        final NodeProxy[] nodes = new NodeProxy[nodeSet.getLength()];
+        int i = 0;
+        for (final NodeProxy node : nodeSet) {
+            nodes[i++] = new NodeProxy(node);
+        }
+        return nodes;
+    }
+
+    public static void main(final String args[]) throws Exception {
+        // NOTE: just for running with the java debugger
+        final BenchmarkDatabase database = new BenchmarkDatabase(10, 100, 42);
+        database.start();
+        try {
+            final NodeSetBenchmark benchmark = new NodeSetBenchmark();
+            for (final String type : new String[] { "new", "ext" }) {
+                benchmark.type = type;
+                benchmark.setUp(database);
+                benchmark.addAndSort();
+                benchmark.union();
+                benchmark.tearDown();
+            }
+        } finally {
+            database.stop();
+        }
+    }
+}
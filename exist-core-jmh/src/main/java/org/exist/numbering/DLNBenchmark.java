@@ -0,0 +1,99 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.numbering;
+
+import org.exist.EXistException;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BenchmarkDatabase;
+import org.exist.storage.DBBroker;
+import org.exist.xquery.XPathException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures the comparison of {@link DLN} node ids, as used when
+ * sorting node sets and when evaluating the structural axes.
+ *
+ * The node ids are those of the elements of the benchmark collection,
+ * so that they have the depth and sibling numbers of real documents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class DLNBenchmark {
+
+    private NodeId[] ancestors;
+    private NodeId[] descendants;
+
+    @Setup(Level.Trial)
+    public void setUp(final BenchmarkDatabase database) throws EXistException, XPathException, PermissionDeniedException {
+        try (final DBBroker broker = database.getBroker()) {
+            ancestors = nodeIds(database.select(broker, "//item"));
+            descendants = nodeIds(database.select(broker, "//item/*"));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int compareTo() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        return descendants[random.nextInt(descendants.length)].compareTo(descendants[random.nextInt(descendants.length)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean isDescendantOf() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        return descendants[random.nextInt(descendants.length)].isDescendantOf(ancestors[random.nextInt(ancestors.length)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public NodeId parse() {
+        final NodeId nodeId = descendants[ThreadLocalRandom.current().nextInt(descendants.length)];
+        return new DLN(nodeId.toString());
+    }
+
+    private static NodeId[] nodeIds(final NodeSet nodes) {
+        final NodeId[] nodeIds = new NodeId[nodes.getLength()];
+        int i = 0;
+        for (final NodeProxy node : nodes) {
+            nodeIds[i++] = node.getNodeId();
+        }
+        return nodeIds;
+    }
+
+    public static void main(final String args[]) throws Exception {
+        // NOTE: just for running with the java debugger
+        final BenchmarkDatabase database = new BenchmarkDatabase(10, 100, 42);
+        database.start();
+        try {
+            final DLNBenchmark benchmark = new DLNBenchmark();
+            benchmark.setUp(database);
+            benchmark.compareTo();
+            benchmark.isDescendantOf();
+            benchmark.parse();
+        } finally {
+            database.stop();
+        }
+    }
+}
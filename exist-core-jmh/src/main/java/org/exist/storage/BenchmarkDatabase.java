@@ -0,0 +1,239 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationException;
+import org.exist.collections.IndexInfo;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.persistent.DefaultDocumentSet;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.MutableDocumentSet;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * An embedded database in temporary storage, which is shared
+ * by the benchmarks of the storage and query hot paths.
+ *
+ * The collection {@link #COLLECTION} is seeded with {@code documents}
+ * documents of {@code items} items each. The content is generated from
+ * a {@link Random} with the fixed {@code seed}, so that every run of a
+ * benchmark measures the same data. The {@code price} and {@code name}
+ * elements are covered by a range index.
+ *
+ * A document has the form:
+ * <pre>{@code
+ * <items>
+ *     <item id="i-0-0" category="c7">
+ *         <name>red lamp</name>
+ *         <price>317</price>
+ *         <description>...</description>
+ *     </item>
+ *     ...
+ * </items>
+ * }</pre>
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    public static final XmldbURI COLLECTION = XmldbURI.create("/db/benchmark");
+
+    /**
+     * The prices of the items are in the range {@code [0, MAX_PRICE)}.
+     */
+    public static final int MAX_PRICE = 1000;
+
+    private static final int CATEGORIES = 20;
+
+    private static final String[] WORDS = {
+            "red", "green", "blue", "small", "large", "old", "new", "wooden", "metal", "glass",
+            "lamp", "chair", "table", "clock", "vase", "mirror", "shelf", "desk", "bowl", "frame"
+    };
+
+    private static final String COLLECTION_CONFIG =
+            "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">\n" +
+            "    <index>\n" +
+            "        <create qname=\"price\" type=\"xs:integer\"/>\n" +
+            "        <create qname=\"name\" type=\"xs:string\"/>\n" +
+            "    </index>\n" +
+            "</collection>";
+
+    @Param({"100"})
+    private int documents;
+
+    @Param({"100"})
+    private int items;
+
+    @Param({"42"})
+    private long seed;
+
+    private ExistEmbeddedServer server;
+
+    public BenchmarkDatabase() {
+    }
+
+    /**
+     * For running a benchmark outside of JMH, e.g. with the java debugger.
+     *
+     * @param documents the number of documents to store
+     * @param items the number of items per document
+     * @param seed the seed of the generated content
+     */
+    public BenchmarkDatabase(final int documents, final int items, final long seed) {
+        this.documents = documents;
+        this.items = items;
+        this.seed = seed;
+    }
+
+    @Setup(Level.Trial)
+    public void start() throws DatabaseConfigurationException, EXistException, IOException, PermissionDeniedException,
+            TriggerException, CollectionConfigurationException, SAXException, LockException {
+        server = new ExistEmbeddedServer(true, true);
+        server.startDb();
+
+        final BrokerPool pool = server.getBrokerPool();
+        final Random random = new Random(seed);
+        try (final DBBroker broker = getBroker();
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION);
+            broker.saveCollection(transaction, collection);
+            pool.getConfigurationManager().addConfiguration(transaction, broker, collection, COLLECTION_CONFIG);
+
+            for (int i = 0; i < documents; i++) {
+                final XmldbURI name = XmldbURI.create("items-" + i + ".xml");
+                final String content = generateDocument(random, i, items);
+                final IndexInfo info = collection.validateXMLResource(transaction, broker, name, new StringInputSource(content));
+                collection.store(transaction, broker, info, new StringInputSource(content));
+            }
+
+            transaction.commit();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        if (server != null) {
+            server.stopDb();
+            server = null;
+        }
+    }
+
+    public BrokerPool getBrokerPool() {
+        return server.getBrokerPool();
+    }
+
+    /**
+     * Get a broker for the system subject.
+     *
+     * @return a broker, which must be closed by the caller
+     *
+     * @throws EXistException if a broker cannot be acquired
+     */
+    public DBBroker getBroker() throws EXistException {
+        final BrokerPool pool = server.getBrokerPool();
+        return pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+    }
+
+    /**
+     * Get the documents of {@link #COLLECTION}.
+     *
+     * @param broker the broker of the calling thread
+     *
+     * @return the documents
+     *
+     * @throws PermissionDeniedException if the collection cannot be read
+     * @throws LockException if the collection or documents cannot be locked
+     */
+    public DocumentSet getDocuments(final DBBroker broker) throws PermissionDeniedException, LockException {
+        try (final Collection collection = broker.openCollection(COLLECTION, LockMode.READ_LOCK)) {
+            final MutableDocumentSet docs = new DefaultDocumentSet();
+            collection.allDocs(broker, docs, true);
+            return docs;
+        }
+    }
+
+    /**
+     * Selects persistent nodes of {@link #COLLECTION} by a path expression.
+     *
+     * @param broker the broker of the calling thread
+     * @param path a path expression relative to the collection, e.g. {@code //item/price}
+     *
+     * @return the selected nodes in document order
+     *
+     * @throws XPathException if the expression cannot be evaluated
+     * @throws PermissionDeniedException if the collection cannot be read
+     */
+    public NodeSet select(final DBBroker broker, final String path) throws XPathException, PermissionDeniedException {
+        return broker.getBrokerPool().getXQueryService()
+                .execute(broker, "collection('" + COLLECTION + "')" + path, null)
+                .toNodeSet();
+    }
+
+    /**
+     * Generates the content of a document.
+     *
+     * @param random the source of the content
+     * @param documentNo the number of the document
+     * @param items the number of items of the document
+     *
+     * @return the serialized document
+     */
+    public static String generateDocument(final Random random, final int documentNo, final int items) {
+        final StringBuilder builder = new StringBuilder(items * 160);
+        builder.append("<items>");
+        for (int i = 0; i < items; i++) {
+            builder.append("<item id=\"i-").append(documentNo).append('-').append(i)
+                    .append("\" category=\"c").append(random.nextInt(CATEGORIES)).append("\">");
+            builder.append("<name>").append(words(random, 2)).append("</name>");
+            builder.append("<price>").append(random.nextInt(MAX_PRICE)).append("</price>");
+            builder.append("<description>").append(words(random, 5 + random.nextInt(10))).append("</description>");
+            builder.append("</item>");
+        }
+        builder.append("</items>");
+        return builder.toString();
+    }
+
+    private static String words(final Random random, final int count) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return builder.toString();
+    }
+}
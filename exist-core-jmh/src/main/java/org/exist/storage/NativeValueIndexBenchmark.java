@@ -0,0 +1,106 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.security.PermissionDeniedException;
+import org.exist.util.LockException;
+import org.exist.xquery.Constants.Comparison;
+import org.exist.xquery.TerminatedException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.XQueryWatchDog;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.StringValue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures lookups in the range index by {@link NativeValueIndex#find},
+ * as used by general comparisons on indexed elements.
+ *
+ * An equality lookup of a price matches about one in {@link BenchmarkDatabase#MAX_PRICE}
+ * items, whereas a less-than lookup scans a random fraction of the index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class NativeValueIndexBenchmark {
+
+    private static final QName PRICE = new QName("price", "");
+    private static final QName NAME = new QName("name", "");
+
+    private DBBroker broker;
+    private DocumentSet docs;
+    private XQueryWatchDog watchDog;
+
+    @Setup(Level.Trial)
+    public void setUp(final BenchmarkDatabase database) throws EXistException, PermissionDeniedException, LockException {
+        broker = database.getBroker();
+        docs = database.getDocuments(broker);
+        watchDog = new XQueryWatchDog(new XQueryContext(database.getBrokerPool()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (broker != null) {
+            broker.close();
+            broker = null;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public NodeSet findIntegerEquals() throws TerminatedException {
+        final IntegerValue price = new IntegerValue(ThreadLocalRandom.current().nextInt(BenchmarkDatabase.MAX_PRICE));
+        return broker.getValueIndex().find(watchDog, Comparison.EQ, docs, null, NodeSet.DESCENDANT, PRICE, price);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public NodeSet findIntegerLessThan() throws TerminatedException {
+        final IntegerValue price = new IntegerValue(ThreadLocalRandom.current().nextInt(BenchmarkDatabase.MAX_PRICE));
+        return broker.getValueIndex().find(watchDog, Comparison.LT, docs, null, NodeSet.DESCENDANT, PRICE, price);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public NodeSet findStringEquals() throws TerminatedException {
+        return broker.getValueIndex().find(watchDog, Comparison.EQ, docs, null, NodeSet.DESCENDANT, NAME, new StringValue("red lamp"));
+    }
+
+    public static void main(final String args[]) throws Exception {
+        // NOTE: just for running with the java debugger
+        final BenchmarkDatabase database = new BenchmarkDatabase(10, 100, 42);
+        database.start();
+        try {
+            final NativeValueIndexBenchmark benchmark = new NativeValueIndexBenchmark();
+            benchmark.setUp(database);
+            benchmark.findIntegerEquals();
+            benchmark.findIntegerLessThan();
+            benchmark.findStringEquals();
+            benchmark.tearDown();
+        } finally {
+            database.stop();
+        }
+    }
+}
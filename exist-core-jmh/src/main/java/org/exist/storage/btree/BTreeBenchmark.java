@@ -0,0 +1,138 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.btree;
+
+import org.exist.storage.BenchmarkDatabase;
+import org.exist.storage.BrokerPool;
+import org.exist.util.FileUtils;
+import org.exist.xquery.TerminatedException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures point and range lookups in a {@link BTree}.
+ *
+ * The tree is filled with {@code keys} keys, inserted in a reproducible
+ * random order. A range lookup visits {@code rangeSize} consecutive keys.
+ *
+ * A {@link BTree} is not thread-safe, so each thread has its own tree.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class BTreeBenchmark {
+
+    private static final byte FILE_ID = 0x7F;
+    private static final short FILE_VERSION = Short.MIN_VALUE;
+
+    @Param({"100000"})
+    private int keys;
+
+    @Param({"100"})
+    private int rangeSize;
+
+    private Path dir;
+    private BTree btree;
+
+    @Setup(Level.Trial)
+    public void setUp(final BenchmarkDatabase database) throws IOException, DBException {
+        final BrokerPool pool = database.getBrokerPool();
+        dir = Files.createTempDirectory("BTreeBenchmark");
+        btree = new BTree(pool, FILE_ID, FILE_VERSION, false, pool.getCacheManager(), dir.resolve("benchmark.dbx"));
+        btree.create((short) -1);
+
+        final int[] order = new int[keys];
+        for (int i = 0; i < keys; i++) {
+            order[i] = i;
+        }
+        final Random random = new Random(keys);
+        for (int i = keys - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+
+        for (final int key : order) {
+            btree.addValue(key(key), key);
+        }
+        btree.flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws DBException {
+        if (btree != null) {
+            btree.close();
+            btree = null;
+        }
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long pointLookup() throws IOException, BTreeException {
+        return btree.findValue(key(ThreadLocalRandom.current().nextInt(keys)));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int rangeLookup() throws IOException, BTreeException, TerminatedException {
+        final int from = ThreadLocalRandom.current().nextInt(keys - rangeSize);
+        final IndexQuery query = new IndexQuery(IndexQuery.BW, key(from), key(from + rangeSize - 1));
+        final CountingCallback callback = new CountingCallback();
+        btree.query(query, callback);
+        return callback.count;
+    }
+
+    private static Value key(final int key) {
+        return new Value(String.format("k%08d", key));
+    }
+
+    private static class CountingCallback implements BTreeCallback {
+        private int count = 0;
+
+        @Override
+        public boolean indexInfo(final Value value, final long pointer) {
+            count++;
+            return true;
+        }
+    }
+
+    public static void main(final String args[]) throws Exception {
+        // NOTE: just for running with the java debugger
+        final BenchmarkDatabase database = new BenchmarkDatabase(0, 0, 42);
+        database.start();
+        try {
+            final BTreeBenchmark benchmark = new BTreeBenchmark();
+            benchmark.keys = 100_000;
+            benchmark.rangeSize = 100;
+            benchmark.setUp(database);
+            benchmark.pointLookup();
+            benchmark.rangeLookup();
+            benchmark.tearDown();
+        } finally {
+            database.stop();
+        }
+    }
+}
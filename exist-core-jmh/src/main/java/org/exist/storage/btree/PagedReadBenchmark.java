@@ -0,0 +1,158 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares random page reads through {@link RandomAccessFile} seek and read,
+ * as used by default in {@link Paged}, against reads through a {@link MappedPageFile}.
+ *
+ * By default a temporary file of {@code fileSize} bytes filled with random pages is used,
+ * which is kept small enough to run anywhere; pass e.g. {@code -p fileSize=1073741824} for
+ * a file that does not fit in the OS page cache. To benchmark against a real database
+ * file, e.g. a 10 GB dom.dbx, pass {@code -p file=/path/to/dom.dbx}; the file is opened read-only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+public class PagedReadBenchmark {
+
+    private static final int PAGE_HEADER_SIZE = 64;
+
+    @Param({"4096"})
+    private int pageSize;
+
+    @Param({"67108864"})
+    private long fileSize;
+
+    @Param({""})
+    private String file;
+
+    private Path path;
+    private boolean tempFile;
+    private long pageCount;
+
+    private RandomAccessFile raf;
+    private RandomAccessFile mappedRaf;
+    private MappedPageFile mapped;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (file.isEmpty()) {
+            path = Files.createTempFile("PagedReadBenchmark", ".dbx");
+            tempFile = true;
+            writeRandomPages(path, fileSize, pageSize);
+        } else {
+            path = Paths.get(file);
+            tempFile = false;
+        }
+
+        pageCount = Files.size(path) / pageSize;
+
+        raf = new RandomAccessFile(path.toFile(), "r");
+        mappedRaf = new RandomAccessFile(path.toFile(), "r");
+        mapped = new MappedPageFile(mappedRaf.getChannel(), true, (MappedPageFile.DEFAULT_SEGMENT_SIZE / pageSize) * pageSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mapped.close();
+        mappedRaf.close();
+        raf.close();
+        if (tempFile) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PageBuffers {
+        private final byte[] header = new byte[PAGE_HEADER_SIZE];
+        private byte[] data;
+
+        @Setup(Level.Trial)
+        public void setUp(final PagedReadBenchmark benchmark) {
+            data = new byte[benchmark.pageSize - PAGE_HEADER_SIZE];
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] randomAccessFile(final PageBuffers buffers) throws IOException {
+        final long offset = randomPageOffset();
+        synchronized (raf) {
+            raf.seek(offset);
+            raf.read(buffers.header);
+            raf.read(buffers.data);
+        }
+        return buffers.data;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] memoryMapped(final PageBuffers buffers) throws IOException {
+        final long offset = randomPageOffset();
+        synchronized (mapped) {
+            mapped.read(offset, buffers.header, 0, buffers.header.length);
+            mapped.read(offset + PAGE_HEADER_SIZE, buffers.data, 0, buffers.data.length);
+        }
+        return buffers.data;
+    }
+
+    private long randomPageOffset() {
+        return ThreadLocalRandom.current().nextLong(pageCount) * pageSize;
+    }
+
+    private static void writeRandomPages(final Path path, final long fileSize, final int pageSize) throws IOException {
+        final Random random = new Random(fileSize);
+        final byte[] page = new byte[pageSize];
+        try (final RandomAccessFile out = new RandomAccessFile(path.toFile(), "rw")) {
+            for (long written = 0; written < fileSize; written += pageSize) {
+                random.nextBytes(page);
+                out.write(page);
+            }
+        }
+    }
+
+    public static void main(final String args[]) {
+        // NOTE: just for running with the java debugger
+        final PagedReadBenchmark benchmark = new PagedReadBenchmark();
+        benchmark.pageSize = 4096;
+        benchmark.fileSize = 16 * 1024 * 1024;
+        benchmark.file = "";
+        final PageBuffers buffers = new PageBuffers();
+        try {
+            benchmark.setUp();
+            buffers.setUp(benchmark);
+            benchmark.randomAccessFile(buffers);
+            benchmark.memoryMapped(buffers);
+            benchmark.tearDown();
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Measures how page cache lookups scale with the number of reading threads.
+ *
+ * With {@code callerLock=btree} each access is guarded by a single exclusive
+ * lock, as the database does for both policies: {@link org.exist.storage.btree.BTree},
+ * {@link org.exist.storage.index.BFile} and {@link org.exist.storage.dom.DOMFile}
+ * only use their caches whilst holding the btree lock of their file. This is the
+ * throughput the database currently sees, and it does not scale with the number of
+ * threads for either policy.
+ *
+ * With {@code callerLock=none} the {@link ConcurrentClockCache} is accessed directly,
+ * which is the upper bound for callers that do not serialize their reads. The
+ * {@link BTreeCache} is not thread-safe, so it is always guarded by the lock.
+ *
+ * Pages are read from a key space which is larger than the cache, so that
+ * a fraction of the reads miss and replace a page in the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+public class CacheBenchmark {
+
+    @Param({"lru", "concurrent"})
+    private String policy;
+
+    @Param({"btree", "none"})
+    private String callerLock;
+
+    @Param({"4096"})
+    private int cacheSize;
+
+    @Param({"5000"})
+    private int pages;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private boolean locked;
+    private Cache<Page> cache;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        locked = "btree".equals(callerLock) || !"concurrent".equals(policy);
+        if ("concurrent".equals(policy)) {
+            cache = new ConcurrentClockCache<>("CacheBenchmark", cacheSize, 0, 1.0, Cache.CacheType.BTREE);
+        } else {
+            cache = new BTreeCache<>("CacheBenchmark", cacheSize, 0, 1.0, Cache.CacheType.BTREE);
+        }
+
+        for (int i = 0; i < Math.min(cacheSize, pages); i++) {
+            cache.add(new Page(i));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Page read1() {
+        return read();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public Page read2() {
+        return read();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Page read4() {
+        return read();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Page read8() {
+        return read();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Page read16() {
+        return read();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Page read32() {
+        return read();
+    }
+
+    private Page read() {
+        final long key = ThreadLocalRandom.current().nextInt(pages);
+        if (!locked) {
+            return getOrAdd(key);
+        }
+
+        lock.lock();
+        try {
+            return getOrAdd(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Page getOrAdd(final long key) {
+        Page page = cache.get(key);
+        if (page == null) {
+            page = new Page(key);
+            cache.add(page);
+        }
+        return page;
+    }
+
+    static class Page implements BTreeCacheable {
+        private final long key;
+        private int refCount = 0;
+        private int timestamp = 0;
+
+        Page(final long key) {
+            this.key = key;
+        }
+
+        @Override
+        public long getKey() {
+            return key;
+        }
+
+        @Override
+        public int getReferenceCount() {
+            return refCount;
+        }
+
+        @Override
+        public int incReferenceCount() {
+            return ++refCount;
+        }
+
+        @Override
+        public int decReferenceCount() {
+            return --refCount;
+        }
+
+        @Override
+        public void setReferenceCount(final int count) {
+            this.refCount = count;
+        }
+
+        @Override
+        public void setTimestamp(final int timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean sync(final boolean syncJournal) {
+            return false;
+        }
+
+        @Override
+        public boolean allowUnload() {
+            return true;
+        }
+
+        @Override
+        public boolean isDirty() {
+            return false;
+        }
+
+        @Override
+        public boolean isInnerPage() {
+            return key % 64 == 0;
+        }
+    }
+
+    public static void main(final String args[]) {
+        // NOTE: just for running with the java debugger
+        final CacheBenchmark benchmark = new CacheBenchmark();
+        benchmark.cacheSize = 4096;
+        benchmark.pages = 5000;
+        for (final String policy : new String[] { "lru", "concurrent" }) {
+            for (final String callerLock : new String[] { "btree", "none" }) {
+                benchmark.policy = policy;
+                benchmark.callerLock = callerLock;
+                benchmark.setUp();
+                benchmark.read1();
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.util.serializer;
+
+import org.exist.EXistException;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BenchmarkDatabase;
+import org.exist.storage.DBBroker;
+import org.exist.storage.serializers.Serializer;
+import org.exist.util.LockException;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.SAXException;
+
+import javax.xml.transform.TransformerException;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures serialisation to text.
+ *
+ * {@link #writeEvents()} measures the {@link XMLWriter} alone, by writing
+ * the events of a generated document of {@code items} items.
+ * {@link #serializeDocument()} measures the serialisation of a stored
+ * document by the broker's {@link Serializer}, which reads the nodes
+ * from the DOM file and writes them through an {@link XMLWriter}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class XMLWriterBenchmark {
+
+    @Param({"100"})
+    private int items;
+
+    private String[] names;
+    private String[] prices;
+    private String[] descriptions;
+
+    private DBBroker broker;
+    private DocumentImpl[] documents;
+
+    @Setup(Level.Trial)
+    public void setUp(final BenchmarkDatabase database) throws EXistException, PermissionDeniedException, LockException {
+        final Random random = new Random(items);
+        names = new String[items];
+        prices = new String[items];
+        descriptions = new String[items];
+        for (int i = 0; i < items; i++) {
+            names[i] = "item & name " + random.nextInt(1000);
+            prices[i] = Integer.toString(random.nextInt(BenchmarkDatabase.MAX_PRICE));
+            descriptions[i] = "a <description> of item " + i + " which needs \"escaping\"";
+        }
+
+        broker = database.getBroker();
+        final DocumentSet docs = database.getDocuments(broker);
+        documents = new DocumentImpl[docs.getDocumentCount()];
+        int i = 0;
+        for (final Iterator<DocumentImpl> it = docs.getDocumentIterator(); it.hasNext(); ) {
+            documents[i++] = it.next();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (broker != null) {
+            broker.close();
+            broker = null;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String writeEvents() throws TransformerException {
+        final StringWriter out = new StringWriter(items * 128);
+        final XMLWriter writer = new XMLWriter(out);
+        writer.startDocument();
+        writer.startElement("", "items", "items");
+        for (int i = 0; i < items; i++) {
+            writer.startElement("", "item", "item");
+            writer.attribute("id", "i-" + i);
+            writer.startElement("", "name", "name");
+            writer.characters(names[i]);
+            writer.endElement("", "name", "name");
+            writer.startElement("", "price", "price");
+            writer.characters(prices[i]);
+            writer.endElement("", "price", "price");
+            writer.startElement("", "description", "description");
+            writer.characters(descriptions[i]);
+            writer.endElement("", "description", "description");
+            writer.endElement("", "item", "item");
+        }
+        writer.endElement("", "items", "items");
+        writer.endDocument();
+        return out.toString();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String serializeDocument() throws SAXException {
+        final Serializer serializer = broker.getSerializer();
+        serializer.reset();
+        return serializer.serialize(documents[ThreadLocalRandom.current().nextInt(documents.length)]);
+    }
+
+    public static void main(final String args[]) throws Exception {
+        // NOTE: just for running with the java debugger
+        final BenchmarkDatabase database = new BenchmarkDatabase(10, 100, 42);
+        database.start();
+        try {
+            final XMLWriterBenchmark benchmark = new XMLWriterBenchmark();
+            benchmark.items = 100;
+            benchmark.setUp(database);
+            benchmark.writeEvents();
+            benchmark.serializeDocument();
+            benchmark.tearDown();
+        } finally {
+            database.stop();
+        }
+    }
+}
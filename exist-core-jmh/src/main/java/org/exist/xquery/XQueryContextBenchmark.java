@@ -0,0 +1,113 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.Source;
+import org.exist.source.StringSource;
+import org.exist.storage.BenchmarkDatabase;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.XQueryPool;
+import org.exist.xquery.value.Sequence;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+
+/**
+ * Measures the fixed cost of evaluating a query, apart from the query itself.
+ *
+ * {@link #newContext()} measures the set up and tear down of an {@link XQueryContext},
+ * and {@link #executePooled()} the evaluation of a trivial query which is borrowed
+ * from, and returned to, the {@link XQueryPool}, as done by the REST and XML:DB APIs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class XQueryContextBenchmark {
+
+    private static final String QUERY = "1 + 1";
+
+    private BrokerPool pool;
+    private DBBroker broker;
+    private Source source;
+
+    @Setup(Level.Trial)
+    public void setUp(final BenchmarkDatabase database) throws EXistException {
+        pool = database.getBrokerPool();
+        broker = database.getBroker();
+        source = new StringSource(QUERY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (broker != null) {
+            broker.close();
+            broker = null;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public XQueryContext newContext() {
+        final XQueryContext context = new XQueryContext(pool);
+        context.prepareForExecution();
+        context.reset();
+        context.runCleanupTasks();
+        return context;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Sequence executePooled() throws PermissionDeniedException, XPathException, IOException {
+        final XQuery xquery = pool.getXQueryService();
+        final XQueryPool xqueryPool = pool.getXQueryPool();
+        CompiledXQuery compiled = xqueryPool.borrowCompiledXQuery(broker, source);
+        try {
+            if (compiled == null) {
+                compiled = xquery.compile(broker, new XQueryContext(pool), source);
+            } else {
+                compiled.getContext().prepareForReuse();
+            }
+            return xquery.execute(broker, compiled, null);
+        } finally {
+            if (compiled != null) {
+                compiled.getContext().runCleanupTasks();
+                xqueryPool.returnCompiledXQuery(source, compiled);
+            }
+        }
+    }
+
+    public static void main(final String args[]) throws Exception {
+        // NOTE: just for running with the java debugger
+        final BenchmarkDatabase database = new BenchmarkDatabase(0, 0, 42);
+        database.start();
+        try {
+            final XQueryContextBenchmark benchmark = new XQueryContextBenchmark();
+            benchmark.setUp(database);
+            benchmark.newContext();
+            benchmark.executePooled();
+            benchmark.executePooled();
+            benchmark.tearDown();
+        } finally {
+            database.stop();
+        }
+    }
+}
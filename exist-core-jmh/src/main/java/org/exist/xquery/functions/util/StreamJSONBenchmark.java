@@ -0,0 +1,137 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery.functions.util;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BenchmarkDatabase;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.util.serializer.XQuerySerializer;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.Sequence;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.SAXException;
+
+import java.io.Writer;
+import java.util.Properties;
+
+/**
+ * Compares reading and serializing a large JSON resource with fn:json-doc, which builds
+ * the whole structure in memory, to util:stream-json, which parses the members of the
+ * top-level array while they are consumed.
+ *
+ * The difference is mostly in the memory used, so run the benchmark with the
+ * GC profiler, i.e. {@code -prof gc}, and compare the allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class StreamJSONBenchmark {
+
+    private static final String HREF = "/db/json-benchmark/items.json";
+
+    @Param({"100000"})
+    private int members;
+
+    private BrokerPool pool;
+    private DBBroker broker;
+
+    @Setup(Level.Trial)
+    public void setUp(final BenchmarkDatabase database) throws EXistException, PermissionDeniedException, XPathException {
+        pool = database.getBrokerPool();
+        broker = database.getBroker();
+        execute(
+                "let $json := '[' || string-join(\n" +
+                "    for $i in 1 to " + members + "\n" +
+                "    return '{\"id\":' || $i || ',\"name\":\"item ' || $i || '\",\"tags\":[\"a\",\"b\"]}', ',') || ']'\n" +
+                "return xmldb:store(xmldb:create-collection('/db', 'json-benchmark'), 'items.json', $json)");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws PermissionDeniedException, XPathException {
+        if (broker != null) {
+            execute("xmldb:remove('/db/json-benchmark')");
+            broker.close();
+            broker = null;
+        }
+    }
+
+    @Benchmark
+    public Sequence sumJsonDoc() throws PermissionDeniedException, XPathException {
+        return execute("sum(json-doc('" + HREF + "')?*?id)");
+    }
+
+    @Benchmark
+    public Sequence sumStreamJson() throws PermissionDeniedException, XPathException {
+        return execute("sum(for $item in util:stream-json('" + HREF + "') return $item?id)");
+    }
+
+    @Benchmark
+    public void serializeJsonDoc() throws PermissionDeniedException, XPathException, SAXException {
+        serialize(execute("json-doc('" + HREF + "')?*"));
+    }
+
+    @Benchmark
+    public void serializeStreamJson() throws PermissionDeniedException, XPathException, SAXException {
+        serialize(execute("util:stream-json('" + HREF + "')"));
+    }
+
+    private Sequence execute(final String query) throws PermissionDeniedException, XPathException {
+        return pool.getXQueryService().execute(broker, query, null);
+    }
+
+    private void serialize(final Sequence sequence) throws SAXException, XPathException {
+        final Properties outputProperties = new Properties();
+        outputProperties.setProperty("method", "json");
+        new XQuerySerializer(broker, outputProperties, new DiscardingWriter()).serialize(sequence);
+    }
+
+    private static class DiscardingWriter extends Writer {
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void main(final String args[]) throws Exception {
+        // NOTE: just for running with the java debugger
+        final BenchmarkDatabase database = new BenchmarkDatabase(0, 0, 42);
+        database.start();
+        try {
+            final StreamJSONBenchmark benchmark = new StreamJSONBenchmark();
+            benchmark.members = 1000;
+            benchmark.setUp(database);
+            benchmark.sumJsonDoc();
+            benchmark.sumStreamJson();
+            benchmark.serializeJsonDoc();
+            benchmark.serializeStreamJson();
+            benchmark.tearDown();
+        } finally {
+            database.stop();
+        }
+    }
+}
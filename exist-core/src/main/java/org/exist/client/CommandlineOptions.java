@@ -113,6 +113,9 @@ public class CommandlineOptions {
             .description("store files or directories given as extra args on command line.")
             .variableArity()
             .build();
+    private static final Argument<File> bulkLoadArg = fileArgument("-b", "--bulk-load")
+            .description("bulk load the XML files of the directory given as argument into the collection specified in --collection, bypassing the journal. The directory must be readable by the server. Requires a DBA.")
+            .build();
     private static final Argument<String> getDocArg = stringArgument("-g", "--get")
             .description("retrieve a document.")
             .build();
@@ -171,7 +174,7 @@ public class CommandlineOptions {
                 .withArguments(userArg, passwordArg, useSslArg, embeddedArg, embeddedConfigArg, noEmbeddedModeArg)
                 .andArguments(noGuiArg, guiQueryDialogArg)
                 .andArguments(mkColArg, rmColArg, setColArg)
-                .andArguments(parseDocsArg, getDocArg, rmDocArg)
+                .andArguments(parseDocsArg, bulkLoadArg, getDocArg, rmDocArg)
                 .andArguments(xpathArg, loadQueriesArg, howManyResultsArg, traceQueriesArg)
                 .andArguments(setDocArg, xupdateArg)
                 .andArguments(reindexArg, reindexRecurseDirsArg)
@@ -198,6 +201,7 @@ public class CommandlineOptions {
         final Optional<XmldbURI> setCol = optUri(arguments, setColArg);
 
         final List<Path> parseDocs = getPathsOpt(arguments, parseDocsArg);
+        final Optional<Path> bulkLoad = getPathOpt(arguments, bulkLoadArg);
         final Optional<XmldbURI> getDoc = optUri(arguments, getDocArg);
         final Optional<String> rmDoc = getOpt(arguments, rmDocArg);
 
@@ -239,6 +243,7 @@ public class CommandlineOptions {
                 rmCol,
                 setCol,
                 parseDocs,
+                bulkLoad,
                 getDoc,
                 rmDoc,
                 xpath,
@@ -252,7 +257,7 @@ public class CommandlineOptions {
         );
     }
 
-    public CommandlineOptions(boolean quiet, boolean verbose, Optional<Path> outputFile, Map<String, String> options, Optional<String> username, Optional<String> password, boolean useSSL, boolean embedded, Optional<Path> embeddedConfig, boolean noEmbeddedMode, boolean startGUI, boolean openQueryGUI, Optional<XmldbURI> mkCol, Optional<XmldbURI> rmCol, Optional<XmldbURI> setCol, List<Path> parseDocs, Optional<XmldbURI> getDoc, Optional<String> rmDoc, Optional<String> xpath, List<Path> queryFiles, Optional<Integer> howManyResults, Optional<Path> traceQueriesFile, Optional<String> setDoc, Optional<Path> xupdateFile, boolean reindex, boolean reindexRecurse) {
+    public CommandlineOptions(boolean quiet, boolean verbose, Optional<Path> outputFile, Map<String, String> options, Optional<String> username, Optional<String> password, boolean useSSL, boolean embedded, Optional<Path> embeddedConfig, boolean noEmbeddedMode, boolean startGUI, boolean openQueryGUI, Optional<XmldbURI> mkCol, Optional<XmldbURI> rmCol, Optional<XmldbURI> setCol, List<Path> parseDocs, Optional<Path> bulkLoad, Optional<XmldbURI> getDoc, Optional<String> rmDoc, Optional<String> xpath, List<Path> queryFiles, Optional<Integer> howManyResults, Optional<Path> traceQueriesFile, Optional<String> setDoc, Optional<Path> xupdateFile, boolean reindex, boolean reindexRecurse) {
         this.quiet = quiet;
         this.verbose = verbose;
         this.outputFile = outputFile;
@@ -269,6 +274,7 @@ public class CommandlineOptions {
         this.rmCol = rmCol;
         this.setCol = setCol;
         this.parseDocs = parseDocs;
+        this.bulkLoad = bulkLoad;
         this.getDoc = getDoc;
         this.rmDoc = rmDoc;
         this.xpath = xpath;
@@ -301,6 +307,7 @@ public class CommandlineOptions {
     final Optional<XmldbURI> setCol;
 
     final List<Path> parseDocs;
+    final Optional<Path> bulkLoad;
     final Optional<XmldbURI> getDoc;
     final Optional<String> rmDoc;
 
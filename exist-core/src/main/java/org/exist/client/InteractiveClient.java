@@ -1309,6 +1309,21 @@ public class InteractiveClient {
         messageln("done.");
     }
 
+    private void bulkLoad(final Path directory) throws XMLDBException {
+        final EXistXPathQueryService service = (EXistXPathQueryService) current.getService("XPathQueryService", "1.0");
+        service.declareVariable("collection", current.getName());
+        service.declareVariable("directory", directory.toAbsolutePath().toString());
+        messageln("bulk loading " + directory.toAbsolutePath() + " into collection " + current.getName() + " ...");
+        final ResourceSet result = service.query(
+                "let $result := xmldb:store-bulk($collection, $directory) " +
+                "return concat('stored ', $result/@documents, ' documents in ', $result/@collections, ' collections, ', " +
+                "$result/@failed, ' failed, ', $result/@skipped, ' skipped, in ', $result/@duration, ' ms: ', " +
+                "$result/@documents-per-second, ' documents/sec')");
+        for (final ResourceIterator i = result.getIterator(); i.hasMoreResources(); ) {
+            messageln(i.nextResource().getContent().toString());
+        }
+    }
+
     private void storeBinary(final String fileName) throws XMLDBException {
         final Path file = Paths.get(fileName).normalize();
         if (Files.isReadable(file)) {
@@ -1987,6 +2002,18 @@ public class InteractiveClient {
                     return false;
                 }
             }
+        } else if (options.bulkLoad.isPresent()) {
+            if (!foundCollection) {
+                System.err.println("Please specify target collection with --collection");
+            } else {
+                try {
+                    bulkLoad(options.bulkLoad.get());
+                } catch (final XMLDBException e) {
+                    System.err.println("XMLDBException during bulk load: " + getExceptionMessage(e));
+                    e.printStackTrace();
+                    return false;
+                }
+            }
         } else if (!options.parseDocs.isEmpty()) {
             if (!foundCollection) {
                 System.err.println("Please specify target collection with --collection");
@@ -2173,7 +2200,7 @@ public class InteractiveClient {
         properties.setProperty(URI, URLDecoder.decode(properties.getProperty(URI), "UTF-8"));
 
         boolean interactive = true;
-        if((!options.parseDocs.isEmpty()) || options.rmDoc.isPresent() || options.getDoc.isPresent()
+        if((!options.parseDocs.isEmpty()) || options.bulkLoad.isPresent() || options.rmDoc.isPresent() || options.getDoc.isPresent()
                 || options.rmCol.isPresent() || options.xpath.isPresent() || (!options.queryFiles.isEmpty())
                 || options.xupdateFile.isPresent() || options.reindex) {
             interactive = false;
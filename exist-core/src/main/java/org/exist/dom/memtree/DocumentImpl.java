@@ -97,7 +97,8 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     // pointer into the namePool
     protected QName[] nodeName;
 
-    protected NodeId[] nodeId;
+    // the node ids, only allocated once they are computed, see computeNodeIds()
+    protected NodeId[] nodeId = null;
 
     //alphanumeric content
     protected int[] alpha;
@@ -108,9 +109,13 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     // attributes
     protected QName[] attrName;
     protected int[] attrType;
-    protected NodeId[] attrNodeId;
+    protected NodeId[] attrNodeId = null;
     protected int[] attrParent;
-    protected String[] attrValue;
+    // the attribute values are stored in the characters buffer
+    protected int[] attrAlpha;
+    protected int[] attrAlphaLen;
+    // the strings of the attribute values which have been read, only allocated on the first read, see getAttributeValue()
+    protected String[] attrValue = null;
     protected int nextAttr = 0;
 
     // namespaces
@@ -174,15 +179,14 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         next = new int[NODE_SIZE];
         Arrays.fill(next, -1);
         nodeName = new QName[NODE_SIZE];
-        nodeId = new NodeId[NODE_SIZE];
         alpha = new int[NODE_SIZE];
         alphaLen = new int[NODE_SIZE];
         Arrays.fill(alphaLen, -1);
         attrName = new QName[ATTR_SIZE];
         attrParent = new int[ATTR_SIZE];
-        attrValue = new String[ATTR_SIZE];
+        attrAlpha = new int[ATTR_SIZE];
+        attrAlphaLen = new int[ATTR_SIZE];
         attrType = new int[ATTR_SIZE];
-        attrNodeId = new NodeId[NODE_SIZE];
         treeLevel[0] = 0;
         nodeKind[0] = Node.DOCUMENT_NODE;
         document = this;
@@ -192,6 +196,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         size = 0;
         nextChar = 0;
         nextAttr = 0;
+        attrValue = null;
         nextReferenceIdx = 0;
         references = null;
     }
@@ -219,17 +224,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         if(nodeKind == null) {
             init();
         }
-        if(characters == null) {
-            characters = new char[len > CHAR_BUF_SIZE ? len : CHAR_BUF_SIZE];
-        } else if((nextChar + len) >= characters.length) {
-            int newLen = (characters.length * 3) / 2;
-            if(newLen < (nextChar + len)) {
-                newLen = nextChar + len;
-            }
-            final char[] nc = new char[newLen];
-            System.arraycopy(characters, 0, nc, 0, characters.length);
-            characters = nc;
-        }
+        ensureCharCapacity(len);
         alpha[nodeNum] = nextChar;
         alphaLen[nodeNum] = len;
         System.arraycopy(ch, start, characters, nextChar, len);
@@ -240,37 +235,12 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         if(nodeKind == null) {
             init();
         }
-        int len = (s == null) ? 0 : s.length();
-        if(characters == null) {
-            characters = new char[(len > CHAR_BUF_SIZE) ? len : CHAR_BUF_SIZE];
-        } else if((nextChar + len) >= characters.length) {
-            int newLen = (characters.length * 3) / 2;
-            if(newLen < (nextChar + len)) {
-                newLen = nextChar + len;
-            }
-            final char[] nc = new char[newLen];
-            System.arraycopy(characters, 0, nc, 0, characters.length);
-            characters = nc;
-        }
-        alpha[nodeNum] = nextChar;
-        alphaLen[nodeNum] = len;
-        for(int i = 0; i < len; i++) {
-            characters[nextChar++] = s.charAt(i);
-        }
+        alphaLen[nodeNum] = (s == null) ? 0 : s.length();
+        alpha[nodeNum] = storeChars(s);
     }
 
     public void appendChars(final int nodeNum, final char[] ch, final int start, final int len) {
-        if(characters == null) {
-            characters = new char[(len > CHAR_BUF_SIZE) ? len : CHAR_BUF_SIZE];
-        } else if((nextChar + len) >= characters.length) {
-            int newLen = (characters.length * 3) / 2;
-            if(newLen < (nextChar + len)) {
-                newLen = nextChar + len;
-            }
-            final char[] nc = new char[newLen];
-            System.arraycopy(characters, 0, nc, 0, characters.length);
-            characters = nc;
-        }
+        moveCharsToEnd(nodeNum, len);
         alphaLen[nodeNum] = alphaLen[nodeNum] + len;
         System.arraycopy(ch, start, characters, nextChar, len);
         nextChar += len;
@@ -278,8 +248,40 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
 
     public void appendChars(final int nodeNum, final CharSequence s) {
         final int len = s.length();
+        moveCharsToEnd(nodeNum, len);
+        alphaLen[nodeNum] = alphaLen[nodeNum] + len;
+        for(int i = 0; i < len; i++) {
+            characters[nextChar++] = s.charAt(i);
+        }
+    }
+
+    /**
+     * Make sure that the characters of a node are at the end of the characters buffer,
+     * so that more characters can be appended. This is not the case if an attribute
+     * value has been stored after the characters of the node.
+     *
+     * @param nodeNum the node number
+     * @param len the number of characters which will be appended
+     */
+    private void moveCharsToEnd(final int nodeNum, final int len) {
+        final int start = alpha[nodeNum];
+        final int currentLen = alphaLen[nodeNum] < 0 ? 0 : alphaLen[nodeNum];
+        if(characters != null && start > -1 && start + currentLen == nextChar) {
+            ensureCharCapacity(len);
+        } else {
+            ensureCharCapacity(currentLen + len);
+            if(currentLen > 0) {
+                System.arraycopy(characters, start, characters, nextChar, currentLen);
+            }
+            alpha[nodeNum] = nextChar;
+            alphaLen[nodeNum] = currentLen;
+            nextChar += currentLen;
+        }
+    }
+
+    private void ensureCharCapacity(final int len) {
         if(characters == null) {
-            characters = new char[(len > CHAR_BUF_SIZE) ? len : CHAR_BUF_SIZE];
+            characters = new char[len > CHAR_BUF_SIZE ? len : CHAR_BUF_SIZE];
         } else if((nextChar + len) >= characters.length) {
             int newLen = (characters.length * 3) / 2;
             if(newLen < (nextChar + len)) {
@@ -289,10 +291,22 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             System.arraycopy(characters, 0, nc, 0, characters.length);
             characters = nc;
         }
-        alphaLen[nodeNum] = alphaLen[nodeNum] + len;
+    }
+
+    /**
+     * Append a string to the characters buffer.
+     *
+     * @param s the string, may be null
+     * @return the offset of the string in the characters buffer
+     */
+    private int storeChars(final CharSequence s) {
+        final int len = (s == null) ? 0 : s.length();
+        ensureCharCapacity(len);
+        final int start = nextChar;
         for(int i = 0; i < len; i++) {
             characters[nextChar++] = s.charAt(i);
         }
+        return start;
     }
 
     public void addReferenceNode(final int nodeNum, final NodeProxy proxy) {
@@ -332,7 +346,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             final QName prevQn = attrName[attrN];
             if(prevQn.equals(qname)) {
                 if(replaceAttribute) {
-                    attrValue[attrN] = value;
+                    setAttributeValue(attrN, value);
                     attrType[attrN] = type;
                     return attrN;
                 } else {
@@ -344,10 +358,9 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         if(nextAttr == attrName.length) {
             growAttributes();
         }
-        final QName attrQname = new QName(qname.getLocalPart(), qname.getNamespaceURI(), qname.getPrefix(), ElementValue.ATTRIBUTE);
         attrParent[nextAttr] = nodeNum;
-        attrName[nextAttr] = namePool.getSharedName(attrQname);
-        attrValue[nextAttr] = value;
+        attrName[nextAttr] = namePool.getSharedName(qname, ElementValue.ATTRIBUTE);
+        setAttributeValue(nextAttr, value);
         attrType[nextAttr] = type;
         if(alpha[nodeNum] < 0) {
             alpha[nodeNum] = nextAttr;
@@ -355,6 +368,70 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         return (nextAttr++);
     }
 
+    /**
+     * Get the value of an attribute. The value is stored in the characters buffer,
+     * a string is created on the first call and returned by later calls.
+     *
+     * @param attr the attribute number
+     * @return the value of the attribute
+     */
+    public String getAttributeValue(final int attr) {
+        final int len = attrAlphaLen[attr];
+        if(len == 0) {
+            return "";
+        }
+        // NOTE: a document may be read by several threads, so the cache is read once;
+        // concurrent reads may create the same string twice, which does no harm
+        String[] values = attrValue;
+        if(values == null || values.length <= attr) {
+            values = new String[attrName.length];
+            attrValue = values;
+        }
+        String value = values[attr];
+        if(value == null) {
+            value = new String(characters, attrAlpha[attr], len);
+            values[attr] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Set the value of an attribute. A new value is appended to the characters buffer,
+     * the space used by a previous value is not reclaimed.
+     *
+     * @param attr the attribute number
+     * @param value the new value
+     */
+    public void setAttributeValue(final int attr, final String value) {
+        final int len = (value == null) ? 0 : value.length();
+        attrAlphaLen[attr] = len;
+        attrAlpha[attr] = len == 0 ? nextChar : storeChars(value);
+        if(attrValue != null && attr < attrValue.length) {
+            attrValue[attr] = null;
+        }
+    }
+
+    /**
+     * Compare the value of an attribute to a string, without creating a string for the value.
+     *
+     * @param attr the attribute number
+     * @param value the string to compare to
+     * @return true if the attribute value is equal to the string
+     */
+    public boolean attributeValueEquals(final int attr, final String value) {
+        final int len = attrAlphaLen[attr];
+        if(value.length() != len) {
+            return false;
+        }
+        final int start = attrAlpha[attr];
+        for(int i = 0; i < len; i++) {
+            if(characters[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public int addNamespace(final int nodeNum, final QName qname) {
         if(nodeKind == null) {
             init();
@@ -413,9 +490,11 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         System.arraycopy(nodeName, 0, newNodeName, 0, size);
         nodeName = newNodeName;
 
-        final NodeId[] newNodeId = new NodeId[newSize];
-        System.arraycopy(nodeId, 0, newNodeId, 0, size);
-        nodeId = newNodeId;
+        if(nodeId != null) {
+            final NodeId[] newNodeId = new NodeId[newSize];
+            System.arraycopy(nodeId, 0, newNodeId, 0, size);
+            nodeId = newNodeId;
+        }
 
         final int[] newAlpha = new int[newSize];
         System.arraycopy(alpha, 0, newAlpha, 0, size);
@@ -439,17 +518,27 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         System.arraycopy(attrParent, 0, newAttrParent, 0, size);
         attrParent = newAttrParent;
 
-        final String[] newAttrValue = new String[newSize];
-        System.arraycopy(attrValue, 0, newAttrValue, 0, size);
-        attrValue = newAttrValue;
+        final int[] newAttrAlpha = new int[newSize];
+        System.arraycopy(attrAlpha, 0, newAttrAlpha, 0, size);
+        attrAlpha = newAttrAlpha;
+
+        final int[] newAttrAlphaLen = new int[newSize];
+        System.arraycopy(attrAlphaLen, 0, newAttrAlphaLen, 0, size);
+        attrAlphaLen = newAttrAlphaLen;
 
         final int[] newAttrType = new int[newSize];
         System.arraycopy(attrType, 0, newAttrType, 0, size);
         attrType = newAttrType;
 
-        final NodeId[] newNodeId = new NodeId[newSize];
-        System.arraycopy(attrNodeId, 0, newNodeId, 0, size);
-        attrNodeId = newNodeId;
+        if(attrNodeId != null) {
+            final NodeId[] newNodeId = new NodeId[newSize];
+            System.arraycopy(attrNodeId, 0, newNodeId, 0, Math.min(size, attrNodeId.length));
+            attrNodeId = newNodeId;
+        }
+
+        if(attrValue != null) {
+            attrValue = Arrays.copyOf(attrValue, newSize);
+        }
     }
 
     private void growReferences() {
@@ -724,7 +813,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         if(-1 < attr) {
             while((attr < document.nextAttr) && (document.attrParent[attr] == nodeNumber)) {
                 if((document.attrType[attr] == AttrImpl.ATTR_ID_TYPE) &&
-                    id.equals(document.attrValue[attr])) {
+                    document.attributeValueEquals(attr, id)) {
                     return true;
                 }
                 ++attr;
@@ -738,7 +827,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         if(-1 < attr) {
             while((attr < document.nextAttr) && (document.attrParent[attr] == nodeNumber)) {
                 if((document.attrType[attr] == AttrImpl.ATTR_IDREF_TYPE) &&
-                    id.equals(document.attrValue[attr])) {
+                    document.attributeValueEquals(attr, id)) {
                     return new AttrImpl(this, attr);
                 }
                 ++attr;
@@ -1065,7 +1154,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
                 if(-1 < attr) {
                     while((attr < document.nextAttr) && (document.attrParent[attr] == nr)) {
                         final QName attrQName = document.attrName[attr];
-                        receiver.attribute(attrQName, attrValue[attr]);
+                        receiver.attribute(attrQName, document.getAttributeValue(attr));
                         ++attr;
                     }
                 }
@@ -1087,7 +1176,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
                 break;
             case Node.ATTRIBUTE_NODE:
                 final QName attrQName = document.attrName[nr];
-                receiver.attribute(attrQName, attrValue[nr]);
+                receiver.attribute(attrQName, document.getAttributeValue(nr));
                 break;
             case Node.COMMENT_NODE:
                 receiver.comment(document.characters, document.alpha[nr], document.alphaLen[nr]);
@@ -1171,6 +1260,9 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
 
     public NodeImpl getNodeById(final NodeId id) {
         expand();
+        if(nodeId == null) {
+            return null;
+        }
         for(int i = 0; i < size; i++) {
             if(id.equals(nodeId[i])) {
                 return getNode(i);
@@ -1180,9 +1272,17 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     }
 
     private void computeNodeIds() throws EXistException {
-        if(nodeId[0] != null) {
+        if(nodeKind == null || (nodeId != null && nodeId[0] != null)) {
             return;
         }
+        // the node ids are only needed by some operations, e.g. when the document
+        // is compared to persistent nodes, so they are only allocated on demand
+        if(nodeId == null || nodeId.length < nodeKind.length) {
+            nodeId = new NodeId[nodeKind.length];
+        }
+        if(attrNodeId == null || attrNodeId.length < attrName.length) {
+            attrNodeId = new NodeId[attrName.length];
+        }
         final NodeIdFactory nodeFactory = getDatabase().getNodeFactory();
         nodeId[0] = nodeFactory.documentNodeId();
         if(size == 1) {
@@ -1239,6 +1339,8 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         attrName = newDoc.attrName;
         attrNodeId = newDoc.attrNodeId;
         attrParent = newDoc.attrParent;
+        attrAlpha = newDoc.attrAlpha;
+        attrAlphaLen = newDoc.attrAlphaLen;
         attrValue = newDoc.attrValue;
         attrType = newDoc.attrType;
         nextAttr = newDoc.nextAttr;
@@ -1316,7 +1418,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
                     attribs = new AttrList();
                     while((attr < document.nextAttr) && (document.attrParent[attr] == nr)) {
                         final QName attrQName = document.attrName[attr];
-                        attribs.addAttribute(attrQName, attrValue[attr]);
+                        attribs.addAttribute(attrQName, document.getAttributeValue(attr));
                         ++attr;
                     }
                 }
@@ -1328,7 +1430,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
                 break;
             case Node.ATTRIBUTE_NODE:
                 final QName attrQName = document.attrName[nr];
-                receiver.attribute(attrQName, attrValue[nr]);
+                receiver.attribute(attrQName, document.getAttributeValue(nr));
                 break;
             case Node.COMMENT_NODE:
                 receiver.comment(document.characters, document.alpha[nr], document.alphaLen[nr]);
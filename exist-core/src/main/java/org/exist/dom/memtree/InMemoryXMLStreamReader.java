@@ -230,7 +230,7 @@ public class InMemoryXMLStreamReader implements ExtendedXMLStreamReader {
             final QName qname = doc.attrName[attrStart + i];
 
             if((namespaceURI == null || namespaceURI.equals(qname.getNamespaceURI())) && localName.equals(qname.getLocalPart())) {
-                return doc.attrValue[attrStart + i];
+                return doc.getAttributeValue(attrStart + i);
             }
         }
         return null;
@@ -342,7 +342,7 @@ public class InMemoryXMLStreamReader implements ExtendedXMLStreamReader {
             throw new ArrayIndexOutOfBoundsException();
         }
         final int attr = doc.alpha[currentNode];
-        return doc.attrValue[attr + index];
+        return doc.getAttributeValue(attr + index);
     }
 
     @Override
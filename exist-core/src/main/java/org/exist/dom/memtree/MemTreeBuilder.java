@@ -26,6 +26,7 @@ import org.exist.Indexer;
 import org.exist.Namespaces;
 import org.exist.dom.QName;
 import org.exist.dom.persistent.NodeProxy;
+import org.exist.storage.ElementValue;
 import org.exist.xquery.Constants;
 import org.exist.xquery.XQueryContext;
 import org.w3c.dom.DOMException;
@@ -164,7 +165,7 @@ public class MemTreeBuilder {
                     final String attrNS = attributes.getURI(i);
                     final String attrPrefix = (p != Constants.STRING_NOT_FOUND) ? attrQName.substring(0, p) : null;
                     final String attrLocalName = attributes.getLocalName(i);
-                    final QName attrQn = new QName(attrLocalName, attrNS, attrPrefix);
+                    final QName attrQn = new QName(attrLocalName, attrNS, attrPrefix, ElementValue.ATTRIBUTE);
                     final int type = getAttribType(attrQn, attributes.getType(i));
                     doc.addAttribute(nodeNr, attrQn, attributes.getValue(i), type);
                 }
@@ -41,6 +41,7 @@ import java.util.Optional;
 import org.exist.security.Subject;
 import org.exist.security.internal.web.HttpAccount;
 import org.exist.storage.BrokerPool;
+import org.exist.storage.BrokerTimeoutException;
 import org.exist.util.Configuration;
 import org.exist.util.DatabaseConfigurationException;
 import org.xmldb.api.DatabaseManager;
@@ -316,4 +317,22 @@ public abstract class AbstractExistHttpServlet extends HttpServlet {
     private void setPool(BrokerPool pool) {
         this.pool = pool;
     }
+
+    /**
+     * Responds with 503 Service Unavailable when no broker
+     * could be acquired within the acquire timeout of the pool.
+     *
+     * @param response the HTTP response
+     * @param e the timeout
+     *
+     * @throws IOException if the error cannot be sent
+     * @throws ServletException if the response has already been committed
+     */
+    protected void sendServiceUnavailable(final HttpServletResponse response, final BrokerTimeoutException e) throws IOException, ServletException {
+        getLog().warn(e.getMessage());
+        if (response.isCommitted()) {
+            throw new ServletException(e.getMessage(), e);
+        }
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+    }
 }
\ No newline at end of file
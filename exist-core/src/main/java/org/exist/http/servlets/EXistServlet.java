@@ -31,6 +31,7 @@ import org.exist.http.NotFoundException;
 import org.exist.http.RESTServer;
 import org.exist.security.PermissionDeniedException;
 import org.exist.security.Subject;
+import org.exist.storage.BrokerTimeoutException;
 import org.exist.storage.DBBroker;
 import org.exist.storage.txn.Txn;
 import org.exist.util.Configuration;
@@ -165,6 +166,8 @@ public class EXistServlet extends AbstractExistHttpServlet {
             } else {
                 response.sendError(HttpServletResponse.SC_FORBIDDEN, e.getMessage());
             }
+        } catch (final BrokerTimeoutException e) {
+            sendServiceUnavailable(response, e);
         } catch (final EXistException e) {
             if (response.isCommitted()) {
                 throw new ServletException(e.getMessage(), e);
@@ -274,6 +277,8 @@ public class EXistServlet extends AbstractExistHttpServlet {
             }
             response.sendError(HttpServletResponse.SC_NOT_FOUND, e.getMessage());
 
+        } catch (final BrokerTimeoutException e) {
+            sendServiceUnavailable(response, e);
         } catch (final EXistException e) {
             if (response.isCommitted()) {
                 throw new ServletException(e.getMessage(), e);
@@ -337,6 +342,8 @@ public class EXistServlet extends AbstractExistHttpServlet {
                 throw new ServletException(e.getMessage(), e);
             }
             response.sendError(HttpServletResponse.SC_NOT_FOUND, e.getMessage());
+        } catch (final BrokerTimeoutException e) {
+            sendServiceUnavailable(response, e);
         } catch (final EXistException e) {
             if (response.isCommitted()) {
                 throw new ServletException(e.getMessage(), e);
@@ -392,6 +399,8 @@ public class EXistServlet extends AbstractExistHttpServlet {
             }
         } catch (final NotFoundException e) {
             response.sendError(HttpServletResponse.SC_NOT_FOUND, e.getMessage());
+        } catch (final BrokerTimeoutException e) {
+            sendServiceUnavailable(response, e);
         } catch (final EXistException e) {
             if (response.isCommitted()) {
                 throw new ServletException(e.getMessage(), e);
@@ -469,6 +478,8 @@ public class EXistServlet extends AbstractExistHttpServlet {
                 } else {
                     response.sendError(HttpServletResponse.SC_FORBIDDEN, e.getMessage());
                 }
+            } catch (final BrokerTimeoutException e) {
+                sendServiceUnavailable(response, e);
             } catch (final EXistException e) {
                 if (response.isCommitted()) {
                     throw new ServletException(e.getMessage(), e);
@@ -54,6 +54,7 @@ import org.exist.source.FileSource;
 import org.exist.source.Source;
 import org.exist.source.SourceFactory;
 import org.exist.source.StringSource;
+import org.exist.storage.BrokerTimeoutException;
 import org.exist.storage.DBBroker;
 import org.exist.util.Configuration;
 import org.exist.util.MimeTable;
@@ -360,6 +361,9 @@ public class XQueryServlet extends AbstractExistHttpServlet {
                     response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
                     sendError(output, "Error", msg);
                 }
+            } catch (final BrokerTimeoutException e) {
+                sendServiceUnavailable(response, e);
+                return;
             } catch (final Exception e) {
                 getLog().error(e.getMessage(), e);
                 response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -533,6 +537,10 @@ public class XQueryServlet extends AbstractExistHttpServlet {
                 serializer.serialize(resultSequence);
             }
             
+        } catch (final BrokerTimeoutException e) {
+            sendServiceUnavailable(response, e);
+            return;
+
 		} catch (final PermissionDeniedException e) {
 			if (getDefaultUser().equals(user)) {
 				getAuthenticator().sendChallenge(request, response);
@@ -93,6 +93,17 @@ public interface Index extends AutoCloseable {
      */
     void sync() throws DBException;
 
+    /**
+     * Called after {@link #sync()}, before a checkpoint is written to the journal. After a
+     * crash, the changes made since the last checkpoint are recovered by re-indexing the
+     * database. An index which does not make its contents durable on every sync must
+     * do so now.
+     *
+     * @throws DBException in case of an eXist-db error
+     */
+    default void checkpoint() throws DBException {
+    }
+
     /**
      * Closes the index and removes it completely, including all resources and files
      * associated to it. This method is called during database repair before the
@@ -124,6 +135,29 @@ public interface Index extends AutoCloseable {
      */
     boolean checkIndex(DBBroker broker);
 
+    /**
+     * Called before many documents are indexed at once while the database is used exclusively:
+     * during database repair, after the index has been removed and reopened, or by a bulk load.
+     * An index may collect its data instead of writing it until {@link #endRepair()} is called,
+     * e.g. to merge sorted keys into a btree built bottom-up. The documents being indexed may
+     * replace others, so an index collecting its data must write it before data is removed.
+     * Calls may overlap, and each is followed by a call of {@link #endRepair()}.
+     * A reindex or a restore does not call this, as other brokers would not see the
+     * collected data until the end.
+     *
+     * @throws DBException in case of an eXist-db error
+     */
+    default void beginRepair() throws DBException {
+    }
+
+    /**
+     * Called after the documents have been indexed, see {@link #beginRepair()}.
+     *
+     * @throws DBException in case of an eXist-db error
+     */
+    default void endRepair() throws DBException {
+    }
+
     /**
      * Returns the underlying btree class for btree-based indexes or null for
      * other indexes.
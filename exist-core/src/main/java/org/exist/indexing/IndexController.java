@@ -193,6 +193,21 @@ public class IndexController {
         indexWorkers.values().forEach(IndexWorker::flush);
     }  
 
+    /**
+     * Flushes the index workers which cannot buffer the data of several
+     * documents. Used when the flush of the other workers is batched
+     * across documents, e.g. during a reindex.
+     *
+     * @see IndexWorker#supportsBatchFlush()
+     */
+    public void flushUnbatched() {
+        for (final IndexWorker indexWorker : indexWorkers.values()) {
+            if (!indexWorker.supportsBatchFlush()) {
+                indexWorker.flush();
+            }
+        }
+    }
+
     /**
      * Remove all indexes defined on the specified collection.
      *
@@ -265,6 +265,18 @@ public class IndexManager implements BrokerPoolService {
         }
     }
 
+    /**
+     * Call indexes to prepare for a checkpoint, see {@link org.exist.indexing.Index#checkpoint()}.
+     *
+     * @throws DBException in case of an eXist-db error
+     */
+    public void checkpoint() throws DBException {
+        for (final Iterator<Index> i = iterator(); i.hasNext(); ) {
+            final Index index = i.next();
+            index.checkpoint();
+        }
+    }
+
     /**
      * Physically destroy the registered indexes by calling {@link org.exist.indexing.Index#remove()}
      * on them.
@@ -278,6 +290,32 @@ public class IndexManager implements BrokerPoolService {
         }
     }
 
+    /**
+     * Call indexes to prepare for indexing many documents at once, during a repair or a bulk load,
+     * see {@link org.exist.indexing.Index#beginRepair()}.
+     *
+     * @throws DBException in case of an eXist-db error
+     */
+    public void beginRepair() throws DBException {
+        for (final Iterator<Index> i = iterator(); i.hasNext(); ) {
+            final Index index = i.next();
+            index.beginRepair();
+        }
+    }
+
+    /**
+     * Call indexes to complete indexing many documents at once,
+     * see {@link org.exist.indexing.Index#endRepair()}.
+     *
+     * @throws DBException in case of an eXist-db error
+     */
+    public void endRepair() throws DBException {
+        for (final Iterator<Index> i = iterator(); i.hasNext(); ) {
+            final Index index = i.next();
+            index.endRepair();
+        }
+    }
+
     /**
      * Reopens the registered index in case they have been closed by a previous operation
      * such as {@link org.exist.indexing.Index#close()} by calling {@link org.exist.indexing.Index#open()}
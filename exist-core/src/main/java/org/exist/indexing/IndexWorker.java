@@ -172,6 +172,18 @@ public interface IndexWorker {
      */
     void flush();
 
+    /**
+     * Whether the index worker can buffer the data of several documents indexed in
+     * {@link org.exist.indexing.StreamListener.ReindexMode#STORE} mode, and write
+     * them with a single call to {@link #flush()}. Workers which cannot are flushed
+     * after each document, see {@link IndexController#flushUnbatched()}.
+     *
+     * @return true if flushes may be batched across documents
+     */
+    default boolean supportsBatchFlush() {
+        return false;
+    }
+
     /**
      * Remove all indexes for the given collection, its subcollections and
      * all resources..
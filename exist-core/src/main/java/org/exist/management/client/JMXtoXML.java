@@ -96,6 +96,7 @@ public class JMXtoXML {
         putCategory("locking", LockTable.getAllInstancesQuery());
         putCategory("disk", DiskUsage.getAllInstancesQuery());
         putCategory("collectioncaches", CollectionCache.getAllInstancesQuery());
+        putCategory("xquerypools", XQueryPool.getAllInstancesQuery());
         putCategory("caches",
                 CacheManager.getAllInstancesQuery(),
                 Cache.getAllInstancesQuery()
@@ -103,6 +104,9 @@ public class JMXtoXML {
         putCategory("binarystreamcaches", BinaryValues.getAllInstancesQuery());
         putCategory("processes", ProcessReport.getAllInstancesQuery());
         putCategory("sanity", SanityReport.getAllInstancesQuery());
+        putCategory("journal", Journal.getAllInstancesQuery());
+        putCategory("qnamestatistics", QNameStatistics.getAllInstancesQuery());
+        putCategory("indexrefresh", "org.exist.management.*:type=IndexRefresh,*");
 
         // Jetty
         putCategory("jetty.threads", "org.eclipse.jetty.util.thread:type=queuedthreadpool,*");
@@ -29,6 +29,7 @@ import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
 import org.exist.storage.BrokerPool;
+import org.exist.storage.BrokerWaitQueue;
 import org.exist.storage.DBBroker;
 
 public class Database implements DatabaseMXBean {
@@ -87,6 +88,11 @@ public class Database implements DatabaseMXBean {
         return pool.total();
     }
 
+    @Override
+    public BrokerWaitQueue.Statistics getBrokerWaitStatistics() {
+        return pool.getBrokerWaitStatistics();
+    }
+
     @Override
     public List<ActiveBroker> getActiveBrokersMap() {
         final List<ActiveBroker> brokersList = new ArrayList<>();
@@ -2,6 +2,8 @@ package org.exist.management.impl;
 
 import java.util.List;
 
+import org.exist.storage.BrokerWaitQueue;
+
 /*
 *  eXist Open Source Native XML Database
 *  Copyright (C) 2001-07 The eXist Project
@@ -36,6 +38,13 @@ public interface DatabaseMXBean extends PerInstanceMBean {
     int getActiveBrokers();
 
     int getTotalBrokers();
+
+    /**
+     * Get a statistics snapshot of the threads which have acquired, or are waiting for, a broker
+     *
+     * @return Statistics for the broker acquisitions
+     */
+    BrokerWaitQueue.Statistics getBrokerWaitStatistics();
     
     long getReservedMem();
 
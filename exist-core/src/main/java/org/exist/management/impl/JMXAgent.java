@@ -85,7 +85,10 @@ public final class JMXAgent implements Agent {
                 new DiskUsage(instance),
                 new ProcessReport(instance),
                 new BinaryValues(instance),
-                new CollectionCache(instance)
+                new CollectionCache(instance),
+                new XQueryPool(instance),
+                new Journal(instance),
+                new QNameStatistics(instance)
         );
 
         for (final PerInstanceMBean perInstanceMBean : perInstanceMBeans) {
@@ -0,0 +1,51 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.exist.management.impl;
+
+public interface JournalMXBean extends PerInstanceMBean {
+
+    /**
+     * @return true if group commits are enabled for the journal
+     */
+    boolean isGroupCommit();
+
+    /**
+     * Get the number of transaction commits written to the journal
+     *
+     * @return the number of commits
+     */
+    long getCommitCount();
+
+    /**
+     * Get the number of syncs (fsync) of the journal
+     *
+     * @return the number of syncs
+     */
+    long getSyncCount();
+
+    /**
+     * Get the average number of commits per sync of the journal,
+     * or {@code 0.0} if the journal has not yet been synced.
+     *
+     * @return the average number of commits per sync
+     */
+    double getCommitsPerSync();
+}
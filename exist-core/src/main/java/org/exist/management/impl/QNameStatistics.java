@@ -0,0 +1,74 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.management.impl;
+
+import org.exist.storage.BrokerPool;
+import org.exist.storage.statistics.IndexStatistics;
+import org.exist.storage.statistics.ValueStatistics;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class QNameStatistics implements QNameStatisticsMXBean {
+    private final String instanceId;
+    private final BrokerPool pool;
+
+    public QNameStatistics(final BrokerPool pool) {
+        this.instanceId = pool.getId();
+        this.pool = pool;
+    }
+
+    public static String getAllInstancesQuery() {
+        return getName("*");
+    }
+
+    private static String getName(final String instanceId) {
+        return "org.exist.management." + instanceId + ":type=QNameStatistics";
+    }
+
+    @Override
+    public ObjectName getName() throws MalformedObjectNameException {
+        return new ObjectName(getName(instanceId));
+    }
+
+    @Override
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    @Override
+    public List<QNameStatisticsInfo> getStatistics() {
+        // the module may not be enabled, or not yet be configured
+        final IndexStatistics index = pool.getIndexManager() == null ? null :
+                (IndexStatistics) pool.getIndexManager().getIndexById(IndexStatistics.ID);
+        if (index == null) {
+            return Collections.emptyList();
+        }
+        final List<ValueStatistics.QNameStats> stats = index.getValueStatistics().getStats();
+        final List<QNameStatisticsInfo> results = new ArrayList<>(stats.size());
+        for (final ValueStatistics.QNameStats next : stats) {
+            results.add(new QNameStatisticsInfo(next));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.management.impl;
+
+import org.exist.storage.ElementValue;
+import org.exist.storage.statistics.ValueStatistics;
+
+/**
+ * Simple bean to hold JMX info on the values of the elements or attributes with a given name
+ */
+public class QNameStatisticsInfo {
+
+    private final String name;
+    private final String namespace;
+    private final String nodeType;
+    private final long nodeCount;
+    private final long documentCount;
+    private final long distinctValues;
+
+    public QNameStatisticsInfo(final ValueStatistics.QNameStats stats) {
+        this.name = stats.getQName().getLocalPart();
+        this.namespace = stats.getQName().getNamespaceURI();
+        this.nodeType = stats.getNameType() == ElementValue.ATTRIBUTE ? "attribute" : "element";
+        this.nodeCount = stats.getNodeCount();
+        this.documentCount = stats.getDocumentCount();
+        this.distinctValues = stats.getDistinctValues();
+    }
+
+    /**
+     * Get the local name of the nodes.
+     *
+     * @return the local name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the namespace URI of the nodes.
+     *
+     * @return the namespace URI, or the empty string
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Get the type of the nodes.
+     *
+     * @return "element" or "attribute"
+     */
+    public String getNodeType() {
+        return nodeType;
+    }
+
+    /**
+     * Get the number of nodes in the database.
+     *
+     * @return the number of nodes
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Get the number of documents containing the nodes.
+     *
+     * @return the number of documents
+     */
+    public long getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * Get the estimated number of distinct values of the nodes.
+     *
+     * @return the estimated number of distinct values
+     */
+    public long getDistinctValues() {
+        return distinctValues;
+    }
+}
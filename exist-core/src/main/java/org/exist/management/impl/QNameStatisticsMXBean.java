@@ -0,0 +1,37 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.management.impl;
+
+import java.util.List;
+
+/**
+ * JMX MXBean interface for examining the statistics on the values
+ * of elements and attributes, which are used by the query optimizer.
+ */
+public interface QNameStatisticsMXBean extends PerInstanceMBean {
+
+    /**
+     * Get a snapshot of the statistics for each element and attribute name.
+     * Empty if the index statistics module is not enabled.
+     *
+     * @return the statistics per element and attribute name
+     */
+    List<QNameStatisticsInfo> getStatistics();
+}
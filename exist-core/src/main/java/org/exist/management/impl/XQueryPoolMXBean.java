@@ -0,0 +1,36 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.exist.management.impl;
+
+import org.exist.storage.XQueryPool;
+
+/**
+ * JMX MXBean interface for examining the XQueryPool
+ */
+public interface XQueryPoolMXBean extends PerInstanceMBean {
+
+    /**
+     * Get a statistics snapshot of the XQuery Pool
+     *
+     * @return Statistics for the XQuery Pool
+     */
+    XQueryPool.Statistics getStatistics();
+}
@@ -57,6 +57,7 @@ import org.exist.security.internal.SecurityManagerImpl;
 import org.exist.storage.blob.BlobStore;
 import org.exist.storage.blob.BlobStoreImplService;
 import org.exist.storage.blob.BlobStoreService;
+import org.exist.storage.btree.DBException;
 import org.exist.storage.journal.JournalManager;
 import org.exist.storage.lock.FileLockService;
 import org.exist.storage.lock.LockManager;
@@ -210,6 +211,11 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     private final Map<Thread, DBBroker> activeBrokers = new ConcurrentHashMap<>();
 
+    /**
+     * The threads waiting for a broker for the database instance
+     */
+    private final BrokerWaitQueue brokerWaitQueue = new BrokerWaitQueue(this);
+
 
     /**
      * Used when TRACE level logging is enabled
@@ -271,6 +277,12 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
     @ConfigurationFieldAsAttribute("wait-before-shutdown")
     private final long maxShutdownWait;
 
+    /**
+     * Time (in ms) that a thread waits for a broker to become available, or -1 to wait indefinitely.
+     */
+    @ConfigurationFieldAsAttribute("acquire-timeout")
+    private final long brokerAcquireTimeout;
+
     /**
      * The scheduler for the database instance.
      */
@@ -407,6 +419,11 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         this.maxBrokers = conf.getProperty(PROPERTY_MAX_CONNECTIONS, maxBrokers);
         LOG.info("database instance '" + instanceName + "' will have between " + nf.format(this.minBrokers) + " and " + nf.format(this.maxBrokers) + " brokers");
 
+        this.brokerAcquireTimeout = conf.getProperty(PROPERTY_BROKER_ACQUIRE_TIMEOUT, DEFAULT_BROKER_ACQUIRE_TIMEOUT);
+        if (this.brokerAcquireTimeout > -1) {
+            LOG.info("database instance '" + instanceName + "' will wait up to " + nf.format(this.brokerAcquireTimeout) + " ms for a broker");
+        }
+
         this.majorSyncPeriod = conf.getProperty(PROPERTY_SYNC_PERIOD, DEFAULT_SYNCH_PERIOD);
         LOG.info("database instance '" + instanceName + "' will be synchronized every " + nf.format(/*this.*/majorSyncPeriod) + " ms");
 
@@ -555,6 +572,17 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 // or the FileSyncThread for the journal can/will hang.
                 try {
 
+                    // the changes of an interrupted bulk load were not journalled, and can not be recovered
+                    if(exportOnly) {
+                        try {
+                            BulkLoader.checkInterrupted(getStoragePlace());
+                        } catch(final EXistException e) {
+                            LOG.warn(e.getMessage());
+                        }
+                    } else {
+                        BulkLoader.checkInterrupted(getStoragePlace());
+                    }
+
                     // Enter System Mode
                     try(final DBBroker systemBroker = get(Optional.of(securityManager.getSystemSubject()))) {
 
@@ -883,6 +911,15 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return brokersCount;
     }
 
+    /**
+     * Returns the statistics of the threads which have acquired, or are waiting for, a broker.
+     *
+     * @return The statistics
+     */
+    public BrokerWaitQueue.Statistics getBrokerWaitStatistics() {
+        return brokerWaitQueue.getStatistics();
+    }
+
     /**
      * Returns whether the database instance has been configured.
      *
@@ -1220,30 +1257,93 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
             }
         }
 
+        final long waitStart = System.nanoTime();
+        final BrokerWaitQueue.Waiter waiter;
         synchronized(this) {
-            //Are there any available brokers ?
-            if(inactiveBrokers.isEmpty()) {
-                //There are no available brokers. If allowed...
-                if(brokersCount < maxBrokers)
-                //... create one
-                {
-                    createBroker();
-                } else
-                    //... or wait until there is one available
-                    while(inactiveBrokers.isEmpty()) {
-                        LOG.debug("waiting for a broker to become available");
-                        try {
-                            this.wait();
-                        } catch(final InterruptedException e) {
-                            //nothing to be done!
-                        }
-                    }
+            //Are there any available brokers, which are not promised to waiting threads ?
+            if(inactiveBrokers.isEmpty() && brokersCount < maxBrokers) {
+                //There are no available brokers, but we may create one
+                createBroker();
+            }
+            if(!inactiveBrokers.isEmpty() && brokerWaitQueue.isEmpty()) {
+                broker = inactiveBrokers.pop();
+                activeBrokers.put(Thread.currentThread(), broker);
+                waiter = null;
+            } else {
+                //... or wait in turn until one is handed to us
+                waiter = brokerWaitQueue.enqueue();
+
+                //guard to ensure that no broker is left idle whilst threads are waiting
+                while(!inactiveBrokers.isEmpty() && brokerWaitQueue.handOff(inactiveBrokers.peek(), activeBrokers)) {
+                    inactiveBrokers.pop();
+                }
+            }
+        }
+
+        if(waiter != null) {
+            broker = awaitBroker(waiter);
+        }
+        brokerWaitQueue.acquired(waiter == null ? 0 : System.nanoTime() - waitStart);
+
+        return prepareBroker(broker, subject);
+    }
+
+    /**
+     * Get a broker for the database instance, but only if one is available without waiting.
+     *
+     * Used by threads which must not wait for a broker, as the thread which will release
+     * the broker may itself be waiting for them. If the calling thread already holds a broker,
+     * that broker is returned, see {@link #get(Optional)}.
+     *
+     * @param subject The subject to be used by the broker
+     *
+     * @return The broker, or empty if all brokers are in use or other threads are waiting for a broker
+     * @throws EXistException If the instance is not available (stopped or not configured)
+     */
+    public Optional<DBBroker> tryGet(final Optional<Subject> subject) throws EXistException {
+        Objects.requireNonNull(subject, "Subject cannot be null, use BrokerPool#getBroker() instead");
+
+        if(!isInstanceConfigured()) {
+            throw new EXistException("database instance '" + instanceName + "' is not available");
+        }
+
+        if(activeBrokers.containsKey(Thread.currentThread())) {
+            return Optional.of(get(subject));
+        }
+
+        if(serviceModeUser != null && subject.isPresent() && !subject.equals(Optional.ofNullable(serviceModeUser))) {
+            return Optional.empty();
+        }
+
+        final DBBroker broker;
+        synchronized(this) {
+            if(inactiveBrokers.isEmpty() && brokersCount < maxBrokers) {
+                createBroker();
+            }
+            if(inactiveBrokers.isEmpty() || !brokerWaitQueue.isEmpty()) {
+                return Optional.empty();
             }
             broker = inactiveBrokers.pop();
+            activeBrokers.put(Thread.currentThread(), broker);
+        }
+        brokerWaitQueue.acquired(0);
+
+        return Optional.of(prepareBroker(broker, subject));
+    }
+
+    /**
+     * Prepares a broker which has just been activated for the calling thread.
+     *
+     * @param broker the broker, which is already active
+     * @param subject The subject to be used by the broker
+     *
+     * @return the broker
+     */
+    private DBBroker prepareBroker(final DBBroker broker, final Optional<Subject> subject) {
+        synchronized(this) {
             broker.prepare();
 
-            //activate the broker
-            activeBrokers.put(Thread.currentThread(), broker);
+            //NOTE: the broker is already active, it is never in transit between the inactive and active brokers
 
             if(LOG.isTraceEnabled()) {
                 LOG.trace("+++ " + Thread.currentThread() + Stacktrace.top(Thread.currentThread().getStackTrace(), Stacktrace.DEFAULT_STACK_TOP));
@@ -1264,13 +1364,39 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 brokerLeaseChangeTrace.get(broker.getId()).add(TraceableBrokerLeaseChange.get(new TraceableBrokerLeaseChange.BrokerInfo(broker.getId(), broker.getReferenceCount())));
             }
 
-            //Inform the other threads that we have a new-comer
-            // TODO: do they really need to be informed here???????
-            this.notifyAll();
             return broker;
         }
     }
 
+    /**
+     * Waits until a released broker is handed to the waiter of the calling thread.
+     *
+     * @param waiter the waiter of the calling thread
+     *
+     * @return the broker
+     *
+     * @throws BrokerTimeoutException if no broker became available within the acquire timeout
+     * @throws EXistException if the database instance is shutting down
+     */
+    private DBBroker awaitBroker(final BrokerWaitQueue.Waiter waiter) throws EXistException {
+        LOG.debug("waiting for a broker to become available");
+        if(!waiter.await(brokerAcquireTimeout)) {
+            synchronized(this) {
+                if(brokerWaitQueue.cancel(waiter)) {
+                    throw new BrokerTimeoutException("database instance '" + instanceName + "' has no broker available after waiting " + brokerAcquireTimeout + " ms, all " + maxBrokers + " brokers are in use");
+                }
+            }
+            //a broker was handed to us whilst the timeout elapsed
+            waiter.await(-1);
+        }
+
+        final DBBroker broker = waiter.getBroker();
+        if(broker == null) {
+            throw new EXistException("database instance '" + instanceName + "' is not available");
+        }
+        return broker;
+    }
+
     /**
      * Releases a broker for the database instance. If it is no more used, make if invactive.
      * If there are pending system maintenance tasks,
@@ -1342,7 +1468,6 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 }
             }
 
-            inactiveBrokers.push(broker);
             watchdog.ifPresent(wd -> wd.remove(broker));
 
             if(LOG.isTraceEnabled()) {
@@ -1372,7 +1497,13 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                     inServiceMode = true;
                 }
             }
-            //Inform the other threads that someone is gone
+
+            //Hand the broker to the longest waiting thread, which makes it active again, or else make it available
+            if(!brokerWaitQueue.handOff(broker, activeBrokers)) {
+                inactiveBrokers.push(broker);
+            }
+
+            //Inform the other threads, i.e. service mode and shutdown, that someone is gone
             this.notifyAll();
         }
     }
@@ -1464,9 +1595,10 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 LOG.debug("Major sync");
                 try {
                     if (!FORCE_CORRUPTION) {
+                        indexManager.checkpoint();
                         transactionManager.checkpoint(checkpoint);
                     }
-                } catch (final TransactionException e) {
+                } catch (final DBException | TransactionException e) {
                     LOG.warn(e.getMessage(), e);
                 }
                 cacheManager.checkCaches();
@@ -1690,6 +1822,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
 
                     // remove all remaining inactive brokers as we have shutdown now and no longer need those
                     inactiveBrokers.clear();
+                    brokerWaitQueue.failAll();
 
                     // deregister JMX MBeans
                     AgentFactory.getInstance().closeDBInstance(this);
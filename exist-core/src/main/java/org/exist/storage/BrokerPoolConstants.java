@@ -59,6 +59,7 @@ public interface BrokerPoolConstants {
     String MAX_CONNECTIONS_ATTRIBUTE = "max";
     String SYNC_PERIOD_ATTRIBUTE = "sync-period";
     String SHUTDOWN_DELAY_ATTRIBUTE = "wait-before-shutdown";
+    String BROKER_ACQUIRE_TIMEOUT_ATTRIBUTE = "acquire-timeout";
     String NODES_BUFFER_ATTRIBUTE = "nodesBuffer";
 
     //Various configuration property keys (set by the configuration manager)
@@ -68,6 +69,7 @@ public interface BrokerPoolConstants {
     String PROPERTY_MAX_CONNECTIONS = "db-connection.pool.max";
     String PROPERTY_SYNC_PERIOD = "db-connection.pool.sync-period";
     String PROPERTY_SHUTDOWN_DELAY = "wait-before-shutdown";
+    String PROPERTY_BROKER_ACQUIRE_TIMEOUT = "db-connection.pool.acquire-timeout";
     String DISK_SPACE_MIN_PROPERTY = "db-connection.diskSpaceMin";
 
     //TODO : move elsewhere ?
@@ -92,6 +94,7 @@ public interface BrokerPoolConstants {
      */
     long DEFAULT_SYNCH_PERIOD = 120000;
     long DEFAULT_MAX_SHUTDOWN_WAIT = 45000;
+    long DEFAULT_BROKER_ACQUIRE_TIMEOUT = -1;   // wait indefinitely
     //TODO : move this default setting to org.exist.collections.CollectionCache ?
     int DEFAULT_COLLECTION_BUFFER_SIZE = 64;
     int DEFAULT_PAGE_SIZE = 4096;
@@ -0,0 +1,35 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+
+/**
+ * Thrown by {@link BrokerPool#get(java.util.Optional)} when no broker
+ * became available within the configured acquire timeout,
+ * see {@link BrokerPoolConstants#BROKER_ACQUIRE_TIMEOUT_ATTRIBUTE}.
+ */
+public class BrokerTimeoutException extends EXistException {
+    private static final long serialVersionUID = -2873561079468317472L;
+
+    public BrokerTimeoutException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.beans.ConstructorProperties;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The threads of a {@link BrokerPool} which are waiting for a broker.
+ *
+ * Waiting threads are served in the order in which they arrived. When a broker
+ * is released it is handed directly to the thread at the head of the queue,
+ * which is the only thread that is woken up. The methods which modify the queue
+ * must be called whilst holding the monitor of the broker pool, whereas
+ * {@link Waiter#await(long)} must be called without holding it.
+ *
+ * Also records the time that threads have waited for a broker, see {@link #getStatistics()}.
+ */
+@ThreadSafe
+public class BrokerWaitQueue {
+
+    /**
+     * The upper bounds in milliseconds of the buckets of the wait time histogram,
+     * the last bucket counts all waits of longer than the last bound.
+     */
+    static final long[] WAIT_TIME_BUCKETS = { 1, 10, 100, 1_000, 10_000 };
+
+    private final Object pool;
+
+    @GuardedBy("pool") private final Deque<Waiter> waiters = new ArrayDeque<>();
+    @GuardedBy("pool") private int maxQueueDepth = 0;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(WAIT_TIME_BUCKETS.length + 1);
+
+    /**
+     * @param pool the object whose monitor guards the queue
+     */
+    BrokerWaitQueue(final Object pool) {
+        this.pool = pool;
+    }
+
+    @GuardedBy("pool")
+    boolean isEmpty() {
+        return waiters.isEmpty();
+    }
+
+    /**
+     * Adds the calling thread to the tail of the queue.
+     *
+     * @return the waiter of the calling thread
+     */
+    @GuardedBy("pool")
+    Waiter enqueue() {
+        final Waiter waiter = new Waiter();
+        waiters.offerLast(waiter);
+        if (waiters.size() > maxQueueDepth) {
+            maxQueueDepth = waiters.size();
+        }
+        return waiter;
+    }
+
+    /**
+     * Hands a broker to the thread at the head of the queue.
+     *
+     * The broker is registered as the active broker of the waiting thread
+     * before that thread is woken up, so that the broker pool never considers
+     * a broker in transit as being idle.
+     *
+     * @param broker the released broker
+     * @param activeBrokers the active brokers of the broker pool by thread
+     *
+     * @return true if the broker has been handed to a waiting thread,
+     *     false if there are no waiting threads
+     */
+    @GuardedBy("pool")
+    boolean handOff(final DBBroker broker, final Map<Thread, DBBroker> activeBrokers) {
+        final Waiter waiter = waiters.pollFirst();
+        if (waiter == null) {
+            return false;
+        }
+        activeBrokers.put(waiter.thread, broker);
+        waiter.assign(broker);
+        return true;
+    }
+
+    /**
+     * Removes a waiter which has timed out from the queue.
+     *
+     * @param waiter the waiter of the calling thread
+     *
+     * @return true if the waiter was removed, false if a broker
+     *     has been handed to it in the meantime
+     */
+    @GuardedBy("pool")
+    boolean cancel(final Waiter waiter) {
+        if (waiters.remove(waiter)) {
+            timeouts.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Wakes all of the waiting threads without a broker,
+     * as the broker pool is shutting down.
+     */
+    @GuardedBy("pool")
+    void failAll() {
+        Waiter waiter;
+        while ((waiter = waiters.pollFirst()) != null) {
+            waiter.assign(null);
+        }
+    }
+
+    /**
+     * Records the acquisition of a broker.
+     *
+     * @param waitTime the time in nanoseconds that the thread waited for the broker
+     */
+    void acquired(final long waitTime) {
+        acquisitions.incrementAndGet();
+        if (waitTime <= 0) {
+            histogram.incrementAndGet(0);
+            return;
+        }
+
+        waits.incrementAndGet();
+        totalWaitTime.addAndGet(waitTime);
+        maxWaitTime.accumulateAndGet(waitTime, Math::max);
+
+        final long waitTimeMs = TimeUnit.NANOSECONDS.toMillis(waitTime);
+        int bucket = 0;
+        while (bucket < WAIT_TIME_BUCKETS.length && waitTimeMs >= WAIT_TIME_BUCKETS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+    }
+
+    /**
+     * Get a snapshot of the statistics of the broker acquisitions
+     *
+     * @return the statistics
+     */
+    Statistics getStatistics() {
+        final int queueDepth;
+        final int maxDepth;
+        synchronized (pool) {
+            queueDepth = waiters.size();
+            maxDepth = maxQueueDepth;
+        }
+        final long[] waitTimeHistogram = new long[histogram.length()];
+        for (int i = 0; i < waitTimeHistogram.length; i++) {
+            waitTimeHistogram[i] = histogram.get(i);
+        }
+        return new Statistics(acquisitions.get(), waits.get(), timeouts.get(),
+                TimeUnit.NANOSECONDS.toMillis(totalWaitTime.get()), TimeUnit.NANOSECONDS.toMillis(maxWaitTime.get()),
+                queueDepth, maxDepth, WAIT_TIME_BUCKETS.clone(), waitTimeHistogram);
+    }
+
+    /**
+     * A thread waiting for a broker.
+     */
+    static class Waiter {
+        private final Thread thread = Thread.currentThread();
+        private boolean assigned = false;
+        private DBBroker broker = null;
+
+        private synchronized void assign(final DBBroker broker) {
+            this.broker = broker;
+            this.assigned = true;
+            notify();
+        }
+
+        /**
+         * Waits until a broker is handed to this waiter.
+         *
+         * Interrupts do not stop the waiting, the interrupt
+         * status is restored before returning.
+         *
+         * @param timeout the maximum time to wait in milliseconds, or -1 to wait indefinitely
+         *
+         * @return true if the waiter has been woken up, false if the timeout elapsed
+         */
+        synchronized boolean await(final long timeout) {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            boolean interrupted = false;
+            try {
+                while (!assigned) {
+                    try {
+                        if (timeout < 0) {
+                            wait();
+                        } else {
+                            final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                            if (remaining <= 0) {
+                                return false;
+                            }
+                            wait(remaining);
+                        }
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                return true;
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * @return the broker handed to this waiter, or null if the
+         *     broker pool is shutting down
+         */
+        synchronized DBBroker getBroker() {
+            return broker;
+        }
+    }
+
+    /**
+     * The statistics of the broker acquisitions of a {@link BrokerPool}.
+     */
+    public static class Statistics {
+        private final long acquisitionCount;
+        private final long waitCount;
+        private final long timeoutCount;
+        private final long totalWaitTime;
+        private final long maxWaitTime;
+        private final int queueDepth;
+        private final int maxQueueDepth;
+        private final long[] waitTimeBuckets;
+        private final long[] waitTimeHistogram;
+
+        /**
+         * @param acquisitionCount the number of brokers acquired by threads which did not already hold a broker
+         * @param waitCount the number of those acquisitions which had to wait for a broker
+         * @param timeoutCount the number of threads which gave up waiting for a broker
+         * @param totalWaitTime the total time in milliseconds that threads have waited for a broker
+         * @param maxWaitTime the longest time in milliseconds that a thread has waited for a broker
+         * @param queueDepth the number of threads currently waiting for a broker
+         * @param maxQueueDepth the largest number of threads which have waited for a broker at the same time
+         * @param waitTimeBuckets the upper bounds in milliseconds of the buckets of the wait time histogram
+         * @param waitTimeHistogram the number of acquisitions per wait time bucket, with an extra last bucket for longer waits
+         */
+        @ConstructorProperties({"acquisitionCount", "waitCount", "timeoutCount", "totalWaitTime", "maxWaitTime", "queueDepth", "maxQueueDepth", "waitTimeBuckets", "waitTimeHistogram"})
+        public Statistics(final long acquisitionCount, final long waitCount, final long timeoutCount, final long totalWaitTime,
+                final long maxWaitTime, final int queueDepth, final int maxQueueDepth, final long[] waitTimeBuckets,
+                final long[] waitTimeHistogram) {
+            this.acquisitionCount = acquisitionCount;
+            this.waitCount = waitCount;
+            this.timeoutCount = timeoutCount;
+            this.totalWaitTime = totalWaitTime;
+            this.maxWaitTime = maxWaitTime;
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.waitTimeBuckets = waitTimeBuckets;
+            this.waitTimeHistogram = waitTimeHistogram;
+        }
+
+        public long getAcquisitionCount() {
+            return acquisitionCount;
+        }
+
+        public long getWaitCount() {
+            return waitCount;
+        }
+
+        public long getTimeoutCount() {
+            return timeoutCount;
+        }
+
+        public long getTotalWaitTime() {
+            return totalWaitTime;
+        }
+
+        public long getMaxWaitTime() {
+            return maxWaitTime;
+        }
+
+        /**
+         * Returns the average time in milliseconds that an acquisition
+         * waited for a broker, including those which did not wait.
+         *
+         * @return the average wait time
+         */
+        public double getAverageWaitTime() {
+            return acquisitionCount == 0 ? 0.0 : (double) totalWaitTime / acquisitionCount;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public long[] getWaitTimeBuckets() {
+            return waitTimeBuckets;
+        }
+
+        public long[] getWaitTimeHistogram() {
+            return waitTimeHistogram;
+        }
+    }
+}
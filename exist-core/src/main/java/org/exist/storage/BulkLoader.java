@@ -0,0 +1,369 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.lock.ManagedCollectionLock;
+import org.exist.storage.sync.Sync;
+import org.exist.storage.txn.TransactionException;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.util.FileInputSource;
+import org.exist.util.FileUtils;
+import org.exist.util.LockException;
+import org.exist.util.MimeTable;
+import org.exist.util.MimeType;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.util.URIUtils;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Loads a directory tree of XML files into a Collection tree, bypassing the journal.
+ *
+ * The load has exclusive access to the database for making changes, see
+ * {@link TransactionManager#beginExclusive(long)}, as recovery would otherwise replay
+ * the journal entries of other transactions onto pages which have been changed by the
+ * load without being journalled. It stores the documents in unlogged transactions of
+ * {@link #getBatchSize()} documents each, see {@link TransactionManager#beginUnloggedTransaction()}.
+ * A checkpoint is made before the load, so that the journal does not need to be replayed,
+ * and after it, which writes all of the changes to disk.
+ *
+ * The load is announced to the indexes by {@link DBBroker#beginBulkIndexing()}, so that
+ * e.g. the structural index collects the keys of the documents, and merges them into its
+ * btree bottom-up when the load ends, instead of inserting them one by one, see
+ * {@link org.exist.storage.btree.BTree#merge(org.exist.storage.btree.BTreeKeySorter, double)}.
+ * Until then, queries of other brokers do not find the nodes of the loaded documents
+ * by these indexes.
+ *
+ * As the changes are not journalled, a crash before the last checkpoint leaves the
+ * database in an unrecoverable state, and it has to be restored from a backup. Whilst
+ * loading, the file {@link #MARKER_FILE_NAME} is kept in the data directory, and the
+ * database refuses to start up if it finds the file, see {@link #checkInterrupted(Path)}.
+ * Bulk loading is therefore restricted to the DBA, and is intended for the
+ * initial load of large numbers of documents.
+ */
+public class BulkLoader {
+
+    private static final Logger LOG = LogManager.getLogger(BulkLoader.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * The name of the file in the data directory which marks a bulk load in progress.
+     */
+    public static final String MARKER_FILE_NAME = "bulk-load.marker";
+
+    /**
+     * The maximum time in milliseconds to wait for other transactions to finish.
+     */
+    private static final long EXCLUSIVE_TIMEOUT = 60_000;
+
+    private final BrokerPool pool;
+    private final int batchSize;
+    private final ProcessMonitor.Monitor monitor = new ProcessMonitor.Monitor();
+
+    public BulkLoader(final BrokerPool pool) {
+        this(pool, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param pool the database instance
+     * @param batchSize the number of documents stored in each transaction
+     */
+    public BulkLoader(final BrokerPool pool, final int batchSize) {
+        this.pool = pool;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Load the XML files of a directory and its sub-directories. Each sub-directory
+     * is stored as a child Collection, files which are not XML are skipped.
+     *
+     * @param broker the broker of the calling thread, its subject must be a DBA
+     * @param collectionUri the Collection to load into, it is created if needed
+     * @param directory the directory to load from
+     *
+     * @return the statistics of the load
+     *
+     * @throws PermissionDeniedException if the subject is not a DBA
+     * @throws LockException if the Collection can not be locked
+     * @throws IOException if the directory can not be read
+     * @throws TransactionException if a batch can not be committed
+     */
+    public Result load(final DBBroker broker, final XmldbURI collectionUri, final Path directory)
+            throws PermissionDeniedException, LockException, IOException, TransactionException {
+        if (!broker.getCurrentSubject().hasDbaRole()) {
+            throw new PermissionDeniedException("Account " + broker.getCurrentSubject().getName() + " is not a DBA, only a DBA may bulk load documents");
+        }
+        if (!Files.isDirectory(directory)) {
+            throw new IOException("Unable to bulk load from " + directory.toAbsolutePath() + ", it is not a directory");
+        }
+
+        // NOTE: the Collection is created before it is locked, as creating it requires a lock on its parent
+        try (final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            broker.getOrCreateCollection(transaction, collectionUri);
+            transaction.commit();
+        } catch (final TriggerException e) {
+            throw new IOException("Unable to create collection " + collectionUri + ": " + e.getMessage(), e);
+        }
+
+        final Result result = new Result(collectionUri);
+        final long start = System.currentTimeMillis();
+        final TransactionManager transactionManager = pool.getTransactionManager();
+        transactionManager.beginExclusive(EXCLUSIVE_TIMEOUT);
+        pool.getProcessMonitor().startJob(ProcessMonitor.ACTION_BULK_LOAD, result, monitor);
+        try {
+            // the journal must not contain entries which recovery would replay onto the pages changed by the load
+            pool.sync(broker, Sync.MAJOR);
+            final Path marker = writeMarker(collectionUri, directory);
+
+            try (final ManagedCollectionLock collectionLock = pool.getLockManager().acquireCollectionWriteLock(collectionUri)) {
+                LOG.info("Start bulk loading {} into collection {}", directory.toAbsolutePath(), collectionUri);
+                final Batch batch = new Batch();
+                broker.beginBulkIndexing();
+                try {
+                    loadDirectory(broker, batch, directory, collectionUri, result);
+                } finally {
+                    try {
+                        batch.close();
+                    } finally {
+                        // even a failed load has made unlogged changes which must be written to disk
+                        broker.endBulkIndexing();
+                        pool.sync(broker, Sync.MAJOR);
+                        result.checkpointed = true;
+                    }
+                }
+            }
+
+            Files.delete(marker);
+        } finally {
+            transactionManager.endExclusive();
+            result.duration = System.currentTimeMillis() - start;
+            pool.getProcessMonitor().endJob();
+            LOG.info("Finished bulk loading. {}", result);
+        }
+        return result;
+    }
+
+    private void loadDirectory(final DBBroker broker, final Batch batch, final Path directory, final XmldbURI collectionUri,
+            final Result result) throws PermissionDeniedException, IOException, TransactionException {
+        if (!monitor.proceed()) {
+            return;
+        }
+
+        final Collection collection;
+        try {
+            collection = broker.getOrCreateCollection(batch.transaction(), collectionUri);
+        } catch (final TriggerException e) {
+            throw new IOException("Unable to create collection " + collectionUri + ": " + e.getMessage(), e);
+        }
+        result.collections++;
+
+        final List<Path> files = new ArrayList<>(FileUtils.list(directory));
+        Collections.sort(files);
+
+        final List<Path> directories = new ArrayList<>();
+        for (final Path file : files) {
+            if (!monitor.proceed()) {
+                return;
+            }
+
+            if (Files.isDirectory(file)) {
+                directories.add(file);
+                continue;
+            }
+
+            final MimeType mimeType = MimeTable.getInstance().getContentTypeFor(FileUtils.fileName(file));
+            if (mimeType == null || !mimeType.isXMLType()) {
+                result.skipped++;
+                continue;
+            }
+
+            storeDocument(broker, batch.transaction(), collection, file, result);
+            batch.stored();
+        }
+
+        for (final Path child : directories) {
+            loadDirectory(broker, batch, child, collectionUri.append(URIUtils.urlEncodeUtf8(FileUtils.fileName(child))), result);
+        }
+    }
+
+    private void storeDocument(final DBBroker broker, final Txn transaction, final Collection collection, final Path file,
+            final Result result) throws PermissionDeniedException {
+        final XmldbURI documentUri = XmldbURI.create(URIUtils.urlEncodeUtf8(FileUtils.fileName(file)));
+        try {
+            final IndexInfo info = collection.validateXMLResource(transaction, broker, documentUri, new FileInputSource(file));
+            collection.store(transaction, broker, info, new FileInputSource(file));
+            result.documents++;
+        } catch (final EXistException | SAXException | LockException | IOException e) {
+            LOG.error("Unable to store {} into collection {}: {}", file.toAbsolutePath(), collection.getURI(), e.getMessage(), e);
+            result.failed++;
+        }
+    }
+
+    /**
+     * The unlogged transaction of the current batch of documents.
+     */
+    private class Batch implements AutoCloseable {
+        private Txn transaction = null;
+        private int stored = 0;
+
+        Txn transaction() {
+            if (transaction == null) {
+                transaction = pool.getTransactionManager().beginUnloggedTransaction();
+            }
+            return transaction;
+        }
+
+        void stored() throws TransactionException {
+            if (++stored >= batchSize) {
+                close();
+            }
+        }
+
+        @Override
+        public void close() throws TransactionException {
+            if (transaction != null) {
+                try {
+                    transaction.commit();
+                } finally {
+                    transaction.close();
+                    transaction = null;
+                    stored = 0;
+                }
+            }
+        }
+    }
+
+    private Path writeMarker(final XmldbURI collectionUri, final Path directory) throws IOException {
+        final Path marker = pool.getStoragePlace().resolve(MARKER_FILE_NAME);
+        final String info = "Bulk load of " + directory.toAbsolutePath() + " into collection " + collectionUri
+                + " started at " + Instant.now() + "\n";
+        Files.write(marker, info.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        return marker;
+    }
+
+    /**
+     * Check that no bulk load has been interrupted by a crash, called
+     * before the database starts up.
+     *
+     * @param dataDir the data directory of the database
+     *
+     * @throws EXistException if a bulk load has been interrupted, the database must then be restored from a backup
+     */
+    public static void checkInterrupted(final Path dataDir) throws EXistException {
+        final Path marker = dataDir.resolve(MARKER_FILE_NAME);
+        if (Files.exists(marker)) {
+            String info;
+            try {
+                info = new String(Files.readAllBytes(marker), StandardCharsets.UTF_8).trim();
+            } catch (final IOException e) {
+                info = e.getMessage();
+            }
+            throw new EXistException("The database was not shut down cleanly during a bulk load (" + info
+                    + "). Its changes were not journalled, so the database can not be recovered and has to be restored "
+                    + "from a backup. Remove the file " + marker.toAbsolutePath() + " after restoring.");
+        }
+    }
+
+    /**
+     * The statistics of a bulk load. The string form is shown
+     * as the information of the running job.
+     */
+    public static final class Result {
+        private final XmldbURI collectionUri;
+        private volatile int collections = 0;
+        private volatile int documents = 0;
+        private volatile int failed = 0;
+        private volatile int skipped = 0;
+        private volatile long duration = 0;
+        private volatile boolean checkpointed = false;
+
+        Result(final XmldbURI collectionUri) {
+            this.collectionUri = collectionUri;
+        }
+
+        public XmldbURI getCollectionUri() {
+            return collectionUri;
+        }
+
+        public int getCollections() {
+            return collections;
+        }
+
+        public int getDocuments() {
+            return documents;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return the duration of the load in milliseconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        public double getDocumentsPerSecond() {
+            return duration == 0 ? documents : documents * 1000.0 / duration;
+        }
+
+        /**
+         * @return true if the changes have been written to disk by a checkpoint
+         */
+        public boolean isCheckpointed() {
+            return checkpointed;
+        }
+
+        @Override
+        public String toString() {
+            return collectionUri + ": stored " + documents + " documents in " + collections + " collections, "
+                    + failed + " failed, " + skipped + " skipped, " + String.format(Locale.ROOT, "%.1f", getDocumentsPerSecond()) + " documents/sec";
+        }
+    }
+}
@@ -99,6 +99,17 @@ public interface ContentLoadingObserver extends AutoCloseable {
 	 */
 	void flush() throws DBException;
 
+	/**
+	 * Flushes the pending items of the current document, like {@link #flush()},
+	 * but may keep them until the next call of {@link #flush()}, so that the items
+	 * of several documents are written at once, e.g. during a reindex.
+	 *
+	 * @throws DBException if an error occurs whilst flushing
+	 */
+	default void flushBatched() throws DBException {
+		flush();
+	}
+
 	/**
 	 * triggers a cache sync, i.e. forces to write out all cached pages.
 	 * sync() is called from time to time by the background sync daemon.
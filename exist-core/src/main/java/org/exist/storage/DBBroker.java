@@ -573,6 +573,37 @@ public abstract class DBBroker implements AutoCloseable {
     public abstract void reindexCollection(Txn transaction, @EnsureLocked(mode=LockMode.WRITE_LOCK, type=LockType.COLLECTION) XmldbURI collectionUri)
             throws PermissionDeniedException, IOException, LockException;
 
+    /**
+     * The default number of documents reindexed by a worker before it flushes, see
+     * {@link #reindexCollection(Txn, XmldbURI, int, int)}.
+     */
+    public static final int DEFAULT_REINDEX_BATCH_SIZE = 100;
+
+    /**
+     * Reindex a Collection and its descendants, spreading the documents
+     * across a pool of worker threads. Each worker has its own broker,
+     * and commits its changes in a new transaction after every batch of documents.
+     *
+     * The indexes of each Collection are dropped by the calling thread
+     * before its documents are handed to the workers. Unlike a single threaded
+     * reindex, the lock of the Collection is released before its documents are
+     * reindexed, so documents replaced meanwhile may be indexed twice by some indexes.
+     *
+     * @param transaction the transaction
+     * @param collectionUri The URI of the Collection to reindex
+     * @param workers the number of worker threads, a value of 1 or less
+     *     reindexes on the calling thread as {@link #reindexCollection(Txn, XmldbURI)}
+     * @param batchSize the number of documents a worker reindexes before committing
+     *     its transaction. Index workers which {@link org.exist.indexing.IndexWorker#supportsBatchFlush()
+     *     support batched flushes} are flushed once per batch, all others after every document
+     *
+     * @throws PermissionDeniedException If the current user does not have appropriate permissions
+     * @throws LockException If an exception occurs whilst acquiring locks
+     * @throws IOException If an error occurs whilst reindexing the Collection on disk
+     */
+    public abstract void reindexCollection(Txn transaction, @EnsureLocked(mode=LockMode.WRITE_LOCK, type=LockType.COLLECTION) XmldbURI collectionUri,
+            int workers, int batchSize) throws PermissionDeniedException, IOException, LockException;
+
     public abstract void reindexXMLResource(final Txn txn,
             @EnsureLocked(mode=LockMode.WRITE_LOCK) final DocumentImpl doc);
 
@@ -589,6 +620,21 @@ public abstract class DBBroker implements AutoCloseable {
      */
     public abstract void repair() throws PermissionDeniedException, IOException, LockException;
 
+    /**
+     * Tell the indexes that many documents are about to be indexed, e.g. by a repair
+     * or a bulk load, see {@link org.exist.indexing.Index#beginRepair()}. Must be followed
+     * by a call of {@link #endBulkIndexing()}. The indexes may not make the data of
+     * the documents visible until then, so the caller must have exclusive access to
+     * the database, and should sync it by a checkpoint afterwards.
+     */
+    public abstract void beginBulkIndexing();
+
+    /**
+     * Tell the indexes that the documents announced by {@link #beginBulkIndexing()}
+     * have been indexed.
+     */
+    public abstract void endBulkIndexing();
+
     /**
      * Repair core indexes (dom, collections ...). This method is called immediately
      * after recovery and before {@link #repair()}.
@@ -26,7 +26,12 @@ import org.apache.logging.log4j.Logger;
 
 import org.exist.management.Agent;
 import org.exist.management.AgentFactory;
+import org.exist.storage.cache.BTreeCache;
+import org.exist.storage.cache.BTreeCacheable;
 import org.exist.storage.cache.Cache;
+import org.exist.storage.cache.Cacheable;
+import org.exist.storage.cache.ConcurrentClockCache;
+import org.exist.storage.cache.LRUCache;
 import org.exist.util.Configuration;
 import org.exist.util.DatabaseConfigurationException;
 
@@ -77,6 +82,18 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     public static final String  SHRINK_THRESHOLD_ATTRIBUTE     		 	= "cacheShrinkThreshold";
     public static final String  SHRINK_THRESHOLD_PROPERTY      			= "db-connection.cache-shrink-threshold";
 
+    /** Page caches with a single lock and LRU replacement, see {@link LRUCache}. */
+    public static final String  CACHE_POLICY_LRU                    = "lru";
+    /** Striped page caches with CLOCK replacement, see {@link ConcurrentClockCache}. */
+    public static final String  CACHE_POLICY_CONCURRENT             = "concurrent";
+    public static final String  DEFAULT_CACHE_POLICY                = CACHE_POLICY_LRU;
+
+    public static final String  BTREE_CACHE_POLICY_ATTRIBUTE        = "btreeCachePolicy";
+    public static final String  PROPERTY_BTREE_CACHE_POLICY         = "db-connection.btree-cache-policy";
+
+    public static final String  DATA_CACHE_POLICY_ATTRIBUTE         = "dataCachePolicy";
+    public static final String  PROPERTY_DATA_CACHE_POLICY          = "db-connection.data-cache-policy";
+
     /** Caches maintained by this class. */
     private List<Cache>         caches                          = new ArrayList<>();
 
@@ -108,6 +125,12 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
     private String              instanceName;
 
+    /** The replacement policy used for new caches of type {@link Cache.CacheType#BTREE}. */
+    private final String        btreeCachePolicy;
+
+    /** The replacement policy used for new caches of type {@link Cache.CacheType#DATA}. */
+    private final String        dataCachePolicy;
+
     public DefaultCacheManager( BrokerPool pool )
     {
         this.instanceName = pool.getId();
@@ -126,6 +149,9 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
         shrinkThreshold = configuration.getInteger( SHRINK_THRESHOLD_PROPERTY );
 
+        btreeCachePolicy = (String)configuration.getProperty( PROPERTY_BTREE_CACHE_POLICY, DEFAULT_CACHE_POLICY );
+        dataCachePolicy  = (String)configuration.getProperty( PROPERTY_DATA_CACHE_POLICY, DEFAULT_CACHE_POLICY );
+
         totalMem        = cacheSize * 1024L * 1024L;
 
         final Boolean checkMaxCache = (Boolean)configuration.getProperty( PROPERTY_CACHE_CHECK_MAX_SIZE );
@@ -154,7 +180,8 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
         LOG.info( "Cache settings: " + nf.format( totalMem / 1024L ) + "k; totalPages: " + nf.format( totalPageCount ) +
                 "; maxCacheSize: " + nf.format( maxCacheSize ) +
-                "; cacheShrinkThreshold: " + nf.format( shrinkThreshold )
+                "; cacheShrinkThreshold: " + nf.format( shrinkThreshold ) +
+                "; btreeCachePolicy: " + btreeCachePolicy + "; dataCachePolicy: " + dataCachePolicy
         );
 
         registerMBean();
@@ -348,6 +375,48 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     }
 
 
+    /**
+     * Creates a new cache for the pages of a B+-tree, using the
+     * replacement policy configured for btree caches.
+     *
+     * The cache is not registered with this cache manager.
+     *
+     * @param <T> the type of the cached pages
+     * @param name the name of the cache
+     * @param size the initial size of the cache
+     * @param growthFactor the factor by which the cache grows when resized
+     * @param growthThreshold the threshold of replaced pages above which a resize is requested
+     *
+     * @return the new cache
+     */
+    public <T extends BTreeCacheable> Cache<T> createBTreeCache(final String name, final int size, final double growthFactor, final double growthThreshold) {
+        if (CACHE_POLICY_CONCURRENT.equals(btreeCachePolicy)) {
+            return new ConcurrentClockCache<>(name, size, growthFactor, growthThreshold, Cache.CacheType.BTREE);
+        }
+        return new BTreeCache<>(name, size, growthFactor, growthThreshold, Cache.CacheType.BTREE);
+    }
+
+    /**
+     * Creates a new cache for data pages, using the
+     * replacement policy configured for data caches.
+     *
+     * The cache is not registered with this cache manager.
+     *
+     * @param <T> the type of the cached pages
+     * @param name the name of the cache
+     * @param size the initial size of the cache
+     * @param growthFactor the factor by which the cache grows when resized
+     * @param growthThreshold the threshold of replaced pages above which a resize is requested
+     *
+     * @return the new cache
+     */
+    public <T extends Cacheable> Cache<T> createDataCache(final String name, final int size, final double growthFactor, final double growthThreshold) {
+        if (CACHE_POLICY_CONCURRENT.equals(dataCachePolicy)) {
+            return new ConcurrentClockCache<>(name, size, growthFactor, growthThreshold, Cache.CacheType.DATA);
+        }
+        return new LRUCache<>(name, size, growthFactor, growthThreshold, Cache.CacheType.DATA);
+    }
+
     private void registerMBean() {
         final Agent agent = AgentFactory.getInstance();
         try {
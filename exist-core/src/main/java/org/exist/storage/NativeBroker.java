@@ -317,6 +317,17 @@ public class NativeBroker extends DBBroker {
         }
     }
 
+    private void notifyFlushBatched() {
+        for(final ContentLoadingObserver observer : contentLoadingObservers) {
+            try {
+                observer.flushBatched();
+            } catch(final DBException e) {
+                LOG.error(e);
+                //Ignore the exception ; try to continue on other files
+            }
+        }
+    }
+
     private void notifyPrintStatistics() {
         for(final ContentLoadingObserver observer : contentLoadingObservers) {
             observer.printStatistics();
@@ -1539,9 +1550,14 @@ public class NativeBroker extends DBBroker {
             collectionsDb.remove(transaction, key);
         }
 
+        // queries compiled from the documents at their old paths must not be reused
+        documentsModified(sourceCollection);
+
         // set source path to destination... source is now the destination
         sourceCollection.setPath(destinationCollectionUri, true);
         saveCollection(transaction, sourceCollection);
+        // ...nor those compiled from the documents which were replaced at the destination
+        documentsModified(sourceCollection);
 
         // add destination to target
         targetCollection.addCollection(this, sourceCollection);
@@ -1567,6 +1583,19 @@ public class NativeBroker extends DBBroker {
         }
     }
 
+    /**
+     * Removes the compiled queries from the XQuery pool, which depend on
+     * any of the documents of the collection.
+     *
+     * @param collection the collection whose documents have been moved
+     */
+    private void documentsModified(@EnsureLocked(mode=LockMode.WRITE_LOCK) final Collection collection) throws PermissionDeniedException {
+        final XQueryPool xqueryPool = pool.getXQueryPool();
+        for (final Iterator<DocumentImpl> i = collection.iteratorNoLock(this); i.hasNext(); ) {       // NOTE: we already have a WRITE_LOCK on the collection
+            xqueryPool.documentModified(i.next());
+        }
+    }
+
     @Override
     public boolean removeCollection(final Txn transaction, final Collection collection) throws PermissionDeniedException, IOException, TriggerException {
         if(isReadOnly()) {
@@ -1687,6 +1716,7 @@ public class NativeBroker extends DBBroker {
             //Remove doc's metadata
             // WM: now removed in one step. see above.
             //removeResourceMetadata(transaction, doc);
+            pool.getXQueryPool().documentModified(doc);
             //Remove document nodes' index entries
             new DOMTransaction(this, domDb, () -> lockManager.acquireBtreeWriteLock(domDb.getLockName())) {
                 @Override
@@ -1878,6 +1908,22 @@ public class NativeBroker extends DBBroker {
         }
     }
 
+    @Override
+    public void reindexCollection(final Txn transaction, final XmldbURI collectionUri, final int workers, final int batchSize)
+            throws PermissionDeniedException, IOException, LockException {
+        if(workers <= 1) {
+            reindexCollection(transaction, collectionUri);
+            return;
+        }
+
+        if(isReadOnly()) {
+            throw new IOException(DATABASE_IS_READ_ONLY);
+        }
+
+        final XmldbURI fqUri = prepend(collectionUri.toCollectionPathURI());
+        new ParallelReindex(this, workers, batchSize).reindex(transaction, fqUri);
+    }
+
     private void reindexCollection(final Txn transaction,
             @EnsureLocked(mode=LockMode.READ_LOCK) final Collection collection, final IndexMode mode)
             throws PermissionDeniedException, IOException, LockException {
@@ -1924,7 +1970,7 @@ public class NativeBroker extends DBBroker {
         dropCollectionIndex(transaction, collection, false);
     }
 
-    private void dropCollectionIndex(final Txn transaction,
+    void dropCollectionIndex(final Txn transaction,
             @EnsureLocked(mode=LockMode.WRITE_LOCK) final Collection collection, final boolean reindex)
             throws PermissionDeniedException, IOException, LockException {
         if(isReadOnly()) {
@@ -2117,6 +2163,7 @@ public class NativeBroker extends DBBroker {
             doc.write(os);
             final Value key = new CollectionStore.DocumentKey(doc.getCollection().getId(), doc.getResourceType(), doc.getDocId());
             collectionsDb.put(transaction, key, os.data(), true);
+            pool.getXQueryPool().documentModified(doc);
             //} catch (ReadOnlyException e) {
             //LOG.warn(DATABASE_IS_READ_ONLY);
         } catch(final LockException e) {
@@ -2866,6 +2913,7 @@ public class NativeBroker extends DBBroker {
             }
             final Value key = new CollectionStore.DocumentKey(document.getCollection().getId(), document.getResourceType(), document.getDocId());
             collectionsDb.remove(transaction, key);
+            pool.getXQueryPool().documentModified(document);
         } catch(final LockException e) {
             LOG.error("Failed to acquire lock on {}", FileUtils.fileName(collectionsDb.getFile()));
         }
@@ -2928,6 +2976,25 @@ public class NativeBroker extends DBBroker {
      */
     @Override
     public void reindexXMLResource(final Txn transaction, final DocumentImpl doc, final IndexMode mode) {
+        indexXMLResource(transaction, doc, mode);
+        flush();
+    }
+
+    /**
+     * Reindex the nodes in the document, like {@link #reindexXMLResource(Txn, DocumentImpl, IndexMode)},
+     * but without flushing the index workers which can buffer the data of several documents,
+     * see {@link org.exist.indexing.IndexWorker#supportsBatchFlush()}, and keeping the data of the
+     * value index, see {@link ContentLoadingObserver#flushBatched()}.
+     *
+     * {@link #flush()} must be called after the last document of a batch.
+     */
+    void reindexXMLResourceBatched(final Txn transaction, @EnsureLocked(mode=LockMode.READ_LOCK) final DocumentImpl doc, final IndexMode mode) {
+        indexXMLResource(transaction, doc, mode);
+        notifyFlushBatched();
+        getIndexController().flushUnbatched();
+    }
+
+    private void indexXMLResource(final Txn transaction, final DocumentImpl doc, final IndexMode mode) {
         final StreamListener listener = getIndexController().getStreamListener(doc, ReindexMode.STORE);
         getIndexController().startIndexDocument(transaction, listener);
         try {
@@ -2944,7 +3011,6 @@ public class NativeBroker extends DBBroker {
         } finally {
             getIndexController().endIndexDocument(transaction, listener);
         }
-        flush();
     }
 
     @Override
@@ -3626,9 +3692,33 @@ public class NativeBroker extends DBBroker {
         }
 
         loadIndexModules();
+        beginBulkIndexing();
+
         LOG.info("Reindexing database files ...");
-        //Reindex from root collection
-        reindexCollection(null, getCollection(XmldbURI.ROOT_COLLECTION_URI), IndexMode.REPAIR);
+        try {
+            //Reindex from root collection
+            reindexCollection(null, getCollection(XmldbURI.ROOT_COLLECTION_URI), IndexMode.REPAIR);
+        } finally {
+            endBulkIndexing();
+        }
+    }
+
+    @Override
+    public void beginBulkIndexing() {
+        try {
+            pool.getIndexManager().beginRepair();
+        } catch(final DBException e) {
+            LOG.error("Failed to prepare index files for bulk indexing: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void endBulkIndexing() {
+        try {
+            pool.getIndexManager().endRepair();
+        } catch(final DBException e) {
+            LOG.error("Failed to complete index files after bulk indexing: {}", e.getMessage(), e);
+        }
     }
 
     @Override
@@ -156,6 +156,12 @@ public class NativeValueIndex implements ContentLoadingObserver {
     private final PendingChanges<AtomicValue> pendingGeneric = new PendingChanges<>(IndexType.GENERIC);
     private final PendingChanges<QNameKey> pendingQName = new PendingChanges<>(IndexType.QNAME);
 
+    /**
+     * The entries of the documents flushed by {@link #flushBatched()}, by their key in {@link #dbValues},
+     * in the order of the keys. They are appended by the next {@link #flush()}.
+     */
+    private final Map<Value, VariableByteOutputStream> batched = new TreeMap<>();
+
     private final LockManager lockManager;
 
     /**
@@ -357,16 +363,31 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
     @Override
     public void flush() {
+        flushPending(false);
+        writeBatched();
+    }
+
+    /**
+     * Keeps the entries of the current document until the next {@link #flush()},
+     * which appends the entries of all of the documents of a batch with a single
+     * acquisition of the lock, and a single append per key.
+     */
+    @Override
+    public void flushBatched() {
+        flushPending(true);
+    }
+
+    private void flushPending(final boolean batch) {
         if (doc == null || (pendingGeneric.changes.isEmpty() && pendingQName.changes.isEmpty())) {
             return;
         }
         final int collectionId = this.doc.getCollection().getId();
 
-        flush(pendingGeneric, key -> new SimpleValue(collectionId, (Indexable) key));
-        flush(pendingQName, key -> new QNameValue(collectionId, key.qname, key.value, broker.getBrokerPool().getSymbols()));
+        flush(pendingGeneric, key -> new SimpleValue(collectionId, (Indexable) key), batch);
+        flush(pendingQName, key -> new QNameValue(collectionId, key.qname, key.value, broker.getBrokerPool().getSymbols()), batch);
     }
 
-    private <T> void flush(final PendingChanges<T> pending, final FunctionE<T, Value, EXistException> dbKeyFn) {
+    private <T> void flush(final PendingChanges<T> pending, final FunctionE<T, Value, EXistException> dbKeyFn, final boolean batch) {
         for (final Map.Entry<T, List<NodeId>> entry : pending.changes.entrySet()) {
             final T key = entry.getKey();
 
@@ -399,6 +420,19 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
             //Write (variable) length of node IDs
             os.writeFixedInt(nodeIDsLength, os.position() - nodeIDsLength - LENGTH_NODE_IDS);
+
+            if (batch) {
+                // the entries of several documents are appended to the value of a key in one go
+                try {
+                    batched.computeIfAbsent(dbKeyFn.apply(key), k -> new VariableByteOutputStream(os.size())).write(os.data());
+                } catch (final EXistException e) {
+                    LOG.error(e.getMessage(), e);
+                } finally {
+                    os.clear();
+                }
+                continue;
+            }
+
             try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
                 final Value v = dbKeyFn.apply(key);
 
@@ -423,8 +457,38 @@ public class NativeValueIndex implements ContentLoadingObserver {
         pending.changes.clear();
     }
 
+    /**
+     * Appends the entries kept by {@link #flushBatched()}.
+     */
+    private void writeBatched() {
+        if (batched.isEmpty()) {
+            return;
+        }
+        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+            for (final Map.Entry<Value, VariableByteOutputStream> entry : batched.entrySet()) {
+                if (dbValues.append(entry.getKey(), entry.getValue().data()) == BFile.UNKNOWN_ADDRESS) {
+                    LOG.warn("Could not append index data for key '" + entry.getKey() + "'");
+                    //TODO : throw exception ?
+                }
+            }
+        } catch (final IOException e) {
+            LOG.error(e.getMessage(), e);
+        } catch (final LockException e) {
+            LOG.warn("Failed to acquire lock for '" + FileUtils.fileName(dbValues.getFile()) + "'", e);
+            //TODO : return ?
+        } catch (final ReadOnlyException e) {
+            LOG.warn(e.getMessage(), e);
+
+            //Return without clearing the batched entries
+            return;
+        }
+        batched.clear();
+    }
+
     @Override
     public void remove() {
+        // the entries of the document may have been batched
+        writeBatched();
         if (doc == null || (pendingGeneric.changes.isEmpty() && pendingQName.changes.isEmpty())) {
             return;
         }
@@ -566,6 +630,8 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
     @Override
     public void dropIndex(final DocumentImpl document) {
+        // the entries of the document may have been batched
+        writeBatched();
         final int collectionId = document.getCollection().getId();
         try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
             dropIndex(document.getDocId(), pendingGeneric, key -> new SimpleValue(collectionId, (Indexable) key));
@@ -0,0 +1,289 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.Permission;
+import org.exist.security.PermissionDeniedException;
+import org.exist.security.Subject;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.TransactionException;
+import org.exist.storage.txn.Txn;
+import org.exist.util.LockException;
+import org.exist.util.NamedThreadFactory;
+import org.exist.xmldb.XmldbURI;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reindexes a Collection and its descendants with a pool of worker threads.
+ *
+ * The calling thread walks the Collection tree top-down, drops the indexes of
+ * each Collection and queues its documents. Each worker takes documents from the
+ * queue and reindexes them with its own broker. A worker flushes its index
+ * workers and commits its transaction after every batch of documents, so that
+ * index workers which support it can write the data of a whole batch at once.
+ *
+ * Unlike {@link NativeBroker#reindexCollection(org.exist.storage.txn.Txn, XmldbURI)},
+ * the calling thread does not hold the READ_LOCK of a Collection until its documents
+ * have been reindexed. It releases the lock once it has dropped the indexes and listed
+ * the documents, as a worker has to acquire the lock of the Collection for each document,
+ * and would wait behind a writer queued for the Collection whilst the calling thread
+ * waits for the worker. Until a worker has reindexed a document and committed its batch,
+ * queries do not find the document by its indexes, and the Collection may be changed:
+ * <ul>
+ *     <li>A document stored meanwhile is indexed when it is stored, and is not reindexed.</li>
+ *     <li>A document removed meanwhile is skipped by the worker, with a warning.</li>
+ *     <li>A document which is replaced meanwhile is indexed when it is stored, and reindexed
+ *     by the worker afterwards, which may add its entries to an index a second time.
+ *     Avoid replacing the documents of a Collection whilst it is reindexed, or use a single worker.</li>
+ * </ul>
+ *
+ * The progress of the reindex is reported through the {@link ProcessMonitor},
+ * and so is visible in the running jobs of the process report over JMX.
+ */
+final class ParallelReindex {
+
+    private static final Logger LOG = LogManager.getLogger(ParallelReindex.class);
+
+    /**
+     * Marks the end of the queue for a worker, compared by identity.
+     */
+    private static final XmldbURI END_OF_QUEUE = XmldbURI.create("/end-of-queue");
+
+    private final NativeBroker broker;
+    private final BrokerPool pool;
+    private final int workers;
+    private final int batchSize;
+    private final BlockingQueue<XmldbURI> queue;
+    private final ProcessMonitor.Monitor monitor = new ProcessMonitor.Monitor();
+    private Progress progress;
+
+    ParallelReindex(final NativeBroker broker, final int workers, final int batchSize) {
+        this.broker = broker;
+        this.pool = broker.getBrokerPool();
+        this.workers = workers;
+        this.batchSize = Math.max(1, batchSize);
+        this.queue = new ArrayBlockingQueue<>(workers * this.batchSize * 2);
+    }
+
+    void reindex(final Txn transaction, final XmldbURI collectionUri) throws IOException {
+        final long start = System.currentTimeMillis();
+        progress = new Progress(collectionUri);
+        pool.getProcessMonitor().startJob(ProcessMonitor.ACTION_REINDEX_COLLECTION, progress, monitor);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(workers, new NamedThreadFactory(pool, "reindex"));
+        try {
+            final Subject subject = broker.getCurrentSubject();
+            final List<Future<Void>> results = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                results.add(executor.submit(() -> runWorker(subject)));
+            }
+
+            LOG.info("Start indexing collection {} with {} workers", collectionUri, workers);
+            try {
+                reindexCollection(transaction, collectionUri, results, true);
+            } catch (final PermissionDeniedException | IOException | LockException e) {
+                LOG.error("An error occurred during reindex: {}", e.getMessage(), e);
+                monitor.stop();
+            } finally {
+                for (int i = 0; i < workers; i++) {
+                    enqueue(END_OF_QUEUE, results);
+                }
+            }
+
+            for (final Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (final ExecutionException e) {
+                    LOG.error("A reindex worker failed: {}", e.getCause().getMessage(), e.getCause());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            monitor.stop();
+            throw new IOException("Interrupted whilst reindexing collection " + collectionUri, e);
+        } finally {
+            executor.shutdownNow();
+            pool.getProcessMonitor().endJob();
+            LOG.info("Finished indexing collection {} in {} ms. {}", collectionUri, System.currentTimeMillis() - start, progress);
+        }
+    }
+
+    /**
+     * Drops the indexes of the Collection and queues its documents,
+     * then descends into the child Collections. The lock of the Collection
+     * is released before the documents are queued, see the class description.
+     */
+    private void reindexCollection(final Txn transaction, final XmldbURI collectionUri, final List<Future<Void>> workerResults,
+            final boolean root) throws PermissionDeniedException, IOException, LockException, InterruptedException {
+        if (!monitor.proceed()) {
+            return;
+        }
+
+        final List<XmldbURI> documents = new ArrayList<>();
+        final List<XmldbURI> children = new ArrayList<>();
+
+        try (final Collection collection = broker.openCollection(collectionUri, LockMode.READ_LOCK)) {
+            if (collection == null) {
+                if (root) {
+                    LOG.warn("Collection {} not found!", collectionUri);
+                    return;
+                }
+                throw new IOException("Collection '" + collectionUri + "' not found");
+            }
+
+            if (!collection.getPermissionsNoLock().validate(broker.getCurrentSubject(), Permission.WRITE)) {
+                throw new PermissionDeniedException("Account " + broker.getCurrentSubject().getName() + " have insufficient privileges on collection " + collection.getURI());
+            }
+
+            LOG.debug("Reindexing collection {}", collection.getURI());
+            broker.dropCollectionIndex(transaction, collection, true);
+
+            try {
+                for (final Iterator<DocumentImpl> i = collection.iterator(broker); i.hasNext(); ) {
+                    documents.add(i.next().getURI());
+                }
+            } catch (final LockException e) {
+                LOG.error("LockException while reindexing documents of collection '{}'. Skipping...", collection.getURI(), e);
+            }
+
+            try {
+                for (final Iterator<XmldbURI> i = collection.collectionIterator(broker); i.hasNext(); ) {
+                    children.add(collection.getURI().append(i.next()));
+                }
+            } catch (final LockException e) {
+                LOG.error("LockException while reindexing child collections of collection '{}'. Skipping...", collection.getURI(), e);
+            }
+        }
+
+        progress.collections.incrementAndGet();
+        progress.documents.addAndGet(documents.size());
+        for (final XmldbURI document : documents) {
+            if (!monitor.proceed()) {
+                return;
+            }
+            enqueue(document, workerResults);
+        }
+
+        for (final XmldbURI child : children) {
+            reindexCollection(transaction, child, workerResults, false);
+        }
+    }
+
+    /**
+     * Queues a document for the workers, checking that
+     * the workers are still running whilst waiting.
+     */
+    private void enqueue(final XmldbURI documentUri, final List<Future<Void>> workerResults) throws InterruptedException {
+        while (!queue.offer(documentUri, 1, TimeUnit.SECONDS)) {
+            boolean running = false;
+            for (final Future<Void> result : workerResults) {
+                running |= !result.isDone();
+            }
+            if (!running) {
+                LOG.error("All reindex workers have stopped, unable to reindex {}", documentUri);
+                monitor.stop();
+                return;
+            }
+        }
+    }
+
+    private Void runWorker(final Subject subject) throws EXistException, TransactionException, InterruptedException {
+        try (final DBBroker workerBroker = pool.get(Optional.of(subject))) {
+            boolean endOfQueue = false;
+            while (!endOfQueue) {
+                try (final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+                    int reindexed = 0;
+                    while (reindexed < batchSize) {
+                        final XmldbURI documentUri = queue.take();
+                        if (documentUri == END_OF_QUEUE) {
+                            endOfQueue = true;
+                            break;
+                        }
+                        reindexDocument(workerBroker, transaction, documentUri);
+                        reindexed++;
+                    }
+
+                    workerBroker.flush();
+                    transaction.commit();
+                }
+            }
+        }
+        return null;
+    }
+
+    private void reindexDocument(final DBBroker workerBroker, final Txn transaction, final XmldbURI documentUri) {
+        if (!monitor.proceed()) {
+            return;
+        }
+
+        try (final LockedDocument lockedDocument = workerBroker.getXMLResource(documentUri, LockMode.READ_LOCK)) {
+            if (lockedDocument == null) {
+                LOG.warn("Document {} was removed before it could be reindexed", documentUri);
+                progress.failed.incrementAndGet();
+                return;
+            }
+
+            if (workerBroker instanceof NativeBroker) {
+                ((NativeBroker) workerBroker).reindexXMLResourceBatched(transaction, lockedDocument.getDocument(), DBBroker.IndexMode.STORE);
+            } else {
+                workerBroker.reindexXMLResource(transaction, lockedDocument.getDocument(), DBBroker.IndexMode.STORE);
+            }
+            progress.reindexed.incrementAndGet();
+        } catch (final PermissionDeniedException | RuntimeException e) {
+            LOG.error("Unable to reindex document {}: {}", documentUri, e.getMessage(), e);
+            progress.failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * The progress of a reindex. The string form is shown
+     * as the information of the running job.
+     */
+    static final class Progress {
+        private final XmldbURI collectionUri;
+        private final AtomicInteger collections = new AtomicInteger();
+        private final AtomicInteger documents = new AtomicInteger();
+        private final AtomicInteger reindexed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        Progress(final XmldbURI collectionUri) {
+            this.collectionUri = collectionUri;
+        }
+
+        @Override
+        public String toString() {
+            return collectionUri + ": reindexed " + reindexed.get() + " of " + documents.get()
+                    + " documents found in " + collections.get() + " collections, " + failed.get() + " failed";
+        }
+    }
+}
@@ -59,6 +59,7 @@ public class ProcessMonitor implements BrokerPoolService {
     public static final String ACTION_COPY_COLLECTION = "copy collection";
     public static final String ACTION_MOVE_COLLECTION = "move collection";
     public static final String ACTION_BACKUP = "backup";
+    public static final String ACTION_BULK_LOAD = "bulk load";
 
     private static final Logger LOG = LogManager.getLogger(ProcessMonitor.class);
     private static final long QUERY_HISTORY_TIMEOUT = 2 * 60 * 1000; // 2 minutes
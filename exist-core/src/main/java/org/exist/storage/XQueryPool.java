@@ -19,21 +19,42 @@
  */
 package org.exist.storage;
 
+import java.beans.ConstructorProperties;
 import java.text.NumberFormat;
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
 import net.jcip.annotations.ThreadSafe;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.exist.dom.persistent.BinaryDocument;
+import org.exist.dom.persistent.DocumentImpl;
 import org.exist.security.Permission;
 import org.exist.security.PermissionDeniedException;
+import org.exist.source.BinarySource;
+import org.exist.source.DBSource;
 import org.exist.source.Source;
+import org.exist.source.StringSource;
+import org.exist.source.StringSourceWithMapKey;
 import org.exist.util.Configuration;
 import org.exist.util.Holder;
+import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
 
 /**
@@ -43,11 +64,19 @@ import org.exist.xquery.*;
  * {@link org.exist.source.Source} objects from which they were created.
  *
  * For each XQuery, a maximum of {@link #DEFAULT_MAX_QUERY_STACK_SIZE} compiled
- * expressions are kept in the pool.
+ * expressions are kept in the pool. The pool is bounded by the total number of
+ * expressions of the compiled queries, so that a few large queries may
+ * evict many small ones, see {@link #MAX_EXPRESSIONS_ATTRIBUTE}.
  * An XQuery expression will be removed from the pool if it has not been
  * used for a pre-defined timeout (default is {@link #DEFAULT_TIMEOUT}); these
  * settings can be configured in conf.xml.
  *
+ * Compiled queries from sources stored in the database, or which import modules
+ * stored in the database, are invalidated when the broker stores or removes one of
+ * those documents, or removes or moves their collection, see {@link #documentModified(DocumentImpl)}. Such queries are not
+ * checked for validity when they are borrowed, which saves a database read for each
+ * {@link DBSource}. Queries from other sources, i.e. files or URLs, are still checked.
+ *
  * @author <a href="mailto:adam@evolvedbinary.com">Adam Retter</a>
  */
 @ThreadSafe
@@ -58,29 +87,61 @@ public class XQueryPool implements BrokerPoolService {
     public static final String CONFIGURATION_ELEMENT_NAME = "query-pool";
     public static final String MAX_STACK_SIZE_ATTRIBUTE = "max-stack-size";
     public static final String POOL_SIZE_ATTTRIBUTE = "size";
+    public static final String MAX_EXPRESSIONS_ATTRIBUTE = "max-expressions";
     public static final String TIMEOUT_ATTRIBUTE = "timeout";
 
     public static final String PROPERTY_MAX_STACK_SIZE = "db-connection.query-pool.max-stack-size";
     public static final String PROPERTY_POOL_SIZE = "db-connection.query-pool.size";
+    public static final String PROPERTY_MAX_EXPRESSIONS = "db-connection.query-pool.max-expressions";
     public static final String PROPERTY_TIMEOUT = "db-connection.query-pool.timeout";
 
     private static final int DEFAULT_MAX_POOL_SIZE = 128;
     private static final int DEFAULT_MAX_QUERY_STACK_SIZE = 64;
     private static final long DEFAULT_TIMEOUT = 120_000L;   // ms (i.e. 2 mins)
 
+    /**
+     * The expressions allowed per query of {@link #POOL_SIZE_ATTTRIBUTE}
+     * if {@link #MAX_EXPRESSIONS_ATTRIBUTE} is not configured.
+     */
+    private static final int DEFAULT_EXPRESSIONS_PER_QUERY = 1000;
+
+    /**
+     * The number of database documents for which the last modification is remembered,
+     * see {@link #isModifiedSince(XmldbURI, long)}.
+     */
+    private static final int MAX_TRACKED_MODIFICATIONS = 10_000;
+
     private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
     private int maxQueryStackSize = DEFAULT_MAX_QUERY_STACK_SIZE;
+    private long maxExpressions = (long) DEFAULT_MAX_POOL_SIZE * DEFAULT_EXPRESSIONS_PER_QUERY;
     private long timeout = DEFAULT_TIMEOUT;
 
     /**
      * Source -> Deque of compiled Queries
      */
-    private Cache<Source, Deque<CompiledXQuery>> cache;
+    private Cache<Source, PooledQueries> cache;
+
+    /**
+     * Path of a database document -> the Sources and entries of the cached queries which depend on it
+     */
+    private final ConcurrentMap<XmldbURI, ConcurrentMap<Source, PooledQueries>> dependents = new ConcurrentHashMap<>();
+
+    /**
+     * Path of a database document -> the modification count of its last modification
+     */
+    private Cache<XmldbURI, Long> modifications;
+    private final AtomicLong modificationCount = new AtomicLong();
+    /** The highest modification count which has been evicted from {@link #modifications} */
+    private final AtomicLong forgottenModificationCount = new AtomicLong(-1);
+
+    private StatsCounter statsCounter = new ConcurrentStatsCounter();
+    private final AtomicLong invalidationCount = new AtomicLong();
 
     @Override
     public void configure(final Configuration configuration) {
         final Integer maxStSz = (Integer) configuration.getProperty(PROPERTY_MAX_STACK_SIZE);
         final Integer maxPoolSz = (Integer) configuration.getProperty(PROPERTY_POOL_SIZE);
+        final Long maxExpr = (Long) configuration.getProperty(PROPERTY_MAX_EXPRESSIONS);
         final Long t = (Long) configuration.getProperty(PROPERTY_TIMEOUT);
         final NumberFormat nf = NumberFormat.getNumberInstance();
 
@@ -96,19 +157,43 @@ public class XQueryPool implements BrokerPoolService {
             this.maxQueryStackSize = DEFAULT_MAX_QUERY_STACK_SIZE;
         }
 
+        if (maxExpr != null) {
+            this.maxExpressions = maxExpr;
+        } else {
+            this.maxExpressions = (long) maxPoolSize * DEFAULT_EXPRESSIONS_PER_QUERY;
+        }
+
         if (t != null) {
             this.timeout = t;
         } else {
             this.timeout = DEFAULT_TIMEOUT;
         }
 
+        this.statsCounter = new ConcurrentStatsCounter();
         this.cache = Caffeine.newBuilder()
-                .maximumSize(maxPoolSize)
+                .maximumWeight(Math.max(0, maxExpressions))
+                .weigher((Source source, PooledQueries queries) -> queries.getWeight())
                 .expireAfterAccess(timeout, TimeUnit.MILLISECONDS)
+                .removalListener((Source source, PooledQueries queries, RemovalCause cause) -> {
+                    if (source != null && queries != null) {
+                        removeDependencies(source, queries);
+                    }
+                })
+                .recordStats(() -> statsCounter)
+                .build();
+
+        this.modifications = Caffeine.newBuilder()
+                .maximumSize(MAX_TRACKED_MODIFICATIONS)
+                .removalListener((XmldbURI path, Long modification, RemovalCause cause) -> {
+                    if (cause.wasEvicted() && modification != null) {
+                        forgottenModificationCount.accumulateAndGet(modification, Math::max);
+                    }
+                })
                 .build();
 
         LOG.info("QueryPool: " + "size = " + nf.format(maxPoolSize) + "; "
                 + "maxQueryStackSize = " + nf.format(maxQueryStackSize) + "; "
+                + "maxExpressions = " + nf.format(maxExpressions) + "; "
                 + "timeout = " + nf.format(timeout) + "; ");
     }
 
@@ -119,21 +204,37 @@ public class XQueryPool implements BrokerPoolService {
      * @param compiledXQuery The compiled XQuery to add to the XQuery pool.
      */
     public void returnCompiledXQuery(final Source source, final CompiledXQuery compiledXQuery) {
-        if (compiledXQuery == null) {
+        if (compiledXQuery == null || maxExpressions <= 0 || maxQueryStackSize <= 0) {
             return;
         }
 
+        final Set<XmldbURI> dependencies = new HashSet<>();
+        final boolean tracked = collectDependencies(compiledXQuery, dependencies);
+
+        // a query which was compiled before one of its documents was modified must not be pooled
+        final long compiledAt = compiledXQuery.getContext().getCompiledAt();
+        for (final XmldbURI dependency : dependencies) {
+            if (isModifiedSince(dependency, compiledAt)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(source.getKey() + " was modified whilst it was compiled, not returning it to the XQuery Pool...");
+                }
+                return;
+            }
+        }
+
+        final int weight = getExpressionCount(compiledXQuery);
         cache.asMap().compute(source, (key, value) -> {
-            final Deque<CompiledXQuery> deque;
+            final PooledQueries queries;
             if (value != null) {
-                deque = value;
+                queries = value;
             } else {
-                deque = new ArrayDeque<>(maxQueryStackSize);
+                queries = new PooledQueries(dependencies, tracked);
+                addDependencies(key, queries);
             }
 
-            deque.offerFirst(compiledXQuery);
+            queries.offer(compiledXQuery, weight, maxQueryStackSize);
 
-            return deque;
+            return queries;
         });
     }
 
@@ -159,17 +260,18 @@ public class XQueryPool implements BrokerPoolService {
         final Holder<CompiledXQuery> borrowedCompiledQuery = new Holder<>();
 
         // get (compute by checking validity) the stack of compiled XQuerys for the source
-        final Deque<CompiledXQuery> deque = cache.asMap().computeIfPresent(source, (key, value) -> {
-            final CompiledXQuery firstCompiledXQuery = value.pollFirst();
+        final PooledQueries queries = cache.asMap().computeIfPresent(source, (key, value) -> {
+            final CompiledXQuery firstCompiledXQuery = value.poll();
             if (firstCompiledXQuery == null) {
                 // deque is empty, returning null will remove the entry from the cache
                 return null;
             }
 
-            if (!isCompiledQueryValid(broker, source, firstCompiledXQuery)) {
+            if (!isCompiledQueryValid(broker, source, firstCompiledXQuery, value.tracked)) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug(source.getKey() + " is invalid, removing from XQuery Pool...");
                 }
+                invalidationCount.incrementAndGet();
 
                 // query is invalid, returning null will remove the entry from the cache
                 return null;
@@ -182,9 +284,11 @@ public class XQueryPool implements BrokerPoolService {
             return value;
         });
 
-        if (deque == null) {
+        if (queries == null || borrowedCompiledQuery.value == null) {
+            statsCounter.recordMisses(1);
             return null;
         }
+        statsCounter.recordHits(1);
 
         //check execution permission
         source.validate(broker.getCurrentSubject(), Permission.EXECUTE);
@@ -198,12 +302,19 @@ public class XQueryPool implements BrokerPoolService {
      * @param broker the database broker
      * @param source the source of the query
      * @param compiledXQuery the compiled query
+     * @param tracked true if all of the sources of the query are invalidated by
+     *     {@link #documentModified(DocumentImpl)} or can not change
      *
      * @return true if the compiled query is still valid, false otherwise.
      */
     private static boolean isCompiledQueryValid(final DBBroker broker, final Source source,
-            final CompiledXQuery compiledXQuery) {
+            final CompiledXQuery compiledXQuery, final boolean tracked) {
         final Source cachedSource = compiledXQuery.getSource();
+        if (tracked) {
+            // compare with the source of the caller, which does not need to access the database
+            return cachedSource.isValid(source) != Source.Validity.INVALID;
+        }
+
         Source.Validity validity = cachedSource.isValid(broker);
         if (validity == Source.Validity.UNKNOWN) {
             validity = cachedSource.isValid(source);
@@ -222,10 +333,317 @@ public class XQueryPool implements BrokerPoolService {
         return true;
     }
 
+    /**
+     * Called by the broker when the metadata of a document has been stored,
+     * or the document has been removed or moved with its collection. Removes all of the compiled queries
+     * from the pool which have been compiled from the document, or which
+     * import a module from the document.
+     *
+     * @param document the document which has been stored or removed
+     */
+    public void documentModified(final DocumentImpl document) {
+        if (!(document instanceof BinaryDocument) || cache == null) {
+            // queries and modules can only be compiled from binary documents
+            return;
+        }
+
+        final XmldbURI path = document.getURI();
+        modifications.put(path, modificationCount.incrementAndGet());
+
+        final Map<Source, PooledQueries> sources = dependents.get(path);
+        if (sources != null) {
+            for (final Source source : sources.keySet().toArray(new Source[0])) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(source.getKey() + " depends on modified document " + path + ", removing from XQuery Pool...");
+                }
+                cache.invalidate(source);
+                invalidationCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Gets the current modification count, which is recorded by
+     * the compiler in {@link XQueryContext#setCompiledAt(long)}.
+     *
+     * @return the number of documents modified so far
+     */
+    public long getModificationCount() {
+        return modificationCount.get();
+    }
+
+    /**
+     * Records the time taken to compile a query.
+     *
+     * @param nanos the compile time in nanoseconds
+     * @param success false if the query could not be compiled
+     */
+    public void recordCompile(final long nanos, final boolean success) {
+        if (success) {
+            statsCounter.recordLoadSuccess(nanos);
+        } else {
+            statsCounter.recordLoadFailure(nanos);
+        }
+    }
+
+    private boolean isModifiedSince(final XmldbURI path, final long compiledAt) {
+        if (compiledAt < 0 || compiledAt < forgottenModificationCount.get()) {
+            // the modifications since the query was compiled are unknown
+            return true;
+        }
+        final Long modification = modifications.getIfPresent(path);
+        return modification != null && modification > compiledAt;
+    }
+
+    /**
+     * Collects the paths of the database documents from which the query
+     * and its imported modules were compiled.
+     *
+     * @return true if all of the sources of the query are either stored in the
+     *     database or can not change, i.e. it does not need to be validated when borrowed
+     */
+    private static boolean collectDependencies(final CompiledXQuery compiledXQuery, final Set<XmldbURI> dependencies) {
+        boolean tracked = addDependency(compiledXQuery.getSource(), dependencies);
+        for (final ExternalModule module : getExternalModules(compiledXQuery)) {
+            tracked &= addDependency(module.getSource(), dependencies);
+        }
+        return tracked;
+    }
+
+    private static boolean addDependency(final Source source, final Set<XmldbURI> dependencies) {
+        if (source instanceof DBSource) {
+            dependencies.add(((DBSource) source).getDocumentPath());
+            return true;
+        }
+        return source instanceof StringSource || source instanceof StringSourceWithMapKey || source instanceof BinarySource;
+    }
+
+    private void addDependencies(final Source source, final PooledQueries queries) {
+        for (final XmldbURI dependency : queries.dependencies) {
+            dependents.computeIfAbsent(dependency, k -> new ConcurrentHashMap<>()).put(source, queries);
+        }
+    }
+
+    /**
+     * Removes the dependencies of an entry which has been removed from the pool. The removal
+     * listener may run after a new entry for the same source has been added, so only the
+     * dependencies of the removed entry itself are removed.
+     */
+    private void removeDependencies(final Source source, final PooledQueries queries) {
+        for (final XmldbURI dependency : queries.dependencies) {
+            dependents.computeIfPresent(dependency, (k, sources) -> {
+                sources.remove(source, queries);
+                return sources.isEmpty() ? null : sources;
+            });
+        }
+    }
+
+    /**
+     * The weight of a compiled query, which is the number
+     * of expressions of the query and its imported modules.
+     */
+    private static int getExpressionCount(final CompiledXQuery compiledXQuery) {
+        int count = compiledXQuery.getContext().getExpressionCount();
+        for (final ExternalModule module : getExternalModules(compiledXQuery)) {
+            if (module.getContext() != null && module.getContext() != compiledXQuery.getContext()) {
+                count += module.getContext().getExpressionCount();
+            }
+        }
+        return Math.max(1, count);
+    }
+
+    /**
+     * Gets the modules imported by a compiled query, and the modules imported by those modules.
+     */
+    private static Set<ExternalModule> getExternalModules(final CompiledXQuery compiledXQuery) {
+        final Set<ExternalModule> modules = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<XQueryContext> contexts = new ArrayDeque<>();
+        contexts.push(compiledXQuery.getContext());
+        while (!contexts.isEmpty()) {
+            for (final Iterator<Module> i = contexts.pop().getAllModules(); i.hasNext(); ) {
+                final Module module = i.next();
+                if (!module.isInternalModule() && modules.add((ExternalModule) module)) {
+                    final XQueryContext moduleContext = ((ExternalModule) module).getContext();
+                    if (moduleContext != null) {
+                        contexts.push(moduleContext);
+                    }
+                }
+            }
+        }
+        return modules;
+    }
+
     /**
      * Removes all entries from the XQuery Pool.
      */
     public void clear() {
         cache.invalidateAll();
     }
+
+    /**
+     * Get a Snapshot of the XQuery Pool Statistics
+     *
+     * @return The XQuery Pool statistics
+     */
+    public Statistics getStatistics() {
+        final CacheStats cacheStats = statsCounter.snapshot();
+        long weight = 0;
+        for (final PooledQueries queries : cache.asMap().values()) {
+            weight += queries.getWeight();
+        }
+        return new Statistics(
+                cacheStats.hitCount(),
+                cacheStats.missCount(),
+                cacheStats.loadSuccessCount(),
+                cacheStats.loadFailureCount(),
+                cacheStats.totalLoadTime(),
+                cacheStats.evictionCount(),
+                cacheStats.evictionWeight(),
+                invalidationCount.get(),
+                cache.estimatedSize(),
+                weight
+        );
+    }
+
+    /**
+     * The compiled queries of a source.
+     */
+    private static class PooledQueries {
+        private final Deque<CompiledXQuery> queries = new ArrayDeque<>();
+        private final Deque<Integer> weights = new ArrayDeque<>();
+        private final Set<XmldbURI> dependencies;
+        private final boolean tracked;
+        private int weight = 0;
+
+        PooledQueries(final Set<XmldbURI> dependencies, final boolean tracked) {
+            this.dependencies = dependencies;
+            this.tracked = tracked;
+        }
+
+        void offer(final CompiledXQuery compiledXQuery, final int queryWeight, final int maxQueries) {
+            if (queries.size() < maxQueries) {
+                queries.offerFirst(compiledXQuery);
+                weights.offerFirst(queryWeight);
+                weight += queryWeight;
+            }
+        }
+
+        CompiledXQuery poll() {
+            final CompiledXQuery compiledXQuery = queries.pollFirst();
+            if (compiledXQuery != null) {
+                weight -= weights.pollFirst();
+            }
+            return compiledXQuery;
+        }
+
+        int getWeight() {
+            return weight;
+        }
+    }
+
+    /**
+     * The statistics of the XQuery Pool, in the
+     * form of {@link org.exist.collections.CollectionCache.Statistics}.
+     * A load of the cache is the compilation of a query.
+     */
+    public static class Statistics {
+        private final long hitCount;
+        private final long missCount;
+        private final long compileCount;
+        private final long compileFailureCount;
+        private final long totalCompileTime;
+        private final long evictionCount;
+        private final long evictionWeight;
+        private final long invalidationCount;
+        private final long size;
+        private final long weight;
+
+        /**
+         * @param hitCount the number of compiled queries borrowed from the pool
+         * @param missCount the number of requests for which no compiled query was available
+         * @param compileCount the number of queries compiled
+         * @param compileFailureCount the number of queries which failed to compile
+         * @param totalCompileTime the total compile time in nanoseconds (success and failure)
+         * @param evictionCount the number of sources evicted from the pool
+         * @param evictionWeight the sum of the expressions of the sources evicted from the pool
+         * @param invalidationCount the number of sources removed from the pool as they have changed
+         * @param size the number of sources in the pool
+         * @param weight the number of expressions of the compiled queries in the pool
+         */
+        @ConstructorProperties({"hitCount", "missCount", "compileCount", "compileFailureCount", "totalCompileTime", "evictionCount", "evictionWeight", "invalidationCount", "size", "weight"})
+        public Statistics(final long hitCount, final long missCount, final long compileCount, final long compileFailureCount, final long totalCompileTime, final long evictionCount, final long evictionWeight, final long invalidationCount, final long size, final long weight) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.compileCount = compileCount;
+            this.compileFailureCount = compileFailureCount;
+            this.totalCompileTime = totalCompileTime;
+            this.evictionCount = evictionCount;
+            this.evictionWeight = evictionWeight;
+            this.invalidationCount = invalidationCount;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * Returns the ratio of requests which were served with a compiled query from the pool,
+         * or {@code 1.0} when there have not been any requests.
+         *
+         * @return the ratio of requests which were hits
+         */
+        public double getHitRate() {
+            final long requestCount = hitCount + missCount;
+            return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+        }
+
+        public long getCompileCount() {
+            return compileCount;
+        }
+
+        public long getCompileFailureCount() {
+            return compileFailureCount;
+        }
+
+        /**
+         * @return the total number of nanoseconds spent compiling queries
+         */
+        public long getTotalCompileTime() {
+            return totalCompileTime;
+        }
+
+        /**
+         * @return the average number of nanoseconds spent compiling a query
+         */
+        public double getAverageCompilePenalty() {
+            final long totalCompileCount = compileCount + compileFailureCount;
+            return totalCompileCount == 0 ? 0.0 : (double) totalCompileTime / totalCompileCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public long getEvictionWeight() {
+            return evictionWeight;
+        }
+
+        public long getInvalidationCount() {
+            return invalidationCount;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+    }
 }
@@ -71,6 +71,7 @@
  */
 package org.exist.storage.btree;
 
+import com.evolvedbinary.j8fu.tuple.Tuple2;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -87,6 +88,7 @@ import org.exist.util.FileUtils;
 import org.exist.util.Lockable;
 import org.exist.xquery.TerminatedException;
 
+import javax.annotation.Nullable;
 import java.io.*;
 import java.nio.file.Path;
 import java.text.NumberFormat;
@@ -118,6 +120,9 @@ public class BTree extends Paged implements Lockable {
 
     protected final static int MIN_SPACE_PER_KEY = 32;
 
+    /** Default fill factor of the pages written by {@link #build(Iterator, double)} */
+    public final static double DEFAULT_FILL_FACTOR = 0.9;
+
     /** Log entry type for an insert value operation */
     public final static byte LOG_INSERT_VALUE = 0x20;
     /** Log entry type for creation of a new BTree node */
@@ -223,8 +228,7 @@ public class BTree extends Paged implements Lockable {
     }
 
     protected void initCache() {
-        this.cache = new BTreeCache<>(FileUtils.fileName(getFile()), cacheManager.getDefaultInitialSize(), 1.5,
-            0, Cache.CacheType.BTREE);
+        this.cache = cacheManager.createBTreeCache(FileUtils.fileName(getFile()), cacheManager.getDefaultInitialSize(), 1.5, 0);
         cacheManager.registerCache(cache);
     }
 
@@ -346,6 +350,35 @@ public class BTree extends Paged implements Lockable {
         return getRootNode().findValue(value);
     }
 
+    /**
+     * Find the greatest key which is smaller than the given value.
+     * The value itself does not need to be a key of the BTree.
+     *
+     * @param  value               The Value to start from
+     * @return                     The preceding key and its pointer, or null if there is none
+     * @throws IOException if an I/O error occurs
+     * @throws BTreeException if an error occurss with the tree
+     */
+    public @Nullable Tuple2<Value, Long> findPrecedingValue(final Value value) throws IOException, BTreeException {
+        return getRootNode().findPrecedingValue(value);
+    }
+
+    /**
+     * Find the smallest key which is greater than the given value.
+     * The value itself does not need to be a key of the BTree.
+     *
+     * Unlike a query with {@link IndexQuery#GT}, this method does
+     * not scan the rest of the BTree.
+     *
+     * @param  value               The Value to start from
+     * @return                     The following key and its pointer, or null if there is none
+     * @throws IOException if an I/O error occurs
+     * @throws BTreeException if an error occurss with the tree
+     */
+    public @Nullable Tuple2<Value, Long> findFollowingValue(final Value value) throws IOException, BTreeException {
+        return getRootNode().findFollowingValue(value);
+    }
+
     /**
      * query performs a query against the BTree and performs callback
      * operations to report the search results.
@@ -735,12 +768,277 @@ public class BTree extends Paged implements Lockable {
         return last;
     }
 
+    /**
+     * Check if the tree is empty, i.e. its root is a leaf without keys.
+     *
+     * @return true if the tree does not contain any keys
+     */
+    public boolean isEmpty() {
+        final BTreeNode root = getRootNode();
+        return root != null && root.pageHeader.getStatus() == LEAF && root.nKeys == 0;
+    }
+
+    /**
+     * Build the tree bottom-up from a stream of keys in ascending order.
+     *
+     * Instead of inserting each key from the root, the leaf pages are filled
+     * sequentially up to the fill factor and written once. The first key of
+     * each leaf is promoted to the level above, which is filled in the same way,
+     * until a single root page remains. Pages which are filled completely will be
+     * split by the next insert, a fill factor below 1 leaves some space for that.
+     *
+     * The tree must be empty, see {@link #merge(BTreeKeySorter, double)} otherwise.
+     * The changes are not written to the journal,
+     * so the caller has to hold the write lock of the tree, and has to make
+     * sure the file is synced by a checkpoint afterwards.
+     *
+     * @param entries the keys and their pointers, in strictly ascending order of the keys
+     * @param fillFactor the fraction of each page to fill, between 0 (exclusive) and 1 (inclusive)
+     *
+     * @return the number of keys added to the tree
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws BTreeException if the tree is not empty or the keys are not in ascending order
+     */
+    public long build(final Iterator<Tuple2<Value, Long>> entries, final double fillFactor) throws IOException, BTreeException {
+        if (fillFactor <= 0 || fillFactor > 1) {
+            throw new IllegalArgumentException("Fill factor must be in the range (0, 1], but was: " + fillFactor);
+        }
+        if (!isEmpty()) {
+            throw new BTreeException("Unable to build " + FileUtils.fileName(getFile()) + " from sorted keys, it is not empty");
+        }
+
+        final BulkBuilder builder = new BulkBuilder((int) (fileHeader.getWorkSize() * fillFactor));
+        while (entries.hasNext()) {
+            final Tuple2<Value, Long> entry = entries.next();
+            builder.add(entry._1, entry._2);
+        }
+        return builder.finish();
+    }
+
+    /**
+     * Merge the sorted keys into the tree by building it anew bottom-up,
+     * see {@link #build(Iterator, double)}.
+     *
+     * If the tree is not empty, its keys are read in order and written to
+     * the sorter as its first run, so a key added to the sorter replaces an equal
+     * key of the tree. Then the pages of the tree are freed, and reused for the
+     * nodes of the new tree. The same restrictions apply as for
+     * {@link #build(Iterator, double)}: the caller has to hold the write lock of
+     * the tree, and has to make sure the file is synced by a checkpoint afterwards,
+     * before recovery could replay older changes onto the new pages.
+     *
+     * @param keys the keys and their pointers, which must not have been sorted yet
+     * @param fillFactor the fraction of each page to fill, between 0 (exclusive) and 1 (inclusive)
+     *
+     * @return the number of keys in the tree
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws BTreeException if an error occurs with the tree
+     * @throws TerminatedException if reading the keys of the tree is terminated
+     */
+    public long merge(final BTreeKeySorter keys, final double fillFactor) throws IOException, BTreeException, TerminatedException {
+        if (!isEmpty()) {
+            try (final BTreeKeySorter.RunWriter run = keys.addFirstRun()) {
+                query(null, (value, pointer) -> {
+                    try {
+                        run.write(value, pointer);
+                    } catch (final IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return true;
+                });
+            }
+            clear();
+        }
+        return build(keys.sorted(), fillFactor);
+    }
+
+    /**
+     * Free all of the nodes of the tree, and create a new empty root node.
+     * The changes are not written to the journal.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void clear() throws IOException {
+        final long pages = getFileHeader().getTotalCount();
+        for (long i = 0; i < pages; i++) {
+            final BTreeNode node = cache.get(i);
+            final Page page;
+            if (node != null) {
+                page = node.page;
+            } else {
+                page = getPage(i);
+                page.read();
+            }
+            final byte status = page.getPageHeader().getStatus();
+            if (status == LEAF || status == BRANCH) {
+                if (node != null) {
+                    cache.remove(node);
+                }
+                unlinkPages(page);
+                page.getPageHeader().setDirty(true);
+            }
+        }
+        createRootNode(null);
+    }
+
+    /**
+     * Writes the pages of {@link #build(Iterator, double)}. For each level of
+     * the tree, starting with the leaves, only the right-most node is open,
+     * all of the nodes left of it are full and have already been written.
+     */
+    private class BulkBuilder {
+        private final int maxDataLen;
+        private final List<OpenNode> levels = new ArrayList<>();
+        private Value lastKey = null;
+        private long count = 0;
+
+        BulkBuilder(final int maxDataLen) {
+            this.maxDataLen = maxDataLen;
+            // the empty root becomes the first leaf
+            levels.add(new OpenNode(getRootNode()));
+        }
+
+        void add(final Value key, final long pointer) throws IOException, BTreeException {
+            if (lastKey != null && key.compareTo(lastKey) <= 0) {
+                throw new BTreeException("Keys must be in ascending order to build " + FileUtils.fileName(getFile()));
+            }
+            lastKey = key;
+            add(0, key, pointer);
+            count++;
+        }
+
+        /**
+         * Add a key and pointer to the open node of a level. For a branch
+         * the pointer refers to the open node of the level below, and the key
+         * is the first key of that node.
+         */
+        private void add(final int level, final Value key, final long pointer) throws IOException, BTreeException {
+            final OpenNode current = levels.get(level);
+            if (current.keys.isEmpty() || current.dataLen + current.entryLen(key) <= maxDataLen) {
+                current.append(key, pointer);
+            } else {
+                final byte status = current.node.pageHeader.getStatus();
+                final OpenNode next = new OpenNode(createBTreeNode(null, status, null, true));
+                if (status == LEAF) {
+                    current.node.pageHeader.setNextPage(next.node.page.getPageNum());
+                }
+                levels.set(level, next);
+
+                if (level + 1 == levels.size()) {
+                    // the full node was the root so far
+                    final OpenNode parent = new OpenNode(createBTreeNode(null, BRANCH, null, true));
+                    parent.append(null, current.node.page.getPageNum());
+                    current.node.setParent(parent.node);
+                    levels.add(parent);
+                }
+                // the key becomes the separator of the two nodes in the level above
+                add(level + 1, key, next.node.page.getPageNum());
+                current.write();
+
+                if (status == LEAF) {
+                    next.append(key, pointer);
+                } else {
+                    next.append(null, pointer);
+                }
+            }
+
+            if (level > 0) {
+                // the open node of the level below was added to the open node of this level
+                levels.get(level - 1).node.setParent(levels.get(level).node);
+            }
+        }
+
+        long finish() throws IOException {
+            for (final OpenNode open : levels) {
+                open.write();
+            }
+            final BTreeNode root = levels.get(levels.size() - 1).node;
+            if (root.page.getPageNum() != fileHeader.getRootPage()) {
+                setRootNode(root);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * The right-most node of a level whilst the tree is built by {@link BulkBuilder}.
+     */
+    private class OpenNode {
+        private final BTreeNode node;
+        private final List<Value> keys = new ArrayList<>();
+        private long[] ptrs = new long[32];
+        private int nPtrs = 0;
+        private int dataLen;
+
+        OpenNode(final BTreeNode node) {
+            this.node = node;
+            // a branch stores the length of its common prefix
+            this.dataLen = node.pageHeader.getStatus() == BRANCH ? 2 : 0;
+        }
+
+        /**
+         * The data length required to store the key and its pointer. For a branch
+         * this is an upper bound, as the common prefix of the keys is only stored once.
+         */
+        int entryLen(final Value key) {
+            int len = 8;
+            if (key == null) {
+                return len;
+            }
+            if (fileHeader.getFixedKeyLen() < 0) {
+                len += 2;
+            }
+            if (node.pageHeader.getStatus() == LEAF && !keys.isEmpty()) {
+                // leaf keys are stored with prefix compression, plus one byte for the prefix length
+                int prefix = key.commonPrefix(keys.get(keys.size() - 1));
+                if (prefix < 0 || prefix > Byte.MAX_VALUE) {
+                    prefix = 0;
+                }
+                len += 1 + key.getLength() - prefix;
+            } else {
+                len += key.getLength();
+            }
+            return len;
+        }
+
+        /**
+         * @param key the key, or null for the first pointer of a branch
+         * @param pointer the pointer
+         */
+        void append(final Value key, final long pointer) {
+            dataLen += entryLen(key);
+            if (key != null) {
+                keys.add(key);
+            }
+            if (nPtrs == ptrs.length) {
+                ptrs = Arrays.copyOf(ptrs, nPtrs * 2);
+            }
+            ptrs[nPtrs++] = pointer;
+        }
+
+        void write() throws IOException {
+            if (node.pageHeader.getStatus() == BRANCH) {
+                // inserting the keys in order computes the common prefix of the branch
+                for (int i = 0; i < keys.size(); i++) {
+                    node.insertKey(keys.get(i), i);
+                }
+            } else {
+                node.setValues(keys.toArray(new Value[0]));
+            }
+            node.setPointers(Arrays.copyOf(ptrs, nPtrs));
+            node.recalculateDataLen();
+            node.write();
+        }
+    }
+
     /* -------------------------------------------------------------------------
      * Methods used by recovery and transaction management
      * ---------------------------------------------------------------------- */
 
     private void writeToLog(final Loggable loggable, final BTreeNode node) {
-        if(logManager.isPresent()) {
+        if(logManager.isPresent() && logManager.get().isJournalled(loggable)) {
             try {
                 logManager.get().journal(loggable);
                 node.page.getPageHeader().setLsn(loggable.getLsn());
@@ -1685,6 +1983,81 @@ public class BTree extends Paged implements Lockable {
             }
         }
 
+        private Tuple2<Value, Long> findPrecedingValue(final Value value) throws IOException, BTreeException {
+            int idx = searchKey(value);
+            switch (pageHeader.getStatus()) {
+
+                case BRANCH :
+                    idx = idx < 0 ? - (idx + 1) : idx + 1;
+                    final Tuple2<Value, Long> preceding = getChildNode(idx).findPrecedingValue(value);
+                    if (preceding != null) {
+                        return preceding;
+                    }
+                    // the value is smaller than all the keys of the child: try its left siblings
+                    for (int i = idx - 1; i >= 0; i--) {
+                        final Tuple2<Value, Long> last = getChildNode(i).findLastValue();
+                        if (last != null) {
+                            return last;
+                        }
+                    }
+                    return null;
+
+                case LEAF :
+                    idx = idx < 0 ? - (idx + 1) - 1 : idx - 1;
+                    return idx < 0 ? null : new Tuple2<>(keys[idx], ptrs[idx]);
+
+                default :
+                    throw new BTreeException("Invalid Page Type In findPrecedingValue");
+            }
+        }
+
+        private Tuple2<Value, Long> findLastValue() throws IOException, BTreeException {
+            switch (pageHeader.getStatus()) {
+
+                case BRANCH :
+                    for (int i = nPtrs - 1; i >= 0; i--) {
+                        final Tuple2<Value, Long> last = getChildNode(i).findLastValue();
+                        if (last != null) {
+                            return last;
+                        }
+                    }
+                    return null;
+
+                case LEAF :
+                    return nKeys == 0 ? null : new Tuple2<>(keys[nKeys - 1], ptrs[nKeys - 1]);
+
+                default :
+                    throw new BTreeException("Invalid Page Type In findLastValue");
+            }
+        }
+
+        private Tuple2<Value, Long> findFollowingValue(final Value value) throws IOException, BTreeException {
+            int idx = searchKey(value);
+            switch (pageHeader.getStatus()) {
+
+                case BRANCH :
+                    idx = idx < 0 ? - (idx + 1) : idx + 1;
+                    return getChildNode(idx).findFollowingValue(value);
+
+                case LEAF :
+                    idx = idx < 0 ? - (idx + 1) : idx + 1;
+                    // the leaves are linked from left to right
+                    BTreeNode node = this;
+                    while (idx >= node.nKeys) {
+                        final long next = node.pageHeader.getNextPage();
+                        if (next == Page.NO_PAGE) {
+                            return null;
+                        }
+                        node = getBTreeNode(next);
+                        idx = 0;
+                    }
+                    return new Tuple2<>(node.keys[idx], node.ptrs[idx]);
+
+                default :
+                    throw new BTreeException("Invalid Page Type In findFollowingValue");
+            }
+        }
+
         @Override
         public String toString() {
             final StringWriter writer = new StringWriter();
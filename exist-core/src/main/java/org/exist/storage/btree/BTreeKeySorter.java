@@ -0,0 +1,300 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import com.evolvedbinary.j8fu.tuple.Tuple2;
+import org.exist.util.io.TemporaryFileManager;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Sorts the keys and pointers for {@link BTree#build(Iterator, double)}.
+ *
+ * The entries are kept in memory until their size exceeds the memory limit,
+ * then they are sorted and written to a temporary file as a sorted run.
+ * {@link #sorted()} merges the runs into a single stream of ascending keys.
+ * If a key was added more than once, only the pointer added last is kept,
+ * just as with {@link BTree#addValue(Value, long)}.
+ */
+public class BTreeKeySorter implements AutoCloseable {
+
+    public static final int DEFAULT_MEMORY_LIMIT = 16 * 1024 * 1024;
+
+    /**
+     * Estimated memory used by an entry in addition to the bytes of its key.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static final Comparator<Tuple2<Value, Long>> KEY_COMPARATOR = (e1, e2) -> e1._1.compareTo(e2._1);
+
+    private final int memoryLimit;
+    private final List<Path> runs = new ArrayList<>();
+    private final List<DataInputStream> readers = new ArrayList<>();
+    private List<Tuple2<Value, Long>> buffer = new ArrayList<>();
+    private long bufferSize = 0;
+    private long count = 0;
+
+    public BTreeKeySorter() {
+        this(DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * @param memoryLimit the approximate number of bytes to keep in memory before writing a sorted run
+     */
+    public BTreeKeySorter(final int memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    public void add(final Value key, final long pointer) throws IOException {
+        buffer.add(new Tuple2<>(key, pointer));
+        bufferSize += key.getLength() + ENTRY_OVERHEAD;
+        count++;
+        if (bufferSize >= memoryLimit) {
+            spill();
+        }
+    }
+
+    /**
+     * @return the number of entries added by {@link #add(Value, long)}, including duplicate keys
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of sorted runs written to temporary files so far
+     */
+    public int getRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Returns the entries in ascending order of their keys. Must only be called
+     * once all entries have been added. The iterator throws an {@link UncheckedIOException}
+     * if a sorted run can not be read.
+     *
+     * @return the sorted entries
+     *
+     * @throws IOException if the remaining entries can not be written to a sorted run
+     */
+    public Iterator<Tuple2<Value, Long>> sorted() throws IOException {
+        if (runs.isEmpty()) {
+            buffer.sort(KEY_COMPARATOR);
+            final List<Tuple2<Value, Long>> entries = buffer;
+            buffer = new ArrayList<>();
+            bufferSize = 0;
+            return new DistinctIterator(entries.iterator());
+        }
+
+        spill();
+        for (final Path run : runs) {
+            readers.add(new DataInputStream(new BufferedInputStream(Files.newInputStream(run))));
+        }
+        return new DistinctIterator(new MergeIterator(readers));
+    }
+
+    /**
+     * Sorts the entries in memory and writes them to a new run.
+     */
+    private void spill() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        // a stable sort keeps the entries with equal keys in the order they were added
+        buffer.sort(KEY_COMPARATOR);
+
+        try (final RunWriter run = new RunWriter(runs.size())) {
+            for (final Tuple2<Value, Long> entry : buffer) {
+                run.write(entry._1, entry._2);
+            }
+        }
+        buffer = new ArrayList<>();
+        bufferSize = 0;
+    }
+
+    /**
+     * Opens a sorted run for entries which are already in ascending order of their keys,
+     * e.g. the keys of an existing tree, see {@link BTree#merge(BTreeKeySorter, double)}.
+     * The run precedes all of the other runs, so an entry added by {@link #add(Value, long)}
+     * replaces an entry of this run with an equal key.
+     *
+     * @return the writer of the run, which must be closed before {@link #sorted()} is called
+     *
+     * @throws IOException if the temporary file of the run can not be created
+     */
+    RunWriter addFirstRun() throws IOException {
+        return new RunWriter(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (final DataInputStream reader : readers) {
+            try {
+                reader.close();
+            } catch (final IOException e) {
+                error = e;
+            }
+        }
+        readers.clear();
+        for (final Path run : runs) {
+            TemporaryFileManager.getInstance().returnTemporaryFile(run);
+        }
+        runs.clear();
+        buffer = new ArrayList<>();
+        bufferSize = 0;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Writes the entries of a sorted run to a temporary file.
+     */
+    class RunWriter implements AutoCloseable {
+        private final DataOutputStream os;
+
+        RunWriter(final int index) throws IOException {
+            final Path run = TemporaryFileManager.getInstance().getTemporaryFile();
+            runs.add(index, run);
+            this.os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)));
+        }
+
+        void write(final Value key, final long pointer) throws IOException {
+            os.writeInt(key.getLength());
+            os.write(key.data(), key.start(), key.getLength());
+            os.writeLong(pointer);
+        }
+
+        @Override
+        public void close() throws IOException {
+            os.close();
+        }
+    }
+
+    private static Tuple2<Value, Long> read(final DataInputStream is) throws IOException {
+        final int len;
+        try {
+            len = is.readInt();
+        } catch (final EOFException e) {
+            return null;
+        }
+        final byte[] key = new byte[len];
+        is.readFully(key);
+        return new Tuple2<>(new Value(key), is.readLong());
+    }
+
+    /**
+     * Merges the sorted runs. Of entries with equal keys,
+     * the entry of the earlier run is returned first.
+     */
+    private static class MergeIterator implements Iterator<Tuple2<Value, Long>> {
+        private final List<DataInputStream> readers;
+        private final PriorityQueue<Head> heads;
+
+        MergeIterator(final List<DataInputStream> readers) throws IOException {
+            this.readers = readers;
+            this.heads = new PriorityQueue<>(readers.size());
+            for (int i = 0; i < readers.size(); i++) {
+                final Tuple2<Value, Long> entry = read(readers.get(i));
+                if (entry != null) {
+                    heads.add(new Head(entry, i));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Tuple2<Value, Long> next() {
+            final Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            try {
+                final Tuple2<Value, Long> entry = read(readers.get(head.run));
+                if (entry != null) {
+                    heads.add(new Head(entry, head.run));
+                }
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return head.entry;
+        }
+    }
+
+    private static class Head implements Comparable<Head> {
+        private final Tuple2<Value, Long> entry;
+        private final int run;
+
+        Head(final Tuple2<Value, Long> entry, final int run) {
+            this.entry = entry;
+            this.run = run;
+        }
+
+        @Override
+        public int compareTo(final Head other) {
+            final int cmp = entry._1.compareTo(other.entry._1);
+            return cmp != 0 ? cmp : Integer.compare(run, other.run);
+        }
+    }
+
+    /**
+     * Of a sequence of entries with equal keys, returns only the last one.
+     */
+    private static class DistinctIterator implements Iterator<Tuple2<Value, Long>> {
+        private final Iterator<Tuple2<Value, Long>> entries;
+        private Tuple2<Value, Long> next;
+
+        DistinctIterator(final Iterator<Tuple2<Value, Long>> entries) {
+            this.entries = entries;
+            this.next = entries.hasNext() ? entries.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Tuple2<Value, Long> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Tuple2<Value, Long> current = next;
+            next = null;
+            while (entries.hasNext()) {
+                final Tuple2<Value, Long> entry = entries.next();
+                if (entry._1.compareTo(current._1) != 0) {
+                    next = entry;
+                    break;
+                }
+                current = entry;
+            }
+            return current;
+        }
+    }
+}
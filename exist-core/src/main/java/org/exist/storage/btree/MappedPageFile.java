@@ -0,0 +1,261 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Memory mapped access to the pages of a {@link Paged} file.
+ *
+ * The file is mapped in fixed size segments, which are mapped lazily
+ * on first access. For reading, a segment is only mapped up to the end of the file.
+ * A write beyond the mapped part of a segment maps the segment again with twice
+ * the size mapped before (at least {@link #MIN_MAPPING_SIZE}, at most the segment size),
+ * which grows the file with zero padding. Appending pages one by one therefore only
+ * creates a few mappings per segment, rather than one per page, as the previous mappings
+ * are only released when they are garbage collected. The padding is removed by
+ * {@link #close()}, which truncates the file to the end of the last write, so that
+ * it does not end up in backups. Reads and writes within the mapped part of a segment
+ * are plain memory copies, so no system call is needed to serve a page.
+ *
+ * Segments which have been written to are tracked, so that {@link #force()}
+ * only has to sync the dirty regions of the file to disk.
+ *
+ * NOTE: like the {@link java.io.RandomAccessFile} used by {@link Paged}, this class
+ * is not thread-safe; access is guarded by the lock of the owning file.
+ */
+public final class MappedPageFile {
+
+    /**
+     * Default size of a mapped segment.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;  // 64MB
+
+    /**
+     * Minimum size of the part of a segment which is mapped for writing.
+     */
+    public static final int MIN_MAPPING_SIZE = 1024 * 1024;  // 1MB
+
+    private static final Logger LOG = LogManager.getLogger(MappedPageFile.class);
+
+    private final FileChannel channel;
+    private final boolean readOnly;
+    private final int segmentSize;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private final BitSet dirtySegments = new BitSet();
+
+    /**
+     * The end of the data in the file, i.e. without the padding of the mappings,
+     * or -1 if not yet known.
+     */
+    private long length = -1;
+
+    /**
+     * The number of mappings which have been created.
+     */
+    private int mappings = 0;
+
+    /**
+     * @param channel the channel of the file to map.
+     * @param readOnly true if the file should be mapped read-only.
+     * @param segmentSize the size in bytes of each mapped segment.
+     */
+    public MappedPageFile(final FileChannel channel, final boolean readOnly, final int segmentSize) {
+        this.channel = channel;
+        this.readOnly = readOnly;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Read bytes from the file.
+     *
+     * Any bytes beyond the end of the file are returned as 0.
+     *
+     * @param position the position in the file to start reading from.
+     * @param dst the buffer to read into.
+     * @param offset the offset in {@code dst} to start writing at.
+     * @param length the number of bytes to read.
+     *
+     * @throws IOException if the file cannot be mapped.
+     */
+    public void read(long position, final byte[] dst, int offset, int length) throws IOException {
+        while (length > 0) {
+            final int segmentIdx = (int) (position / segmentSize);
+            final int segmentOffset = (int) (position % segmentSize);
+            final int len = Math.min(length, segmentSize - segmentOffset);
+
+            final MappedByteBuffer segment = segment(segmentIdx, segmentOffset + len, false);
+            final int available = segment == null ? 0 : Math.max(0, Math.min(len, segment.limit() - segmentOffset));
+            if (available > 0) {
+                segment.position(segmentOffset);
+                segment.get(dst, offset, available);
+            }
+            if (available < len) {
+                // beyond the end of the file
+                Arrays.fill(dst, offset + available, offset + len, (byte) 0);
+            }
+
+            position += len;
+            offset += len;
+            length -= len;
+        }
+    }
+
+    /**
+     * Write bytes to the file.
+     *
+     * @param position the position in the file to start writing at.
+     * @param src the buffer to write from.
+     * @param offset the offset in {@code src} to start reading at.
+     * @param length the number of bytes to write.
+     *
+     * @throws IOException if the file is read-only or cannot be mapped.
+     */
+    public void write(long position, final byte[] src, int offset, int length) throws IOException {
+        if (readOnly) {
+            throw new IOException("Cannot write to a read-only mapped file");
+        }
+
+        while (length > 0) {
+            final int segmentIdx = (int) (position / segmentSize);
+            final int segmentOffset = (int) (position % segmentSize);
+            final int len = Math.min(length, segmentSize - segmentOffset);
+
+            final MappedByteBuffer segment = segment(segmentIdx, segmentOffset + len, true);
+            segment.position(segmentOffset);
+            segment.put(src, offset, len);
+            dirtySegments.set(segmentIdx);
+
+            position += len;
+            offset += len;
+            length -= len;
+        }
+    }
+
+    /**
+     * Sync the segments which have been modified since
+     * the last call to this method to disk.
+     *
+     * @return true if any segments were synced.
+     */
+    public boolean force() {
+        if (dirtySegments.isEmpty()) {
+            return false;
+        }
+
+        for (int i = dirtySegments.nextSetBit(0); i >= 0; i = dirtySegments.nextSetBit(i + 1)) {
+            segments[i].force();
+        }
+        dirtySegments.clear();
+        return true;
+    }
+
+    /**
+     * Sync any dirty segments, release the mappings and remove
+     * the padding beyond the end of the last write from the file.
+     *
+     * NOTE: the JDK offers no way to explicitly unmap a buffer,
+     * the mappings are released when they are garbage collected.
+     *
+     * @throws IOException if the size of the file cannot be determined.
+     */
+    public void close() throws IOException {
+        force();
+        segments = new MappedByteBuffer[0];
+
+        if (!readOnly && length >= 0 && channel.size() > length) {
+            try {
+                channel.truncate(length);
+            } catch (final IOException e) {
+                // e.g. on Windows a file cannot be truncated whilst it is still mapped
+                LOG.warn("Unable to remove the padding of the memory mapped file: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Get the number of mappings which have been created so far.
+     *
+     * @return the number of mappings
+     */
+    int getMappings() {
+        return mappings;
+    }
+
+    /**
+     * Get the mapped segment, mapping it if necessary.
+     *
+     * For reading, the segment is mapped up to the end of the file, and is mapped again
+     * if it does not cover {@code end} but the file has grown since. For writing, the
+     * segment is mapped again with twice the size mapped before, or up to {@code end}
+     * if that is larger, which grows the file.
+     *
+     * NOTE: a segment which is mapped again may still have modifications in its
+     * previous mapping, these are written by {@link #force()} as both mappings
+     * share the pages of the file.
+     *
+     * @param segmentIdx the index of the segment
+     * @param end the offset within the segment up to which it needs to be mapped
+     * @param grow true if the file should be grown to {@code end} when it is shorter
+     *
+     * @return the segment, or null if the segment starts at or beyond the end of the file.
+     */
+    private MappedByteBuffer segment(final int segmentIdx, final int end, final boolean grow) throws IOException {
+        if (segmentIdx >= segments.length) {
+            segments = Arrays.copyOf(segments, segmentIdx + 1);
+        }
+
+        final long segmentStart = (long) segmentIdx * segmentSize;
+        if (grow) {
+            if (length < 0) {
+                length = channel.size();
+            }
+            length = Math.max(length, segmentStart + end);
+        }
+
+        MappedByteBuffer segment = segments[segmentIdx];
+        if (segment != null && segment.limit() >= end) {
+            return segment;
+        }
+
+        final long size;
+        if (grow) {
+            final long mapped = segment == null ? 0 : segment.limit();
+            size = Math.min(segmentSize, Math.max(end, Math.max(mapped * 2, MIN_MAPPING_SIZE)));
+        } else {
+            size = Math.min(segmentSize, channel.size() - segmentStart);
+            if (size <= 0 || (segment != null && size <= segment.limit())) {
+                return segment;
+            }
+        }
+
+        segment = channel.map(readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, segmentStart, size);
+        segments[segmentIdx] = segment;
+        mappings++;
+        return segment;
+    }
+}
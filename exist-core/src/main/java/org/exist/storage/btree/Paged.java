@@ -90,10 +90,17 @@ import java.nio.channels.NonWritableChannelException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  *  Paged is a paged file foundation that is used by the BTree class and
  *  its subclasses.
+ *
+ *  Pages are read and written through a {@link RandomAccessFile}, unless the
+ *  name of the file is listed in the {@link #MMAP_FILES_ATTRIBUTE} of the
+ *  db-connection configuration, in which case pages are accessed through
+ *  a {@link MappedPageFile}.
  */
 public abstract class Paged implements AutoCloseable {
 
@@ -128,12 +135,17 @@ public abstract class Paged implements AutoCloseable {
 
     protected static int PAGE_SIZE = 4096;
 
+    public static final String MMAP_FILES_ATTRIBUTE = "mmap-files";
+    public static final String PROPERTY_MMAP_FILES = "db-connection.mmap-files";
+
     protected final short fileVersion;
     private final FileHeader fileHeader;
     private final byte[] tempPageData;
     private final byte[] tempHeaderData;
 
+    private final Set<String> mmapFiles;
     private RandomAccessFile raf;
+    private MappedPageFile mapped = null;
     private Path file;
     private boolean readOnly = false;
     private boolean fileIsNew = false;
@@ -143,6 +155,7 @@ public abstract class Paged implements AutoCloseable {
         this.fileHeader = createFileHeader(pool.getPageSize());
         this.tempPageData = new byte[fileHeader.pageSize];
         this.tempHeaderData = new byte[fileHeader.pageHeaderSize];
+        this.mmapFiles = pool.getConfiguration().getProperty(PROPERTY_MMAP_FILES, Collections.emptySet());
     }
 
     public final static void setPageSize(final int pageSize) {
@@ -165,6 +178,10 @@ public abstract class Paged implements AutoCloseable {
     @Override
     public void close() throws DBException {
         try {
+            if (mapped != null) {
+                mapped.close();
+                mapped = null;
+            }
             raf.close();
         } catch (final IOException e) {
             throw new DBException("An error occurred whilst closing the database file '"
@@ -228,9 +245,23 @@ public abstract class Paged implements AutoCloseable {
             LOG.warn("report me");
             //TODO : this exception is *silently* ignored ?
         }
+        if (mapped != null) {
+            // only the modified segments are synced
+            flushed = flushed | mapped.force();
+        }
         return flushed;
     }
 
+    /**
+     * Returns true if the pages of this file are accessed through
+     * a memory mapping.
+     *
+     * @return true if the file is memory mapped
+     */
+    public final boolean isMemoryMapped() {
+        return mapped != null;
+    }
+
     /**
      * Backup the entire contents of the underlying file to 
      * an output stream.
@@ -239,6 +270,9 @@ public abstract class Paged implements AutoCloseable {
      * @throws IOException if an I/O error occurs
      */
     public void backupToStream(final OutputStream os) throws IOException {
+        if (mapped != null) {
+            mapped.force();
+        }
         raf.seek(0);
         final byte[] buf = new byte[4096];
         int len;
@@ -418,6 +452,22 @@ public abstract class Paged implements AutoCloseable {
             LOG.warn("An exception occurred while opening database file " +
                 file.toAbsolutePath().toString() + ": " + e.getMessage(), e);
         }
+
+        if (raf != null && mmapFiles.contains(FileUtils.fileName(file))) {
+            mapped = new MappedPageFile(raf.getChannel(), readOnly, segmentSize());
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Using memory mapped page access for: " + file.toAbsolutePath().toString());
+            }
+        }
+    }
+
+    /**
+     * Size of the memory mapped segments, rounded down
+     * to a multiple of the page size so that pages do not
+     * span segments.
+     */
+    private int segmentSize() {
+        return Math.max(1, MappedPageFile.DEFAULT_SEGMENT_SIZE / fileHeader.pageSize) * fileHeader.pageSize;
     }
 
     /**
@@ -709,8 +759,12 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public final synchronized void read() throws IOException {
-            raf.seek(0);
-            raf.read(buf);
+            if (mapped != null) {
+                mapped.read(0, buf, 0, buf.length);
+            } else {
+                raf.seek(0);
+                raf.read(buf);
+            }
             read(buf);
             calculateWorkSize();
             dirty = false;
@@ -846,9 +900,13 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public final synchronized void write() throws IOException {
-            raf.seek(0);
             write(buf);
-            raf.write(buf);
+            if (mapped != null) {
+                mapped.write(0, buf, 0, buf.length);
+            } else {
+                raf.seek(0);
+                raf.write(buf);
+            }
             dirty = false;
         }
     }
@@ -942,6 +1000,16 @@ public abstract class Paged implements AutoCloseable {
 
         public byte[] read() throws IOException {
             try {
+                if (mapped != null) {
+                    mapped.read(offset, tempHeaderData, 0, tempHeaderData.length);
+                    // Read in the header
+                    header.read(tempHeaderData, 0);
+                    // Read the working data
+                    final byte[] workData = new byte[header.dataLen];
+                    mapped.read(offset + tempHeaderData.length, workData, 0, workData.length);
+                    return workData;
+                }
+
                 if (raf.getFilePointer() != offset) {
                     raf.seek(offset);
                 }
@@ -984,6 +1052,10 @@ public abstract class Paged implements AutoCloseable {
                     System.arraycopy(data, 0, tempPageData, fileHeader.pageHeaderSize, data.length);
                 }
             }
+            if (mapped != null) {
+                mapped.write(offset, tempPageData, 0, tempPageData.length);
+                return;
+            }
             if (raf.getFilePointer() != offset) {
                 raf.seek(offset);
             }
@@ -1007,11 +1079,15 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public void dumpPage() throws IOException {
-            if (raf.getFilePointer() != offset) {
-                raf.seek(offset);
-            }
             final byte[] data = new byte[fileHeader.pageSize];
-            raf.read(data);
+            if (mapped != null) {
+                mapped.read(offset, data, 0, data.length);
+            } else {
+                if (raf.getFilePointer() != offset) {
+                    raf.seek(offset);
+                }
+                raf.read(data);
+            }
             LOG.debug("Contents of page " + pageNum + ": " + hexDump(data));
         }
     }
@@ -0,0 +1,581 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.CacheManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent cache which is split into a number of independently locked stripes,
+ * so that lookups of different pages do not contend on a single monitor.
+ *
+ * NOTE: {@link org.exist.storage.btree.BTree}, {@link org.exist.storage.index.BFile}
+ * and {@link org.exist.storage.dom.DOMFile} only access their caches whilst holding
+ * the exclusive btree lock of their file, so for them the striping does not make reads
+ * scale; only the replacement policy differs from {@link LRUCache}.
+ *
+ * Each stripe implements the CLOCK replacement policy: a hit sets the reference
+ * bit of an item, and the clock hand clears reference bits until it finds an item
+ * without. Like TinyLFU, a small frequency sketch records the recent access frequency of
+ * every key (hits and misses); when an item must be replaced, a few eviction candidates
+ * are sampled from the clock and the one with the lowest estimated frequency is evicted.
+ * New items are always admitted, as callers may continue to modify an item after
+ * adding it to the cache and rely on the cache to {@link Cacheable#sync(boolean)} it.
+ *
+ * For caches of type {@link CacheType#BTREE} inner pages are only evicted
+ * if no leaf page can be evicted, as is done by {@link BTreeCache}.
+ *
+ * Resizing by the {@link CacheManager} follows the same contract as the other
+ * cache implementations: {@link CacheManager#requestMem(Cache)} is called when
+ * the replacement {@link Accounting} detects thrashing.
+ *
+ * @param <T> The type that implements {@link Cacheable}
+ */
+@ThreadSafe
+public class ConcurrentClockCache<T extends Cacheable> implements Cache<T> {
+    private final static Logger LOG = LogManager.getLogger(ConcurrentClockCache.class);
+
+    /**
+     * The maximum number of eviction candidates sampled from the clock.
+     */
+    private static final int EVICTION_CANDIDATES = 4;
+
+    private final String name;
+    private final CacheType type;
+    private final double growthFactor;
+    private final Accounting accounting;
+    private final Stripe<T>[] stripes;
+    private final int stripeMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicInteger used = new AtomicInteger();
+    private volatile int size;
+    private final AtomicLong hitsOld = new AtomicLong(-1);
+    private volatile CacheManager cacheManager = null;
+
+    public ConcurrentClockCache(final String name, final int size, final double growthFactor, final double growthThreshold, final CacheType type) {
+        this(name, size, growthFactor, growthThreshold, type, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentClockCache(final String name, final int size, final double growthFactor, final double growthThreshold, final CacheType type, final int concurrencyLevel) {
+        this.name = name;
+        this.type = type;
+        this.growthFactor = growthFactor;
+        this.accounting = new Accounting(growthThreshold);
+        this.accounting.setTotalSize(size);
+        this.size = size;
+
+        // the number of stripes is a power of two, and each stripe should hold at least a few items
+        final int stripeCount = Math.max(1, Integer.highestOneBit(Math.min(Math.max(1, concurrencyLevel), Math.max(1, size / 8))));
+        this.stripes = new Stripe[stripeCount];
+        this.stripeMask = stripeCount - 1;
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe<>(stripeCapacity(size, stripeCount, i));
+        }
+    }
+
+    private static int stripeCapacity(final int size, final int stripeCount, final int stripeIdx) {
+        final int capacity = size / stripeCount + (stripeIdx < size % stripeCount ? 1 : 0);
+        return Math.max(1, capacity);
+    }
+
+    private Stripe<T> stripe(final long key) {
+        return stripes[(int) HashCommon.mix(key) & stripeMask];
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public CacheType getType() {
+        return type;
+    }
+
+    @Override
+    public void add(final T item) {
+        add(item, 1);
+    }
+
+    @Override
+    public void add(final T item, final int initialRefCount) {
+        final long key = item.getKey();
+        final Stripe<T> stripe = stripe(key);
+        final boolean replaced;
+        stripe.lock.lock();
+        try {
+            stripe.sketch.increment(key);
+
+            final Node<T> existing = stripe.map.get(key);
+            if (existing != null) {
+                existing.item = item;
+                existing.referenced = true;
+                return;
+            }
+
+            if (stripe.count < stripe.capacity) {
+                stripe.insert(key, item);
+                used.incrementAndGet();
+                return;
+            }
+
+            replaced = replace(stripe, item);
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        if (replaced) {
+            final boolean resizeNeeded;
+            synchronized (accounting) {
+                accounting.replacedPage(item);
+                resizeNeeded = growthFactor > 1.0 && accounting.resizeNeeded();
+            }
+            // NOTE: must not hold a stripe lock, as the cache manager may resize this cache
+            final CacheManager manager = cacheManager;
+            if (resizeNeeded && manager != null) {
+                manager.requestMem(this);
+            }
+        }
+    }
+
+    /**
+     * Replace an item in a full stripe with the new item.
+     *
+     * Must be called whilst holding the lock of the stripe.
+     *
+     * @return true if an item was evicted, false if the stripe had to
+     *     grow as no item could be unloaded.
+     */
+    private boolean replace(final Stripe<T> stripe, final T item) {
+        final Node<T> victim = selectVictim(stripe, item.getKey());
+        if (victim == null) {
+            LOG.debug("{}: unable to evict an item, growing stripe beyond its capacity", name);
+            stripe.grow(stripe.ring.length + 1);
+            stripe.insert(item.getKey(), item);
+            used.incrementAndGet();
+            return false;
+        }
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace(name + " replacing " + victim.item.getKey() + " for " + item.getKey());
+        }
+        victim.item.sync(true);
+        stripe.evict(victim);
+        stripe.insert(item.getKey(), item);
+        return true;
+    }
+
+    /**
+     * Sweep the clock to find the eviction candidates, and choose the one
+     * with the lowest estimated access frequency.
+     *
+     * Must be called whilst holding the lock of the stripe.
+     *
+     * @return the victim, or null if no item can be unloaded.
+     */
+    private Node<T> selectVictim(final Stripe<T> stripe, final long newKey) {
+        Node<T> victim = null;
+        int victimFrequency = Integer.MAX_VALUE;
+        int candidates = 0;
+
+        // first try to keep inner btree pages, then consider every page
+        final int passes = type == CacheType.BTREE ? 2 : 1;
+        for (int pass = 0; pass < passes && victim == null; pass++) {
+            final boolean mayEvictInner = pass == passes - 1;
+
+            // two revolutions of the clock, the first one may just clear reference bits
+            final int steps = stripe.ring.length * 2;
+            for (int i = 0; i < steps && candidates < EVICTION_CANDIDATES; i++) {
+                final Node<T> node = stripe.ring[stripe.hand];
+                stripe.hand = (stripe.hand + 1) % stripe.ring.length;
+
+                if (node == null || node.item.getKey() == newKey || !node.item.allowUnload()) {
+                    continue;
+                }
+                if (!mayEvictInner && node.item instanceof BTreeCacheable && ((BTreeCacheable) node.item).isInnerPage()) {
+                    continue;
+                }
+                if (node.referenced) {
+                    node.referenced = false;
+                    continue;
+                }
+
+                candidates++;
+                final int frequency = stripe.sketch.frequency(node.item.getKey());
+                if (frequency < victimFrequency) {
+                    victim = node;
+                    victimFrequency = frequency;
+                }
+            }
+        }
+        return victim;
+    }
+
+    @Override
+    public T get(final T item) {
+        return get(item.getKey());
+    }
+
+    @Override
+    public T get(final long key) {
+        final Stripe<T> stripe = stripe(key);
+        stripe.lock.lock();
+        try {
+            stripe.sketch.increment(key);
+            final Node<T> node = stripe.map.get(key);
+            if (node == null) {
+                misses.increment();
+                return null;
+            }
+            node.referenced = true;
+            hits.increment();
+            return node.item;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(final T item) {
+        final long key = item.getKey();
+        final Stripe<T> stripe = stripe(key);
+        stripe.lock.lock();
+        try {
+            final Node<T> node = stripe.map.get(key);
+            if (node != null) {
+                stripe.evict(node);
+                used.decrementAndGet();
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean flush() {
+        boolean flushed = false;
+        for (final Stripe<T> stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                for (final Node<T> node : stripe.ring) {
+                    if (node != null && node.item.isDirty()) {
+                        flushed = flushed | node.item.sync(false);
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return flushed;
+    }
+
+    @Override
+    public boolean hasDirtyItems() {
+        for (final Stripe<T> stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                for (final Node<T> node : stripe.ring) {
+                    if (node != null && node.item.isDirty()) {
+                        return true;
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getBuffers() {
+        return size;
+    }
+
+    @Override
+    public int getUsedBuffers() {
+        return used.get();
+    }
+
+    @Override
+    public int getHits() {
+        return hits.intValue();
+    }
+
+    @Override
+    public int getFails() {
+        return misses.intValue();
+    }
+
+    public int getThrashing() {
+        synchronized (accounting) {
+            return accounting.getThrashing();
+        }
+    }
+
+    @Override
+    public double getGrowthFactor() {
+        return growthFactor;
+    }
+
+    @Override
+    public void setCacheManager(final CacheManager manager) {
+        this.cacheManager = manager;
+    }
+
+    @Override
+    public void resize(final int newSize) {
+        // acquire all stripe locks, always in the same order
+        for (final Stripe<T> stripe : stripes) {
+            stripe.lock.lock();
+        }
+        try {
+            for (int i = 0; i < stripes.length; i++) {
+                final Stripe<T> stripe = stripes[i];
+                final int capacity = stripeCapacity(newSize, stripes.length, i);
+                if (capacity < stripe.count) {
+                    used.addAndGet(-stripe.shrink(capacity));
+                }
+                stripe.capacity = capacity;
+                if (capacity > stripe.ring.length) {
+                    stripe.grow(capacity);
+                }
+            }
+            this.size = newSize;
+            synchronized (accounting) {
+                accounting.reset();
+                accounting.setTotalSize(newSize);
+            }
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Get the number of hits since the previous call.
+     *
+     * The first call has nothing to compare with, and so reports
+     * the maximum load to prevent the cache from being shrunk
+     * before its load has been measured.
+     *
+     * @return the number of hits since the previous call
+     */
+    @Override
+    public int getLoad() {
+        final long currentHits = hits.sum();
+        final long previousHits = hitsOld.getAndSet(currentHits);
+        if (previousHits < 0) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, currentHits - previousHits);
+    }
+
+    private static final class Node<T extends Cacheable> {
+        private T item;
+        private boolean referenced;
+        private final int slot;
+
+        Node(final T item, final int slot) {
+            this.item = item;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * A stripe of the cache. All fields are guarded by {@link #lock}.
+     */
+    private static final class Stripe<T extends Cacheable> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Long2ObjectMap<Node<T>> map;
+        private final IntArrayList freeSlots = new IntArrayList();
+        private Node<T>[] ring;
+        private FrequencySketch sketch;
+        private int capacity;
+        private int count = 0;
+        private int hand = 0;
+
+        @SuppressWarnings("unchecked")
+        Stripe(final int capacity) {
+            this.capacity = capacity;
+            this.map = new Long2ObjectOpenHashMap<>(capacity * 2);
+            this.ring = new Node[capacity];
+            for (int i = capacity - 1; i >= 0; i--) {
+                freeSlots.add(i);
+            }
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        void insert(final long key, final T item) {
+            final int slot = freeSlots.popInt();
+            final Node<T> node = new Node<>(item, slot);
+            ring[slot] = node;
+            map.put(key, node);
+            count++;
+        }
+
+        void evict(final Node<T> node) {
+            map.remove(node.item.getKey());
+            ring[node.slot] = null;
+            freeSlots.push(node.slot);
+            count--;
+        }
+
+        @SuppressWarnings("unchecked")
+        void grow(final int newLength) {
+            final Node<T>[] newRing = new Node[newLength];
+            System.arraycopy(ring, 0, newRing, 0, ring.length);
+            for (int i = newLength - 1; i >= ring.length; i--) {
+                freeSlots.push(i);
+            }
+            ring = newRing;
+            if (newLength > capacity) {
+                // the stripe grew beyond its capacity as no item could be unloaded
+                capacity = newLength;
+            }
+            if (!sketch.isSuitableFor(newLength)) {
+                sketch = new FrequencySketch(newLength);
+            }
+        }
+
+        /**
+         * Evict items which can be unloaded until the stripe
+         * holds no more than {@code newCapacity} items.
+         *
+         * @return the number of items evicted.
+         */
+        @SuppressWarnings("unchecked")
+        int shrink(final int newCapacity) {
+            int evicted = 0;
+            for (int i = 0; i < ring.length && count > newCapacity; i++) {
+                final Node<T> node = ring[i];
+                if (node != null && node.item.allowUnload()) {
+                    node.item.sync(true);
+                    evict(node);
+                    evicted++;
+                }
+            }
+
+            // compact the remaining items into a ring of the new size
+            final Node<T>[] newRing = new Node[Math.max(newCapacity, count)];
+            freeSlots.clear();
+            map.clear();
+            int slot = 0;
+            for (final Node<T> node : ring) {
+                if (node != null) {
+                    final Node<T> moved = new Node<>(node.item, slot);
+                    moved.referenced = node.referenced;
+                    newRing[slot++] = moved;
+                    map.put(node.item.getKey(), moved);
+                }
+            }
+            for (int i = newRing.length - 1; i >= slot; i--) {
+                freeSlots.add(i);
+            }
+            ring = newRing;
+            hand = 0;
+            sketch = new FrequencySketch(newRing.length);
+            return evicted;
+        }
+    }
+
+    /**
+     * A count-min sketch which estimates the recent access
+     * frequency of keys with 4 rows of saturating counters.
+     * The counters are halved periodically so that the
+     * sketch ages out old accesses.
+     */
+    static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final long[] SEEDS = {
+                0x97cb3127L, 0xe8d7e3d1L, 0xa4c2d37bL, 0xc3a5c85cL
+        };
+
+        private final byte[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions = 0;
+
+        FrequencySketch(final int capacity) {
+            final int width = width(capacity);
+            this.table = new byte[width * DEPTH];
+            this.mask = width - 1;
+            this.sampleSize = width * 10;
+        }
+
+        private static int width(final int capacity) {
+            return HashCommon.nextPowerOfTwo(Math.max(16, capacity * 2));
+        }
+
+        /**
+         * @param capacity the number of items in the cache.
+         *
+         * @return true if this sketch has the same size as a new sketch for {@code capacity} items.
+         */
+        boolean isSuitableFor(final int capacity) {
+            return width(capacity) == mask + 1;
+        }
+
+        private int index(final long key, final int row) {
+            final int hash = (int) HashCommon.mix(key * SEEDS[row] + row);
+            return row * (mask + 1) + (hash & mask);
+        }
+
+        int frequency(final long key) {
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, table[index(key, row)]);
+            }
+            return frequency;
+        }
+
+        void increment(final long key) {
+            boolean added = false;
+            for (int row = 0; row < DEPTH; row++) {
+                final int idx = index(key, row);
+                if (table[idx] < MAX_COUNT) {
+                    table[idx]++;
+                    added = true;
+                }
+            }
+
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (byte) (table[i] >>> 1);
+                }
+                additions /= 2;
+            }
+        }
+    }
+}
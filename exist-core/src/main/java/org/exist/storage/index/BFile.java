@@ -36,7 +36,6 @@ import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.cache.Cache;
 import org.exist.storage.cache.Cacheable;
-import org.exist.storage.cache.LRUCache;
 import org.exist.storage.io.VariableByteArrayInput;
 import org.exist.storage.io.VariableByteInput;
 import org.exist.storage.io.VariableByteOutputStream;
@@ -145,7 +144,7 @@ public class BFile extends BTree {
         super(pool, fileId, fileVersion, recoveryEnabled, cacheManager, file);
         lockManager = pool.getLockManager();
         fileHeader = (BFileHeader) getFileHeader();
-        dataCache = new LRUCache<>(FileUtils.fileName(file), 64, cacheGrowth, thresholdData, Cache.CacheType.DATA);
+        dataCache = cacheManager.createDataCache(FileUtils.fileName(file), 64, cacheGrowth, thresholdData);
         cacheManager.registerCache(dataCache);
         minFree = PAGE_MIN_FREE;
         maxValueSize = fileHeader.getWorkSize() / 2;
@@ -975,7 +974,7 @@ public class BFile extends BTree {
      * @param page the data page
      */
     private void writeToLog(final Loggable loggable, final DataPage page) {
-        if(logManager.isPresent()) {
+        if(logManager.isPresent() && logManager.get().isJournalled(loggable)) {
             try {
                 logManager.get().journal(loggable);
                 page.getPageHeader().setLsn(loggable.getLsn());
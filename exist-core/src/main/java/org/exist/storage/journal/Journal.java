@@ -22,6 +22,7 @@ package org.exist.storage.journal;
 import java.io.*;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
@@ -29,6 +30,10 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Stream;
 
 import net.jpountz.xxhash.XXHash64;
@@ -61,6 +66,11 @@ import static org.exist.util.ThreadUtils.newInstanceThread;
  * A buffer is used to temporarily buffer journal entries. To guarantee consistency, the buffer will be flushed
  * and the journal is synced after every commit or whenever a db page is written to disk.
  *
+ * When group commit is enabled, concurrent committers do not each sync the journal. Instead
+ * they wait in {@link #flushToLogForCommit(Lsn)} until a single leader thread has flushed the buffer
+ * and forced the channel for the whole batch; waiters are released once the synced LSN covers their
+ * commit record.
+ *
  * Each journal file has the following format:
  *
  * <pre>{@code
@@ -99,7 +109,7 @@ import static org.exist.util.ThreadUtils.newInstanceThread;
  */
 @ConfigurationClass("journal")
 //TODO: conf.xml refactoring <recovery> => <recovery><journal/></recovery>
-public final class Journal implements Closeable {
+public class Journal implements Closeable {
     /**
      * Logger for this class
      */
@@ -123,6 +133,23 @@ public final class Journal implements Closeable {
     public static final String PROPERTY_RECOVERY_JOURNAL_DIR = "db-connection.recovery.journal-dir";
     public static final String PROPERTY_RECOVERY_SYNC_ON_COMMIT = "db-connection.recovery.sync-on-commit";
 
+    public static final String RECOVERY_GROUP_COMMIT_WINDOW_ATTRIBUTE = "group-commit-window";
+    public static final String RECOVERY_GROUP_COMMIT_MAX_BATCH_ATTRIBUTE = "group-commit-max-batch";
+    public static final String PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW = "db-connection.recovery.group-commit-window";
+    public static final String PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH = "db-connection.recovery.group-commit-max-batch";
+
+    /**
+     * default time in milliseconds that a group commit leader waits for further committers
+     * to join the batch before syncing. 0 means that batches are only formed from committers
+     * which arrive whilst a previous sync is in progress.
+     */
+    public static final int DEFAULT_GROUP_COMMIT_WINDOW = 0;  // ms
+
+    /**
+     * default maximum number of commits a group commit leader waits for before syncing.
+     */
+    public static final int DEFAULT_GROUP_COMMIT_MAX_BATCH = 64;
+
     public static final String LOG_FILE_SUFFIX = "log";
     public static final String BAK_FILE_SUFFIX = ".bak";
 
@@ -253,6 +280,40 @@ public final class Journal implements Closeable {
 
     private final XXHash64 xxHash64 = XXHashFactory.fastestInstance().hash64();
 
+    /**
+     * time in nanoseconds that a group commit leader waits for the batch to fill
+     */
+    private final long groupCommitWindowNanos;
+
+    /**
+     * maximum number of commits in a group commit batch
+     */
+    private final int groupCommitMaxBatch;
+
+    /**
+     * coordinates the committers waiting in {@link #flushToLogForCommit(Lsn)}
+     */
+    private final ReentrantLock groupCommitLock = new ReentrantLock();
+    private final Condition groupCommitSynced = groupCommitLock.newCondition();
+    private final Condition groupCommitBatchFull = groupCommitLock.newCondition();
+
+    /**
+     * true whilst a group commit leader is syncing, guarded by {@link #groupCommitLock}
+     */
+    private boolean groupCommitSyncing = false;
+
+    /**
+     * number of committers waiting for a sync, guarded by {@link #groupCommitLock}
+     */
+    private int groupCommitWaiting = 0;
+
+    /**
+     * the LSN covered by the last group commit sync, guarded by {@link #groupCommitLock}
+     */
+    private Lsn groupCommitSyncedLsn = Lsn.LSN_INVALID;
+
+    private final LongAdder syncCount = new LongAdder();
+
     public Journal(final BrokerPool pool, final Path directory) throws EXistException {
         this.pool = pool;
         this.fsJournalDir = directory.resolve("fs.journal");
@@ -298,6 +359,9 @@ public final class Journal implements Closeable {
 
         this.journalSizeMin = 1024 * 1024 * pool.getConfiguration().getProperty(PROPERTY_RECOVERY_SIZE_MIN, DEFAULT_MIN_SIZE);
         this.journalSizeLimit = 1024 * 1024 * pool.getConfiguration().getProperty(PROPERTY_RECOVERY_SIZE_LIMIT, DEFAULT_MAX_SIZE);
+
+        this.groupCommitWindowNanos = TimeUnit.MILLISECONDS.toNanos(pool.getConfiguration().getProperty(PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW, DEFAULT_GROUP_COMMIT_WINDOW));
+        this.groupCommitMaxBatch = Math.max(1, pool.getConfiguration().getProperty(PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH, DEFAULT_GROUP_COMMIT_MAX_BATCH));
     }
 
     public void initialize() throws EXistException, ReadOnlyException {
@@ -416,6 +480,137 @@ public final class Journal implements Closeable {
             LOG.error("Could not sync Journal to disk: " + e.getMessage(), e);
         }
 
+        triggerCheckpointIfRequired();
+    }
+
+    /**
+     * Flush the current buffer to disk and sync it on behalf of a committing
+     * transaction, sharing the sync with any other concurrently committing transactions.
+     *
+     * The first committer to arrive becomes the leader; it waits up to the configured
+     * group commit window (or until the maximum batch size is reached) for other committers,
+     * and then performs a single sync for the whole batch. All other committers
+     * wait until a sync which covers their commit record has completed.
+     *
+     * NOTE: the caller must not hold the monitor of this journal, otherwise
+     * other committers could not append their commit records whilst the leader syncs.
+     *
+     * @param commitLsn the LSN of the commit record that must be on disk before returning.
+     */
+    public void flushToLogForCommit(final Lsn commitLsn) {
+        if (inRecovery) {
+            return;
+        }
+
+        if (!syncOnCommit) {
+            // nothing to share, the buffer just needs to be written
+            flushToLog(true);
+            return;
+        }
+
+        groupCommitLock.lock();
+        try {
+            groupCommitWaiting++;
+            if (groupCommitWaiting >= groupCommitMaxBatch) {
+                groupCommitBatchFull.signal();
+            }
+
+            try {
+                while (groupCommitSyncedLsn.compareTo(commitLsn) < 0) {
+                    if (groupCommitSyncing) {
+                        // follower, wait for the leader
+                        groupCommitSynced.awaitUninterruptibly();
+                        continue;
+                    }
+
+                    // leader
+                    groupCommitSyncing = true;
+                    try {
+                        awaitGroupCommitBatch();
+
+                        final Lsn syncedLsn;
+                        groupCommitLock.unlock();
+                        try {
+                            syncedLsn = syncForGroupCommit();
+                        } finally {
+                            groupCommitLock.lock();
+                        }
+
+                        if (syncedLsn.compareTo(groupCommitSyncedLsn) > 0) {
+                            groupCommitSyncedLsn = syncedLsn;
+                        }
+                    } finally {
+                        groupCommitSyncing = false;
+                        groupCommitSynced.signalAll();
+                    }
+                }
+            } finally {
+                groupCommitWaiting--;
+            }
+        } finally {
+            groupCommitLock.unlock();
+        }
+    }
+
+    /**
+     * Called by the group commit leader whilst holding {@link #groupCommitLock}
+     * to wait for the batch to fill up or the group commit window to elapse.
+     */
+    private void awaitGroupCommitBatch() {
+        long remaining = groupCommitWindowNanos;
+        while (remaining > 0 && groupCommitWaiting < groupCommitMaxBatch) {
+            try {
+                remaining = groupCommitBatchFull.awaitNanos(remaining);
+            } catch (final InterruptedException e) {
+                // restore the interrupted status and sync what we have
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Flush the buffer and sync the channel for a group commit. Only the flush
+     * is performed whilst holding the monitor of this journal, so that
+     * other transactions can continue to append to the buffer during the sync.
+     *
+     * @return the LSN up to which the journal has been synced.
+     */
+    private Lsn syncForGroupCommit() {
+        final FileChannel syncChannel;
+        final Lsn syncLsn;
+        synchronized (this) {
+            flushBuffer();
+            syncLsn = currentLsn;
+            if (syncLsn.compareTo(lastSyncLsn) <= 0) {
+                // already synced by someone else
+                return syncLsn;
+            }
+            syncChannel = channel;
+        }
+
+        if (syncChannel != null) {
+            try {
+                forceChannel(syncChannel);
+                syncCount.increment();
+            } catch (final ClosedChannelException e) {
+                // the journal file was switched or closed, which syncs the channel before closing it
+            } catch (final IOException e) {
+                LOG.error("Could not sync Journal to disk: " + e.getMessage(), e);
+            }
+        }
+
+        synchronized (this) {
+            if (syncLsn.compareTo(lastSyncLsn) > 0) {
+                lastSyncLsn = syncLsn;
+            }
+            triggerCheckpointIfRequired();
+        }
+
+        return syncLsn;
+    }
+
+    private void triggerCheckpointIfRequired() {
         try {
             if (channel != null && channel.size() >= journalSizeLimit) {
                 pool.triggerCheckpoint();
@@ -425,7 +620,27 @@ public final class Journal implements Closeable {
         }
     }
 
+    /**
+     * Returns the number of times that the journal has been synced to disk.
+     *
+     * @return the number of syncs
+     */
+    public long getSyncCount() {
+        return syncCount.sum();
+    }
+
     private void sync() throws IOException {
+        forceChannel(channel);
+        syncCount.increment();
+    }
+
+    /**
+     * Forces all changes to the journal file to disk.
+     *
+     * @param channel the channel of the journal file
+     * @throws IOException if the channel could not be synced
+     */
+    void forceChannel(final FileChannel channel) throws IOException {
         channel.force(true);
     }
 
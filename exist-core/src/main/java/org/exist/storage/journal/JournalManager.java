@@ -32,7 +32,10 @@ import org.exist.util.ReadOnlyException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Journal Manager just adds some light-weight
@@ -49,6 +52,13 @@ public class JournalManager implements BrokerPoolService {
 
     private final List<JournalListener> journalListeners = new CopyOnWriteArrayList<>();
 
+    /**
+     * Ids of the transactions whose entries are not written to the journal.
+     */
+    private final Set<Long> unloggedTransactions = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder commitCount = new LongAdder();
+
     @Override
     public void configure(final Configuration configuration) {
         this.journalDir = (Path) Optional.ofNullable(configuration.getProperty(Journal.PROPERTY_RECOVERY_JOURNAL_DIR))
@@ -76,6 +86,40 @@ public class JournalManager implements BrokerPoolService {
         this.journallingDisabled = true;
     }
 
+    /**
+     * Stop writing the entries of a transaction to the journal.
+     *
+     * The changes made by the transaction can not be recovered
+     * after a crash until the next checkpoint has been written.
+     *
+     * @param transactionId The id of the transaction
+     */
+    public void beginUnlogged(final long transactionId) {
+        unloggedTransactions.add(transactionId);
+    }
+
+    /**
+     * Forget a transaction which was registered via {@link #beginUnlogged(long)}.
+     *
+     * @param transactionId The id of the transaction
+     */
+    public void endUnlogged(final long transactionId) {
+        unloggedTransactions.remove(transactionId);
+    }
+
+    /**
+     * Determine if an entry will be written to the journal.
+     *
+     * @param loggable The entry
+     *
+     * @return true if the entry will be written, false if journalling is
+     *     disabled or the entry belongs to an unlogged transaction
+     */
+    public boolean isJournalled(final Loggable loggable) {
+        return !journallingDisabled
+                && (unloggedTransactions.isEmpty() || !unloggedTransactions.contains(loggable.getTransactionId()));
+    }
+
     /**
      * Write a single entry to the journal
      *
@@ -86,7 +130,7 @@ public class JournalManager implements BrokerPoolService {
      * @throws JournalException of the journal entry cannot be written
      */
     public synchronized void journal(final Loggable loggable) throws JournalException {
-        if(!journallingDisabled) {
+        if(isJournalled(loggable)) {
             journal.writeToLog(loggable);
         }
     }
@@ -94,19 +138,32 @@ public class JournalManager implements BrokerPoolService {
     /**
      * Write a group of entrys to the journal
      *
+     * If group commits are enabled, the sync of the journal is shared
+     * with other concurrently committing transactions.
+     *
      * @see Journal#writeToLog(Loggable)
      * @see Journal#flushToLog(boolean)
+     * @see Journal#flushToLogForCommit(Lsn)
      *
      * @param loggable The entry to write in the journalGroup
      *
      * @throws JournalException of the journal group cannot be written
      */
-    public synchronized void journalGroup(final Loggable loggable) throws JournalException {
-        if(!journallingDisabled) {
-            journal.writeToLog(loggable);
-            if (!groupCommits) {
-                journal.flushToLog(true);
+    public void journalGroup(final Loggable loggable) throws JournalException {
+        if(isJournalled(loggable)) {
+            if (groupCommits) {
+                synchronized (this) {
+                    journal.writeToLog(loggable);
+                }
+                // NOTE: must be called without holding our monitor, so that other committers may join the group
+                journal.flushToLogForCommit(loggable.getLsn());
+            } else {
+                synchronized (this) {
+                    journal.writeToLog(loggable);
+                    journal.flushToLog(true);
+                }
             }
+            commitCount.increment();
         }
     }
 
@@ -177,6 +234,32 @@ public class JournalManager implements BrokerPoolService {
         return journal.lastWrittenLsn();
     }
 
+    /**
+     * @return true if group commits are enabled
+     */
+    public boolean isGroupCommits() {
+        return groupCommits;
+    }
+
+    /**
+     * Get the number of entry groups (i.e. transaction commits)
+     * written via {@link #journalGroup(Loggable)}.
+     *
+     * @return the number of commits
+     */
+    public long getCommitCount() {
+        return commitCount.sum();
+    }
+
+    /**
+     * @see Journal#getSyncCount()
+     *
+     * @return the number of syncs of the journal
+     */
+    public long getSyncCount() {
+        return journal == null ? 0 : journal.getSyncCount();
+    }
+
 
 
     public RecoveryManager.JournalRecoveryAccessor getRecoveryAccessor(final RecoveryManager recoveryManager) {
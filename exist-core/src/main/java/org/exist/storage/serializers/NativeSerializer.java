@@ -31,11 +31,13 @@ import org.exist.dom.persistent.DocumentTypeImpl;
 import org.exist.dom.persistent.ElementImpl;
 import org.exist.dom.persistent.IStoredNode;
 import org.exist.dom.persistent.Match;
+import org.exist.dom.persistent.NodeHandle;
 import org.exist.dom.persistent.NodeProxy;
 import org.exist.dom.persistent.ProcessingInstructionImpl;
 import org.exist.dom.QName;
 import org.exist.dom.persistent.TextImpl;
 import org.exist.numbering.NodeId;
+import org.exist.stax.IEmbeddedXMLStreamReader;
 import org.exist.storage.DBBroker;
 import org.exist.util.Configuration;
 import org.exist.util.serializer.AttrList;
@@ -44,7 +46,13 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -76,6 +84,11 @@ public class NativeSerializer extends Serializer {
     private final static Pattern P_ZERO_VALUES = Pattern.compile("0(,0)?");
     private final static Matcher M_ZERO_VALUES = P_ZERO_VALUES.matcher("");
 
+    /**
+     * Stream readers for {@link #streamToReceiver(NodeHandle)}, one per level of re-entrance.
+     */
+    private final Deque<IEmbeddedXMLStreamReader> streamReaders = new ArrayDeque<>();
+
     public NativeSerializer(DBBroker broker, Configuration config) {
         this(broker, config, null);
     }
@@ -95,10 +108,14 @@ public class NativeSerializer extends Serializer {
             receiver.startDocument();
         }
 
-        try(final INodeIterator domIter = broker.getNodeIterator(p)) {
-            serializeToReceiver(null, domIter, p.getOwnerDocument(), checkAttributes, p.getMatches(), new TreeSet<>());
-        } catch(final IOException e) {
-            LOG.warn("Unable to close node iterator", e);
+        if (canStream(p)) {
+            streamToReceiver(p);
+        } else {
+            try (final INodeIterator domIter = broker.getNodeIterator(p)) {
+                serializeToReceiver(null, domIter, p.getOwnerDocument(), checkAttributes, p.getMatches(), new TreeSet<>());
+            } catch (final IOException e) {
+                LOG.warn("Unable to close node iterator", e);
+            }
         }
 
         if(generateDocEvent) {
@@ -124,6 +141,10 @@ public class NativeSerializer extends Serializer {
     	// iterate through children
     	for (int i = 0; i < children.getLength(); i++) {
     		final IStoredNode<?> node = (IStoredNode<?>) children.item(i);
+    		if (node.getNodeType() == Node.ELEMENT_NODE && canStream(null)) {
+    			streamToReceiver(node);
+    			continue;
+    		}
     		try(final INodeIterator domIter = broker.getNodeIterator(node)) {
                 domIter.next();
                 final NodeProxy p = new NodeProxy(node);
@@ -371,4 +392,140 @@ public class NativeSerializer extends Serializer {
         //TODO : how to process other types ? -pb
         }
     }
+
+    /**
+     * Determines if a node may be serialized by {@link #streamToReceiver(NodeHandle)}.
+     *
+     * Streaming does not report the current node to the receiver, so it is not used when a
+     * chain of receivers, e.g. a match listener, needs it. Neither does it highlight matches
+     * or add node ids.
+     *
+     * @param p the node to serialize, or null if the node is a child of a document
+     *
+     * @return true if the node may be streamed
+     */
+    private boolean canStream(@Nullable final NodeProxy p) {
+        if (showId != EXIST_ID_NONE || receiver instanceof ChainOfReceivers) {
+            return false;
+        }
+        return p == null || (p.getNodeType() == Node.ELEMENT_NODE && p.getMatches() == null);
+    }
+
+    /**
+     * Serializes an element and its descendants directly from their records in the DOM file.
+     *
+     * Unlike {@link #serializeToReceiver(IStoredNode, INodeIterator, DocumentImpl, boolean, Match, Set)},
+     * no {@link IStoredNode} is created for the element or its descendants, so the memory needed
+     * to serialize a node does not depend upon its size.
+     *
+     * @param node the element to serialize
+     *
+     * @throws SAXException if the element cannot be read or the receiver fails
+     */
+    private void streamToReceiver(final NodeHandle node) throws SAXException {
+        final IEmbeddedXMLStreamReader reader = borrowStreamReader(node);
+        try {
+            final Set<String> namespaces = new TreeSet<>();
+            final Deque<StreamedElement> elements = new ArrayDeque<>();
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamReader.START_ELEMENT:
+                        elements.push(startStreamedElement(reader, namespaces));
+                        break;
+
+                    case XMLStreamReader.END_ELEMENT:
+                        final StreamedElement element = elements.pop();
+                        receiver.endElement(element.qname);
+                        for (final String prefix : element.prefixes) {
+                            receiver.endPrefixMapping(prefix);
+                        }
+                        if (elements.isEmpty()) {
+                            return;
+                        }
+                        break;
+
+                    case XMLStreamReader.CHARACTERS:
+                        receiver.characters(reader.getXMLText());
+                        break;
+
+                    case XMLStreamReader.CDATA:
+                        final char[] cdata = reader.getTextCharacters();
+                        receiver.cdataSection(cdata, 0, cdata.length);
+                        break;
+
+                    case XMLStreamReader.COMMENT:
+                        final char[] comment = reader.getTextCharacters();
+                        receiver.comment(comment, 0, comment.length);
+                        break;
+
+                    case XMLStreamReader.PROCESSING_INSTRUCTION:
+                        receiver.processingInstruction(reader.getPITarget(), reader.getPIData());
+                        break;
+                }
+            }
+        } catch (final XMLStreamException e) {
+            throw new SAXException("Unable to read node " + node.getNodeId() + " of document " + node.getOwnerDocument().getURI() + ": " + e.getMessage(), e);
+        } finally {
+            streamReaders.push(reader);
+        }
+    }
+
+    private StreamedElement startStreamedElement(final IEmbeddedXMLStreamReader reader, final Set<String> namespaces) throws SAXException {
+        final List<String> prefixes = new ArrayList<>();
+        String defaultNS = null;
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            final String prefix = reader.getNamespacePrefix(i);
+            final String uri = reader.getNamespaceURI(i);
+            if (prefix.isEmpty()) {
+                defaultNS = uri;
+            }
+            receiver.startPrefixMapping(prefix, uri);
+            prefixes.add(prefix);
+            namespaces.add(uri);
+        }
+
+        final QName qname = reader.getQName();
+        final String ns = defaultNS == null ? qname.getNamespaceURI() : defaultNS;
+        if (ns != null && ns.length() > 0 && !namespaces.contains(ns)) {
+            final String prefix = qname.getPrefix() == null ? XMLConstants.DEFAULT_NS_PREFIX : qname.getPrefix();
+            receiver.startPrefixMapping(prefix, ns);
+            prefixes.add(prefix);
+        }
+
+        final AttrList attribs = new AttrList();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            attribs.addAttribute(reader.getAttributeQName(i), reader.getAttributeValue(i));
+        }
+        receiver.startElement(qname, attribs);
+        return new StreamedElement(qname, prefixes);
+    }
+
+    /**
+     * Get a stream reader positioned at the node.
+     *
+     * The stream reader of the broker is not used, as serialization may be re-entered
+     * whilst streaming, e.g. by the expansion of an XInclude.
+     */
+    private IEmbeddedXMLStreamReader borrowStreamReader(final NodeHandle node) throws SAXException {
+        try {
+            final IEmbeddedXMLStreamReader reader = streamReaders.poll();
+            if (reader == null) {
+                return broker.newXMLStreamReader(node, false);
+            }
+            reader.reposition(broker, node, false);
+            return reader;
+        } catch (final IOException | XMLStreamException e) {
+            throw new SAXException("Unable to read node " + node.getNodeId() + " of document " + node.getOwnerDocument().getURI() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static class StreamedElement {
+        private final QName qname;
+        private final List<String> prefixes;
+
+        private StreamedElement(final QName qname, final List<String> prefixes) {
+            this.qname = qname;
+            this.prefixes = prefixes;
+        }
+    }
 }
@@ -928,14 +928,26 @@ public abstract class Serializer implements XMLReader {
 			receiver.startElement(ELEM_RESULT_QNAME, attrs);
 		}
 
-		for(int i = --start; i < start + count; i++) {
-			final Item item = seq.itemAt(i);
-                        if (item == null) {
-                            LOG.debug("item " + i + " not found");
-                            continue;
-                        }
-                        
-			itemToSAX(item, typed, wrap);
+		// iterate rather than calling itemAt(i) for each position, as positional
+		// access is not constant time for all sequences, e.g. ExtArrayNodeSet
+		try {
+			final SequenceIterator itSeq = seq.iterate();
+			if (start > 1 && itSeq.skip(start - 1) < 0) {
+				for (int i = 1; i < start && itSeq.hasNext(); i++) {
+					itSeq.nextItem();
+				}
+			}
+			for (int i = 0; i < count && itSeq.hasNext(); i++) {
+				final Item item = itSeq.nextItem();
+				if (item == null) {
+					LOG.debug("item " + (start + i) + " not found");
+					continue;
+				}
+
+				itemToSAX(item, typed, wrap);
+			}
+		} catch (final XPathException e) {
+			throw new SAXException(e.getMessage(), e);
 		}
 		
 		if(wrap) {
@@ -0,0 +1,72 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.statistics;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.exist.dom.QName;
+import org.exist.storage.ElementValue;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects the element and attribute values of a single document,
+ * before they are merged into the {@link ValueStatistics} of the database.
+ * Only the hash codes of the values are kept.
+ */
+class DocumentValues {
+
+    static class Values {
+        long nodeCount = 0;
+        final LongArrayList hashes = new LongArrayList();
+    }
+
+    private final Map<QName, Values> elements = new HashMap<>();
+    private final Map<QName, Values> attributes = new HashMap<>();
+
+    /**
+     * Add an element or attribute node.
+     *
+     * @param qname the name of the node
+     * @param nameType the type of the node, {@link ElementValue#ELEMENT} or {@link ElementValue#ATTRIBUTE}
+     * @param value the value of the node, or null if an element has no text
+     */
+    void add(final QName qname, final byte nameType, @Nullable final String value) {
+        final Map<QName, Values> map = nameType == ElementValue.ATTRIBUTE ? attributes : elements;
+        final Values values = map.computeIfAbsent(qname, q -> new Values());
+        values.nodeCount++;
+        if (value != null) {
+            values.hashes.add(HyperLogLog.hash(value));
+        }
+    }
+
+    boolean isEmpty() {
+        return elements.isEmpty() && attributes.isEmpty();
+    }
+
+    Map<QName, Values> getElements() {
+        return elements;
+    }
+
+    Map<QName, Values> getAttributes() {
+        return attributes;
+    }
+}
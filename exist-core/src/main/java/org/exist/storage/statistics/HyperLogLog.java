@@ -0,0 +1,129 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.statistics;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Estimates the number of distinct values added to it, using the HyperLogLog
+ * algorithm by Flajolet et al. The sketch uses 2^{@link #PRECISION} one-byte
+ * registers, which gives a standard error of about 3%, independent of the number
+ * of values.
+ *
+ * Values can only be added, not removed. After values were removed from the database,
+ * the estimate is thus too high until the statistics are rebuilt.
+ */
+public class HyperLogLog {
+
+    static final int PRECISION = 10;
+    static final int REGISTERS = 1 << PRECISION;
+
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    /**
+     * Add a value to the sketch.
+     *
+     * @param value the value
+     */
+    public void add(final String value) {
+        addHash(hash(value));
+    }
+
+    /**
+     * Add a value to the sketch, given its hash code as computed by {@link #hash(String)}.
+     *
+     * @param hash the 64 bit hash code of the value
+     */
+    public void addHash(final long hash) {
+        final int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        // the set bit terminates the run of zeros within the remaining bits
+        final long remaining = (hash << PRECISION) | (1L << (PRECISION - 1));
+        final byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Add all the values of another sketch to this one.
+     *
+     * @param other the other sketch
+     */
+    public void merge(final HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Estimate the number of distinct values added to the sketch.
+     *
+     * @return the estimated number of distinct values
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (final byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        final double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // small range correction: linear counting
+            return Math.round(REGISTERS * Math.log((double) REGISTERS / zeros));
+        }
+        return Math.round(estimate);
+    }
+
+    protected void write(final ByteBuffer buffer) {
+        buffer.put(registers);
+    }
+
+    protected void read(final ByteBuffer buffer) {
+        buffer.get(registers);
+    }
+
+    /**
+     * Compute a 64 bit hash code for the value: FNV-1a over the characters,
+     * followed by the finalizer of MurmurHash3 to spread the bits.
+     *
+     * @param value the value
+     * @return the hash code
+     */
+    public static long hash(final String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
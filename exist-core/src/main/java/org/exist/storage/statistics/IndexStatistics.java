@@ -50,6 +50,11 @@ import java.nio.file.StandardOpenOption;
  * The class maintains a graph structure which describes the frequency
  * and depth of elements in the database (see @link DataGuide). This forms
  * the basis for advanced query optimizations.
+ *
+ * In addition, the number of nodes, documents and distinct values per element and
+ * attribute name are kept in a {@link ValueStatistics}, which the query optimizer uses to
+ * estimate the selectivity of predicates. They are stored in a separate file, configured by
+ * the <code>values-file</code> attribute.
  */
 public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
 
@@ -58,7 +63,9 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
     protected final static Logger LOG = LogManager.getLogger(IndexStatistics.class);
 
     private Path dataFile;
+    private Path valuesFile;
     private DataGuide dataGuide = new DataGuide();
+    private ValueStatistics valueStats = new ValueStatistics();
 
     public String getIndexId() {
         return ID;
@@ -76,12 +83,29 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
         dataGuide = newGuide;
     }
 
+    /**
+     * Get the statistics on the values of elements and attributes.
+     *
+     * @return the value statistics
+     */
+    public ValueStatistics getValueStatistics() {
+        return valueStats;
+    }
+
+    protected void updateValueStats(ValueStatistics newStats) {
+        valueStats = newStats;
+    }
+
     public void configure(BrokerPool pool, Path dataDir, Element config) throws DatabaseConfigurationException {
         super.configure(pool, dataDir, config);
         String fileName = "stats.dbx";
         if (config.hasAttribute("file"))
             {fileName = config.getAttribute("file");}
         dataFile = dataDir.resolve(fileName);
+        String valuesFileName = "value-stats.dbx";
+        if (config.hasAttribute("values-file"))
+            {valuesFileName = config.getAttribute("values-file");}
+        valuesFile = dataDir.resolve(valuesFileName);
     }
 
     public void open() throws DatabaseConfigurationException {
@@ -101,6 +125,16 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
                     dataFile.toAbsolutePath() + ": " + e.getMessage(), e);
             }
         }
+        valueStats = new ValueStatistics();
+        if (Files.exists(valuesFile)) {
+            try(final SeekableByteChannel chan = Files.newByteChannel(valuesFile)) {
+                valueStats.read(chan, getBrokerPool().getSymbols());
+            } catch (final IOException e) {
+                LOG.error(e.getMessage(), e);
+                throw new DatabaseConfigurationException("Error while loading " +
+                    valuesFile.toAbsolutePath() + ": " + e.getMessage(), e);
+            }
+        }
     }
 
     public void close() throws DBException {
@@ -115,10 +149,19 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
             throw new DBException("Error while writing " + dataFile.toAbsolutePath().toString() +
                     ": " + e.getMessage());
         }
+        try(final SeekableByteChannel chan = Files.newByteChannel(valuesFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            valueStats.write(chan, getBrokerPool().getSymbols());
+        } catch (final IOException e) {
+            LOG.error(e.getMessage(), e);
+            throw new DBException("Error while writing " + valuesFile.toAbsolutePath().toString() +
+                    ": " + e.getMessage());
+        }
     }
 
     public void remove() throws DBException {
         FileUtils.deleteQuietly(dataFile);
+        FileUtils.deleteQuietly(valuesFile);
     }
 
     public IndexWorker getWorker(DBBroker broker) {
@@ -133,6 +176,10 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
         dataGuide.toSAX(handler);
     }
 
+    public void valuesToSAX(ContentHandler handler) throws SAXException {
+        valueStats.toSAX(handler);
+    }
+
     public String toString() {
         return dataGuide.toString();
     }
@@ -145,6 +192,14 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
         } finally {
             backup.closeEntry();
         }
+
+        if (Files.exists(valuesFile)) {
+            try(final OutputStream os = backup.newEntry(FileUtils.fileName(valuesFile))) {
+                Files.copy(valuesFile, os);
+            } finally {
+                backup.closeEntry();
+            }
+        }
 	}
 	
 }
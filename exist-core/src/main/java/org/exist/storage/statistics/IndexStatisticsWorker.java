@@ -20,6 +20,8 @@
 package org.exist.storage.statistics;
 
 import org.exist.collections.Collection;
+import org.exist.dom.persistent.AbstractCharacterData;
+import org.exist.dom.persistent.AttrImpl;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.DocumentSet;
 import org.exist.dom.persistent.ElementImpl;
@@ -36,6 +38,7 @@ import org.exist.indexing.StreamListener.ReindexMode;
 import org.exist.numbering.NodeId;
 import org.exist.stax.ExtendedXMLStreamReader;
 import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.NodePath;
 import org.exist.storage.btree.BTreeCallback;
@@ -49,6 +52,7 @@ import org.exist.xquery.TerminatedException;
 import org.exist.xquery.XQueryContext;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
@@ -57,12 +61,17 @@ import java.util.Deque;
 import java.util.Map;
 
 /**
+ * Collects the element paths and the element and attribute values of the documents
+ * passing through the indexing pipeline, and merges them into the {@link IndexStatistics}
+ * when the worker is flushed. Paths are only collected for stored documents, values
+ * are also subtracted when nodes are removed.
  */
 public class IndexStatisticsWorker implements IndexWorker {
     private final IndexStatistics index;
     private final StatisticsListener listener = new StatisticsListener();
 
     private DataGuide perDocGuide = null;
+    private DocumentValues perDocValues = null;
     private ReindexMode mode = ReindexMode.STORE;
     private DocumentImpl currentDoc = null;
 
@@ -99,6 +108,7 @@ public class IndexStatisticsWorker implements IndexWorker {
     @Override
     public void setDocument(final DocumentImpl doc, final ReindexMode mode) {
         this.perDocGuide = new DataGuide();
+        this.perDocValues = new DocumentValues();
         this.currentDoc = doc;
         this.mode = mode;
     }
@@ -106,6 +116,7 @@ public class IndexStatisticsWorker implements IndexWorker {
     @Override
     public void setMode(final ReindexMode mode) {
         perDocGuide = new DataGuide();
+        perDocValues = new DocumentValues();
         this.mode = mode;
     }
 
@@ -127,10 +138,14 @@ public class IndexStatisticsWorker implements IndexWorker {
 
     @Override
     public StreamListener getListener() {
-        if (mode == ReindexMode.STORE) {
-            return listener;
+        switch (mode) {
+            case STORE:
+            case REMOVE_ALL_NODES:
+            case REMOVE_SOME_NODES:
+                return listener;
+            default:
+                return null;
         }
-        return null;
     }
 
     @Override
@@ -144,26 +159,38 @@ public class IndexStatisticsWorker implements IndexWorker {
             index.mergeStats(perDocGuide);
 //            System.out.println(index.toString());
         }
+        if (perDocValues != null && !perDocValues.isEmpty()) {
+            if (mode == ReindexMode.STORE) {
+                index.getValueStatistics().add(perDocValues);
+            } else {
+                index.getValueStatistics().remove(perDocValues, mode == ReindexMode.REMOVE_ALL_NODES);
+            }
+        }
         perDocGuide = new DataGuide();
+        perDocValues = new DocumentValues();
     }
 
     public void updateIndex(final DBBroker broker, final Txn transaction) {
         perDocGuide = new DataGuide();
-        final DocumentCallback cb = new DocumentCallback(broker);
+        final ValueStatistics valueStats = new ValueStatistics();
+        final DocumentCallback cb = new DocumentCallback(broker, valueStats);
         try {
             broker.getResourcesFailsafe(transaction, cb, false);
         } catch (final TerminatedException e) {
             // thrown when the db shuts down. ignore.
         }
         index.updateStats(perDocGuide);
+        index.updateValueStats(valueStats);
     }
 
-    private void updateDocument(final DBBroker broker, final DocumentImpl doc) {
+    private void updateDocument(final DBBroker broker, final DocumentImpl doc, final ValueStatistics valueStats) {
         final ElementImpl root = (ElementImpl) doc.getDocumentElement();
         final int rootLevel = root.getNodeId().getTreeLevel();
+        final DocumentValues docValues = new DocumentValues();
         try {
             final NodePath path = new NodePath();
             final Deque<NodeStats> stack = new ArrayDeque<>();
+            final Deque<StringBuilder> textStack = new ArrayDeque<>();
             final ExtendedXMLStreamReader reader = broker.getXMLStreamReader(root, false);
             while (reader.hasNext()) {
                 final int status = reader.next();
@@ -178,12 +205,26 @@ public class IndexStatisticsWorker implements IndexWorker {
                         path.addComponent(qname);
                         final NodeStats nodeStats = perDocGuide.add(path);
                         stack.push(nodeStats);
+                        textStack.push(new StringBuilder());
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            docValues.add(reader.getAttributeQName(i), ElementValue.ATTRIBUTE,
+                                    reader.getAttributeValue(i));
+                        }
+                        break;
+
+                    case XMLStreamReader.CHARACTERS:
+                    case XMLStreamReader.CDATA:
+                        if (!textStack.isEmpty()) {
+                            textStack.peek().append(reader.getText());
+                        }
                         break;
 
                     case XMLStreamReader.END_ELEMENT:
+                        final QName endQName = path.getLastComponent();
                         path.removeLastComponent();
                         final NodeStats stats = stack.pop();
                         stats.updateMaxDepth();
+                        docValues.add(endQName, ElementValue.ELEMENT, getValue(textStack.pop()));
 
                         final NodeId otherId = (NodeId) reader.getProperty(ExtendedXMLStreamReader.PROPERTY_NODE_ID);
                         final int otherLevel = otherId.getTreeLevel();
@@ -197,6 +238,20 @@ public class IndexStatisticsWorker implements IndexWorker {
         } catch (final IOException | XMLStreamException e) {
             e.printStackTrace();
         }
+        valueStats.add(docValues);
+    }
+
+    /**
+     * Get the value of an element from its direct text content,
+     * ignoring whitespace between child elements.
+     */
+    private static @Nullable String getValue(final StringBuilder text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return text.toString();
+            }
+        }
+        return null;
     }
 
     @Override
@@ -217,26 +272,55 @@ public class IndexStatisticsWorker implements IndexWorker {
 
     private class StatisticsListener extends AbstractStreamListener {
         private final Deque<NodeStats> stack = new ArrayDeque<>();
+        private final Deque<StringBuilder> textStack = new ArrayDeque<>();
+
+        @Override
+        public void startIndexDocument(final Txn transaction) {
+            textStack.clear();
+            super.startIndexDocument(transaction);
+        }
 
         @Override
         public void startElement(final Txn transaction, final ElementImpl element, final NodePath path) {
             super.startElement(transaction, element, path);
-            if (perDocGuide != null) {
+            if (perDocGuide != null && mode == ReindexMode.STORE) {
                 for (final NodeStats next : stack) {
                     next.incDepth();
                 }
                 final NodeStats nodeStats = perDocGuide.add(path);
                 stack.push(nodeStats);
             }
+            textStack.push(new StringBuilder());
+        }
+
+        @Override
+        public void attribute(final Txn transaction, final AttrImpl attrib, final NodePath path) {
+            super.attribute(transaction, attrib, path);
+            if (perDocValues != null) {
+                perDocValues.add(attrib.getQName(), ElementValue.ATTRIBUTE, attrib.getValue());
+            }
+        }
+
+        @Override
+        public void characters(final Txn transaction, final AbstractCharacterData text, final NodePath path) {
+            super.characters(transaction, text, path);
+            // text nodes removed without their parent element are not counted
+            if (!textStack.isEmpty()) {
+                textStack.peek().append(text.getData());
+            }
         }
 
         @Override
         public void endElement(final Txn transaction, final ElementImpl element, final NodePath path) {
             super.endElement(transaction, element, path);
-            if (perDocGuide != null) {
+            if (perDocGuide != null && mode == ReindexMode.STORE) {
                 final NodeStats stats = stack.pop();
                 stats.updateMaxDepth();
             }
+            final StringBuilder text = textStack.pop();
+            if (perDocValues != null) {
+                perDocValues.add(element.getQName(), ElementValue.ELEMENT, getValue(text));
+            }
         }
 
         @Override
@@ -247,9 +331,11 @@ public class IndexStatisticsWorker implements IndexWorker {
 
     private class DocumentCallback implements BTreeCallback {
         private final DBBroker broker;
+        private final ValueStatistics valueStats;
 
-        private DocumentCallback(final DBBroker broker) {
+        private DocumentCallback(final DBBroker broker, final ValueStatistics valueStats) {
             this.broker = broker;
+            this.valueStats = valueStats;
         }
 
         @Override
@@ -260,7 +346,7 @@ public class IndexStatisticsWorker implements IndexWorker {
                 final VariableByteInput istream = store.getAsStream(pointer);
                 if (type == DocumentImpl.XML_FILE) {
                     final DocumentImpl doc = DocumentImpl.read(broker.getBrokerPool(), istream);
-                    updateDocument(broker, doc);
+                    updateDocument(broker, doc, valueStats);
                 }
             } catch (final Exception e) {
                 IndexStatistics.LOG.warn("An error occurred while regenerating index statistics: " + e.getMessage(), e);
@@ -0,0 +1,280 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.statistics;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.SymbolTable;
+import org.exist.storage.ElementValue;
+import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects statistics about the values of the elements and attributes in the database,
+ * grouped by their qualified name: the number of nodes, the number of documents
+ * containing them, and an estimate of the number of distinct values. The value of an
+ * element is the text directly contained in it.
+ *
+ * The statistics are shared by all indexes, as they all index the values of
+ * nodes, and are used by the query optimizer to estimate the selectivity of
+ * predicates. The counts are updated whenever a document is stored or removed, the
+ * distinct values only grow until the statistics are rebuilt with
+ * <code>system:update-statistics()</code>.
+ */
+public class ValueStatistics {
+
+    private final static int BYTES_PER_ENTRY = 1 + 2 + 2 + 8 + 8 + HyperLogLog.REGISTERS;
+
+    private final Map<QName, Counts> elements = new HashMap<>();
+    private final Map<QName, Counts> attributes = new HashMap<>();
+
+    /**
+     * Add the values of a stored document.
+     *
+     * @param values the values of the document
+     */
+    protected synchronized void add(final DocumentValues values) {
+        add(elements, values.getElements());
+        add(attributes, values.getAttributes());
+    }
+
+    private static void add(final Map<QName, Counts> map, final Map<QName, DocumentValues.Values> values) {
+        for (final Map.Entry<QName, DocumentValues.Values> entry : values.entrySet()) {
+            final Counts counts = map.computeIfAbsent(entry.getKey(), q -> new Counts());
+            counts.nodeCount += entry.getValue().nodeCount;
+            counts.documentCount++;
+            for (final LongIterator i = entry.getValue().hashes.iterator(); i.hasNext(); ) {
+                counts.distinctValues.addHash(i.nextLong());
+            }
+        }
+    }
+
+    /**
+     * Subtract the values of removed nodes.
+     *
+     * @param values the values of the removed nodes
+     * @param document true if the whole document was removed
+     */
+    protected synchronized void remove(final DocumentValues values, final boolean document) {
+        remove(elements, values.getElements(), document);
+        remove(attributes, values.getAttributes(), document);
+    }
+
+    private static void remove(final Map<QName, Counts> map, final Map<QName, DocumentValues.Values> values,
+            final boolean document) {
+        for (final Map.Entry<QName, DocumentValues.Values> entry : values.entrySet()) {
+            final Counts counts = map.get(entry.getKey());
+            if (counts == null) {
+                continue;
+            }
+            counts.nodeCount -= entry.getValue().nodeCount;
+            if (document) {
+                counts.documentCount--;
+            }
+            if (counts.nodeCount <= 0) {
+                map.remove(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Get the number of elements or attributes with the given name.
+     *
+     * @param qname the name of the node
+     * @param nameType {@link ElementValue#ELEMENT} or {@link ElementValue#ATTRIBUTE}
+     * @return the number of nodes
+     */
+    public synchronized long getNodeCount(final QName qname, final byte nameType) {
+        final Counts counts = getMap(nameType).get(qname);
+        return counts == null ? 0 : counts.nodeCount;
+    }
+
+    /**
+     * Get the number of documents containing elements or attributes with the given name.
+     *
+     * @param qname the name of the node
+     * @param nameType {@link ElementValue#ELEMENT} or {@link ElementValue#ATTRIBUTE}
+     * @return the number of documents
+     */
+    public synchronized long getDocumentCount(final QName qname, final byte nameType) {
+        final Counts counts = getMap(nameType).get(qname);
+        return counts == null ? 0 : Math.max(counts.documentCount, 0);
+    }
+
+    /**
+     * Estimate the number of distinct values of the elements or attributes with the given name.
+     *
+     * @param qname the name of the node
+     * @param nameType {@link ElementValue#ELEMENT} or {@link ElementValue#ATTRIBUTE}
+     * @return the estimated number of distinct values
+     */
+    public synchronized long getDistinctValues(final QName qname, final byte nameType) {
+        final Counts counts = getMap(nameType).get(qname);
+        return counts == null ? 0 : counts.getDistinctValues();
+    }
+
+    /**
+     * Get a copy of the statistics for all element and attribute names.
+     *
+     * @return the statistics
+     */
+    public synchronized List<QNameStats> getStats() {
+        final List<QNameStats> stats = new ArrayList<>(elements.size() + attributes.size());
+        addStats(stats, elements, ElementValue.ELEMENT);
+        addStats(stats, attributes, ElementValue.ATTRIBUTE);
+        return stats;
+    }
+
+    private static void addStats(final List<QNameStats> stats, final Map<QName, Counts> map, final byte nameType) {
+        for (final Map.Entry<QName, Counts> entry : map.entrySet()) {
+            final Counts counts = entry.getValue();
+            stats.add(new QNameStats(entry.getKey(), nameType, counts.nodeCount,
+                    Math.max(counts.documentCount, 0), counts.getDistinctValues()));
+        }
+    }
+
+    private Map<QName, Counts> getMap(final byte nameType) {
+        return nameType == ElementValue.ATTRIBUTE ? attributes : elements;
+    }
+
+    public synchronized void write(final SeekableByteChannel chan, final SymbolTable symbols) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((elements.size() + attributes.size()) * BYTES_PER_ENTRY + 4);
+        buffer.putInt(elements.size() + attributes.size());
+        write(buffer, elements, ElementValue.ELEMENT, symbols);
+        write(buffer, attributes, ElementValue.ATTRIBUTE, symbols);
+        buffer.flip();
+        chan.write(buffer);
+    }
+
+    private static void write(final ByteBuffer buffer, final Map<QName, Counts> map, final byte nameType,
+            final SymbolTable symbols) {
+        for (final Map.Entry<QName, Counts> entry : map.entrySet()) {
+            final QName qname = entry.getKey();
+            buffer.put(nameType);
+            buffer.putShort(symbols.getNSSymbol(qname.getNamespaceURI()));
+            buffer.putShort(symbols.getSymbol(qname.getLocalPart()));
+            buffer.putLong(entry.getValue().nodeCount);
+            buffer.putLong(entry.getValue().documentCount);
+            entry.getValue().distinctValues.write(buffer);
+        }
+    }
+
+    public synchronized void read(final SeekableByteChannel chan, final SymbolTable symbols) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) chan.size());
+        chan.read(buffer);
+        buffer.flip();
+        elements.clear();
+        attributes.clear();
+        final int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            final byte nameType = buffer.get();
+            final String namespaceURI = symbols.getNamespace(buffer.getShort());
+            final String localName = symbols.getName(buffer.getShort());
+            final QName qname = symbols.getQName(
+                    nameType == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node.ELEMENT_NODE,
+                    namespaceURI, localName, "");
+            final Counts counts = new Counts();
+            counts.nodeCount = buffer.getLong();
+            counts.documentCount = buffer.getLong();
+            counts.distinctValues.read(buffer);
+            getMap(nameType).put(qname, counts);
+        }
+    }
+
+    public void toSAX(final ContentHandler handler) throws SAXException {
+        handler.startElement(Namespaces.EXIST_NS, "values", "values", new AttributesImpl());
+        for (final QNameStats stats : getStats()) {
+            final String name = stats.getNameType() == ElementValue.ATTRIBUTE ? "attribute" : "element";
+            final AttributesImpl attribs = new AttributesImpl();
+            attribs.addAttribute("", "name", "name", "CDATA", stats.getQName().getLocalPart());
+            attribs.addAttribute("", "namespace", "namespace", "CDATA", stats.getQName().getNamespaceURI());
+            attribs.addAttribute("", "node-count", "node-count", "CDATA", Long.toString(stats.getNodeCount()));
+            attribs.addAttribute("", "document-count", "document-count", "CDATA",
+                    Long.toString(stats.getDocumentCount()));
+            attribs.addAttribute("", "distinct-values", "distinct-values", "CDATA",
+                    Long.toString(stats.getDistinctValues()));
+            handler.startElement(Namespaces.EXIST_NS, name, name, attribs);
+            handler.endElement(Namespaces.EXIST_NS, name, name);
+        }
+        handler.endElement(Namespaces.EXIST_NS, "values", "values");
+    }
+
+    private static class Counts {
+        long nodeCount = 0;
+        long documentCount = 0;
+        final HyperLogLog distinctValues = new HyperLogLog();
+
+        long getDistinctValues() {
+            // values of removed nodes are still counted by the sketch
+            return Math.min(distinctValues.estimate(), nodeCount);
+        }
+    }
+
+    /**
+     * The statistics for the elements or attributes with a given name.
+     */
+    public static final class QNameStats {
+        private final QName qname;
+        private final byte nameType;
+        private final long nodeCount;
+        private final long documentCount;
+        private final long distinctValues;
+
+        QNameStats(final QName qname, final byte nameType, final long nodeCount, final long documentCount,
+                final long distinctValues) {
+            this.qname = qname;
+            this.nameType = nameType;
+            this.nodeCount = nodeCount;
+            this.documentCount = documentCount;
+            this.distinctValues = distinctValues;
+        }
+
+        public QName getQName() {
+            return qname;
+        }
+
+        public byte getNameType() {
+            return nameType;
+        }
+
+        public long getNodeCount() {
+            return nodeCount;
+        }
+
+        public long getDocumentCount() {
+            return documentCount;
+        }
+
+        public long getDistinctValues() {
+            return distinctValues;
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.exist.storage.structural;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -33,13 +34,18 @@ import org.exist.indexing.IndexWorker;
 import org.exist.indexing.RawBackupSupport;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
+import org.exist.storage.btree.BTree;
+import org.exist.storage.btree.BTreeException;
+import org.exist.storage.btree.BTreeKeySorter;
 import org.exist.storage.btree.DBException;
+import org.exist.storage.btree.Value;
 import org.exist.storage.index.BTreeStore;
 import org.exist.storage.lock.LockManager;
 import org.exist.storage.lock.ManagedLock;
 import org.exist.util.DatabaseConfigurationException;
 import org.exist.util.FileUtils;
 import org.exist.util.LockException;
+import org.exist.xquery.TerminatedException;
 import org.w3c.dom.Element;
 
 public class NativeStructuralIndex extends AbstractIndex implements RawBackupSupport {
@@ -52,12 +58,23 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
 
     public static final byte STRUCTURAL_INDEX_ID = 1;
 
+    public static final String FILL_FACTOR_ATTRIBUTE = "fill-factor";
+
     /** The datastore for this node index */
     protected BTreeStore btree;
 
     protected LockManager lockManager;
     protected SymbolTable symbols;
 
+    /** The fill factor of the pages when the btree is built from sorted keys */
+    private double fillFactor = BTree.DEFAULT_FILL_FACTOR;
+
+    /** The keys collected during a repair, guarded by the btree lock, see {@link #beginRepair()} */
+    private BTreeKeySorter repairKeys = null;
+
+    /** The number of calls of {@link #beginRepair()} not yet followed by {@link #endRepair()}, guarded by the btree lock */
+    private int repairs = 0;
+
     public NativeStructuralIndex() {
         //Nothing to do
     }
@@ -67,6 +84,17 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
         super.configure(pool, dataDir, config);
         lockManager = pool.getLockManager();
         symbols = pool.getSymbols();
+
+        if (config != null && config.hasAttribute(FILL_FACTOR_ATTRIBUTE)) {
+            try {
+                fillFactor = Double.parseDouble(config.getAttribute(FILL_FACTOR_ATTRIBUTE));
+            } catch (final NumberFormatException e) {
+                throw new DatabaseConfigurationException("Attribute " + FILL_FACTOR_ATTRIBUTE + " of the structural index must be a number: " + e.getMessage());
+            }
+            if (fillFactor < 0.1 || fillFactor > 1) {
+                throw new DatabaseConfigurationException("Attribute " + FILL_FACTOR_ATTRIBUTE + " of the structural index must be between 0.1 and 1.0, but was: " + fillFactor);
+            }
+        }
     }
 
     @Override
@@ -109,6 +137,87 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
         btree.closeAndRemove();
     }
 
+    /**
+     * The workers collect the keys of all documents, and the btree is built
+     * bottom-up by merging the sorted keys with the keys it already contains,
+     * when {@link #endRepair()} is called or as soon as a worker removes keys,
+     * see {@link #buildRepairKeys()}. The new keys are not visible until then,
+     * so this must only be used while the database is used exclusively, i.e.
+     * during a repair or a bulk load.
+     */
+    @Override
+    public void beginRepair() throws DBException {
+        try (final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
+            if (repairs++ == 0) {
+                repairKeys = new BTreeKeySorter();
+            }
+        } catch (final LockException e) {
+            throw new DBException("Failed to acquire lock for '" + FileUtils.fileName(btree.getFile()) + "': " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void endRepair() throws DBException {
+        try (final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
+            if (repairs > 0) {
+                repairs--;
+            }
+            if (repairs == 0) {
+                buildRepairKeys();
+            }
+        } catch (final LockException e) {
+            throw new DBException("Failed to acquire lock for '" + FileUtils.fileName(btree.getFile()) + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * Merge the keys collected so far, if any, into the btree. Afterwards the keys
+     * are inserted into the btree. Workers call this before they remove keys, which
+     * may not have been added to the btree yet. As long as no keys have been collected,
+     * e.g. when a document is replaced before any other was stored, there is nothing
+     * to merge and the keys are still collected. The caller must hold the write lock
+     * of the btree.
+     *
+     * @throws DBException if the btree can not be built
+     */
+    void buildRepairKeys() throws DBException {
+        if (repairKeys == null || (repairs > 0 && repairKeys.getCount() == 0)) {
+            return;
+        }
+        try (final BTreeKeySorter keys = repairKeys) {
+            repairKeys = null;
+            if (keys.getCount() == 0) {
+                return;
+            }
+            final long start = System.currentTimeMillis();
+            final long count = btree.merge(keys, fillFactor);
+            LOG.info("Built structural index from {} collected keys in {} ms, {} keys in total, sorted in {} runs",
+                    keys.getCount(), System.currentTimeMillis() - start, count, keys.getRuns());
+        } catch (final IOException | UncheckedIOException | BTreeException | TerminatedException e) {
+            LOG.error("Failed to build structural index: " + e.getMessage(), e);
+            throw new DBException("Failed to build structural index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Add a key to the keys collected during a repair. The caller
+     * must hold the write lock of the btree.
+     *
+     * @param key the key
+     * @param pointer the pointer of the key
+     *
+     * @return true if the key was collected, false if the index is not being repaired
+     *
+     * @throws IOException if the collected keys can not be written to a temporary file
+     */
+    boolean addRepairKey(final Value key, final long pointer) throws IOException {
+        if (repairKeys == null) {
+            return false;
+        }
+        repairKeys.add(key, pointer);
+        return true;
+    }
+
     @Override
     public IndexWorker getWorker(DBBroker broker) {
         return new NativeStructuralIndexWorker(this);
@@ -40,6 +40,7 @@ import org.exist.numbering.NodeId;
 import org.exist.storage.*;
 import org.exist.storage.btree.BTree;
 import org.exist.storage.btree.BTreeCallback;
+import org.exist.storage.btree.DBException;
 import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 
@@ -470,6 +471,12 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
         return null;
     }
 
+    @Override
+    public boolean supportsBatchFlush() {
+        // pending nodes are stored with their document, see processPending()
+        return true;
+    }
+
     public void flush() {
         switch (mode) {
             case STORE:
@@ -492,6 +499,7 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
             for (final Map.Entry<QName,List<NodeProxy>> entry: pending.entrySet()) {
                 final QName qname = entry.getKey();
                 try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+                    index.buildRepairKeys();
                     final List<NodeProxy> nodes = entry.getValue();
                     for (final NodeProxy proxy : nodes) {
                         final NodeId nodeId = proxy.getNodeId();
@@ -512,6 +520,14 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
     protected void removeDocument(DocumentImpl docToRemove) {
         if (index.btree == null)
             {return;}
+        // the keys of the document may have been collected, see NativeStructuralIndex#beginRepair()
+        try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+            index.buildRepairKeys();
+        } catch (final LockException e) {
+            NativeStructuralIndex.LOG.warn("Failed to lock structural index: " + e.getMessage(), e);
+        } catch (final DBException e) {
+            NativeStructuralIndex.LOG.warn("Exception caught while building structural index: " + e.getMessage(), e);
+        }
         final List<QName> qnames = getQNamesForDoc(docToRemove);
         for (final QName qname : qnames) {
             final byte[] fromKey = computeKey(qname.getNameType(), qname, docToRemove.getDocId());
@@ -670,14 +686,23 @@ public class NativeStructuralIndexWorker implements IndexWorker, StructuralIndex
                 final QName qname = entry.getKey();
                 try(final ManagedLock<ReentrantLock> btreeLock = index.lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
                     final List<NodeProxy> nodes = entry.getValue();
+                    // NOTE: the pending nodes may belong to several documents when flushes are batched
+                    int lastDocId = -1;
                     for (final NodeProxy proxy : nodes) {
+                        final int docId = proxy.getOwnerDocument().getDocId();
+                        if (docId != lastDocId) {
+                            final Value docKey = new Value(computeDocKey(qname.getNameType(), docId, qname));
+                            if (!index.addRepairKey(docKey, 0) && index.btree.findValue(docKey) == -1) {
+                                index.btree.addValue(docKey, 0);
+                            }
+                            lastDocId = docId;
+                        }
                         final NodeId nodeId = proxy.getNodeId();
-                        final byte[] key = computeKey(qname.getNameType(), qname, document.getDocId(), nodeId);
-                        index.btree.addValue(new Value(key), computeValue(proxy));
-                    }
-                    final Value docKey = new Value(computeDocKey(qname.getNameType(), document.getDocId(), qname));
-                    if (index.btree.findValue(docKey) == -1) {
-                        index.btree.addValue(docKey, 0);
+                        final Value key = new Value(computeKey(qname.getNameType(), qname, docId, nodeId));
+                        final long value = computeValue(proxy);
+                        if (!index.addRepairKey(key, value)) {
+                            index.btree.addValue(key, value);
+                        }
                     }
                 } catch (final LockException e) {
                     NativeStructuralIndex.LOG.warn("Failed to lock structural index: " + e.getMessage(), e);
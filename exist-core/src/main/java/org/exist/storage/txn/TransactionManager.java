@@ -147,6 +147,24 @@ public class TransactionManager implements BrokerPoolService {
      * @return the new transaction
      */
     public Txn beginTransaction() {
+        return beginTransaction(false);
+    }
+
+    /**
+     * Create a new transaction whose changes are not written to the journal.
+     *
+     * The changes of an unlogged transaction can neither be undone nor redone
+     * by recovery, so after a crash the database is only consistent if a checkpoint
+     * was written after the transaction finished. Used for bulk loading,
+     * see {@link org.exist.storage.BulkLoader}.
+     *
+     * @return the new transaction
+     */
+    public Txn beginUnloggedTransaction() {
+        return beginTransaction(true);
+    }
+
+    private Txn beginTransaction(final boolean unlogged) {
         try {
             // CAS loop
             while (true) {
@@ -164,7 +182,7 @@ public class TransactionManager implements BrokerPoolService {
                         // our thread is executing system tasks, allow reentrancy from our thread!
 
                         // done... return from CAS loop!
-                        return doBeginTransaction();
+                        return doBeginTransaction(unlogged);
 
                     } else {
                         // spin whilst another thread executes the system tasks
@@ -177,7 +195,7 @@ public class TransactionManager implements BrokerPoolService {
                 // if we are operational and are not preempted by another thread, begin transaction
                 if (localState >= STATE_IDLE && state.compareAndSet(localState, localState + 1)) {
                     // done... return from CAS loop!
-                    return doBeginTransaction();
+                    return doBeginTransaction(unlogged);
                 }
             }
         } catch (final InterruptedException e) {
@@ -188,9 +206,12 @@ public class TransactionManager implements BrokerPoolService {
         }
     }
 
-    private Txn doBeginTransaction() {
+    private Txn doBeginTransaction(final boolean unlogged) {
         final long txnId = nextTxnId.getAndIncrement();
         if (journalManager.isPresent()) {
+            if (unlogged) {
+                journalManager.get().beginUnlogged(txnId);
+            }
             try {
                 journalManager.get().journal(new TxnStart(txnId));
             } catch (final JournalException e) {
@@ -300,6 +321,7 @@ public class TransactionManager implements BrokerPoolService {
             } catch (final JournalException e) {
                 throw new TransactionException("Failed to write commit record to journal: " + e.getMessage(), e);
             }
+            journalManager.get().endUnlogged(txn.getId());
         }
 
         txn.signalCommit();
@@ -377,6 +399,7 @@ public class TransactionManager implements BrokerPoolService {
                 //TODO(AR) should revise the API in future to throw TransactionException
                 LOG.error("Failed to write abort record to journal: " + e.getMessage(), e);
             }
+            journalManager.get().endUnlogged(txn.getId());
         }
 
         txn.signalAbort();
@@ -551,6 +574,63 @@ public class TransactionManager implements BrokerPoolService {
         return uncommittedCount;
     }
 
+    /**
+     * Give the calling thread exclusive access to the database for making changes.
+     *
+     * Waits until no transaction is active, and then blocks the initiation of
+     * transactions by any other thread, like whilst executing system tasks,
+     * until {@link #endExclusive()} is called. The calling thread may begin,
+     * commit and abort transactions in the meantime.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     *
+     * @throws TransactionException if other transactions are still active after the timeout,
+     *     or the transaction manager is shutdown
+     */
+    public void beginExclusive(final long timeout) throws TransactionException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        try {
+            while (true) {
+                final int localState = state.get();
+                if (localState == STATE_SHUTDOWN) {
+                    throw new TransactionException("Transaction Manager is shutdown");
+                }
+
+                if (localState == STATE_IDLE && state.compareAndSet(STATE_IDLE, STATE_SYSTEM)) {
+                    // commit and abort may still be finishing, see processSystemTasks
+                    if (transactions.isEmpty()) {
+                        systemThreadId.set(Thread.currentThread().getId());
+                        return;
+                    }
+                    state.set(STATE_IDLE);
+                }
+
+                if (System.currentTimeMillis() > deadline) {
+                    throw new TransactionException("Unable to obtain exclusive access to the database, there are still "
+                            + transactions.size() + " active transactions after " + timeout + " ms");
+                }
+                // sleep a small time to save CPU
+                Thread.sleep(10);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionException("Interrupted whilst waiting for exclusive access to the database", e);
+        }
+    }
+
+    /**
+     * Release the exclusive access obtained by {@link #beginExclusive(long)},
+     * and process the system tasks which have been deferred in the meantime.
+     */
+    public void endExclusive() {
+        if (systemThreadId.get() != Thread.currentThread().getId()) {
+            throw new IllegalStateException("The calling thread does not have exclusive access to the database");
+        }
+        systemThreadId.set(-1);
+        state.set(STATE_IDLE);
+        processSystemTasks();
+    }
+
     public void triggerSystemTask(final SystemTask task) {
         systemTaskManager.addSystemTask(task);
         processSystemTasks();
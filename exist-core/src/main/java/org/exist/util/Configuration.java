@@ -54,6 +54,7 @@ import org.exist.storage.IndexSpec;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.NativeValueIndex;
 import org.exist.storage.XQueryPool;
+import org.exist.storage.btree.Paged;
 import org.exist.storage.journal.Journal;
 import org.exist.storage.serializers.CustomMatchListenerFactory;
 import org.exist.storage.serializers.Serializer;
@@ -61,6 +62,8 @@ import org.exist.validation.GrammarPool;
 import org.exist.validation.resolver.eXistXMLCatalogResolver;
 import org.exist.xmldb.DatabaseImpl;
 import org.exist.xquery.FunctionFactory;
+import org.exist.xquery.GroupByClause;
+import org.exist.xquery.OrderByClause;
 import org.exist.xquery.PerformanceStats;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.XQueryWatchDog;
@@ -383,6 +386,14 @@ public class Configuration implements ErrorHandler
         final String trace = getConfigAttributeValue( xquery, PerformanceStats.CONFIG_ATTR_TRACE );
         config.put( PerformanceStats.CONFIG_PROPERTY_TRACE, trace );
 
+        final String groupBySpillThreshold = getConfigAttributeValue( xquery, GroupByClause.GROUP_BY_SPILL_THRESHOLD_ATTRIBUTE );
+        config.put( GroupByClause.PROPERTY_GROUP_BY_SPILL_THRESHOLD, Configuration.parseInt( groupBySpillThreshold, 0 ) );
+        LOG.debug( GroupByClause.PROPERTY_GROUP_BY_SPILL_THRESHOLD + ": " + config.get( GroupByClause.PROPERTY_GROUP_BY_SPILL_THRESHOLD ) );
+
+        final String orderBySpillThreshold = getConfigAttributeValue( xquery, OrderByClause.ORDER_BY_SPILL_THRESHOLD_ATTRIBUTE );
+        config.put( OrderByClause.PROPERTY_ORDER_BY_SPILL_THRESHOLD, Configuration.parseInt( orderBySpillThreshold, 0 ) );
+        LOG.debug( OrderByClause.PROPERTY_ORDER_BY_SPILL_THRESHOLD + ": " + config.get( OrderByClause.PROPERTY_ORDER_BY_SPILL_THRESHOLD ) );
+
         // built-in-modules
         final Map<String, Class<?>> classMap      = new HashMap<>();
         final Map<String, String>   knownMappings = new HashMap<>();
@@ -904,6 +915,9 @@ public class Configuration implements ErrorHandler
             LOG.warn("Cannot convert " + DefaultCacheManager.SHRINK_THRESHOLD_PROPERTY + " value to integer: " + cacheShrinkThreshold, nfe);
         }
 
+        configureCachePolicy(con, DefaultCacheManager.BTREE_CACHE_POLICY_ATTRIBUTE, DefaultCacheManager.PROPERTY_BTREE_CACHE_POLICY);
+        configureCachePolicy(con, DefaultCacheManager.DATA_CACHE_POLICY_ATTRIBUTE, DefaultCacheManager.PROPERTY_DATA_CACHE_POLICY);
+
         String collectionCache = getConfigAttributeValue(con, CollectionCache.CACHE_SIZE_ATTRIBUTE);
         if(collectionCache != null) {
             collectionCache = collectionCache.toLowerCase();
@@ -994,6 +1008,19 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        final String mmapFiles = getConfigAttributeValue( con, Paged.MMAP_FILES_ATTRIBUTE );
+
+        if( mmapFiles != null ) {
+            final Set<String> mmapFileNames = new HashSet<>();
+            for( final String mmapFile : mmapFiles.split( "[,\\s]+" ) ) {
+                if( !mmapFile.isEmpty() ) {
+                    mmapFileNames.add( mmapFile );
+                }
+            }
+            config.put( Paged.PROPERTY_MMAP_FILES, mmapFileNames );
+            LOG.debug( Paged.PROPERTY_MMAP_FILES + ": " + config.get( Paged.PROPERTY_MMAP_FILES ) );
+        }
+
         final String posixChownRestrictedStr = getConfigAttributeValue(con,  DBBroker.POSIX_CHOWN_RESTRICTED_ATTRIBUTE);
         final boolean posixChownRestricted;
         if(posixChownRestrictedStr == null) {
@@ -1056,6 +1083,21 @@ public class Configuration implements ErrorHandler
         }
     }
 
+    private void configureCachePolicy(final Element con, final String attributeName, final String propertyName) {
+        final String policy = getConfigAttributeValue(con, attributeName);
+        if (policy == null) {
+            return;
+        }
+
+        final String value = policy.trim().toLowerCase();
+        if (DefaultCacheManager.CACHE_POLICY_LRU.equals(value) || DefaultCacheManager.CACHE_POLICY_CONCURRENT.equals(value)) {
+            config.put(propertyName, value);
+            LOG.debug(propertyName + ": " + config.get(propertyName));
+        } else {
+            LOG.warn("Unknown cache policy for " + propertyName + ": " + policy + ", using " + DefaultCacheManager.DEFAULT_CACHE_POLICY);
+        }
+    }
+
 
     private void configureRecovery( final Optional<Path> dbHome, Element recovery ) throws DatabaseConfigurationException
     {
@@ -1071,6 +1113,28 @@ public class Configuration implements ErrorHandler
         setProperty( BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT, parseBoolean( option, false ) );
         LOG.debug( BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT + ": " + config.get( BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT ) );
 
+        option = getConfigAttributeValue( recovery, Journal.RECOVERY_GROUP_COMMIT_WINDOW_ATTRIBUTE );
+        if( option != null ) {
+            try {
+                setProperty( Journal.PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW, Integer.valueOf( option ) );
+                LOG.debug( Journal.PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW + ": " + config.get( Journal.PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW ) + "ms" );
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "group-commit-window attribute in recovery section needs to be a number" ) );
+            }
+        }
+
+        option = getConfigAttributeValue( recovery, Journal.RECOVERY_GROUP_COMMIT_MAX_BATCH_ATTRIBUTE );
+        if( option != null ) {
+            try {
+                setProperty( Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH, Integer.valueOf( option ) );
+                LOG.debug( Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH + ": " + config.get( Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH ) );
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "group-commit-max-batch attribute in recovery section needs to be a number" ) );
+            }
+        }
+
         option = getConfigAttributeValue( recovery, Journal.RECOVERY_JOURNAL_DIR_ATTRIBUTE );
 
         if(option != null) {
@@ -1189,6 +1253,19 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        final String maxExpressions = getConfigAttributeValue( queryPool, XQueryPool.MAX_EXPRESSIONS_ATTRIBUTE );
+
+        if( maxExpressions != null ) {
+
+            try {
+                config.put( XQueryPool.PROPERTY_MAX_EXPRESSIONS, Long.valueOf(maxExpressions) );
+                LOG.debug( XQueryPool.PROPERTY_MAX_EXPRESSIONS + ": " + config.get( XQueryPool.PROPERTY_MAX_EXPRESSIONS ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
         final String timeout = getConfigAttributeValue( queryPool, XQueryPool.TIMEOUT_ATTRIBUTE );
 
         if( timeout != null ) {
@@ -1333,6 +1410,19 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        final String acquireTimeout = getConfigAttributeValue( pool, BrokerPool.BROKER_ACQUIRE_TIMEOUT_ATTRIBUTE );
+
+        if( acquireTimeout != null ) {
+
+            try {
+                config.put( BrokerPool.PROPERTY_BROKER_ACQUIRE_TIMEOUT, Long.valueOf(acquireTimeout) );
+                LOG.debug( BrokerPool.PROPERTY_BROKER_ACQUIRE_TIMEOUT + ": " + config.get( BrokerPool.PROPERTY_BROKER_ACQUIRE_TIMEOUT ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
         final String maxShutdownWait = getConfigAttributeValue( pool, BrokerPool.SHUTDOWN_DELAY_ATTRIBUTE );
 
         if( maxShutdownWait != null ) {
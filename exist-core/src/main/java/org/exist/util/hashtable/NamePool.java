@@ -34,21 +34,61 @@ import org.exist.xquery.Constants;
 @ThreadSafe
 public class NamePool {
 
+    private static final int CACHE_SIZE = 64;
+
     private final ConcurrentMap<WrappedQName, QName> pool;
 
+    /**
+     * The names looked up most recently, by identity of the name passed in.
+     * The names of element and attribute constructors are the same
+     * objects for every evaluation, so that they can be looked up without
+     * creating a key for the pool. Entries are immutable, and may be
+     * replaced by other threads at any time.
+     */
+    private final CachedName[] cache = new CachedName[CACHE_SIZE];
+
     public NamePool() {
         pool = new ConcurrentHashMap<>();
     }
 
     public QName getSharedName(final QName name) {
-        final WrappedQName wrapped = new WrappedQName(name);
-        final QName sharedName = pool.putIfAbsent(wrapped, name);
+        return getSharedName(name, name.getNameType());
+    }
+
+    /**
+     * Get the shared instance of a name, with the given name type.
+     *
+     * @param name the name to look up
+     * @param nameType the name type of the shared name, e.g. {@link org.exist.storage.ElementValue#ATTRIBUTE}
+     * @return the shared name, equal to the given name apart from the name type
+     */
+    public QName getSharedName(final QName name, final byte nameType) {
+        final int slot = (System.identityHashCode(name) + nameType) & (CACHE_SIZE - 1);
+        final CachedName cached = cache[slot];
+        if (cached != null && cached.name == name && cached.nameType == nameType) {
+            return cached.sharedName;
+        }
+
+        final QName typedName = name.getNameType() == nameType ? name : new QName(name, nameType);
+        final WrappedQName wrapped = new WrappedQName(typedName);
+        QName sharedName = pool.putIfAbsent(wrapped, typedName);
         if (sharedName == null) {
             // The name was not in the pool, return the name just added.
-            return name;
-        } else {
-            // The name was in the pool, return the shared name.
-            return sharedName;
+            sharedName = typedName;
+        }
+        cache[slot] = new CachedName(name, nameType, sharedName);
+        return sharedName;
+    }
+
+    private static class CachedName {
+        private final QName name;
+        private final byte nameType;
+        private final QName sharedName;
+
+        CachedName(final QName name, final byte nameType, final QName sharedName) {
+            this.name = name;
+            this.nameType = nameType;
+            this.sharedName = sharedName;
         }
     }
 
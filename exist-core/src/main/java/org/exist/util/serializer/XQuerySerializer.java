@@ -37,7 +37,9 @@ public class XQuerySerializer {
     }
 
     public void serialize(final Sequence sequence) throws SAXException, XPathException {
-        serialize(sequence, 1, sequence.getItemCount(), false, false, 0, 0);
+        // the json and adaptive methods write all items, avoid counting them in advance
+        final int howmany = normalize() ? sequence.getItemCount() : Integer.MAX_VALUE;
+        serialize(sequence, 1, howmany, false, false, 0, 0);
     }
 
     public void serialize(final Sequence sequence, final int start, final int howmany, final boolean wrap, final boolean typed, final long compilationTime, final long executionTime) throws SAXException, XPathException {
@@ -84,7 +86,7 @@ public class XQuerySerializer {
     private void serializeJSON(final Sequence sequence, final long compilationTime, final long executionTime) throws SAXException, XPathException {
         // backwards compatibility: if the sequence contains a single element, we assume
         // it should be transformed to JSON following the rules of the old JSON writer
-        if (sequence.hasOne() && Type.subTypeOf(sequence.getItemType(), Type.ELEMENT)) {
+        if (Type.subTypeOf(sequence.getItemType(), Type.ELEMENT) && sequence.hasOne()) {
             serializeXML(sequence, 1, sequence.getItemCount(), false, false, compilationTime, executionTime);
         } else {
             JSONSerializer serializer = new JSONSerializer(broker, outputProperties);
@@ -56,13 +56,20 @@ public class JSONSerializer {
     }
 
     private void serializeSequence(Sequence sequence, JsonGenerator generator) throws IOException, XPathException, SAXException {
-        if (sequence.isEmpty()) {
+        // only iterate over the sequence, so the items of a lazily evaluated sequence
+        // are written out one by one instead of being read into memory first
+        final SequenceIterator i = sequence.iterate();
+        if (!i.hasNext()) {
             generator.writeNull();
-        } else if (sequence.hasOne() && "no".equals(outputProperties.getProperty(EXistOutputKeys.JSON_ARRAY_OUTPUT, "no"))) {
-            serializeItem(sequence.itemAt(0), generator);
+            return;
+        }
+        final Item first = i.nextItem();
+        if (!i.hasNext() && "no".equals(outputProperties.getProperty(EXistOutputKeys.JSON_ARRAY_OUTPUT, "no"))) {
+            serializeItem(first, generator);
         } else {
             generator.writeStartArray();
-            for (SequenceIterator i = sequence.iterate(); i.hasNext(); ) {
+            serializeItem(first, generator);
+            while (i.hasNext()) {
                 serializeItem(i.nextItem(), generator);
             }
             generator.writeEndArray();
@@ -68,6 +68,18 @@ public interface IndexQueryService extends Service {
      */
     void reindexCollection(XmldbURI collectionPath) throws XMLDBException;
 
+    /**
+     * Reindex the collection specified by its path with a pool of worker threads.
+     *
+     * @param collectionPath the collection path to reindex.
+     * @param workers the number of worker threads reindexing documents.
+     * @param batchSize the number of documents each worker reindexes before committing its transaction.
+     *     Only indexes which support batched flushes, currently the structural index, also defer
+     *     their writes to the end of a batch; all other indexes are flushed after every document.
+     * @throws XMLDBException if the operation fails.
+     */
+    void reindexCollection(XmldbURI collectionPath, int workers, int batchSize) throws XMLDBException;
+
     /**
      * Returns frequency statistics on all elements and attributes contained in the
      * structure index for the current collection.
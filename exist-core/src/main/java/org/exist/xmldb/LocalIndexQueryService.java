@@ -79,6 +79,26 @@ public class LocalIndexQueryService extends AbstractLocalService implements Inde
         });
     }
 
+    @Override
+    public void reindexCollection(final XmldbURI col, final int workers, final int batchSize) throws XMLDBException {
+        if(workers <= 1) {
+            reindexCollection(col);
+            return;
+        }
+
+        final XmldbURI collectionPath = resolve(col);
+        // NOTE: the collection is not locked here, the workers lock the documents from their own threads
+        withDb((broker, transaction) -> {
+            try {
+                broker.reindexCollection(transaction, collectionPath, workers, batchSize);
+                broker.sync(Sync.MAJOR);
+                return null;
+            } catch(final LockException e) {
+                throw new XMLDBException(ErrorCodes.VENDOR_ERROR, e);
+            }
+        });
+    }
+
     @Override
     public void reindexDocument(final String name) throws XMLDBException {
         reindexDocument(collection.getURI().toCollectionPathURI(), name);
@@ -75,6 +75,16 @@ public class RemoteIndexQueryService extends AbstractRemote implements IndexQuer
         collection.execute("reindexCollection", params);
     }
 
+    @Override
+    public void reindexCollection(final XmldbURI collectionUri, final int workers, final int batchSize) throws XMLDBException {
+        final XmldbURI collectionPath = resolve(collectionUri);
+        final List<Object> params = new ArrayList<>();
+        params.add(collectionPath.toString());
+        params.add(workers);
+        params.add(batchSize);
+        collection.execute("reindexCollection", params);
+    }
+
     @Override
     public void reindexDocument(final String name) throws XMLDBException {
         final XmldbURI collectionPath = resolve(collection.getPathURI());
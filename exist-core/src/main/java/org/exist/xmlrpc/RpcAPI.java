@@ -970,6 +970,9 @@ public interface RpcAPI {
     boolean reindexCollection(String name)
             throws EXistException, PermissionDeniedException, URISyntaxException;
 
+    boolean reindexCollection(String name, int workers, int batchSize)
+            throws EXistException, PermissionDeniedException, URISyntaxException;
+
     boolean reindexDocument(String docUri) throws EXistException, PermissionDeniedException;
 
     boolean backup(String userbackup, String password, String destcollection, String collection)
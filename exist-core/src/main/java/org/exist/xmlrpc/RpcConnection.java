@@ -3234,6 +3234,19 @@ public class RpcConnection implements RpcAPI {
         return true;
     }
 
+    @Override
+    public boolean reindexCollection(final String collectionName, final int workers, final int batchSize) throws URISyntaxException, EXistException, PermissionDeniedException {
+        final XmldbURI collUri = XmldbURI.xmldbUriFor(collectionName);
+        withDb((broker, transaction) -> {
+            broker.reindexCollection(transaction, collUri, workers, batchSize);
+            if(LOG.isDebugEnabled()) {
+                LOG.debug("collection " + collUri + " and sub-collections reindexed by " + workers + " workers");
+            }
+            return null;
+        });
+        return true;
+    }
+
     private void reindexCollection(final XmldbURI collUri) throws EXistException, PermissionDeniedException {
         withDb((broker, transaction) -> {
             broker.reindexCollection(transaction, collUri);
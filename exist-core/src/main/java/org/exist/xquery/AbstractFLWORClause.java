@@ -5,6 +5,8 @@ import org.exist.dom.QName.IllegalQNameException;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.Type;
 
+import javax.annotation.Nullable;
+
 /**
  * Abstract base class for clauses in a FLWOR expressions, for/let/group by ...
  */
@@ -14,6 +16,7 @@ public abstract class AbstractFLWORClause extends AbstractExpression implements
     private FLWORClause previousClause  = null;
     protected Expression returnExpr;
     private int actualReturnType = Type.ITEM;
+    private int resultLimit = NO_RESULT_LIMIT;
 
     public AbstractFLWORClause(XQueryContext context) {
         super(context);
@@ -81,14 +84,138 @@ public abstract class AbstractFLWORClause extends AbstractExpression implements
         return actualReturnType;
     }
 
+    @Override
+    public void setResultLimit(final int limit) {
+        this.resultLimit = limit;
+    }
+
+    /**
+     * Get the result limit for the current evaluation of this clause and clear it,
+     * so that it does not apply to later, or recursive, evaluations.
+     *
+     * @return the number of items needed, or {@link #NO_RESULT_LIMIT}
+     */
+    protected int takeResultLimit() {
+        final int limit = resultLimit;
+        resultLimit = NO_RESULT_LIMIT;
+        return limit;
+    }
+
+    /**
+     * Pass a result limit on to the return expression, if it is a further
+     * for, let, where or order by clause. Must be called right before the return
+     * expression is evaluated.
+     *
+     * @param limit the number of items needed, or {@link #NO_RESULT_LIMIT}
+     */
+    protected void limitReturnExpression(final int limit) {
+        if (limit != NO_RESULT_LIMIT && isLimitable(returnExpr)) {
+            ((FLWORClause) returnExpr).setResultLimit(limit);
+        }
+    }
+
+    /**
+     * Check if the tuples of this clause are sorted by a later order by clause.
+     * A result limit then has to be passed on to the order by clause, which
+     * keeps the first items of the sorted result, instead of stopping early.
+     *
+     * @return true if an order by clause follows
+     */
+    protected boolean isOrderedByLaterClause() {
+        for (Expression next = returnExpr; next instanceof FLWORClause; next = ((FLWORClause) next).getReturnExpression()) {
+            if (((FLWORClause) next).getType() == ClauseType.ORDERBY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void resetState(boolean postOptimization) {
         super.resetState(postOptimization);
         firstVar = null;
+        resultLimit = NO_RESULT_LIMIT;
     }
 
     @Override
     public int getDependencies() {
         return returnExpr.getDependencies();
     }
-}
\ No newline at end of file
+
+    /**
+     * Find the FLWOR expression which is evaluated by the given expression, if
+     * the FLWOR expression can stop early once a number of items has been returned,
+     * see {@link FLWORClause#setResultLimit(int)}. This is not the case if it has
+     * a group by clause, which needs all tuples. A single order by clause also needs
+     * all tuples, but only keeps the first items of the sorted result.
+     *
+     * @param expr an expression, e.g. the argument of a function
+     * @return the first clause of the FLWOR expression, or null
+     */
+    public static @Nullable FLWORClause getLimitableClause(Expression expr) {
+        while (true) {
+            if (expr instanceof PathExpr && ((PathExpr) expr).getLength() == 1) {
+                expr = ((PathExpr) expr).getExpression(0);
+            } else if (expr instanceof DynamicCardinalityCheck &&
+                    ((DynamicCardinalityCheck) expr).getRequiredCardinality().isSuperCardinalityOrEqualOf(Cardinality.ONE_OR_MORE)) {
+                // a limited result is empty if, and only if, the whole result is
+                expr = expr.getSubExpression(0);
+            } else {
+                break;
+            }
+        }
+        if (!(expr instanceof FLWORClause) || ((FLWORClause) expr).getType() == ClauseType.WHERE || !isLimitable(expr)) {
+            return null;
+        }
+        boolean ordered = false;
+        for (Expression next = expr; next instanceof FLWORClause; next = ((FLWORClause) next).getReturnExpression()) {
+            switch (((FLWORClause) next).getType()) {
+                case ORDERBY:
+                    if (ordered) {
+                        return null;
+                    }
+                    ordered = true;
+                    break;
+                case GROUPBY:
+                    return null;
+                case SOME:
+                case EVERY:
+                    // a quantified expression in the return clause
+                    return (FLWORClause) expr;
+                default:
+                    break;
+            }
+        }
+        return (FLWORClause) expr;
+    }
+
+    /**
+     * Set a result limit on the given expression, if it evaluates a FLWOR
+     * expression which can stop early, see {@link #getLimitableClause(Expression)}.
+     * Must be called right before the expression is evaluated.
+     *
+     * @param expr an expression, e.g. the argument of a function
+     * @param limit the number of items needed
+     */
+    public static void limitResult(final Expression expr, final int limit) {
+        final FLWORClause flwor = getLimitableClause(expr);
+        if (flwor != null) {
+            flwor.setResultLimit(limit);
+        }
+    }
+
+    private static boolean isLimitable(final Expression expr) {
+        if (!(expr instanceof FLWORClause)) {
+            return false;
+        }
+        switch (((FLWORClause) expr).getType()) {
+            case FOR:
+            case LET:
+            case WHERE:
+            case ORDERBY:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
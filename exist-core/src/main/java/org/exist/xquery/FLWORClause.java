@@ -13,6 +13,11 @@ public interface FLWORClause extends Expression {
         FOR, LET, GROUPBY, ORDERBY, WHERE, SOME, EVERY
     }
 
+    /**
+     * Passed to {@link #setResultLimit(int)} if the whole result is needed.
+     */
+    int NO_RESULT_LIMIT = -1;
+
     /**
      * Returns the type of clause implemented by a subclass.
      *
@@ -90,4 +95,15 @@ public interface FLWORClause extends Expression {
      * @return first variable created
      */
     LocalVariable getStartVariable();
+
+    /**
+     * Called by the consumer of the FLWOR expression right before it is
+     * evaluated, if the consumer only needs the first {@code limit} items
+     * of the result. A for clause then stops iterating as soon as
+     * it has returned that many items. The limit only applies to the next
+     * evaluation of the clause.
+     *
+     * @param limit the number of items needed, or {@link #NO_RESULT_LIMIT}
+     */
+    void setResultLimit(int limit);
 }
\ No newline at end of file
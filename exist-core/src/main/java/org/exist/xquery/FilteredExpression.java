@@ -99,6 +99,9 @@ public class FilteredExpression extends AbstractExpression {
         if (contextItem != null)
             {contextSequence = contextItem.toSequence();}
         Sequence result;
+        if (!abbreviated) {
+            limitFLWOR();
+        }
         final Sequence seq = expression.eval(contextSequence, contextItem);
         if (seq.isEmpty())
             {result = Sequence.EMPTY_SEQUENCE;}
@@ -143,6 +146,31 @@ public class FilteredExpression extends AbstractExpression {
         return result;
     }
 
+    /**
+     * If the expression is a FLWOR expression and the first predicate selects a
+     * single position, e.g. (for ... return ...)[1], let the FLWOR expression
+     * stop once it has returned the items up to that position.
+     *
+     * @throws XPathException if the position cannot be computed
+     */
+    private void limitFLWOR() throws XPathException {
+        final FLWORClause flwor = AbstractFLWORClause.getLimitableClause(expression);
+        final Predicate pred = predicates.get(0);
+        if (flwor == null || pred.getExecutionMode() != Predicate.ExecutionMode.POSITIONAL ||
+                (pred.getDependencies() & (Dependency.CONTEXT_ITEM | Dependency.CONTEXT_POSITION)) != 0) {
+            return;
+        }
+        final Sequence position = pred.preprocess();
+        if (position.hasOne() && Type.subTypeOf(position.getItemType(), Type.NUMBER)) {
+            final NumericValue v = (NumericValue) position.itemAt(0);
+            // Non integers select nothing, so there is nothing to limit
+            if (!v.isNaN() && !v.isInfinite() && !v.hasFractionalPart() &&
+                    v.getLong() >= 1 && v.getLong() <= Integer.MAX_VALUE) {
+                flwor.setResultLimit((int) v.getLong());
+            }
+        }
+    }
+
     private Sequence processPredicate(Sequence contextSequence, Sequence seq) throws XPathException {
         for (final Predicate pred : predicates) {
             seq = pred.evalPredicate(contextSequence, seq, Constants.DESCENDANT_SELF_AXIS);
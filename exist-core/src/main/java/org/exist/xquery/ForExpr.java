@@ -27,6 +27,8 @@ import org.exist.dom.persistent.NodeSet;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.*;
 
+import java.util.List;
+
 /**
  * Represents an XQuery "for" expression.
  * 
@@ -37,6 +39,7 @@ public class ForExpr extends BindingExpression {
     private String positionalVariable = null;
     private boolean allowEmpty = false;
     private boolean isOuterFor = true;
+    private boolean parallel = false;
 
     public ForExpr(XQueryContext context, boolean allowingEmpty) {
         super(context);
@@ -58,11 +61,27 @@ public class ForExpr extends BindingExpression {
         positionalVariable = var;
     }
 
+    /**
+     * Evaluate the iterations of this "for" expression in parallel, as requested
+     * by the exist:parallel pragma. The input sequence is split into partitions,
+     * which are evaluated by {@link ParallelFor}, each by a separately compiled copy
+     * of the query. The results are concatenated in the order of the input sequence.
+     *
+     * @param parallel true to evaluate the iterations in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
 	/* (non-Javadoc)
      * @see org.exist.xquery.Expression#analyze(org.exist.xquery.Expression)
      */
     public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
         super.analyze(contextInfo);
+        if (parallel) {
+            // allow the copies of the query evaluating the partitions to find this expression
+            ParallelFor.register(this);
+        }
         // Save the local variable stack
         final LocalVariable mark = context.markLocalVariables(false);
         try {
@@ -102,11 +121,20 @@ public class ForExpr extends BindingExpression {
      * This implementation tries to process the "where" clause in advance, i.e. in one single
      * step. This is possible if the input sequence is a node set and the where expression
      * has no dependencies on other variables than those declared in this "for" statement.
+     *
+     * If a result limit has been set by {@link #setResultLimit(int)}, the iteration stops
+     * as soon as the return clause has returned the requested number of items, unless
+     * a later order by clause sorts the tuples. The limit is then passed on to it.
      * 
      * @see org.exist.xquery.Expression#eval(Sequence, Item)
      */
     public Sequence eval(Sequence contextSequence, Item contextItem)
             throws XPathException {
+        int limit = takeResultLimit();
+        if (unordered) {
+            // the result sequence may be reordered and deduplicated
+            limit = NO_RESULT_LIMIT;
+        }
         if (context.getProfiler().isEnabled()) {
             context.getProfiler().start(this);
             context.getProfiler().message(this, Profiler.DEPENDENCIES,
@@ -121,6 +149,8 @@ public class ForExpr extends BindingExpression {
         context.expressionStart(this);
         LocalVariable var;
         Sequence in;
+        // Save the variables in scope for a parallel evaluation
+        final List<ClosureVariable> closure = parallel && limit == NO_RESULT_LIMIT ? context.getLocalStack() : null;
         // Save the local variable stack
         LocalVariable mark = context.markLocalVariables(false);
         Sequence resultSequence = new ValueSequence(unordered);
@@ -182,10 +212,24 @@ public class ForExpr extends BindingExpression {
             // Loop through each variable binding
             int p = 0;
             if (in.isEmpty() && allowEmpty) {
-                processItem(var, AtomicValue.EMPTY_VALUE, Sequence.EMPTY_SEQUENCE, resultSequence, at, p);
+                processItem(var, AtomicValue.EMPTY_VALUE, Sequence.EMPTY_SEQUENCE, resultSequence, at, p, NO_RESULT_LIMIT);
+            } else if (parallel && limit == NO_RESULT_LIMIT && ParallelFor.canEvaluate(this, in, closure)) {
+                resultSequence.addAll(ParallelFor.eval(this, in, closure));
             } else {
+                final boolean ordered = limit != NO_RESULT_LIMIT && isOrderedByLaterClause();
+                int count = 0;
                 for (final SequenceIterator i = in.iterate(); i.hasNext(); p++) {
-                    processItem(var, i.nextItem(), in, resultSequence, at, p);
+                    if (limit == NO_RESULT_LIMIT) {
+                        processItem(var, i.nextItem(), in, resultSequence, at, p, NO_RESULT_LIMIT);
+                    } else if (ordered) {
+                        // all tuples are needed, but the order by clause only keeps the first items
+                        processItem(var, i.nextItem(), in, resultSequence, at, p, limit);
+                    } else if (count < limit) {
+                        // the consumer only needs the first items: stop once they have been returned
+                        count += processItem(var, i.nextItem(), in, resultSequence, at, p, limit - count).getItemCount();
+                    } else {
+                        break;
+                    }
                 }
             }
         } catch (final QName.IllegalQNameException e) {
@@ -231,8 +275,8 @@ public class ForExpr extends BindingExpression {
         return resultSequence;
     }
 
-    private void processItem(LocalVariable var, Item contextItem, Sequence in, Sequence resultSequence, LocalVariable
-            at, int p) throws XPathException {
+    private Sequence processItem(LocalVariable var, Item contextItem, Sequence in, Sequence resultSequence, LocalVariable
+            at, int p, int limit) throws XPathException {
         context.proceed(this);
         context.setContextSequencePosition(p, in);
         if (positionalVariable != null) {
@@ -246,10 +290,48 @@ public class ForExpr extends BindingExpression {
         //Reset the context position
         context.setContextSequencePosition(0, null);
 
-        resultSequence.addAll(returnExpr.eval(null));
+        limitReturnExpression(limit);
+        final Sequence returnSequence = returnExpr.eval(null);
+        resultSequence.addAll(returnSequence);
 
         // free resources
         var.destroy(context, resultSequence);
+        return returnSequence;
+    }
+
+    /**
+     * Evaluate the iterations for a partition of the input sequence, on behalf of
+     * {@link ParallelFor}. The variables in scope of the original expression must
+     * have been declared in the context of this copy.
+     *
+     * @param items the items of the partition
+     * @param offset the position of the first item of the partition in the input sequence
+     * @return the results of the return clause, in order
+     * @throws XPathException if the evaluation fails
+     */
+    Sequence evalPartition(Sequence items, int offset) throws XPathException {
+        final LocalVariable mark = context.markLocalVariables(false);
+        final Sequence resultSequence = new ValueSequence(unordered);
+        try {
+            final LocalVariable var = createVariable(varName);
+            var.setSequenceType(sequenceType);
+            context.declareVariableBinding(var);
+            LocalVariable at = null;
+            if (positionalVariable != null) {
+                at = new LocalVariable(QName.parse(context, positionalVariable, null));
+                at.setSequenceType(POSITIONAL_VAR_TYPE);
+                context.declareVariableBinding(at);
+            }
+            int p = offset;
+            for (final SequenceIterator i = items.iterate(); i.hasNext(); p++) {
+                processItem(var, i.nextItem(), items, resultSequence, at, p, NO_RESULT_LIMIT);
+            }
+        } catch (final QName.IllegalQNameException e) {
+            throw new XPathException(ErrorCodes.XPST0081, "No namespace defined for prefix " + positionalVariable);
+        } finally {
+            context.popLocalVariables(mark, resultSequence);
+        }
+        return resultSequence;
     }
 
     private boolean callPostEval() {
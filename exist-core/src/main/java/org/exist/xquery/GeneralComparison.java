@@ -552,32 +552,41 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
         } else if( ls.hasOne() && rs.hasOne() && ls.itemAt(0).getType() != Type.ARRAY && rs.itemAt(0).getType() != Type.ARRAY) {
             result = BooleanValue.valueOf( compareAtomic( collator, ls.itemAt( 0 ).atomize(), rs.itemAt( 0 ).atomize() ) );
         } else {
+            final Sequence atomizedLeft  = Atomize.atomize( ls );
+            final Sequence atomizedRight = Atomize.atomize( rs );
 
-            for( final SequenceIterator i1 = Atomize.atomize(ls).iterate(); i1.hasNext(); ) {
-                final AtomicValue lv = i1.nextItem().atomize();
+            // compare many values at once, if all of them are numbers or strings
+            final Boolean  compared      = ( truncation == StringTruncationOperator.NONE ) ? SequenceComparison.compare( relation, collator, atomizedLeft, atomizedRight ) : null;
 
-                if( rs.isEmpty() ) {
-
-                    if( compareAtomic( collator, lv, AtomicValue.EMPTY_VALUE ) ) {
-                        result = BooleanValue.TRUE;
-                        break;
-                    }
-                } else if( rs.hasOne() && rs.itemAt(0).getType() != Type.ARRAY) {
+            if( compared != null ) {
+                result = BooleanValue.valueOf( compared );
+            } else {
+                for( final SequenceIterator i1 = atomizedLeft.iterate(); i1.hasNext(); ) {
+                    final AtomicValue lv = i1.nextItem().atomize();
 
-                    if( compareAtomic( collator, lv, rs.itemAt( 0 ).atomize() ) ) {
+                    if( rs.isEmpty() ) {
 
-                        //return early if we are successful, continue otherwise
-                        result = BooleanValue.TRUE;
-                        break;
-                    }
-                } else {
+                        if( compareAtomic( collator, lv, AtomicValue.EMPTY_VALUE ) ) {
+                            result = BooleanValue.TRUE;
+                            break;
+                        }
+                    } else if( rs.hasOne() && rs.itemAt(0).getType() != Type.ARRAY) {
 
-                    for( final SequenceIterator i2 = Atomize.atomize(rs).iterate(); i2.hasNext(); ) {
+                        if( compareAtomic( collator, lv, rs.itemAt( 0 ).atomize() ) ) {
 
-                        if( compareAtomic( collator, lv, i2.nextItem().atomize() ) ) {
+                            //return early if we are successful, continue otherwise
                             result = BooleanValue.TRUE;
                             break;
                         }
+                    } else {
+
+                        for( final SequenceIterator i2 = atomizedRight.iterate(); i2.hasNext(); ) {
+
+                            if( compareAtomic( collator, lv, i2.nextItem().atomize() ) ) {
+                                result = BooleanValue.TRUE;
+                                break;
+                            }
+                        }
                     }
                 }
             }
@@ -995,7 +1004,7 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
      *
      * @throws  XPathException  DOCUMENT ME!
      */
-    private boolean compareAtomic( Collator collator, AtomicValue lv, AtomicValue rv ) throws XPathException
+    boolean compareAtomic( Collator collator, AtomicValue lv, AtomicValue rv ) throws XPathException
     {
         try {
             final int ltype = lv.getType();
@@ -1,20 +1,44 @@
 package org.exist.xquery;
 
 import com.ibm.icu.text.Collator;
-import org.exist.dom.QName;
 import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.util.SpillFile;
 import org.exist.xquery.value.*;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Stream;
 
 /**
  * Implements a "group by" clause inside a FLWOR.
  *
+ * Tuples are collected into groups by a hash map, unless a non-default collation is used.
+ * A single numeric or string grouping key is used as a {@link Long} or {@link String}
+ * key directly. Each group keeps an append-only buffer per non-grouping variable.
+ *
+ * If {@link #PROPERTY_GROUP_BY_SPILL_THRESHOLD} is set, and more than that number of items
+ * are buffered, the groups are written to temporary files, partitioned by their key, see
+ * {@link GroupBySpill}. The partitions are then grouped one at a time when the groups
+ * are returned. Once an item is found which cannot be written, see {@link SpillFile#canSpill(Item)},
+ * no more groups are spilled, and the groups still in memory are merged with their partition.
+ *
  * @author wolf
  */
 public class GroupByClause extends AbstractFLWORClause {
 
+    public static final String GROUP_BY_SPILL_THRESHOLD_ATTRIBUTE = "group-by-spill-threshold";
+    public static final String PROPERTY_GROUP_BY_SPILL_THRESHOLD = "xquery.group-by-spill-threshold";
+
+    /**
+     * Number of spill files for the groups.
+     */
+    private static final int SPILL_PARTITIONS = 16;
+
+    /**
+     * Largest magnitude up to which every integral double is exact.
+     */
+    private static final double MAX_EXACT_DOUBLE = 9007199254740992d;
+
     protected FLWORClause rootClause = null;
     private GroupSpec[] groupSpecs;
     private final Deque<GroupByData> stack = new ArrayDeque<>();
@@ -27,22 +51,53 @@ public class GroupByClause extends AbstractFLWORClause {
      */
     private class GroupByData {
 
-        private Map<List<AtomicValue>, Tuple> groupedMap = null;
-        private Map<QName, LocalVariable> variables = null;
-        private List<LocalVariable> groupingVars = null;
+        private final boolean hashed;
+        private final Map<Object, Group> groups;
+        private LocalVariable[] variables = null;
+        private final List<LocalVariable> groupingVars = new ArrayList<>();
 
         private boolean initialized = false;
 
+        private final int spillThreshold;
+        private boolean spillable;
+        private long bufferedItems = 0;
+        private GroupBySpill spill = null;
+
         public GroupByData() {
             // check if we can use a hash map
-            if (usesDefaultCollator()) {
-                groupedMap = new HashMap<>();
+            hashed = usesDefaultCollator();
+            if (hashed) {
+                groups = new HashMap<>();
             } else {
                 // non-default collation: must use tree map
-                groupedMap = new TreeMap<>(GroupByClause.this::compareKeys);
+                groups = new TreeMap<>(GroupByClause.this::compareKeys);
+            }
+            spillThreshold = hashed ? getSpillThreshold() : 0;
+            spillable = spillThreshold > 0;
+        }
+
+        private void close() {
+            if (spill != null) {
+                spill.close();
+                spill = null;
+            }
+        }
+    }
+
+    /**
+     * The values collected for one group.
+     */
+    private static class Group {
+
+        private final Sequence[] groupingValues;
+        private final ValueSequence[] values;
+
+        Group(final Sequence[] groupingValues, final int variableCount) {
+            this.groupingValues = groupingValues;
+            this.values = new ValueSequence[variableCount];
+            for (int i = 0; i < variableCount; i++) {
+                values[i] = new ValueSequence();
             }
-            variables = new HashMap<>();
-            groupingVars = new ArrayList<>();
         }
     }
 
@@ -66,9 +121,10 @@ public class GroupByClause extends AbstractFLWORClause {
         final GroupByData data = stack.peek();
 
         // Evaluate group spec to create grouping key sequence
-        final List<Sequence> groupingValues = new ArrayList<>();
-        final List<AtomicValue> groupingKeys = new ArrayList<>();
-        for (GroupSpec spec: groupSpecs) {
+        final Sequence[] groupingValues = new Sequence[groupSpecs.length];
+        final AtomicValue[] groupingKeys = new AtomicValue[groupSpecs.length];
+        for (int i = 0; i < groupSpecs.length; i++) {
+            final GroupSpec spec = groupSpecs[i];
             final Sequence groupingSeq = spec.getGroupExpression().eval(null);
             if (groupingSeq.getItemCount() > 1) {
                 throw new XPathException(this, ErrorCodes.XPTY0004, "Grouping variable " + spec.getKeyVarName() + " " +
@@ -82,30 +138,55 @@ public class GroupByClause extends AbstractFLWORClause {
                 groupingVar.setStaticType(groupingValue.getType());
                 data.groupingVars.add(groupingVar);
             }
-            groupingValues.add(groupingSeq);
-            groupingKeys.add(groupingValue);
+            groupingValues[i] = groupingSeq;
+            groupingKeys[i] = groupingValue;
         }
 
-        // collect the current tuples into the grouping map
-        final Tuple tuple = data.groupedMap.computeIfAbsent(groupingKeys, ks -> new Tuple(groupingValues));
-
-        // scan in-scope variables to collect tuples
-        LocalVariable nextVar = rootClause.getStartVariable();
-        Objects.requireNonNull(nextVar);
-        while(nextVar != null) {
-            tuple.add(nextVar.getQName(), nextVar.getValue());
-            if (!data.initialized) {
-                // on first call: initialize non-grouping variable for later use
+        if (!data.initialized) {
+            // on first call: initialize non-grouping variables for later use
+            final List<LocalVariable> variables = new ArrayList<>();
+            LocalVariable nextVar = rootClause.getStartVariable();
+            Objects.requireNonNull(nextVar);
+            while (nextVar != null) {
                 final LocalVariable var = new LocalVariable(nextVar.getQName());
                 var.setSequenceType(nextVar.getSequenceType());
                 var.setStaticType(nextVar.getStaticType());
                 var.setContextDocs(nextVar.getContextDocs());
-                data.variables.put(var.getQName(), var);
+                variables.add(var);
+                nextVar = nextVar.after;
+            }
+            data.variables = variables.toArray(new LocalVariable[0]);
+            data.initialized = true;
+        }
+
+        // collect the current tuple into its group
+        final Object key = data.hashed ? hashKey(groupingKeys) : Arrays.asList(groupingKeys);
+        Group group = data.groups.get(key);
+        if (group == null) {
+            if (data.spillable && !canSpill(groupingValues)) {
+                data.spillable = false;
+            }
+            group = new Group(groupingValues, data.variables.length);
+            data.groups.put(key, group);
+        }
+
+        // scan in-scope variables to collect tuples
+        int i = 0;
+        for (LocalVariable nextVar = rootClause.getStartVariable(); nextVar != null; nextVar = nextVar.after, i++) {
+            if (i == group.values.length) {
+                throw new XPathException(this, "Internal error: unexpected variable " + nextVar.getQName());
+            }
+            final Sequence value = nextVar.getValue();
+            group.values[i].addAll(value);
+            data.bufferedItems += value.getItemCount();
+            if (data.spillable && !SpillFile.canSpill(value)) {
+                data.spillable = false;
             }
-            nextVar = nextVar.after;
         }
 
-        data.initialized = true;
+        if (data.spillable && data.bufferedItems > data.spillThreshold) {
+            spill(data);
+        }
         return contextSequence;
     }
 
@@ -117,37 +198,60 @@ public class GroupByClause extends AbstractFLWORClause {
             final LocalVariable mark = context.markLocalVariables(false);
             try {
                 // declare non-grouping variables
-                for (LocalVariable var : data.variables.values()) {
-                    context.declareVariableBinding(var);
+                if (data.variables != null) {
+                    for (LocalVariable var : data.variables) {
+                        context.declareVariableBinding(var);
+                    }
                 }
                 // declare grouping variables
                 for (LocalVariable var : data.groupingVars) {
                     context.declareVariableBinding(var);
                 }
-                // iterate over each group
-                for (Tuple tuple : data.groupedMap.values()) {
-                    context.proceed();
-
-                    // set grouping variable values
-                    final Iterator<Sequence> siter = tuple.groupingValues.iterator();
-                    for (LocalVariable var : data.groupingVars) {
-                        if (siter.hasNext()) {
-                            Sequence val = siter.next();
-                            var.setValue(val);
-                        } else {
-                            throw new XPathException(this, "Internal error: missing grouping value");
-                        }
+                if (data.spill == null) {
+                    evalGroups(data, data.groups.values(), result);
+                } else {
+                    // write the remaining groups, then group each partition in memory
+                    final List<Map.Entry<Object, Group>>[] unspilled;
+                    if (data.spillable) {
+                        spill(data);
+                        unspilled = null;
+                    } else {
+                        // the groups held in memory contain items which cannot be written,
+                        // they are merged into the groups of their partition instead
+                        unspilled = partition(data);
                     }
-                    // set values of non-grouping variables
-                    for (Map.Entry<QName, Sequence> entry : tuple.entrySet()) {
-                        final LocalVariable var = data.variables.get(entry.getKey());
-                        var.setValue(entry.getValue());
+                    for (int partition = 0; partition < data.spill.getPartitionCount(); partition++) {
+                        final Map<Object, Group> groups = new HashMap<>();
+                        try {
+                            data.spill.read(partition, (groupingValues, values) -> {
+                                final Group group = groups.computeIfAbsent(hashKey(atomize(groupingValues)),
+                                        k -> new Group(groupingValues, values.length));
+                                for (int i = 0; i < values.length; i++) {
+                                    group.values[i].addAll(values[i]);
+                                }
+                            });
+                        } catch (final IOException e) {
+                            throw new XPathException(this, "Unable to read group by spill file: " + e.getMessage(), e);
+                        }
+                        if (unspilled != null && unspilled[partition] != null) {
+                            for (final Map.Entry<Object, Group> entry : unspilled[partition]) {
+                                final Group spilled = groups.get(entry.getKey());
+                                if (spilled == null) {
+                                    groups.put(entry.getKey(), entry.getValue());
+                                } else {
+                                    // the tuples in memory were collected after those which were written
+                                    for (int i = 0; i < spilled.values.length; i++) {
+                                        spilled.values[i].addAll(entry.getValue().values[i]);
+                                    }
+                                }
+                            }
+                        }
+                        evalGroups(data, groups.values(), result);
                     }
-                    final Sequence r = returnExpr.eval(null);
-                    result.addAll(r);
                 }
             } finally {
                 stack.pop();
+                data.close();
                 context.popLocalVariables(mark, result);
             }
 
@@ -160,6 +264,136 @@ public class GroupByClause extends AbstractFLWORClause {
         return seq;
     }
 
+    /**
+     * Evaluate the return expression for each group.
+     */
+    private void evalGroups(final GroupByData data, final Collection<Group> groups, final Sequence result) throws XPathException {
+        for (final Group group : groups) {
+            context.proceed();
+
+            // set grouping variable values
+            int i = 0;
+            for (LocalVariable var : data.groupingVars) {
+                if (i < group.groupingValues.length) {
+                    var.setValue(group.groupingValues[i++]);
+                } else {
+                    throw new XPathException(this, "Internal error: missing grouping value");
+                }
+            }
+            // set values of non-grouping variables
+            for (i = 0; i < group.values.length; i++) {
+                data.variables[i].setValue(group.values[i]);
+            }
+            final Sequence r = returnExpr.eval(null);
+            result.addAll(r);
+        }
+    }
+
+    /**
+     * Write all groups held in memory to the spill files.
+     */
+    private void spill(final GroupByData data) throws XPathException {
+        if (data.spill == null) {
+            data.spill = new GroupBySpill(SPILL_PARTITIONS);
+        }
+        try {
+            for (final Map.Entry<Object, Group> entry : data.groups.entrySet()) {
+                data.spill.write(partition(data, entry.getKey()), entry.getValue().groupingValues, entry.getValue().values);
+            }
+        } catch (final IOException e) {
+            throw new XPathException(this, "Unable to write group by spill file: " + e.getMessage(), e);
+        }
+        data.groups.clear();
+        data.bufferedItems = 0;
+    }
+
+    /**
+     * Assign the groups held in memory to the partitions of the spill files.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Map.Entry<Object, Group>>[] partition(final GroupByData data) {
+        final List<Map.Entry<Object, Group>>[] partitions = new List[data.spill.getPartitionCount()];
+        for (final Map.Entry<Object, Group> entry : data.groups.entrySet()) {
+            final int partition = partition(data, entry.getKey());
+            if (partitions[partition] == null) {
+                partitions[partition] = new ArrayList<>();
+            }
+            partitions[partition].add(entry);
+        }
+        return partitions;
+    }
+
+    private static int partition(final GroupByData data, final Object key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % data.spill.getPartitionCount();
+    }
+
+    private static boolean canSpill(final Sequence[] groupingValues) throws XPathException {
+        for (final Sequence groupingValue : groupingValues) {
+            if (!SpillFile.canSpill(groupingValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static AtomicValue[] atomize(final Sequence[] groupingValues) throws XPathException {
+        final AtomicValue[] keys = new AtomicValue[groupingValues.length];
+        for (int i = 0; i < groupingValues.length; i++) {
+            keys[i] = groupingValues[i].isEmpty() ? AtomicValue.EMPTY_VALUE : groupingValues[i].itemAt(0).atomize();
+        }
+        return keys;
+    }
+
+    /**
+     * Create the key of a group for the hash map. A single numeric key with an
+     * integral value is returned as a {@link Long}, and a single string key as
+     * a {@link String}. Otherwise a list of the key values is returned, in which
+     * numeric and string values are converted in the same way.
+     */
+    private static Object hashKey(final AtomicValue[] groupingKeys) throws XPathException {
+        if (groupingKeys.length == 1) {
+            final Object key = keyValue(groupingKeys[0]);
+            return key instanceof AtomicValue ? Collections.singletonList(key) : key;
+        }
+        final Object[] keys = new Object[groupingKeys.length];
+        for (int i = 0; i < groupingKeys.length; i++) {
+            keys[i] = keyValue(groupingKeys[i]);
+        }
+        return Arrays.asList(keys);
+    }
+
+    private static Object keyValue(final AtomicValue value) throws XPathException {
+        if (value.isEmpty()) {
+            return value;
+        }
+        final int type = value.getType();
+        if (Type.subTypeOf(type, Type.STRING) || type == Type.UNTYPED_ATOMIC || type == Type.ANY_URI) {
+            // untyped and URI keys are compared as strings
+            return value.getStringValue();
+        }
+        if (Type.subTypeOf(type, Type.INTEGER)) {
+            final IntegerValue integer = (IntegerValue) value;
+            if (integer.fitsInLong()) {
+                return integer.getLong();
+            }
+        } else if (Type.subTypeOf(type, Type.NUMBER)) {
+            // 1, 1.0 and 1.0e0 are equal, and end up in the same group
+            final NumericValue number = (NumericValue) value;
+            if (!number.isNaN() && !number.isInfinite() && !number.hasFractionalPart()) {
+                final double d = number.getDouble();
+                if (Math.abs(d) < MAX_EXACT_DOUBLE) {
+                    return (long) d;
+                }
+            }
+        }
+        return value;
+    }
+
+    private int getSpillThreshold() {
+        final Integer threshold = context.getBroker().getConfiguration().getProperty(PROPERTY_GROUP_BY_SPILL_THRESHOLD, 0);
+        return threshold == null ? 0 : threshold;
+    }
+
     @Override
     public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
         contextInfo.setParent(this);
@@ -231,6 +465,9 @@ public class GroupByClause extends AbstractFLWORClause {
     @Override
     public void resetState(boolean postOptimization) {
         super.resetState(postOptimization);
+        for (final GroupByData data : stack) {
+            data.close();
+        }
         stack.clear();
         returnExpr.resetState(postOptimization);
         for (GroupSpec spec: groupSpecs) {
@@ -247,14 +484,16 @@ public class GroupByClause extends AbstractFLWORClause {
      * Compare keys using the collator given in the group spec. Used to
      * sort keys into the grouping map.
      */
-    private int compareKeys(List<AtomicValue> s1, List<AtomicValue> s2) {
+    private int compareKeys(final Object k1, final Object k2) {
+        final List<?> s1 = (List<?>) k1;
+        final List<?> s2 = (List<?>) k2;
         final int c1 = s1.size();
         final int c2 = s2.size();
         if (c1 == c2) {
             try {
                 for (int i = 0; i < c1; i++) {
-                    final AtomicValue v1 = s1.get(i);
-                    final AtomicValue v2 = s2.get(i);
+                    final AtomicValue v1 = (AtomicValue) s1.get(i);
+                    final AtomicValue v2 = (AtomicValue) s2.get(i);
                     final Collator collator = groupSpecs[i].getCollator();
                     final int r = v1.compareTo(collator, v2);
                     if (r != Constants.EQUAL) {
@@ -272,25 +511,4 @@ public class GroupByClause extends AbstractFLWORClause {
     private boolean usesDefaultCollator() {
         return Stream.of(groupSpecs).allMatch(spec -> spec.getCollator() == null);
     }
-
-    static class Tuple extends HashMap<QName, Sequence> {
-
-        private final List<Sequence> groupingValues;
-
-        public Tuple(final List<Sequence> groupingValues) {
-            super();
-            this.groupingValues = groupingValues;
-        }
-
-        public void add(final QName name, final Sequence val) throws XPathException {
-            Sequence seq = get(name);
-            if (seq == null) {
-                final ValueSequence temp = new ValueSequence(val.getItemCount());
-                temp.addAll(val);
-                put(name, temp);
-            } else {
-                seq.addAll(val);
-            }
-        }
-    }
 }
@@ -0,0 +1,121 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import org.exist.xquery.util.SpillFile;
+import org.exist.xquery.value.Sequence;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Temporary files for the groups of a {@link GroupByClause} which do not fit into memory.
+ *
+ * Groups are written to one of a fixed number of partitions, chosen by the hash code
+ * of their key, so that all the values of a group end up in the same partition,
+ * in the order in which they were written. The partitions can then be read back,
+ * and grouped in memory, one at a time.
+ *
+ * Only items accepted by {@link SpillFile#canSpill(org.exist.xquery.value.Item)} can be written.
+ */
+class GroupBySpill implements Closeable {
+
+    private final SpillFile[] files;
+    private final int[] groupCounts;
+
+    GroupBySpill(final int partitions) {
+        this.files = new SpillFile[partitions];
+        this.groupCounts = new int[partitions];
+    }
+
+    int getPartitionCount() {
+        return files.length;
+    }
+
+    /**
+     * Append a group to a partition.
+     *
+     * @param partition the partition
+     * @param groupingValues the values of the grouping variables
+     * @param values the values of the non-grouping variables
+     * @throws IOException if the spill file cannot be written
+     * @throws XPathException if a sequence cannot be iterated
+     */
+    void write(final int partition, final Sequence[] groupingValues, final Sequence[] values) throws IOException, XPathException {
+        if (files[partition] == null) {
+            files[partition] = new SpillFile();
+        }
+        writeSequences(files[partition], groupingValues);
+        writeSequences(files[partition], values);
+        groupCounts[partition]++;
+    }
+
+    /**
+     * Read back the groups of a partition, in the order in which they were written.
+     * No further groups can be written to the partition afterwards.
+     *
+     * @param partition the partition
+     * @param consumer receives the grouping values and values of each group
+     * @throws IOException if the spill file cannot be read
+     * @throws XPathException if the consumer fails
+     */
+    void read(final int partition, final GroupConsumer consumer) throws IOException, XPathException {
+        final SpillFile file = files[partition];
+        if (file == null) {
+            return;
+        }
+        file.startReading();
+        for (int i = 0; i < groupCounts[partition]; i++) {
+            final Sequence[] groupingValues = readSequences(file);
+            final Sequence[] values = readSequences(file);
+            consumer.accept(groupingValues, values);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < files.length; i++) {
+            if (files[i] != null) {
+                files[i].close();
+                files[i] = null;
+            }
+        }
+    }
+
+    private static void writeSequences(final SpillFile file, final Sequence[] sequences) throws IOException, XPathException {
+        file.writeInt(sequences.length);
+        for (final Sequence seq : sequences) {
+            file.writeSequence(seq);
+        }
+    }
+
+    private static Sequence[] readSequences(final SpillFile file) throws IOException, XPathException {
+        final Sequence[] sequences = new Sequence[file.readInt()];
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = file.readSequence();
+        }
+        return sequences;
+    }
+
+    @FunctionalInterface
+    interface GroupConsumer {
+        void accept(Sequence[] groupingValues, Sequence[] values) throws XPathException;
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import com.ibm.icu.text.Collator;
+import it.unimi.dsi.fastutil.doubles.Double2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import org.exist.dom.persistent.NewArrayNodeSet;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.*;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Evaluates the input sequence of a for clause with an equi-join predicate, e.g.
+ *
+ * <pre>for $a in //order, $c in //customer[@id = $a/@cust] return ...</pre>
+ *
+ * as a hash join instead of a nested loop. The {@link Optimizer} removes the join predicate
+ * from the input sequence, which does not depend on any variable. This remaining build side,
+ * i.e. <code>//customer</code>, is evaluated once, and its items are put into a hash table
+ * by the atomized values of the key expression, i.e. <code>@id</code>. Every evaluation of
+ * the for clause then just evaluates the probe expression, i.e. <code>$a/@cust</code>,
+ * and looks up the matching items in the table.
+ *
+ * Strings and untyped values are hashed by their string value, numbers except xs:float by
+ * their value as xs:double. The items found are checked again with the semantics of the
+ * general comparison, so that the result is the same as that of the predicate. If values
+ * of other types are compared, or a comparison would raise a type error, or a collation
+ * other than the codepoint collation is used, the items are compared one by one.
+ */
+public class HashJoin extends AbstractExpression {
+
+    private final Expression build;
+    private final Expression key;
+    private final Expression probe;
+    private final GeneralComparison comparison;
+    private final boolean keyIsLeft;
+
+    private Table table = null;
+
+    /**
+     * @param context the query context
+     * @param build the input sequence without the join predicate
+     * @param key the operand of the comparison, which is evaluated for every item of the build side
+     * @param probe the operand of the comparison, which depends on variables
+     * @param comparison the join predicate
+     */
+    public HashJoin(final XQueryContext context, final Expression build, final Expression key,
+            final Expression probe, final GeneralComparison comparison) {
+        super(context);
+        this.build = build;
+        this.key = key;
+        this.probe = probe;
+        this.comparison = comparison;
+        this.keyIsLeft = comparison.getLeft() == key;
+        setLocation(comparison.getLine(), comparison.getColumn());
+    }
+
+    public Expression getBuildExpression() {
+        return build;
+    }
+
+    public Expression getKeyExpression() {
+        return key;
+    }
+
+    public Expression getProbeExpression() {
+        return probe;
+    }
+
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        contextInfo.setParent(this);
+        final AnalyzeContextInfo buildInfo = new AnalyzeContextInfo(contextInfo);
+        build.analyze(buildInfo);
+
+        // the key is evaluated for each item, like the predicate it was taken from
+        final AnalyzeContextInfo keyInfo = new AnalyzeContextInfo(contextInfo);
+        keyInfo.addFlag(SINGLE_STEP_EXECUTION);
+        keyInfo.setStaticType(buildInfo.getStaticReturnType());
+        key.analyze(keyInfo);
+
+        probe.analyze(new AnalyzeContextInfo(contextInfo));
+        contextInfo.setStaticReturnType(buildInfo.getStaticReturnType());
+    }
+
+    @Override
+    public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+        if (context.getProfiler().isEnabled()) {
+            context.getProfiler().start(this);
+            context.getProfiler().message(this, Profiler.DEPENDENCIES, "DEPENDENCIES",
+                    Dependency.getDependenciesName(this.getDependencies()));
+        }
+        if (table == null) {
+            table = new Table(build.eval(contextSequence, null), comparison.getCollator(contextSequence) == null);
+            if (context.getProfiler().isEnabled()) {
+                context.getProfiler().message(this, Profiler.OPTIMIZATIONS, "OPTIMIZATION",
+                        "Built hash join table for " + table.items.length + " items");
+            }
+        }
+        final Sequence probeSeq = Atomize.atomize(probe.eval(contextSequence, null));
+        final AtomicValue[] probes = new AtomicValue[probeSeq.getItemCount()];
+        int n = 0;
+        for (final SequenceIterator i = probeSeq.iterate(); i.hasNext(); ) {
+            probes[n++] = i.nextItem().atomize();
+        }
+
+        final int[] candidates = table.lookup(probes);
+        if (context.getProfiler().isEnabled()) {
+            context.getProfiler().message(this, Profiler.OPTIMIZATION_FLAGS, "OPTIMIZATION CHOICE",
+                    candidates == null ? "Nested loop join" : "Hash join");
+        }
+
+        final Collator collator = comparison.getCollator(contextSequence);
+        final Sequence result = table.nodes ? new NewArrayNodeSet() : new ValueSequence();
+        if (candidates == null) {
+            for (int i = 0; i < table.items.length; i++) {
+                if (matches(collator, table.keys[i], probes)) {
+                    result.add(table.items[i]);
+                }
+            }
+        } else {
+            for (final int i : candidates) {
+                if (matches(collator, table.keys[i], probes)) {
+                    result.add(table.items[i]);
+                }
+            }
+        }
+
+        if (context.getProfiler().isEnabled()) {
+            context.getProfiler().end(this, "", result);
+        }
+        return result;
+    }
+
+    /**
+     * Compare the keys of an item to the probe values, in the same order as the general comparison.
+     */
+    private boolean matches(final Collator collator, final AtomicValue[] keys, final AtomicValue[] probes)
+            throws XPathException {
+        if (keyIsLeft) {
+            for (final AtomicValue k : keys) {
+                for (final AtomicValue p : probes) {
+                    if (comparison.compareAtomic(collator, k, p)) {
+                        return true;
+                    }
+                }
+            }
+        } else {
+            for (final AtomicValue p : probes) {
+                for (final AtomicValue k : keys) {
+                    if (comparison.compareAtomic(collator, p, k)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int returnsType() {
+        return build.returnsType();
+    }
+
+    @Override
+    public Cardinality getCardinality() {
+        return Cardinality.ZERO_OR_MORE;
+    }
+
+    @Override
+    public int getDependencies() {
+        return build.getDependencies() | probe.getDependencies();
+    }
+
+    @Override
+    public void dump(final ExpressionDumper dumper) {
+        dumper.display("hash-join(");
+        build.dump(dumper);
+        dumper.display(", ");
+        key.dump(dumper);
+        dumper.display(" = ");
+        probe.dump(dumper);
+        dumper.display(")");
+    }
+
+    @Override
+    public String toString() {
+        return "hash-join(" + build.toString() + ", " + key.toString() + " = " + probe.toString() + ")";
+    }
+
+    @Override
+    public void resetState(final boolean postOptimization) {
+        super.resetState(postOptimization);
+        build.resetState(postOptimization);
+        key.resetState(postOptimization);
+        probe.resetState(postOptimization);
+        table = null;
+    }
+
+    private static final int STRING = 0;
+    private static final int UNTYPED = 1;
+    private static final int NUMBER = 2;
+    private static final int OTHER = 3;
+
+    private static int getKind(final AtomicValue value) {
+        final int type = value.getType();
+        if (type == Type.UNTYPED_ATOMIC) {
+            return UNTYPED;
+        } else if (Type.subTypeOf(type, Type.STRING)) {
+            return STRING;
+        } else if (Type.subTypeOf(type, Type.NUMBER) && type != Type.FLOAT) {
+            // xs:decimal is compared to xs:float as xs:float, which is not hashed
+            return NUMBER;
+        }
+        return OTHER;
+    }
+
+    /**
+     * Map -0.0 to 0.0, which are equal, but hashed differently.
+     */
+    private static double normalize(final double value) {
+        return value == 0.0 ? 0.0 : value;
+    }
+
+    /**
+     * The items of the build side, their keys, and the hash tables of the keys.
+     */
+    private class Table {
+
+        private final Item[] items;
+        private final AtomicValue[][] keys;
+        private final boolean nodes;
+        private final boolean hashed;
+
+        private final Object2ObjectOpenHashMap<String, IntArrayList> strings = new Object2ObjectOpenHashMap<>();
+        private final Double2ObjectOpenHashMap<IntArrayList> numbers = new Double2ObjectOpenHashMap<>();
+        /** the items with keys which cannot be hashed, checked for every probe */
+        private final IntArrayList unhashed = new IntArrayList();
+
+        private boolean hasStrings = false;
+        private boolean hasNumbers = false;
+        private boolean hasUncastable = false;
+
+        Table(final Sequence seq, final boolean hashed) throws XPathException {
+            final int size = seq.getItemCount();
+            this.items = new Item[size];
+            this.keys = new AtomicValue[size][];
+            this.nodes = seq instanceof NodeSet;
+            this.hashed = hashed;
+
+            int n = 0;
+            for (final SequenceIterator i = seq.iterate(); i.hasNext(); n++) {
+                final Item item = i.nextItem();
+                items[n] = item;
+                final Sequence keySeq = Atomize.atomize(key.eval(seq, item));
+                final AtomicValue[] itemKeys = new AtomicValue[keySeq.getItemCount()];
+                boolean isUnhashed = false;
+                int k = 0;
+                for (final SequenceIterator j = keySeq.iterate(); j.hasNext(); k++) {
+                    final AtomicValue value = j.nextItem().atomize();
+                    itemKeys[k] = value;
+                    switch (getKind(value)) {
+                        case STRING:
+                            hasStrings = true;
+                            add(strings, value.getStringValue(), n);
+                            break;
+                        case UNTYPED:
+                            // compared as string to strings, and as xs:double to numbers
+                            add(strings, value.getStringValue(), n);
+                            try {
+                                addNumber(((NumericValue) value.convertTo(Type.DOUBLE)).getDouble(), n);
+                            } catch (final XPathException e) {
+                                hasUncastable = true;
+                            }
+                            break;
+                        case NUMBER:
+                            hasNumbers = true;
+                            addNumber(((NumericValue) value).getDouble(), n);
+                            break;
+                        default:
+                            isUnhashed = true;
+                    }
+                }
+                keys[n] = itemKeys;
+                if (isUnhashed) {
+                    unhashed.add(n);
+                }
+            }
+        }
+
+        private void addNumber(final double value, final int item) {
+            // NaN is not equal to anything
+            if (!Double.isNaN(value)) {
+                add(numbers, normalize(value), item);
+            }
+        }
+
+        private <K> void add(final Map<K, IntArrayList> map, final K value, final int item) {
+            IntArrayList list = map.get(value);
+            if (list == null) {
+                list = new IntArrayList(1);
+                map.put(value, list);
+            }
+            // the same item may have several equal keys
+            if (list.isEmpty() || list.getInt(list.size() - 1) != item) {
+                list.add(item);
+            }
+        }
+
+        /**
+         * Find the items which may match one of the probe values.
+         *
+         * @param probes the atomized values of the probe expression
+         * @return the positions of the candidate items in ascending order, or null
+         *     if all items have to be compared
+         */
+        int[] lookup(final AtomicValue[] probes) throws XPathException {
+            if (!hashed) {
+                return null;
+            }
+            final IntArrayList found = new IntArrayList(unhashed);
+            for (final AtomicValue value : probes) {
+                switch (getKind(value)) {
+                    case STRING:
+                        if (hasNumbers) {
+                            // type error, raised by the comparison
+                            return null;
+                        }
+                        addAll(found, strings.get(value.getStringValue()));
+                        break;
+                    case UNTYPED:
+                        addAll(found, strings.get(value.getStringValue()));
+                        if (hasNumbers) {
+                            try {
+                                addAll(found, getNumber(((NumericValue) value.convertTo(Type.DOUBLE)).getDouble()));
+                            } catch (final XPathException e) {
+                                return null;
+                            }
+                        }
+                        break;
+                    case NUMBER:
+                        if (hasStrings || hasUncastable) {
+                            return null;
+                        }
+                        addAll(found, getNumber(((NumericValue) value).getDouble()));
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            final int[] positions = found.toIntArray();
+            Arrays.sort(positions);
+            // remove duplicates
+            int n = 0;
+            for (int i = 0; i < positions.length; i++) {
+                if (n == 0 || positions[i] != positions[n - 1]) {
+                    positions[n++] = positions[i];
+                }
+            }
+            return n == positions.length ? positions : Arrays.copyOf(positions, n);
+        }
+
+        private IntArrayList getNumber(final double value) {
+            return Double.isNaN(value) ? null : numbers.get(normalize(value));
+        }
+
+        private void addAll(final IntArrayList found, final IntArrayList list) {
+            if (list != null) {
+                found.addAll(list);
+            }
+        }
+    }
+}
@@ -75,6 +75,7 @@ public class LetExpr extends BindingExpression {
      */
     public Sequence eval(Sequence contextSequence, Item contextItem)
             throws XPathException {
+        final int limit = takeResultLimit();
         if (context.getProfiler().isEnabled()){
             context.getProfiler().start(this);
             context.getProfiler().message(this, Profiler.DEPENDENCIES,
@@ -108,6 +109,7 @@ public class LetExpr extends BindingExpression {
                 var.setContextDocs(inputSequence.getContextDocSet());
                 registerUpdateListener(in);
 
+                limitReturnExpression(limit);
                 resultSequence = returnExpr.eval(contextSequence, null);
 
                 if (sequenceType != null) {
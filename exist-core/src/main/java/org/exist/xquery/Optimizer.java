@@ -20,6 +20,9 @@
 package org.exist.xquery;
 
 import org.exist.dom.QName;
+import org.exist.storage.ElementValue;
+import org.exist.storage.statistics.IndexStatistics;
+import org.exist.storage.statistics.ValueStatistics;
 import org.exist.xquery.functions.array.ArrayConstructor;
 import org.exist.xquery.pragmas.Optimize;
 import org.apache.logging.log4j.LogManager;
@@ -38,6 +41,13 @@ import java.util.*;
  * The pragma may also decide that the optimization is not applicable and just execute
  * the expression without any optimization.
  *
+ * The optimizer also replaces the input sequence of a for clause, which is filtered by an
+ * equi-join predicate on a variable of an enclosing clause, with a {@link HashJoin}.
+ *
+ * If the index statistics module is enabled, the predicates of a location step are ordered
+ * by the number of nodes they are estimated to select, based on the {@link ValueStatistics},
+ * so the most selective index lookup or filter is applied first.
+ *
  * Currently, the optimizer is disabled by default. To enable it, set attribute enable-query-rewriting
  * to yes in conf.xml:
  *
@@ -60,9 +70,14 @@ public class Optimizer extends DefaultExpressionVisitor {
 
     private List<QueryRewriter> rewriters;
 
+    private IndexStatistics statistics;
+
     public Optimizer(XQueryContext context) {
         this.context = context;
         this.rewriters = context.getBroker().getIndexController().getQueryRewriters(context);
+        // null if the module is not enabled
+        this.statistics = (IndexStatistics) context.getBroker().getBrokerPool().getIndexManager()
+                .getIndexById(IndexStatistics.ID);
     }
 
     public boolean hasOptimized() {
@@ -72,6 +87,8 @@ public class Optimizer extends DefaultExpressionVisitor {
     public void visitLocationStep(LocationStep locationStep) {
         super.visitLocationStep(locationStep);
 
+        orderPredicates(locationStep);
+
         // check query rewriters if they want to rewrite the location step
         Pragma optimizePragma = null;
         for (QueryRewriter rewriter : rewriters) {
@@ -145,6 +162,143 @@ public class Optimizer extends DefaultExpressionVisitor {
         }
     }
 
+    /**
+     * Order the predicates of a location step by the number of nodes they are estimated
+     * to select, most selective first. Predicates split from an <code>and</code> expression
+     * are ordered as well. Only steps whose predicates all compare a relative path to a
+     * literal or test the existence of a relative path are reordered, as the result of
+     * those predicates does not depend on the context position.
+     */
+    private void orderPredicates(LocationStep locationStep) {
+        if (statistics == null) {
+            return;
+        }
+        final List<Predicate> preds = locationStep.getPredicates();
+        if (preds.size() < 2) {
+            return;
+        }
+        final ValueStatistics values = statistics.getValueStatistics();
+        final Map<Predicate, Double> estimates = new HashMap<>();
+        boolean ordered = true;
+        double previous = 0;
+        for (final Predicate pred : preds) {
+            final double estimate = estimateMatches(pred, values);
+            if (estimate < 0) {
+                return;
+            }
+            if (estimate < previous) {
+                ordered = false;
+            }
+            estimates.put(pred, estimate);
+            previous = estimate;
+        }
+        if (ordered) {
+            return;
+        }
+        // the sort is stable: predicates with the same estimate keep their order
+        final List<Predicate> sorted = new ArrayList<>(preds);
+        sorted.sort(Comparator.comparing(estimates::get));
+        preds.clear();
+        preds.addAll(sorted);
+        hasOptimized = true;
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Reordered predicates by selectivity: " + ExpressionDumper.dump(locationStep));
+        }
+    }
+
+    /**
+     * Estimate the number of nodes selected by a predicate comparing a relative path to a literal,
+     * e.g. <code>[@type = 'a']</code>, or testing the existence of a relative path, e.g. <code>[title]</code>.
+     * An equality comparison selects the average number of nodes per distinct value.
+     *
+     * @return the estimated number of nodes, or -1 if the predicate cannot be estimated
+     */
+    private double estimateMatches(Predicate pred, ValueStatistics values) {
+        if (pred.getLength() != 1) {
+            return -1;
+        }
+        final Expression expr = simplifyPath(pred.getExpression(0));
+        if (expr instanceof GeneralComparison) {
+            final GeneralComparison comparison = (GeneralComparison) expr;
+            final LocationStep step;
+            if (simplifyPath(comparison.getRight()) instanceof LiteralValue) {
+                step = getLastNameStep(comparison.getLeft());
+            } else if (simplifyPath(comparison.getLeft()) instanceof LiteralValue) {
+                step = getLastNameStep(comparison.getRight());
+            } else {
+                return -1;
+            }
+            if (step == null) {
+                return -1;
+            }
+            final QName qname = step.getTest().getName();
+            final byte nameType = getNameType(step);
+            final long nodes = values.getNodeCount(qname, nameType);
+            if (nodes == 0) {
+                return 0;
+            }
+            final double perValue = (double) nodes / Math.max(values.getDistinctValues(qname, nameType), 1);
+            switch (comparison.getRelation()) {
+                case EQ:
+                    return comparison.getTruncation() == Constants.StringTruncationOperator.NONE ? perValue : nodes;
+                case NEQ:
+                    return nodes - perValue;
+                default:
+                    // open ranges are assumed to select a third of the values
+                    return nodes / 3.0;
+            }
+        }
+        final LocationStep step = getLastNameStep(expr);
+        if (step == null) {
+            return -1;
+        }
+        return values.getNodeCount(step.getTest().getName(), getNameType(step));
+    }
+
+    /**
+     * Get the last step of a relative path consisting of forward location steps without
+     * predicates, if it selects elements or attributes by name.
+     */
+    private LocationStep getLastNameStep(Expression expr) {
+        expr = simplifyPath(expr);
+        final List<Expression> steps = new ArrayList<>();
+        if (expr instanceof LocationStep) {
+            steps.add(expr);
+        } else if (expr.getClass() == PathExpr.class) {
+            final PathExpr path = (PathExpr) expr;
+            for (int i = 0; i < path.getLength(); i++) {
+                steps.add(path.getExpression(i));
+            }
+        }
+        if (steps.isEmpty()) {
+            return null;
+        }
+        for (final Expression next : steps) {
+            if (!(next instanceof LocationStep)) {
+                return null;
+            }
+            final LocationStep step = (LocationStep) next;
+            final int axis = step.getAxis();
+            if (step.hasPredicates() || !(axis == Constants.CHILD_AXIS || axis == Constants.ATTRIBUTE_AXIS ||
+                    axis == Constants.DESCENDANT_AXIS || axis == Constants.DESCENDANT_SELF_AXIS ||
+                    axis == Constants.DESCENDANT_ATTRIBUTE_AXIS || axis == Constants.SELF_AXIS)) {
+                return null;
+            }
+        }
+        final LocationStep last = (LocationStep) steps.get(steps.size() - 1);
+        final NodeTest test = last.getTest();
+        if (test.isWildcardTest() || test.getName() == null ||
+                !(test.getType() == Type.ELEMENT || test.getType() == Type.ATTRIBUTE)) {
+            return null;
+        }
+        return last;
+    }
+
+    private byte getNameType(LocationStep step) {
+        return step.getAxis() == Constants.ATTRIBUTE_AXIS || step.getAxis() == Constants.DESCENDANT_ATTRIBUTE_AXIS ?
+                ElementValue.ATTRIBUTE : ElementValue.ELEMENT;
+    }
+
     public void visitFilteredExpr(FilteredExpression filtered) {
         super.visitFilteredExpr(filtered);
 
@@ -285,6 +439,173 @@ public class Optimizer extends DefaultExpressionVisitor {
         --predicates;
     }
 
+    @Override
+    public void visitForExpression(ForExpr forExpr) {
+        final HashJoin join = rewriteJoin(forExpr);
+        if (join != null) {
+            hasOptimized = true;
+            join.getBuildExpression().accept(this);
+            forExpr.getReturnExpression().accept(this);
+        } else {
+            super.visitForExpression(forExpr);
+        }
+    }
+
+    @Override
+    public void visitOrderByClause(OrderByClause orderBy) {
+        super.visitOrderByClause(orderBy);
+
+        // check query rewriters if they want to replace an order key with an index lookup
+        final OrderSpec[] orderSpecs = orderBy.getOrderSpecs();
+        for (int i = 0; i < orderSpecs.length; i++) {
+            for (QueryRewriter rewriter : rewriters) {
+                try {
+                    final OrderSpec rewritten = rewriter.rewriteOrderSpec(orderSpecs[i]);
+                    if (rewritten != null) {
+                        orderBy.replaceOrderSpec(i, rewritten);
+                        hasOptimized = true;
+                        if (LOG.isTraceEnabled()) {
+                            LOG.trace("Rewritten order spec: " + rewritten);
+                        }
+                        break;
+                    }
+                } catch (XPathException e) {
+                    LOG.warn("Exception called while rewriting order spec: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if the input sequence of a for clause ends with an equi-join predicate comparing
+     * the items to a variable, e.g. <code>for $c in //customer[@id = $a/@cust]</code>,
+     * and replace it with a {@link HashJoin}. The rest of the input sequence must not
+     * depend on the context or on any variables, so it can be evaluated only once.
+     *
+     * @param forExpr the for clause
+     * @return the hash join, or null if the input sequence could not be rewritten
+     */
+    private HashJoin rewriteJoin(ForExpr forExpr) {
+        final Expression input = forExpr.getInputSequence();
+        if (input.getClass() != PathExpr.class || ((PathExpr) input).getLength() < 2) {
+            return null;
+        }
+        final PathExpr path = (PathExpr) input;
+        if (!isInvariantRoot(path.getExpression(0)) || !(path.getLastExpression() instanceof LocationStep)) {
+            return null;
+        }
+        final LocationStep step = (LocationStep) path.getLastExpression();
+        final List<Predicate> preds = step.getPredicates();
+        if (preds.isEmpty()) {
+            return null;
+        }
+        // only the last predicate can be removed without changing the context of the others
+        final Predicate joinPred = preds.get(preds.size() - 1);
+        if (joinPred.getLength() != 1) {
+            return null;
+        }
+        final Expression inner = simplifyPath(joinPred.getExpression(0));
+        if (inner.getClass() != GeneralComparison.class) {
+            return null;
+        }
+        final GeneralComparison comparison = (GeneralComparison) inner;
+        if (comparison.getRelation() != Constants.Comparison.EQ ||
+                comparison.getTruncation() != Constants.StringTruncationOperator.NONE ||
+                comparison.collationArg != null) {
+            return null;
+        }
+        final Expression key;
+        final Expression probe;
+        if (isProbe(comparison.getRight())) {
+            key = comparison.getLeft();
+            probe = comparison.getRight();
+        } else if (isProbe(comparison.getLeft())) {
+            key = comparison.getRight();
+            probe = comparison.getLeft();
+        } else {
+            return null;
+        }
+        if (!isInvariant(key) || Dependency.dependsOn(key, Dependency.CONTEXT_POSITION)) {
+            return null;
+        }
+        for (int i = 1; i < path.getLength() - 1; i++) {
+            if (!isInvariant(path.getExpression(i))) {
+                return null;
+            }
+        }
+        for (int i = 0; i < preds.size() - 1; i++) {
+            if (!isInvariant(preds.get(i))) {
+                return null;
+            }
+        }
+
+        preds.remove(joinPred);
+        final HashJoin join = new HashJoin(context, path, key, probe, comparison);
+        forExpr.setInputSequence(join);
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Rewritten for clause into hash join: " + ExpressionDumper.dump(join));
+        }
+        return join;
+    }
+
+    /**
+     * Check if the expression starting a path selects the same items in every iteration,
+     * i.e. the root node or a call to fn:collection or fn:doc with literal arguments,
+     * e.g. <code>collection('/db/data')</code>.
+     */
+    private boolean isInvariantRoot(Expression expr) {
+        if (expr instanceof RootNode) {
+            return true;
+        }
+        if (!(expr instanceof Function) || expr instanceof FunctionCall) {
+            return false;
+        }
+        final Function function = (Function) expr;
+        if (!Function.BUILTIN_FUNCTION_NS.equals(function.getSignature().getName().getNamespaceURI()) ||
+                !(function.isCalledAs("collection") || function.isCalledAs("doc")) ||
+                function.getArgumentCount() == 0) {
+            return false;
+        }
+        for (int i = 0; i < function.getArgumentCount(); i++) {
+            final InvariantVisitor visitor = new InvariantVisitor(false);
+            function.getArgument(i).accept(visitor);
+            if (!visitor.isInvariant()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if an operand of the join predicate is a variable or a path starting with a variable,
+     * e.g. <code>$a/@cust</code>.
+     */
+    private boolean isProbe(Expression expr) {
+        expr = simplifyPath(expr);
+        if (expr instanceof VariableReference) {
+            return true;
+        }
+        if (expr.getClass() != PathExpr.class) {
+            return false;
+        }
+        final PathExpr path = (PathExpr) expr;
+        if (!(path.getExpression(0) instanceof VariableReference)) {
+            return false;
+        }
+        for (int i = 1; i < path.getLength(); i++) {
+            if (!(path.getExpression(i) instanceof LocationStep)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isInvariant(Expression expr) {
+        final InvariantVisitor visitor = new InvariantVisitor(true);
+        expr.accept(visitor);
+        return visitor.isInvariant();
+    }
+
     /**
      * Check if a global variable can be inlined, usually if it
      * references a literal value or sequence thereof.
@@ -388,6 +709,118 @@ public class Optimizer extends DefaultExpressionVisitor {
         }
     }
 
+    /**
+     * Traverses an expression subtree to check if it returns the same result in every
+     * iteration of an enclosing for clause, given the same context. The expression must not
+     * reference any variables or call user-defined functions. Unknown expressions are
+     * not invariant.
+     */
+    static class InvariantVisitor extends DefaultExpressionVisitor {
+
+        private final boolean allowSteps;
+        private boolean invariant = true;
+
+        /**
+         * @param allowSteps false if the expression must not depend on the context either
+         */
+        InvariantVisitor(boolean allowSteps) {
+            this.allowSteps = allowSteps;
+        }
+
+        public boolean isInvariant() {
+            return invariant;
+        }
+
+        @Override
+        public void visit(Expression expr) {
+            if (expr instanceof LiteralValue) {
+                return;
+            }
+            if (expr instanceof RootNode && allowSteps) {
+                return;
+            }
+            if (expr instanceof Atomize ||
+                expr instanceof DynamicCardinalityCheck ||
+                expr instanceof DynamicNameCheck ||
+                expr instanceof DynamicTypeCheck ||
+                expr instanceof UntypedValueCheck) {
+                expr.accept(this);
+            } else {
+                invariant = false;
+            }
+        }
+
+        @Override
+        public void visitLocationStep(LocationStep locationStep) {
+            if (allowSteps) {
+                super.visitLocationStep(locationStep);
+            } else {
+                invariant = false;
+            }
+        }
+
+        @Override
+        public void visitPredicate(Predicate predicate) {
+            visitPathExpr(predicate);
+        }
+
+        @Override
+        public void visitFilteredExpr(FilteredExpression filtered) {
+            filtered.getExpression().accept(this);
+            for (final Predicate pred : filtered.getPredicates()) {
+                pred.accept(this);
+            }
+        }
+
+        @Override
+        public void visitGeneralComparison(GeneralComparison comparison) {
+            comparison.getLeft().accept(this);
+            comparison.getRight().accept(this);
+        }
+
+        @Override
+        public void visitAndExpr(OpAnd and) {
+            and.getLeft().accept(this);
+            and.getRight().accept(this);
+        }
+
+        @Override
+        public void visitOrExpr(OpOr or) {
+            or.getLeft().accept(this);
+            or.getRight().accept(this);
+        }
+
+        @Override
+        public void visitBuiltinFunction(Function function) {
+            if (allowSteps) {
+                super.visitBuiltinFunction(function);
+            } else {
+                // may depend on the context item
+                invariant = false;
+            }
+        }
+
+        @Override
+        public void visitUserFunction(UserDefinedFunction function) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitFunctionCall(FunctionCall call) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitCastExpr(CastExpression expression) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitVariableReference(VariableReference ref) {
+            invariant = false;
+        }
+    }
+
     /**
      * Traverses an expression subtree to check if it could be inlined.
      */
@@ -12,9 +12,17 @@ import java.util.Stack;
 
 /**
  * Represents an "order by" clause within a FLWOR expression.
+ *
+ * If a result limit has been passed on by the preceding clause, only the first items
+ * of the sorted result are kept. If {@link #PROPERTY_ORDER_BY_SPILL_THRESHOLD} is set,
+ * larger results are sorted in runs, which are written to temporary files and merged,
+ * see {@link OrderedValueSequence}.
  */
 public class OrderByClause extends AbstractFLWORClause {
 
+    public static final String ORDER_BY_SPILL_THRESHOLD_ATTRIBUTE = "order-by-spill-threshold";
+    public static final String PROPERTY_ORDER_BY_SPILL_THRESHOLD = "xquery.order-by-spill-threshold";
+
     protected OrderSpec[] orderSpecs = null;
 
     /*  OrderByClause needs to keep state between calls to eval and postEval. We thus need
@@ -30,6 +38,16 @@ public class OrderByClause extends AbstractFLWORClause {
         return orderSpecs;
     }
 
+    /**
+     * Replace an order spec, e.g. by one looking up the order key in an index.
+     *
+     * @param index the position of the order spec
+     * @param orderSpec the new order spec
+     */
+    public void replaceOrderSpec(final int index, final OrderSpec orderSpec) {
+        orderSpecs[index] = orderSpec;
+    }
+
     @Override
     public ClauseType getType() {
         return ClauseType.ORDERBY;
@@ -51,9 +69,10 @@ public class OrderByClause extends AbstractFLWORClause {
 
     @Override
     public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
+        final int limit = takeResultLimit();
         final OrderedValueSequence orderedResult;
         if (stack.isEmpty()) {
-            orderedResult = new OrderedValueSequence(orderSpecs, 100);
+            orderedResult = new OrderedValueSequence(orderSpecs, 100, limit, getSpillThreshold());
         } else {
             orderedResult = stack.pop();
         }
@@ -80,6 +99,11 @@ public class OrderByClause extends AbstractFLWORClause {
         return super.postEval(result);
     }
 
+    private int getSpillThreshold() {
+        final Integer threshold = context.getBroker().getConfiguration().getProperty(PROPERTY_ORDER_BY_SPILL_THRESHOLD, 0);
+        return threshold == null ? 0 : threshold;
+    }
+
     @Override
     public void dump(ExpressionDumper dumper) {
         dumper.display("order by ");
@@ -100,6 +124,7 @@ public class OrderByClause extends AbstractFLWORClause {
     public void resetState(boolean postOptimization) {
         super.resetState(postOptimization);
         returnExpr.resetState(postOptimization);
+        stack.forEach(OrderedValueSequence::close);
         stack.clear();
     }
 }
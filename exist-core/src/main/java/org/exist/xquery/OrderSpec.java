@@ -23,6 +23,7 @@ package org.exist.xquery;
 
 import com.ibm.icu.text.Collator;
 import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.AtomicValue;
 
 /**
  * An XQuery order specifier as specified in an "order by" clause.
@@ -70,6 +71,18 @@ public class OrderSpec {
 	public Collator getCollator() {
 		return collator == null ? context.getDefaultCollator() : collator;
 	}
+
+	/**
+	 * Compare two order keys, which are neither empty nor NaN.
+	 *
+	 * @param a the first order key
+	 * @param b the second order key
+	 * @return the result of the comparison, see {@link AtomicValue#compareTo(Collator, AtomicValue)}
+	 * @throws XPathException if the order keys cannot be compared
+	 */
+	public int compare(AtomicValue a, AtomicValue b) throws XPathException {
+		return a.compareTo(getCollator(), b);
+	}
 	
 	public String toString() {
 		final StringBuilder buf = new StringBuilder();
@@ -0,0 +1,433 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.dom.persistent.NewArrayNodeSet;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.security.PermissionDeniedException;
+import org.exist.security.Subject;
+import org.exist.source.Source;
+import org.exist.source.StringSource;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.xquery.value.*;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Evaluates the iterations of a {@link ForExpr} marked by the exist:parallel pragma
+ * on a shared fork/join pool.
+ *
+ * The expression tree of a query is bound to its {@link XQueryContext} and keeps state
+ * during evaluation, so it cannot be shared between threads. Instead, the input sequence
+ * is split into partitions, and each partition except the first is evaluated by a task
+ * on its own copy of the query, in a new context and with a broker of its own.
+ * The copy of the for expression is found by its position in the query, see {@link #register(ForExpr)}.
+ * The copies are compiled when they are first needed, and are reused by later evaluations
+ * of the same for expression until the query has finished, see {@link Copies}.
+ * The variables in scope, i.e. the global variables of the main module and the local variables
+ * of the enclosing expressions, are copied into the context of the copy, as is the dynamic
+ * date and time of the query. The first partition is evaluated by the calling thread,
+ * and the results are concatenated in the order of the input sequence.
+ *
+ * A task never waits for a broker, as the calling thread holds a broker whilst waiting for
+ * the tasks. If no broker is available, or the task has not started when the calling thread
+ * needs its result, the calling thread evaluates the partition itself.
+ *
+ * Global variables of imported modules are evaluated again by each copy of the query.
+ */
+final class ParallelFor {
+
+    private final static Logger LOG = LogManager.getLogger(ParallelFor.class);
+
+    private final static String ATTR_PARALLEL_FOR = "_eXist_parallel_for:";
+    private final static String ATTR_PARALLEL_FOR_COPIES = "_eXist_parallel_for_copies:";
+
+    // NOTE: at least two threads, so that the parallel evaluation is also used on a single processor
+    private final static ForkJoinPool POOL = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+            pool -> {
+                final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("exist-parallel-for-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+
+    /**
+     * The number of partitions which have been evaluated by the tasks.
+     */
+    private final static AtomicLong TASK_PARTITIONS = new AtomicLong();
+
+    private ParallelFor() {
+    }
+
+    /**
+     * Make a for expression known to its context, so that it can be found in a copy of the query.
+     *
+     * @param expr the for expression marked by the pragma
+     */
+    static void register(final ForExpr expr) {
+        expr.getContext().setAttribute(getKey(expr), expr);
+    }
+
+    /**
+     * Get the number of partitions which have been evaluated in parallel
+     * to the calling threads, i.e. not by the calling threads themselves.
+     *
+     * @return the number of partitions
+     */
+    static long getTaskPartitionCount() {
+        return TASK_PARTITIONS.get();
+    }
+
+    /**
+     * Check if the iterations of a for expression can be evaluated in parallel.
+     * The evaluation is sequential for small input sequences, for nested parallel
+     * for expressions, if the query cannot be compiled again, or if a variable in scope
+     * holds a function item, which is bound to the expression tree of the calling thread.
+     *
+     * @param expr the for expression
+     * @param in the input sequence
+     * @param closure the local variables in scope, or null
+     * @return true if the iterations can be evaluated in parallel
+     * @throws XPathException if the values of the variables cannot be iterated
+     */
+    static boolean canEvaluate(final ForExpr expr, final Sequence in, final List<ClosureVariable> closure) throws XPathException {
+        if (in.getItemCount() < 2 || ForkJoinTask.getPool() == POOL) {
+            return false;
+        }
+        final XQueryContext context = expr.getContext();
+        if (context.getSource() == null) {
+            return false;
+        }
+        if ((expr.getReturnExpression().getDependencies() & Dependency.CONTEXT_ITEM) != 0) {
+            return false;
+        }
+        if (closure != null) {
+            for (final ClosureVariable var : closure) {
+                if (holdsFunction(var.getValue())) {
+                    return false;
+                }
+            }
+        }
+        for (final Variable var : context.getGlobalVariables().values()) {
+            if (holdsFunction(var.getValue())) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Evaluating for expression at line " + expr.getLine() +
+                            " sequentially: variable $" + var.getQName() + " holds a function");
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluate the iterations of a for expression in parallel.
+     *
+     * @param expr the for expression
+     * @param in the input sequence
+     * @param closure the local variables in scope, or null
+     * @return the concatenated results of the iterations
+     * @throws XPathException if an iteration fails
+     */
+    static Sequence eval(final ForExpr expr, final Sequence in, final List<ClosureVariable> closure) throws XPathException {
+        final XQueryContext context = expr.getContext();
+        final Copies copies = getCopies(expr);
+        final DBBroker broker = context.getBroker();
+        final BrokerPool pool = broker.getBrokerPool();
+        final Subject subject = broker.getCurrentSubject();
+        // fn:current-dateTime() must return the same in every partition
+        final XMLGregorianCalendar calendar = context.getCalendar();
+        final TimeZone timeZone = context.getImplicitTimeZone();
+
+        final int size = in.getItemCount();
+        final int partitions = Math.min(size, POOL.getParallelism());
+        final List<Partition> tasks = new ArrayList<>(partitions - 1);
+        try {
+            for (int i = 1; i < partitions; i++) {
+                final int offset = getOffset(size, partitions, i);
+                final Partition partition = new Partition(getPartition(in, offset, getOffset(size, partitions, i + 1)), offset);
+                final List<ClosureVariable> locals = copyLocals(closure);
+                final List<Variable> globals = copyGlobals(context);
+                partition.task = POOL.submit(() ->
+                        evalPartition(pool, subject, copies, partition, locals, globals, calendar, timeZone));
+                tasks.add(partition);
+            }
+
+            final ValueSequence result = new ValueSequence(size);
+            result.addAll(expr.evalPartition(getPartition(in, 0, getOffset(size, partitions, 1)), 0));
+            for (final Partition partition : tasks) {
+                Sequence partitionResult = partition.claim() ? null : partition.task.get();
+                if (partitionResult == null) {
+                    // the task had not started yet, or did not get a broker
+                    partitionResult = expr.evalPartition(partition.items, partition.offset);
+                } else {
+                    TASK_PARTITIONS.incrementAndGet();
+                }
+                result.addAll(partitionResult);
+            }
+            return result;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XPathException(expr, "Interrupted while waiting for the parallel evaluation", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof XPathException) {
+                throw (XPathException) cause;
+            }
+            throw new XPathException(expr, "Parallel evaluation failed: " + cause.getMessage(), cause);
+        } finally {
+            for (final Partition partition : tasks) {
+                partition.claim();
+                partition.task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Evaluate a partition on a copy of the query.
+     *
+     * @return the result, or null if the partition has to be evaluated by the calling thread
+     */
+    private static Sequence evalPartition(final BrokerPool pool, final Subject subject, final Copies copies,
+            final Partition partition, final List<ClosureVariable> locals, final List<Variable> globals,
+            final XMLGregorianCalendar calendar, final TimeZone timeZone)
+            throws EXistException, PermissionDeniedException, IOException, XPathException {
+        if (!partition.claim()) {
+            return null;
+        }
+        final Optional<DBBroker> maybeBroker = pool.tryGet(Optional.of(subject));
+        if (!maybeBroker.isPresent()) {
+            LOG.debug("No broker available, the partition is evaluated by the calling thread");
+            return null;
+        }
+        try (final DBBroker broker = maybeBroker.get()) {
+            final ForExpr copy = copies.borrow(broker);
+            try {
+                final XQueryContext context = copy.getContext();
+                context.setCalendar(calendar);
+                context.setTimeZone(timeZone);
+                for (final Variable var : globals) {
+                    context.declareGlobalVariable(var);
+                }
+                final LocalVariable mark = context.markLocalVariables(false);
+                try {
+                    if (locals != null) {
+                        context.restoreStack(locals);
+                    }
+                    return copy.evalPartition(partition.items, partition.offset);
+                } finally {
+                    context.popLocalVariables(mark);
+                }
+            } finally {
+                copies.giveBack(copy);
+            }
+        }
+    }
+
+    /**
+     * Get the copies of the query for a for expression, which are kept until the query has finished.
+     */
+    private static Copies getCopies(final ForExpr expr) throws XPathException {
+        final XQueryContext context = expr.getContext();
+        final String key = ATTR_PARALLEL_FOR_COPIES + expr.getLine() + ':' + expr.getColumn();
+        Copies copies = (Copies) context.getAttribute(key);
+        if (copies == null) {
+            final Source source;
+            try {
+                // read the query once, the source may need the broker of the calling thread
+                source = new StringSource(context.getSource().getContent());
+            } catch (final IOException e) {
+                throw new XPathException(expr, "Failed to read the query for parallel evaluation: " + e.getMessage(), e);
+            }
+            final Copies newCopies = new Copies(context, source, getKey(expr));
+            context.setAttribute(key, newCopies);
+            context.registerCleanupTask((ctx, predicate) -> {
+                ctx.setAttribute(key, null);
+                newCopies.cleanup(predicate);
+            });
+            copies = newCopies;
+        }
+        return copies;
+    }
+
+    private static String getKey(final ForExpr expr) {
+        return ATTR_PARALLEL_FOR + expr.getLine() + ':' + expr.getColumn();
+    }
+
+    private static int getOffset(final int size, final int partitions, final int partition) {
+        return (int) ((long) size * partition / partitions);
+    }
+
+    private static Sequence getPartition(final Sequence in, final int start, final int end) {
+        final ValueSequence items = new ValueSequence(end - start);
+        for (int i = start; i < end; i++) {
+            items.add(in.itemAt(i));
+        }
+        return items;
+    }
+
+    private static boolean holdsFunction(final Sequence value) throws XPathException {
+        if (value == null || value.isEmpty()) {
+            return false;
+        }
+        final int itemType = value.getItemType();
+        if (Type.subTypeOf(itemType, Type.NODE) || Type.subTypeOf(itemType, Type.ANY_ATOMIC_TYPE)) {
+            return false;
+        }
+        for (final SequenceIterator i = value.iterate(); i.hasNext(); ) {
+            if (i.nextItem().getType() == Type.FUNCTION_REFERENCE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copy the values of the variables, which are modified when they are accessed,
+     * e.g. node sets which are sorted lazily, for use by another thread.
+     */
+    private static Sequence copyValue(final Sequence value) throws XPathException {
+        if (value instanceof NodeSet) {
+            final NewArrayNodeSet copy = new NewArrayNodeSet();
+            copy.addAll(value);
+            return copy;
+        } else if (value instanceof ValueSequence) {
+            return new ValueSequence(value);
+        }
+        return value;
+    }
+
+    private static List<ClosureVariable> copyLocals(final List<ClosureVariable> closure) throws XPathException {
+        if (closure == null) {
+            return null;
+        }
+        final List<ClosureVariable> copy = new ArrayList<>(closure.size());
+        for (final ClosureVariable var : closure) {
+            final ClosureVariable copied = new ClosureVariable(var);
+            copied.setValue(copyValue(var.getValue()));
+            copy.add(copied);
+        }
+        return copy;
+    }
+
+    private static List<Variable> copyGlobals(final XQueryContext context) throws XPathException {
+        final Collection<Variable> vars = context.getGlobalVariables().values();
+        final List<Variable> copy = new ArrayList<>(vars.size());
+        for (final Variable var : vars) {
+            if (var instanceof VariableImpl) {
+                final VariableImpl copied = new VariableImpl((VariableImpl) var);
+                copied.setValue(copyValue(var.getValue()));
+                copy.add(copied);
+            } else {
+                copy.add(var);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * A partition of the input sequence, which is evaluated either by its task,
+     * or by the calling thread, whichever claims it first.
+     */
+    private static final class Partition {
+        private final Sequence items;
+        private final int offset;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private ForkJoinTask<Sequence> task;
+
+        Partition(final Sequence items, final int offset) {
+            this.items = items;
+            this.offset = offset;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * The compiled copies of the query for a for expression, each given by the copy of the
+     * for expression in it. A copy is used by one task at a time, and is compiled only
+     * if all of the existing copies are in use.
+     */
+    private static final class Copies {
+        private final XQueryContext parent;
+        private final Source source;
+        private final String key;
+        private final Deque<ForExpr> idle = new ArrayDeque<>();
+        private final List<XQueryContext> contexts = new ArrayList<>();
+
+        Copies(final XQueryContext parent, final Source source, final String key) {
+            this.parent = parent;
+            this.source = source;
+            this.key = key;
+        }
+
+        ForExpr borrow(final DBBroker broker) throws PermissionDeniedException, IOException, XPathException {
+            synchronized (this) {
+                final ForExpr copy = idle.pollFirst();
+                if (copy != null) {
+                    return copy;
+                }
+            }
+
+            final XQueryContext context = new XQueryContext(broker.getBrokerPool());
+            synchronized (this) {
+                contexts.add(context);
+            }
+            context.setModuleLoadPath(parent.getModuleLoadPath());
+            context.setHttpContext(parent.getHttpContext());
+            // share the watchdog, so that the whole query can be terminated
+            context.setWatchDog(parent.getWatchDog());
+            broker.getBrokerPool().getXQueryService().compile(broker, context, source);
+
+            final Object expr = context.getAttribute(key);
+            if (!(expr instanceof ForExpr)) {
+                throw new XPathException("Parallel for expression not found in the copy of the query: " + key);
+            }
+            return (ForExpr) expr;
+        }
+
+        synchronized void giveBack(final ForExpr copy) {
+            idle.offerFirst(copy);
+        }
+
+        synchronized void cleanup(final Predicate<Object> predicate) {
+            for (final XQueryContext context : contexts) {
+                context.runCleanupTasks(predicate);
+            }
+            contexts.clear();
+            idle.clear();
+        }
+    }
+}
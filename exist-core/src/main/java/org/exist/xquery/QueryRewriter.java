@@ -48,6 +48,18 @@ public class QueryRewriter {
         return null;
     }
 
+    /**
+     * Rewrite an order spec of an order by clause to make use of indexes, e.g. to
+     * replace the order key with a key looked up in an index.
+     *
+     * @param orderSpec the order spec to rewrite
+     * @return the order spec to replace it with, or null if not applicable
+     * @throws XPathException in case of a static error
+     */
+    public OrderSpec rewriteOrderSpec(OrderSpec orderSpec) throws XPathException {
+        return null;
+    }
+
     protected XQueryContext getContext() {
         return context;
     }
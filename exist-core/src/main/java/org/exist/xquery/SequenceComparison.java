@@ -0,0 +1,367 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import com.ibm.icu.text.Collator;
+import it.unimi.dsi.fastutil.doubles.DoubleOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import org.exist.xquery.value.*;
+
+import javax.annotation.Nullable;
+
+/**
+ * Evaluates a {@link GeneralComparison} between two atomized sequences with many items,
+ * without comparing every item of the left sequence to every item of the right sequence.
+ *
+ * The values of both sequences are copied into primitive arrays, if all of them are
+ * integers which fit into a long, or integers of at most 2^53 and doubles, or into string arrays,
+ * if all of them are strings or untyped atomic values compared by codepoint.
+ * Equality is then tested by probing a hash set built from the smaller sequence,
+ * and the other comparisons by the minimum and maximum of each sequence, e.g.
+ * <code>$a &lt; $b</code> is true if the minimum of <code>$a</code> is less than the
+ * maximum of <code>$b</code>. Other types, which need casts or collations,
+ * are left to the item by item comparison.
+ */
+final class SequenceComparison {
+
+    /**
+     * The number of item comparisons below which the item by item comparison is used.
+     */
+    private static final int MIN_COMPARISONS = 64;
+
+    private static final int INTEGERS = 1;
+    private static final int DOUBLES = 2;
+    private static final int STRINGS = 4;
+    private static final int OTHER = 8;
+
+    /**
+     * The largest magnitude up to which every integer is exactly representable as a double.
+     */
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    private SequenceComparison() {
+    }
+
+    /**
+     * Compare two atomized sequences.
+     *
+     * @param relation the comparison operator
+     * @param collator the collator, null for codepoint comparison
+     * @param left the atomized left operand
+     * @param right the atomized right operand
+     * @return the result of the general comparison, or null if the sequences
+     *     have to be compared item by item
+     * @throws XPathException if the values cannot be read
+     */
+    static @Nullable Boolean compare(final Comparison relation, @Nullable final Collator collator,
+            final Sequence left, final Sequence right) throws XPathException {
+        final int leftCount = left.getItemCount();
+        final int rightCount = right.getItemCount();
+        if (leftCount < 2 || rightCount < 2 || (long) leftCount * rightCount < MIN_COMPARISONS) {
+            return null;
+        }
+        final int kinds = getKinds(left, collator) | getKinds(right, collator);
+        if ((kinds & OTHER) != 0) {
+            return null;
+        }
+        if (kinds == INTEGERS) {
+            return compareLongs(relation, toLongs(left), toLongs(right));
+        } else if ((kinds & STRINGS) == 0) {
+            if (hasInexactDouble(left) || hasInexactDouble(right)) {
+                // integers compared to each other would lose precision as doubles
+                return null;
+            }
+            return compareDoubles(relation, toDoubles(left), toDoubles(right));
+        } else if (kinds == STRINGS) {
+            return compareStrings(relation, toStrings(left), toStrings(right));
+        }
+        // numbers and strings, which need casts
+        return null;
+    }
+
+    private static int getKinds(final Sequence seq, @Nullable final Collator collator) {
+        int kinds = 0;
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            final Item item = i.nextItem();
+            final int type = item.getType();
+            if (item instanceof IntegerValue && ((IntegerValue) item).fitsInLong()) {
+                kinds |= INTEGERS;
+            } else if (type == Type.DOUBLE) {
+                kinds |= DOUBLES;
+            } else if (collator == null && (Type.subTypeOf(type, Type.STRING) || type == Type.UNTYPED_ATOMIC)) {
+                kinds |= STRINGS;
+            } else {
+                return OTHER;
+            }
+        }
+        return kinds;
+    }
+
+    private static boolean hasInexactDouble(final Sequence seq) {
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            final Item item = i.nextItem();
+            if (item instanceof IntegerValue) {
+                final long value = ((IntegerValue) item).getLong();
+                if (value > MAX_EXACT_DOUBLE || value < -MAX_EXACT_DOUBLE) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static long[] toLongs(final Sequence seq) {
+        final long[] values = new long[seq.getItemCount()];
+        int n = 0;
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            values[n++] = ((IntegerValue) i.nextItem()).getLong();
+        }
+        return values;
+    }
+
+    private static double[] toDoubles(final Sequence seq) throws XPathException {
+        final double[] values = new double[seq.getItemCount()];
+        int n = 0;
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            // integers are promoted to xs:double when compared to a double
+            values[n++] = ((NumericValue) i.nextItem()).getDouble();
+        }
+        return values;
+    }
+
+    private static String[] toStrings(final Sequence seq) throws XPathException {
+        final String[] values = new String[seq.getItemCount()];
+        int n = 0;
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            values[n++] = i.nextItem().getStringValue();
+        }
+        return values;
+    }
+
+    private static boolean compareLongs(final Comparison relation, final long[] left, final long[] right) {
+        switch (relation) {
+            case EQ: {
+                final boolean leftSmaller = left.length <= right.length;
+                final LongOpenHashSet set = new LongOpenHashSet(leftSmaller ? left : right);
+                for (final long value : leftSmaller ? right : left) {
+                    if (set.contains(value)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            case NEQ: {
+                // true unless all values are the same
+                final long first = left[0];
+                return !(allEqual(left, first) && allEqual(right, first));
+            }
+            case LT:
+                return min(left) < max(right);
+            case LTEQ:
+                return min(left) <= max(right);
+            case GT:
+                return max(left) > min(right);
+            case GTEQ:
+                return max(left) >= min(right);
+            default:
+                throw new IllegalArgumentException("Unsupported comparison: " + relation);
+        }
+    }
+
+    private static boolean compareDoubles(final Comparison relation, final double[] left, final double[] right) {
+        switch (relation) {
+            case EQ: {
+                final boolean leftSmaller = left.length <= right.length;
+                final DoubleOpenHashSet set = new DoubleOpenHashSet(leftSmaller ? left.length : right.length);
+                for (final double value : leftSmaller ? left : right) {
+                    // NaN is not equal to anything
+                    if (!Double.isNaN(value)) {
+                        set.add(normalize(value));
+                    }
+                }
+                for (final double value : leftSmaller ? right : left) {
+                    if (!Double.isNaN(value) && set.contains(normalize(value))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            case NEQ: {
+                // NaN is not equal to anything, otherwise true unless all values are the same
+                if (hasNaN(left) || hasNaN(right)) {
+                    return true;
+                }
+                final double first = left[0];
+                return !(allEqual(left, first) && allEqual(right, first));
+            }
+            case LT:
+                return min(left) < max(right);
+            case LTEQ:
+                return min(left) <= max(right);
+            case GT:
+                return max(left) > min(right);
+            case GTEQ:
+                return max(left) >= min(right);
+            default:
+                throw new IllegalArgumentException("Unsupported comparison: " + relation);
+        }
+    }
+
+    private static boolean compareStrings(final Comparison relation, final String[] left, final String[] right) {
+        switch (relation) {
+            case EQ: {
+                final boolean leftSmaller = left.length <= right.length;
+                final ObjectOpenHashSet<String> set = new ObjectOpenHashSet<>(leftSmaller ? left : right);
+                for (final String value : leftSmaller ? right : left) {
+                    if (set.contains(value)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            case NEQ: {
+                final String first = left[0];
+                return !(allEqual(left, first) && allEqual(right, first));
+            }
+            case LT:
+                return min(left).compareTo(max(right)) < 0;
+            case LTEQ:
+                return min(left).compareTo(max(right)) <= 0;
+            case GT:
+                return max(left).compareTo(min(right)) > 0;
+            case GTEQ:
+                return max(left).compareTo(min(right)) >= 0;
+            default:
+                throw new IllegalArgumentException("Unsupported comparison: " + relation);
+        }
+    }
+
+    /**
+     * Map -0.0 to 0.0, which are equal, but hashed differently.
+     */
+    private static double normalize(final double value) {
+        return value == 0.0 ? 0.0 : value;
+    }
+
+    private static boolean hasNaN(final double[] values) {
+        for (final double value : values) {
+            if (Double.isNaN(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean allEqual(final long[] values, final long value) {
+        for (final long v : values) {
+            if (v != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean allEqual(final double[] values, final double value) {
+        for (final double v : values) {
+            if (v != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean allEqual(final String[] values, final String value) {
+        for (final String v : values) {
+            if (!v.equals(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long min(final long[] values) {
+        long min = Long.MAX_VALUE;
+        for (final long value : values) {
+            if (value < min) {
+                min = value;
+            }
+        }
+        return min;
+    }
+
+    private static long max(final long[] values) {
+        long max = Long.MIN_VALUE;
+        for (final long value : values) {
+            if (value > max) {
+                max = value;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * The minimum of the values, ignoring NaN, which compares false to anything.
+     * NaN if all values are NaN.
+     */
+    private static double min(final double[] values) {
+        double min = Double.NaN;
+        for (final double value : values) {
+            if (value < min || Double.isNaN(min)) {
+                min = value;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * The maximum of the values, ignoring NaN, which compares false to anything.
+     * NaN if all values are NaN.
+     */
+    private static double max(final double[] values) {
+        double max = Double.NaN;
+        for (final double value : values) {
+            if (value > max || Double.isNaN(max)) {
+                max = value;
+            }
+        }
+        return max;
+    }
+
+    private static String min(final String[] values) {
+        String min = values[0];
+        for (final String value : values) {
+            if (value.compareTo(min) < 0) {
+                min = value;
+            }
+        }
+        return min;
+    }
+
+    private static String max(final String[] values) {
+        String max = values[0];
+        for (final String value : values) {
+            if (value.compareTo(max) > 0) {
+                max = value;
+            }
+        }
+        return max;
+    }
+}
@@ -148,7 +148,10 @@ public class TryCatchExpression extends AbstractExpression {
             final Sequence tryTargetSeq = tryTargetExpr.eval(contextSequence, contextItem);
             return tryTargetSeq;
 
-        } catch (final Throwable throwable) { 
+        } catch (final Throwable t) {
+
+            // errors raised whilst a lazy sequence was iterated
+            final Throwable throwable = t instanceof XPathRuntimeException ? t.getCause() : t;
 
             final ErrorCode errorCode;
 
@@ -229,7 +232,7 @@ public class TryCatchExpression extends AbstractExpression {
                 // If an error hasn't been caught, throw new one
                 if (!errorMatched) {
                     if (throwable instanceof XPathException) {
-                        throw throwable;
+                        throw (XPathException) throwable;
                     } else {
                         LOG.error(throwable);
                         throw new XPathException(throwable);
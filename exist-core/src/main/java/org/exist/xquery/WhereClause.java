@@ -103,7 +103,9 @@ public class WhereClause extends AbstractFLWORClause {
 
     @Override
     public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
+        final int limit = takeResultLimit();
         if (applyWhereExpression()) {
+            limitReturnExpression(limit);
             return returnExpr.eval(null);
         }
         return Sequence.EMPTY_SEQUENCE;
@@ -0,0 +1,40 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+/**
+ * Wraps an {@link XPathException} which is raised whilst a lazily evaluated
+ * sequence is iterated, as {@link org.exist.xquery.value.SequenceIterator#nextItem()}
+ * cannot throw a checked exception. It is unwrapped again by try/catch expressions
+ * and by {@link XQuery#execute}, so that the error can be caught by its code.
+ */
+public class XPathRuntimeException extends RuntimeException {
+
+    private static final long serialVersionUID = -3419862317203471512L;
+
+    public XPathRuntimeException(final XPathException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized XPathException getCause() {
+        return (XPathException) super.getCause();
+    }
+}
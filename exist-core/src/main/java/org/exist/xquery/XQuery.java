@@ -42,6 +42,7 @@ import org.exist.source.FileSource;
 import org.exist.source.Source;
 import org.exist.source.StringSource;
 import org.exist.storage.DBBroker;
+import org.exist.storage.XQueryPool;
 import org.exist.xquery.parser.XQueryLexer;
 import org.exist.xquery.parser.XQueryParser;
 import org.exist.xquery.parser.XQueryTreeParser;
@@ -100,6 +101,11 @@ public class XQuery {
     	 */
     	
     	final long start = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        final XQueryPool queryPool = broker.getBrokerPool().getXQueryPool();
+        // any module which is modified from now on may already have been read by the compiler
+        context.setCompiledAt(queryPool.getModificationCount());
+        boolean compiled = false;
         final XQueryLexer lexer = new XQueryLexer(context, reader);
         final XQueryParser parser = new XQueryParser(lexer);
         final XQueryTreeParser treeParser = new XQueryTreeParser(context);
@@ -150,7 +156,8 @@ public class XQuery {
             	final NumberFormat nf = NumberFormat.getNumberInstance();
             	LOG.debug("Compilation took "  +  nf.format(System.currentTimeMillis() - start) + " ms");
             }
-            
+
+            compiled = true;
             return expr;
         } catch(final RecognitionException e) {
             LOG.debug("Error compiling query: " + e.getMessage(), e);
@@ -172,6 +179,8 @@ public class XQuery {
                 throw new StaticXQueryException(e.getMessage(), e);
             }
             
+        } finally {
+            queryPool.recordCompile(System.nanoTime() - startNanos, compiled);
         }
     }
     
@@ -258,7 +267,12 @@ public class XQuery {
                     }
                 }
 
-                final Sequence result = expression.eval(contextSequence);
+                final Sequence result;
+                try {
+                    result = expression.eval(contextSequence);
+                } catch (final XPathRuntimeException e) {
+                    throw e.getCause();
+                }
                 if(LOG.isDebugEnabled()) {
                     final NumberFormat nf = NumberFormat.getNumberInstance();
                     LOG.debug("Execution took "  +  nf.format(System.currentTimeMillis() - start) + " ms");
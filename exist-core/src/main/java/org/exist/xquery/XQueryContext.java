@@ -31,8 +31,6 @@ import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import javax.annotation.Nullable;
 import javax.xml.datatype.DatatypeConfigurationException;
@@ -177,26 +175,22 @@ public class XQueryContext implements BinaryValueManager, Context {
 
     private Deque<LocalVariable> contextStack = new ArrayDeque<>();
 
-    private Deque<FunctionSignature> callStack = new ArrayDeque<>();
-
     // The current size of the variable stack
     private int variableStackSize = 0;
 
     // Unresolved references to user defined functions
     private Deque<FunctionCall> forwardReferences = new ArrayDeque<>();
 
-    // Inline functions using closures need to be cleared after execution
-    private Deque<UserDefinedFunction> closures = new ArrayDeque<>();
-
     // List of options declared for this query at compile time - i.e. declare option
     private List<Option> staticOptions = null;
 
     // List of options declared for this query at run time - i.e. util:declare-option()
     private List<Option> dynamicOptions = null;
 
-    //The Calendar for this context : may be changed by some options
-    private XMLGregorianCalendar calendar = null;
-    private TimeZone implicitTimeZone = null;
+    /**
+     * The state of the current execution, replaced on {@link #reset(boolean)}.
+     */
+    private DynamicContext dynamic = new DynamicContext();
 
     /**
      * the watchdog object assigned to this query.
@@ -213,6 +207,12 @@ public class XQueryContext implements BinaryValueManager, Context {
      */
     private Map<String, Module> allModules = new HashMap<>();
 
+    /**
+     * Snapshot of {@link #allModules}, built once the modules of the query are known
+     * and reused by every execution of the cached query.
+     */
+    private ModuleSnapshot moduleSnapshot = null;
+
     /**
      * Used to save current state when modules are imported dynamically
      */
@@ -307,28 +307,11 @@ public class XQueryContext implements BinaryValueManager, Context {
      */
     private ContextItemDeclaration contextItemDeclaration = null;
 
-    /**
-     * The context item set in the query prolog or externally
-     */
-    private Sequence contextItem = Sequence.EMPTY_SEQUENCE;
-
-    /**
-     * The position of the currently processed item in the context sequence. This field has to be set on demand, for example, before calling the
-     * fn:position() function.
-     */
-    private int contextPosition = 0;
-    private Sequence contextSequence = null;
-
     /**
      * Shared name pool used by all in-memory documents constructed in this query context.
      */
     private NamePool sharedNamePool = null;
 
-    /**
-     * Stack for temporary document fragments.
-     */
-    private Deque<MemTreeBuilder> fragmentStack = new ArrayDeque<>();
-
     /**
      * The root of the expression tree.
      */
@@ -339,6 +322,12 @@ public class XQueryContext implements BinaryValueManager, Context {
      */
     private int expressionCounter = 0;
 
+    /**
+     * The modification count of the XQuery pool when the compilation of the XQuery started,
+     * see {@link org.exist.storage.XQueryPool#getModificationCount()}. It is kept when the context is reset.
+     */
+    private long compiledAt = -1;
+
 //    /**
 //     * Should all documents loaded by the query be locked? If set to true, it is the responsibility of the calling client code to unlock documents
 //     * after the query has completed.
@@ -350,8 +339,6 @@ public class XQueryContext implements BinaryValueManager, Context {
 //     */
 //  private LockedDocumentMap lockedDocuments = null;
 
-    private LockedDocumentMap protectedDocuments = null;
-
     /**
      * The profiler instance used by this context.
      */
@@ -378,21 +365,6 @@ public class XQueryContext implements BinaryValueManager, Context {
 
     private boolean analyzed = false;
 
-    /**
-     * The Subject of the User that requested the execution of the XQuery
-     * attached by this Context. This is not the same as the Effective User
-     * as we may be executed setUid or setGid. The Effective User can be retrieved
-     * through broker.getCurrentSubject()
-     */
-    private Subject realUser;
-
-    /**
-     * Indicates whether a user from a http session
-     * was pushed onto the current broker from {@link XQueryContext#prepareForExecution()},
-     * if so then we must pop the user in {@link XQueryContext#reset(boolean)}
-     */
-    private boolean pushedUserFromHttpSession = false;
-
     /**
      * The HTTP context within which the XQuery
      * is executing, or null if there is no
@@ -511,14 +483,8 @@ public class XQueryContext implements BinaryValueManager, Context {
      */
     public void prepareForReuse() throws XPathException {
         // prepare the variables of the internal modules (which were previously reset)
-        try (final Stream<InternalModule> internalModules = allModules
-                .values()
-                .stream()
-                .filter(module -> module instanceof InternalModule)
-                .map(module -> (InternalModule) module)) {
-            for (final InternalModule internalModule : internalModules.collect(Collectors.toList())) {
-                internalModule.prepare(this);
-            }
+        for (final InternalModule internalModule : getModuleSnapshot().preparedModules) {
+            internalModule.prepare(this);
         }
     }
 
@@ -554,6 +520,7 @@ public class XQueryContext implements BinaryValueManager, Context {
         this.updateListener = from.updateListener;
         this.modules = from.modules;
         this.allModules = from.allModules;
+        this.moduleSnapshot = null;
         this.mappedModules = from.mappedModules;
         this.dynamicOptions = from.dynamicOptions;
         this.staticOptions = from.staticOptions;
@@ -562,8 +529,8 @@ public class XQueryContext implements BinaryValueManager, Context {
     }
 
     protected void copyFields(final XQueryContext ctx) {
-        ctx.calendar = this.calendar;
-        ctx.implicitTimeZone = this.implicitTimeZone;
+        ctx.dynamic.calendar = dynamic.calendar;
+        ctx.dynamic.implicitTimeZone = dynamic.implicitTimeZone;
         ctx.baseURI = this.baseURI;
         ctx.baseURISetInProlog = this.baseURISetInProlog;
         ctx.staticDocumentPaths = this.staticDocumentPaths;
@@ -637,7 +604,7 @@ public class XQueryContext implements BinaryValueManager, Context {
         final Subject user = getUserFromHttpSession();
         if (user != null) {
             getBroker().pushSubject(user);      //this will be popped in {@link XQueryContext#reset(boolean)}
-            this.pushedUserFromHttpSession = true;
+            dynamic.pushedUserFromHttpSession = true;
         }
 
         setRealUser(getBroker().getCurrentSubject());   //this will be unset in {@link XQueryContext#reset(boolean)}
@@ -648,7 +615,7 @@ public class XQueryContext implements BinaryValueManager, Context {
     }
 
     public void setContextItem(final Sequence contextItem) {
-        this.contextItem = contextItem;
+        dynamic.contextItem = contextItem;
     }
 
     public void setContextItemDeclaration(final ContextItemDeclaration contextItemDeclaration) {
@@ -660,7 +627,7 @@ public class XQueryContext implements BinaryValueManager, Context {
     }
 
     public Sequence getContextItem() {
-        return contextItem;
+        return dynamic.contextItem;
     }
 
     @Override
@@ -703,6 +670,18 @@ public class XQueryContext implements BinaryValueManager, Context {
         return expressionCounter;
     }
 
+    public void setCompiledAt(final long compiledAt) {
+        this.compiledAt = compiledAt;
+    }
+
+    /**
+     * @return the modification count of the XQuery pool when the compilation
+     *     of the XQuery started, or -1 if it has not been compiled
+     */
+    public long getCompiledAt() {
+        return compiledAt;
+    }
+
     @Override
     public void declareNamespace(String prefix, String uri) throws XPathException {
         if (prefix == null) {
@@ -1037,42 +1016,42 @@ public class XQueryContext implements BinaryValueManager, Context {
 
     @Override
     public void setCalendar(final XMLGregorianCalendar newCalendar) {
-        this.calendar = (XMLGregorianCalendar) newCalendar.clone();
+        dynamic.calendar = (XMLGregorianCalendar) newCalendar.clone();
     }
 
     @Override
     public void setTimeZone(final TimeZone newTimeZone) {
-        this.implicitTimeZone = newTimeZone;
+        dynamic.implicitTimeZone = newTimeZone;
     }
 
     @Override
     public XMLGregorianCalendar getCalendar() {
         //TODO : we might prefer to return null
-        if (calendar == null) {
+        if (dynamic.calendar == null) {
             try {
                 //Initialize to current dateTime
-                calendar = DatatypeFactory.newInstance().newXMLGregorianCalendar(new GregorianCalendar());
+                dynamic.calendar = DatatypeFactory.newInstance().newXMLGregorianCalendar(new GregorianCalendar());
             } catch (final DatatypeConfigurationException e) {
                 LOG.error(e.getMessage(), e);
             }
         }
 
         //That's how we ensure stability of that static context function
-        return calendar;
+        return dynamic.calendar;
     }
 
     @Override
     public TimeZone getImplicitTimeZone() {
-        if (implicitTimeZone == null) {
-            implicitTimeZone = TimeZone.getDefault();
+        if (dynamic.implicitTimeZone == null) {
+            dynamic.implicitTimeZone = TimeZone.getDefault();
 
-            if (implicitTimeZone.inDaylightTime(new Date())) {
-                implicitTimeZone.setRawOffset(implicitTimeZone.getRawOffset() + implicitTimeZone.getDSTSavings());
+            if (dynamic.implicitTimeZone.inDaylightTime(new Date())) {
+                dynamic.implicitTimeZone.setRawOffset(dynamic.implicitTimeZone.getRawOffset() + dynamic.implicitTimeZone.getDSTSavings());
             }
         }
 
         //That's how we ensure stability of that static context function
-        return this.implicitTimeZone;
+        return dynamic.implicitTimeZone;
     }
 
     @Override
@@ -1083,8 +1062,8 @@ public class XQueryContext implements BinaryValueManager, Context {
             return staticDocuments;
         }
 
-        if (protectedDocuments != null) {
-            staticDocuments = protectedDocuments.toDocumentSet();
+        if (dynamic.protectedDocuments != null) {
+            staticDocuments = dynamic.protectedDocuments.toDocumentSet();
             return staticDocuments;
         }
         final MutableDocumentSet ndocs = new DefaultDocumentSet(40);
@@ -1220,17 +1199,17 @@ public class XQueryContext implements BinaryValueManager, Context {
 
     @Override
     public void setProtectedDocs(final LockedDocumentMap map) {
-        this.protectedDocuments = map;
+        dynamic.protectedDocuments = map;
     }
 
     @Override
     public LockedDocumentMap getProtectedDocs() {
-        return this.protectedDocuments;
+        return dynamic.protectedDocuments;
     }
 
     @Override
     public boolean inProtectedMode() {
-        return protectedDocuments != null;
+        return dynamic.protectedDocuments != null;
     }
 
     @Override
@@ -1334,13 +1313,11 @@ public class XQueryContext implements BinaryValueManager, Context {
 
     @Override
     public void reset(final boolean keepGlobals) {
-        setRealUser(null);
-
-        if (this.pushedUserFromHttpSession) {
+        if (dynamic.pushedUserFromHttpSession) {
             try {
                 getBroker().popSubject();
             } finally {
-                this.pushedUserFromHttpSession = false;
+                dynamic.pushedUserFromHttpSession = false;
             }
         }
 
@@ -1353,14 +1330,8 @@ public class XQueryContext implements BinaryValueManager, Context {
             modifiedDocuments = null;
         }
 
-        calendar = null;
-        implicitTimeZone = null;
-
         resetDocumentBuilder();
 
-        contextSequence = null;
-        contextItem = Sequence.EMPTY_SEQUENCE;
-
         if (!keepGlobals) {
             // do not reset the statically known documents
             staticDocumentPaths = null;
@@ -1375,12 +1346,12 @@ public class XQueryContext implements BinaryValueManager, Context {
         }
 
         // clear inline functions using closures
-        closures.forEach(func -> func.setClosureVariables(null));
-        closures.clear();
+        for (final UserDefinedFunction func : dynamic.closures) {
+            func.setClosureVariables(null);
+        }
 
-        fragmentStack = new ArrayDeque<>();
-        callStack.clear();
-        protectedDocuments = null;
+        // the rest of the per-execution state is simply dropped
+        dynamic = new DynamicContext();
 
         if (!keepGlobals) {
             globalVariables.clear();
@@ -1394,7 +1365,7 @@ public class XQueryContext implements BinaryValueManager, Context {
             watchdog.reset();
         }
 
-        for (final Module module : allModules.values()) {
+        for (final Module module : getModuleSnapshot().modules) {
             module.reset(this, keepGlobals);
         }
 
@@ -1494,6 +1465,7 @@ public class XQueryContext implements BinaryValueManager, Context {
     }
 
     protected void setRootModule(final String namespaceURI, final Module module) {
+        moduleSnapshot = null;
         if (module == null) {
             allModules.remove(namespaceURI); // unbind the module
             return;
@@ -1505,13 +1477,27 @@ public class XQueryContext implements BinaryValueManager, Context {
         allModules.put(namespaceURI, module);
     }
 
+    /**
+     * Get the modules of the query, as they were when the query was compiled.
+     *
+     * @return the snapshot of {@link #allModules}
+     */
+    private ModuleSnapshot getModuleSnapshot() {
+        ModuleSnapshot snapshot = moduleSnapshot;
+        if (snapshot == null || !snapshot.isSnapshotOf(allModules)) {
+            snapshot = new ModuleSnapshot(allModules);
+            moduleSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
     protected void setModulesChanged() {
         this.modulesChanged = true;
     }
 
     @Override
     public boolean checkModulesValid() {
-        for (final Module module : allModules.values()) {
+        for (final Module module : getModuleSnapshot().modules) {
             if (!module.isInternalModule()) {
                 if (!((ExternalModule) module).moduleIsValid(getBroker())) {
                     if (LOG.isDebugEnabled()) {
@@ -1618,6 +1604,7 @@ public class XQueryContext implements BinaryValueManager, Context {
 
             modules.put(module.getNamespaceURI(), module);
             allModules.put(module.getNamespaceURI(), module);
+            moduleSnapshot = null;
 
             if (module instanceof InternalModule) {
                 ((InternalModule) module).prepare(this);
@@ -2079,17 +2066,17 @@ public class XQueryContext implements BinaryValueManager, Context {
     @Override
     public void pushDocumentContext() {
         if (documentBuilder == null) {
-            fragmentStack.push(NULL_DOCUMENT_BUILDER);
+            dynamic.fragmentStack.push(NULL_DOCUMENT_BUILDER);
         } else {
-            fragmentStack.push(documentBuilder);
+            dynamic.fragmentStack.push(documentBuilder);
             resetDocumentBuilder();
         }
     }
 
     @Override
     public void popDocumentContext() {
-        if (!fragmentStack.isEmpty()) {
-            final MemTreeBuilder prevBuilder = fragmentStack.pop();
+        if (!dynamic.fragmentStack.isEmpty()) {
+            final MemTreeBuilder prevBuilder = dynamic.fragmentStack.pop();
             if (prevBuilder == NULL_DOCUMENT_BUILDER) {
                 setDocumentBuilder(null);
             } else {
@@ -2155,18 +2142,18 @@ public class XQueryContext implements BinaryValueManager, Context {
 
     @Override
     public void setContextSequencePosition(final int pos, final Sequence sequence) {
-        contextPosition = pos;
-        contextSequence = sequence;
+        dynamic.contextPosition = pos;
+        dynamic.contextSequence = sequence;
     }
 
     @Override
     public int getContextPosition() {
-        return contextPosition;
+        return dynamic.contextPosition;
     }
 
     @Override
     public Sequence getContextSequence() {
-        return contextSequence;
+        return dynamic.contextSequence;
     }
 
     @Override
@@ -2273,7 +2260,7 @@ public class XQueryContext implements BinaryValueManager, Context {
      * @param func an inline function definition using closure variables
      */
     void pushClosure(final UserDefinedFunction func) {
-        closures.add(func);
+        dynamic.closures.add(func);
     }
 
     @Override
@@ -2283,22 +2270,22 @@ public class XQueryContext implements BinaryValueManager, Context {
 
     @Override
     public void functionStart(final FunctionSignature signature) {
-        callStack.push(signature);
+        dynamic.callStack.push(signature);
     }
 
     @Override
     public void functionEnd() {
-        if (callStack.isEmpty()) {
+        if (dynamic.callStack.isEmpty()) {
             LOG.warn("Function call stack is empty, but XQueryContext.functionEnd() was called. This "
                     + "could indicate a concurrency issue (shared XQueryContext?)");
         } else {
-            callStack.pop();
+            dynamic.callStack.pop();
         }
     }
 
     @Override
     public boolean tailRecursiveCall(final FunctionSignature signature) {
-        return callStack.contains(signature);
+        return dynamic.callStack.contains(signature);
     }
 
     @Override
@@ -2634,11 +2621,11 @@ public class XQueryContext implements BinaryValueManager, Context {
      * @see org.exist.xquery.XQueryContext#getEffectiveUser()
      */
     public Subject getRealUser() {
-        return realUser;
+        return dynamic.realUser;
     }
 
     private void setRealUser(final Subject realUser) {
-        this.realUser = realUser;
+        dynamic.realUser = realUser;
     }
 
     /**
@@ -2690,6 +2677,7 @@ public class XQueryContext implements BinaryValueManager, Context {
                 modulesSaved = null;
                 allModules = allModulesSaved;
                 allModulesSaved = null;
+                moduleSnapshot = null;
                 staticNamespaces = staticNamespacesSaved;
                 staticNamespacesSaved = null;
                 staticPrefixes = staticPrefixesSaved;
@@ -2698,6 +2686,91 @@ public class XQueryContext implements BinaryValueManager, Context {
         }
     }
 
+    /**
+     * The modules of a query, which do not change between executions of the
+     * compiled query. Resetting and preparing the modules for the next execution
+     * iterates over plain arrays, and skips the internal modules which do not
+     * declare any variables in {@link InternalModule#prepare(XQueryContext)}.
+     */
+    @Immutable
+    private static final class ModuleSnapshot {
+        private static final ClassValue<Boolean> OVERRIDES_PREPARE = new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue(final Class<?> type) {
+                try {
+                    return type.getMethod("prepare", XQueryContext.class).getDeclaringClass() != InternalModule.class;
+                } catch (final NoSuchMethodException e) {
+                    return true;
+                }
+            }
+        };
+
+        private final Map<String, Module> source;
+        private final int size;
+        private final Module[] modules;
+        private final InternalModule[] preparedModules;
+
+        ModuleSnapshot(final Map<String, Module> allModules) {
+            this.source = allModules;
+            this.size = allModules.size();
+            this.modules = allModules.values().toArray(new Module[0]);
+            final List<InternalModule> prepared = new ArrayList<>();
+            for (final Module module : modules) {
+                if (module instanceof InternalModule && OVERRIDES_PREPARE.get(module.getClass())) {
+                    prepared.add((InternalModule) module);
+                }
+            }
+            this.preparedModules = prepared.toArray(new InternalModule[0]);
+        }
+
+        /**
+         * Modules may also be added through another context sharing the map,
+         * see {@link XQueryContext#updateContext(XQueryContext)}.
+         */
+        boolean isSnapshotOf(final Map<String, Module> allModules) {
+            return allModules == source && allModules.size() == size;
+        }
+    }
+
+    /**
+     * The state of a single execution of the query. Everything else in the context
+     * is either static, i.e. set up when the query is compiled and kept while it is
+     * cached, or cleared explicitly by {@link XQueryContext#reset(boolean)}. Resetting
+     * the context for the next execution just replaces this object.
+     */
+    private static final class DynamicContext {
+        // the Calendar and implicit timezone : may be changed by some options
+        private XMLGregorianCalendar calendar = null;
+        private TimeZone implicitTimeZone = null;
+
+        // the context item set in the query prolog or externally
+        private Sequence contextItem = Sequence.EMPTY_SEQUENCE;
+
+        // the position of the currently processed item in the context sequence. This field has to be set on demand,
+        // for example, before calling the fn:position() function.
+        private int contextPosition = 0;
+        private Sequence contextSequence = null;
+
+        // stack for temporary document fragments
+        private final Deque<MemTreeBuilder> fragmentStack = new ArrayDeque<>();
+
+        // inline functions using closures need to be cleared after execution
+        private final Deque<UserDefinedFunction> closures = new ArrayDeque<>();
+
+        private final Deque<FunctionSignature> callStack = new ArrayDeque<>();
+
+        private LockedDocumentMap protectedDocuments = null;
+
+        // The Subject of the User that requested the execution of the XQuery attached by this Context.
+        // This is not the same as the Effective User as we may be executed setUid or setGid.
+        // The Effective User can be retrieved through broker.getCurrentSubject()
+        private Subject realUser = null;
+
+        // Indicates whether a user from a http session was pushed onto the current broker from
+        // XQueryContext#prepareForExecution(), if so then we must pop the user in XQueryContext#reset(boolean)
+        private boolean pushedUserFromHttpSession = false;
+    }
+
     /**
      * Before a dynamic import, make sure relevant parts of the current context a saved
      * to the stack. This is important for util:import-module. The context will be restored
@@ -2773,12 +2846,12 @@ public class XQueryContext implements BinaryValueManager, Context {
         else if (Option.OPTIMIZE_IMPLICIT_TIMEZONE.compareTo(qn) == 0) {
             //TODO : error check
             final Duration duration = TimeUtils.getInstance().newDuration(option.getContents());
-            implicitTimeZone = new SimpleTimeZone((int) duration.getTimeInMillis(new Date()), "XQuery context");
+            dynamic.implicitTimeZone = new SimpleTimeZone((int) duration.getTimeInMillis(new Date()), "XQuery context");
 
         } else if (Option.CURRENT_DATETIME.compareTo(qn) == 0) {
             //TODO : error check
             final DateTimeValue dtv = new DateTimeValue(option.getContents());
-            calendar = (XMLGregorianCalendar) dtv.calendar.clone();
+            dynamic.calendar = (XMLGregorianCalendar) dtv.calendar.clone();
         }
     }
 
@@ -2836,6 +2909,10 @@ public class XQueryContext implements BinaryValueManager, Context {
             if (NoIndexPragma.NO_INDEX_PRAGMA.equals(qname)) {
                 return new NoIndexPragma(qname, contents);
             }
+
+            if (ParallelPragma.PARALLEL_PRAGMA.equals(qname)) {
+                return new ParallelPragma(qname, contents);
+            }
         }
 
         return null;
@@ -22,6 +22,7 @@
 package org.exist.xquery.functions.fn;
 
 import org.exist.dom.QName;
+import org.exist.xquery.AbstractFLWORClause;
 import org.exist.xquery.Cardinality;
 import org.exist.xquery.Dependency;
 import org.exist.xquery.Function;
@@ -74,6 +75,8 @@ public class FunEmpty extends Function {
             }
         }
 
+        // only the first item is needed, so a FLWOR expression may stop early
+        AbstractFLWORClause.limitResult(getArgument(0), 1);
         final Sequence seq = getArgument(0).eval(contextSequence, contextItem);
         final Sequence result = seq.isEmpty() ? BooleanValue.TRUE : BooleanValue.FALSE;
 
@@ -111,14 +111,31 @@ public class FunSubSequence extends Function {
         }
 
         final Sequence result;
-        final Sequence seq = getArgument(0).eval(contextSequence, contextItem);
-        if (seq.isEmpty()) {
-            result = Sequence.EMPTY_SEQUENCE;
+        if (getArgumentCount() == 3 && AbstractFLWORClause.getLimitableClause(getArgument(0)) != null) {
+            // evaluate the positions first, so that a FLWOR expression can stop after the last position
+            final DoubleValue startLoc = (DoubleValue) getArgument(1).eval(contextSequence, contextItem).convertTo(Type.DOUBLE);
+            final DoubleValue length = (DoubleValue) getArgument(2).eval(contextSequence, contextItem).convertTo(Type.DOUBLE);
+            final long startArg = startLoc.getLong();
+            final long lengthArg = length.getLong();
+            if (startArg < Integer.MAX_VALUE && lengthArg < Integer.MAX_VALUE && startArg + lengthArg > 1) {
+                AbstractFLWORClause.limitResult(getArgument(0), (int) Math.min(startArg + lengthArg - 1, Integer.MAX_VALUE));
+            }
+            final Sequence seq = getArgument(0).eval(contextSequence, contextItem);
+            if (seq.isEmpty()) {
+                result = Sequence.EMPTY_SEQUENCE;
+            } else {
+                return subsequence(seq, startLoc, length);
+            }
         } else {
-            return subsequence(seq,
-                    ((DoubleValue)getArgument(1).eval(contextSequence, contextItem).convertTo(Type.DOUBLE)),
-                    getArgumentCount() != 3 ? null : ((DoubleValue)getArgument(2).eval(contextSequence, contextItem).convertTo(Type.DOUBLE))
-            );
+            final Sequence seq = getArgument(0).eval(contextSequence, contextItem);
+            if (seq.isEmpty()) {
+                result = Sequence.EMPTY_SEQUENCE;
+            } else {
+                return subsequence(seq,
+                        ((DoubleValue)getArgument(1).eval(contextSequence, contextItem).convertTo(Type.DOUBLE)),
+                        getArgumentCount() != 3 ? null : ((DoubleValue)getArgument(2).eval(contextSequence, contextItem).convertTo(Type.DOUBLE))
+                );
+            }
         }
 
         if (context.getProfiler().isEnabled()) {
@@ -15,6 +15,7 @@ import org.exist.xquery.functions.array.ArrayType;
 import org.exist.xquery.functions.map.MapType;
 import org.exist.xquery.value.*;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -224,6 +225,54 @@ public class JSON extends BasicFunction {
         return readValue(context, parser, null, handleDuplicates);
     }
 
+    /**
+     * Generate an XDM item from the value at the current token of the JSON parser.
+     * After the call, the parser is positioned at the last token of the value, so
+     * the values of a large JSON text can be read one by one.
+     *
+     * @param context the XQueryContext
+     * @param parser parser to use, positioned at the first token of a value
+     * @param handleDuplicates string indicating how to handle duplicate property names
+     * @return the item read, or null for a JSON null
+     * @throws IOException in case of an error reading the JSON
+     * @throws XPathException in case of dynamic error
+     */
+    public static @Nullable Item readCurrentValue(XQueryContext context, JsonParser parser, String handleDuplicates) throws IOException, XPathException {
+        return readToken(context, parser, parser.currentToken(), handleDuplicates);
+    }
+
+    private static Item readToken(XQueryContext context, JsonParser parser, JsonToken token, String handleDuplicates) throws IOException, XPathException {
+        final Item next;
+        switch (token) {
+            case START_OBJECT:
+                next = new MapType(context, null);
+                readValue(context, parser, next, handleDuplicates);
+                break;
+            case START_ARRAY:
+                next = new ArrayType(context, Sequence.EMPTY_SEQUENCE);
+                readValue(context, parser, next, handleDuplicates);
+                break;
+            case VALUE_FALSE:
+                next = BooleanValue.FALSE;
+                break;
+            case VALUE_TRUE:
+                next = BooleanValue.TRUE;
+                break;
+            case VALUE_NUMBER_FLOAT:
+            case VALUE_NUMBER_INT:
+                // according to spec, all numbers are converted to double
+                next = new StringValue(parser.getText()).convertTo(Type.DOUBLE);
+                break;
+            case VALUE_NULL:
+                next = null;
+                break;
+            default:
+                next = new StringValue(parser.getText());
+                break;
+        }
+        return next;
+    }
+
     private static Item readValue(XQueryContext context, JsonParser parser, Item parent, String handleDuplicates) throws IOException, XPathException {
         JsonToken token;
         Item next = null;
@@ -231,33 +280,7 @@ public class JSON extends BasicFunction {
             if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
                 return parent;
             }
-            switch (token) {
-                case START_OBJECT:
-                    next = new MapType(context, null);
-                    readValue(context, parser, next, handleDuplicates);
-                    break;
-                case START_ARRAY:
-                    next = new ArrayType(context, Sequence.EMPTY_SEQUENCE);
-                    readValue(context, parser, next, handleDuplicates);
-                    break;
-                case VALUE_FALSE:
-                    next = BooleanValue.FALSE;
-                    break;
-                case VALUE_TRUE:
-                    next = BooleanValue.TRUE;
-                    break;
-                case VALUE_NUMBER_FLOAT:
-                case VALUE_NUMBER_INT:
-                    // according to spec, all numbers are converted to double
-                    next = new StringValue(parser.getText()).convertTo(Type.DOUBLE);
-                    break;
-                case VALUE_NULL:
-                    next = null;
-                    break;
-                default:
-                    next = new StringValue(parser.getText());
-                    break;
-            }
+            next = readToken(context, parser, token, handleDuplicates);
             if (parent != null) {
                 switch (parent.getType()) {
                     case Type.ARRAY:
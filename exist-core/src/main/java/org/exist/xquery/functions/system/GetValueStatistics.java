@@ -0,0 +1,75 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery.functions.system;
+
+import org.exist.dom.QName;
+import org.exist.dom.memtree.DocumentImpl;
+import org.exist.dom.memtree.NodeImpl;
+import org.exist.dom.memtree.SAXAdapter;
+import org.exist.storage.statistics.IndexStatistics;
+import org.exist.xquery.BasicFunction;
+import org.exist.xquery.Cardinality;
+import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.Type;
+import org.xml.sax.SAXException;
+
+/**
+ * Returns the statistics on the values of elements and attributes collected
+ * by the index statistics module.
+ */
+public class GetValueStatistics extends BasicFunction {
+
+    public final static FunctionSignature signature = new FunctionSignature(
+        new QName("get-value-statistics", SystemModule.NAMESPACE_URI, SystemModule.PREFIX),
+        "Returns the number of nodes, the number of documents and the estimated number of distinct " +
+        "values for each element and attribute name in the database, as used by the query optimizer. " +
+        "Returns the empty sequence if the index statistics module is not enabled in conf.xml.",
+        null,
+        new FunctionReturnSequenceType(Type.NODE, Cardinality.ZERO_OR_ONE, "the value statistics"));
+
+    public GetValueStatistics(XQueryContext context) {
+        super(context, signature);
+    }
+
+    @Override
+    public Sequence eval(Sequence[] args, Sequence contextSequence) throws XPathException {
+        final IndexStatistics index = (IndexStatistics) context.getBroker().getBrokerPool().
+                getIndexManager().getIndexById(IndexStatistics.ID);
+        if (index == null) {
+            // module may not be enabled
+            return Sequence.EMPTY_SEQUENCE;
+        }
+
+        final SAXAdapter adapter = new SAXAdapter(context);
+        try {
+            adapter.startDocument();
+            index.valuesToSAX(adapter);
+            adapter.endDocument();
+        } catch (final SAXException e) {
+            throw new XPathException(this, "Error caught while retrieving statistics: " + e.getMessage(), e);
+        }
+        final DocumentImpl doc = (DocumentImpl) adapter.getDocument();
+        return (NodeImpl) doc.getFirstChild();
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery.functions.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.Source;
+import org.exist.source.SourceFactory;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.BasicFunction;
+import org.exist.xquery.Constants;
+import org.exist.xquery.ErrorCodes;
+import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XPathRuntimeException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.functions.fn.JSON;
+import org.exist.xquery.functions.map.MapType;
+import org.exist.xquery.value.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.exist.xquery.FunctionDSL.*;
+import static org.exist.xquery.functions.util.UtilModule.functionSignatures;
+
+/**
+ * Reads a large JSON resource item by item. Unlike fn:json-doc, which builds the
+ * whole structure in memory, the members of the top-level array are only parsed
+ * while the returned sequence is iterated, e.g. by a for clause. Resources with several
+ * top-level values, like JSON Lines, are read value by value.
+ *
+ * Invalid JSON is reported with the same error codes as fn:json-doc when the parser reaches
+ * it. Errors after the first item are raised whilst the sequence is iterated, wrapped in an
+ * {@link XPathRuntimeException}, as {@link SequenceIterator#nextItem()} cannot raise an
+ * {@link XPathException}; they can be caught by a try/catch expression as usual.
+ *
+ * Operations which need the whole sequence, like count() or a positional
+ * predicate, read all the items into memory.
+ */
+public class StreamJSON extends BasicFunction {
+
+    private static final Logger LOG = LogManager.getLogger(StreamJSON.class);
+
+    private static final FunctionParameterSequenceType FS_PARAM_HREF = optParam("href", Type.STRING,
+            "URL pointing to a JSON resource. An URL without scheme or scheme 'xmldb:' points to a database resource.");
+    private static final FunctionParameterSequenceType FS_PARAM_OPTIONS = param("options", Type.MAP,
+            "Parsing options, as for fn:json-doc");
+
+    static final FunctionSignature[] FS_STREAM_JSON = functionSignatures(
+            "stream-json",
+            "Reads an external (or database) resource containing JSON, and returns the members of its " +
+                    "top-level array as a sequence, or the top-level values if the resource does not contain an " +
+                    "array. The members are parsed as in fn:json-doc, JSON null members are skipped. The resource " +
+                    "is read lazily while the sequence is iterated, so a for clause can process resources " +
+                    "which do not fit into memory. Parse errors are raised when the parser reaches them, " +
+                    "i.e. after the members before the error have been returned.",
+            returnsOptMany(Type.ITEM, "the members of the top-level array"),
+            arities(
+                    arity(FS_PARAM_HREF),
+                    arity(FS_PARAM_HREF, FS_PARAM_OPTIONS)
+            )
+    );
+
+    public StreamJSON(final XQueryContext context, final FunctionSignature signature) {
+        super(context, signature);
+    }
+
+    @Override
+    public Sequence eval(final Sequence[] args, final Sequence contextSequence) throws XPathException {
+        if (args[0].isEmpty()) {
+            return Sequence.EMPTY_SEQUENCE;
+        }
+
+        boolean liberal = false;
+        String handleDuplicates = JSON.OPTION_DUPLICATES_USE_LAST;
+        if (getArgumentCount() == 2) {
+            final MapType options = (MapType) args[1].itemAt(0);
+            final Sequence liberalOpt = options.get(new StringValue(JSON.OPTION_LIBERAL));
+            if (liberalOpt.hasOne()) {
+                liberal = liberalOpt.itemAt(0).convertTo(Type.BOOLEAN).effectiveBooleanValue();
+            }
+            final Sequence duplicateOpt = options.get(new StringValue(JSON.OPTION_DUPLICATES));
+            if (duplicateOpt.hasOne()) {
+                handleDuplicates = duplicateOpt.itemAt(0).getStringValue();
+            }
+        }
+
+        String url = args[0].getStringValue();
+        if (url.indexOf(':') == Constants.STRING_NOT_FOUND) {
+            url = XmldbURI.EMBEDDED_SERVER_URI_PREFIX + url;
+        }
+        final Source source;
+        try {
+            source = SourceFactory.getSource(context.getBroker(), "", url, false);
+        } catch (final IOException | PermissionDeniedException e) {
+            throw new XPathException(this, ErrorCodes.FOUT1170, e.getMessage());
+        }
+        if (source == null) {
+            throw new XPathException(this, ErrorCodes.FOUT1170, "failed to load json doc from URI " + url);
+        }
+
+        final JSONItemSequence items = new JSONItemSequence(context, source, JSON.createJsonFactory(liberal),
+                handleDuplicates);
+        // parse the first item right away, so errors at the start of the resource are reported here
+        items.pending = items.open();
+        return items;
+    }
+
+    /**
+     * The items of a JSON resource. Every call to {@link #iterate()} parses the resource
+     * again, while the other methods read all items into memory on first use.
+     * The first iteration continues the parser opened by the function.
+     */
+    private static class JSONItemSequence extends AbstractSequence {
+        private final XQueryContext context;
+        private final Source source;
+        private final JsonFactory factory;
+        private final String handleDuplicates;
+
+        private ValueSequence items = null;
+        private JSONItemIterator pending = null;
+        private final List<JSONItemIterator> iterators = new ArrayList<>();
+
+        JSONItemSequence(final XQueryContext context, final Source source, final JsonFactory factory,
+                final String handleDuplicates) {
+            this.context = context;
+            this.source = source;
+            this.factory = factory;
+            this.handleDuplicates = handleDuplicates;
+            // close the resources of the iterations which were not completed
+            context.registerCleanupTask((ctx, predicate) -> closeIterators());
+        }
+
+        private JSONItemIterator open() throws XPathException {
+            final JSONItemIterator iterator = new JSONItemIterator(context, source, factory, handleDuplicates);
+            synchronized (iterators) {
+                iterators.removeIf(JSONItemIterator::isClosed);
+                if (!iterator.isClosed()) {
+                    iterators.add(iterator);
+                }
+            }
+            return iterator;
+        }
+
+        private void closeIterators() {
+            synchronized (iterators) {
+                for (final JSONItemIterator iterator : iterators) {
+                    iterator.close();
+                }
+                iterators.clear();
+            }
+        }
+
+        private ValueSequence materialize() {
+            if (items == null) {
+                try {
+                    final ValueSequence all = new ValueSequence();
+                    for (final SequenceIterator i = iterate(); i.hasNext(); ) {
+                        all.add(i.nextItem());
+                    }
+                    items = all;
+                } catch (final XPathException e) {
+                    throw new XPathRuntimeException(e);
+                }
+            }
+            return items;
+        }
+
+        @Override
+        public SequenceIterator iterate() throws XPathException {
+            if (items != null) {
+                return items.iterate();
+            }
+            if (pending != null) {
+                final JSONItemIterator iterator = pending;
+                pending = null;
+                return iterator;
+            }
+            return open();
+        }
+
+        @Override
+        public SequenceIterator unorderedIterator() throws XPathException {
+            return iterate();
+        }
+
+        @Override
+        public int getItemType() {
+            return Type.ITEM;
+        }
+
+        @Override
+        public long getItemCountLong() {
+            return materialize().getItemCountLong();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            if (items != null) {
+                return items.isEmpty();
+            }
+            // only parse the first item
+            if (pending == null) {
+                try {
+                    pending = open();
+                } catch (final XPathException e) {
+                    throw new XPathRuntimeException(e);
+                }
+            }
+            return !pending.hasNext();
+        }
+
+        @Override
+        public boolean hasOne() {
+            return materialize().hasOne();
+        }
+
+        @Override
+        public Item itemAt(final int pos) {
+            return materialize().itemAt(pos);
+        }
+
+        @Override
+        public void add(final Item item) throws XPathException {
+            throw new XPathException("Internal error: adding to an immutable sequence");
+        }
+
+        @Override
+        public void addAll(final Sequence other) throws XPathException {
+            throw new XPathException("Internal error: adding to an immutable sequence");
+        }
+
+        @Override
+        public NodeSet toNodeSet() throws XPathException {
+            return materialize().toNodeSet();
+        }
+
+        @Override
+        public MemoryNodeSet toMemNodeSet() throws XPathException {
+            return materialize().toMemNodeSet();
+        }
+
+        @Override
+        public void removeDuplicates() {
+        }
+
+        @Override
+        public String toString() {
+            return "util:stream-json(\"" + source.path() + "\")";
+        }
+    }
+
+    /**
+     * Parses the items of the resource one ahead of the caller, and closes
+     * the resource as soon as the last item was read.
+     */
+    private static class JSONItemIterator implements SequenceIterator, Closeable {
+        private final XQueryContext context;
+        private final String handleDuplicates;
+        private final InputStream is;
+        private final JsonParser parser;
+        private final boolean inArray;
+
+        private Item next = null;
+        private boolean closed = false;
+
+        JSONItemIterator(final XQueryContext context, final Source source, final JsonFactory factory,
+                final String handleDuplicates) throws XPathException {
+            this.context = context;
+            this.handleDuplicates = handleDuplicates;
+            try {
+                this.is = source.getInputStream();
+                this.parser = factory.createParser(is);
+                final JsonToken first = parser.nextToken();
+                this.inArray = first == JsonToken.START_ARRAY;
+                if (first != null && !inArray) {
+                    next = JSON.readCurrentValue(context, parser, handleDuplicates);
+                }
+                if (next == null) {
+                    advance();
+                }
+            } catch (final IOException e) {
+                close();
+                throw new XPathException(ErrorCodes.FOJS0001, e.getMessage());
+            } catch (final XPathException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private void advance() throws IOException, XPathException {
+            next = null;
+            while (next == null && !closed) {
+                final JsonToken token = parser.nextToken();
+                if (token == null || (inArray && token == JsonToken.END_ARRAY)) {
+                    close();
+                } else {
+                    // null members do not contribute to the sequence
+                    next = JSON.readCurrentValue(context, parser, handleDuplicates);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Item nextItem() {
+            final Item item = next;
+            if (item != null) {
+                try {
+                    advance();
+                } catch (final IOException e) {
+                    close();
+                    throw new XPathRuntimeException(new XPathException(ErrorCodes.FOJS0001, e.getMessage()));
+                } catch (final XPathException e) {
+                    close();
+                    throw new XPathRuntimeException(e);
+                }
+            }
+            return item;
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            next = null;
+            try {
+                if (parser != null) {
+                    parser.close();
+                }
+                if (is != null) {
+                    is.close();
+                }
+            } catch (final IOException e) {
+                LOG.warn("Unable to close JSON resource: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -117,6 +117,8 @@ public class UtilModule extends AbstractInternalModule {
             new FunctionDef(BinaryToString.signatures[1], BinaryToString.class),
             new FunctionDef(BinaryToString.signatures[2], BinaryToString.class),
             new FunctionDef(BinaryToString.signatures[3], BinaryToString.class),
+            new FunctionDef(StreamJSON.FS_STREAM_JSON[0], StreamJSON.class),
+            new FunctionDef(StreamJSON.FS_STREAM_JSON[1], StreamJSON.class),
             new FunctionDef(Profile.signatures[0], Profile.class),
             new FunctionDef(Profile.signatures[1], Profile.class),
             new FunctionDef(PrologFunctions.signatures[0], PrologFunctions.class),
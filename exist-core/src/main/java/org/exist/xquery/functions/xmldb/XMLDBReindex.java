@@ -24,16 +24,22 @@ package org.exist.xquery.functions.xmldb;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.dom.QName;
+import org.exist.storage.DBBroker;
+import org.exist.xmldb.EXistCollection;
 import org.exist.xmldb.IndexQueryService;
+import org.exist.xquery.ErrorCodes;
 import org.exist.xquery.Cardinality;
 import org.exist.xquery.FunctionSignature;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.value.BooleanValue;
 import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.functions.map.MapType;
 import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceType;
+import org.exist.xquery.value.StringValue;
 import org.exist.xquery.value.Type;
 import org.xmldb.api.base.Collection;
 import org.xmldb.api.base.XMLDBException;
@@ -59,15 +65,25 @@ public class XMLDBReindex extends XMLDBAbstractCollectionManipulator {
             new FunctionReturnSequenceType(Type.BOOLEAN, Cardinality.EXACTLY_ONE, "true() if successfully reindexed, false() otherwise")
     );
 
+    public final static String OPTION_WORKERS = "workers";
+    public final static String OPTION_BATCH_SIZE = "batch-size";
+
     public final static FunctionSignature FNS_REINDEX_DOCUMENT = new FunctionSignature(
             new QName("reindex", XMLDBModule.NAMESPACE_URI, XMLDBModule.PREFIX),
             "Reindex document $doc-uri from $collection-uri. " +
+                    "If the second argument is a map of options instead of a document URI, the " +
+                    "collection $collection-uri is reindexed with these options: " +
+                    "'" + OPTION_WORKERS + "' the number of threads reindexing documents in parallel, default 1; " +
+                    "'" + OPTION_BATCH_SIZE + "' the number of documents a thread reindexes before committing, default " +
+                    DBBroker.DEFAULT_REINDEX_BATCH_SIZE + "; only the structural index defers its writes to the end of " +
+                    "a batch, the other indexes are written after every document. " +
+                    "The progress of a parallel reindex is shown in the running jobs of the JMX process report. " +
                     XMLDBModule.COLLECTION_URI + " " +
                     XMLDBModule.ANY_URI + " " +
                     XMLDBModule.NEED_PRIV_USER,
             new SequenceType[] {
                     new FunctionParameterSequenceType("collection-uri", Type.STRING, Cardinality.EXACTLY_ONE, "The collection URI"),
-                    new FunctionParameterSequenceType("doc-uri", Type.STRING, Cardinality.EXACTLY_ONE, "The document URI")
+                    new FunctionParameterSequenceType("doc-uri", Type.ITEM, Cardinality.EXACTLY_ONE, "The document URI, or a map of options for reindexing the collection")
             },
             new FunctionReturnSequenceType(Type.BOOLEAN, Cardinality.EXACTLY_ONE, "true() if successfully reindexed, false() otherwise")
     );
@@ -94,7 +110,13 @@ public class XMLDBReindex extends XMLDBAbstractCollectionManipulator {
 
         try {
             final IndexQueryService iqs = (IndexQueryService) collection.getService("IndexQueryService", "1.0");
-            if(args.length == 2) {
+            if(args.length == 2 && args[1].getItemType() == Type.MAP) {
+                //reindex collection with options
+                final MapType options = (MapType) args[1].itemAt(0);
+                final int workers = getIntegerOption(options, OPTION_WORKERS, 1);
+                final int batchSize = getIntegerOption(options, OPTION_BATCH_SIZE, DBBroker.DEFAULT_REINDEX_BATCH_SIZE);
+                iqs.reindexCollection(((EXistCollection) collection).getPathURI(), workers, batchSize);
+            } else if(args.length == 2) {
                 //reindex document
                 iqs.reindexDocument(args[1].getStringValue());
             } else {
@@ -108,4 +130,16 @@ public class XMLDBReindex extends XMLDBAbstractCollectionManipulator {
 
         return BooleanValue.TRUE;
     }
+
+    private int getIntegerOption(final MapType options, final String name, final int defaultValue) throws XPathException {
+        final Sequence value = options.get(new StringValue(name));
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+        final int intValue = ((IntegerValue) value.itemAt(0).convertTo(Type.INTEGER)).getInt();
+        if (intValue < 1) {
+            throw new XPathException(this, ErrorCodes.XPTY0004, "Option '" + name + "' must be a positive integer, but was: " + intValue);
+        }
+        return intValue;
+    }
 }
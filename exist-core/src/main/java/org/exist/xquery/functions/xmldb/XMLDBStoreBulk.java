@@ -0,0 +1,141 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.functions.xmldb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.QName;
+import org.exist.dom.memtree.MemTreeBuilder;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BulkLoader;
+import org.exist.storage.txn.TransactionException;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.BasicFunction;
+import org.exist.xquery.Cardinality;
+import org.exist.xquery.ErrorCodes;
+import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.NodeValue;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceType;
+import org.exist.xquery.value.Type;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Implements the xmldb:store-bulk() function, see {@link BulkLoader}.
+ */
+public class XMLDBStoreBulk extends BasicFunction {
+
+    private static final Logger logger = LogManager.getLogger(XMLDBStoreBulk.class);
+
+    private static final QName FUNCTION_NAME = new QName("store-bulk", XMLDBModule.NAMESPACE_URI, XMLDBModule.PREFIX);
+    private static final String FUNCTION_DESCRIPTION =
+            "Bulk loads the XML files of the directory $directory and its sub-directories into the collection " +
+            "$collection-uri, creating a child collection for each sub-directory. Files which are not XML are skipped. " +
+            XMLDBModule.COLLECTION_URI + " The directory is read from the file system of the server. " +
+            "The documents are stored without being written to the journal, and a checkpoint is made before and after loading. " +
+            "No other changes can be made to the database whilst loading. If the database crashes before the last checkpoint has " +
+            "been made, it refuses to start up and has to be restored from a backup. DBA role required.";
+
+    private static final FunctionParameterSequenceType PARAM_COLLECTION = new FunctionParameterSequenceType("collection-uri", Type.STRING, Cardinality.EXACTLY_ONE, "The collection URI");
+    private static final FunctionParameterSequenceType PARAM_DIRECTORY = new FunctionParameterSequenceType("directory", Type.STRING, Cardinality.EXACTLY_ONE, "The path of the directory to load from");
+    private static final FunctionReturnSequenceType RETURN_TYPE = new FunctionReturnSequenceType(Type.ELEMENT, Cardinality.EXACTLY_ONE,
+            "a bulk-load element with the number of collections, documents, failed and skipped files, the duration in milliseconds and the documents per second");
+
+    public final static FunctionSignature[] signatures = {
+            new FunctionSignature(
+                    FUNCTION_NAME,
+                    FUNCTION_DESCRIPTION,
+                    new SequenceType[] { PARAM_COLLECTION, PARAM_DIRECTORY },
+                    RETURN_TYPE),
+            new FunctionSignature(
+                    FUNCTION_NAME,
+                    FUNCTION_DESCRIPTION + " The documents are stored in transactions of $batch-size documents each.",
+                    new SequenceType[] { PARAM_COLLECTION, PARAM_DIRECTORY,
+                            new FunctionParameterSequenceType("batch-size", Type.INTEGER, Cardinality.EXACTLY_ONE, "The number of documents stored in each transaction")
+                    },
+                    RETURN_TYPE)
+    };
+
+    public XMLDBStoreBulk(final XQueryContext context, final FunctionSignature signature) {
+        super(context, signature);
+    }
+
+    @Override
+    public Sequence eval(final Sequence[] args, final Sequence contextSequence) throws XPathException {
+        if (!context.getSubject().hasDbaRole()) {
+            throw new XPathException(this, "Permission denied, calling user '" + context.getSubject().getName() + "' must be a DBA to bulk load documents");
+        }
+
+        final XmldbURI collectionUri;
+        try {
+            collectionUri = XmldbURI.xmldbUriFor(args[0].getStringValue()).toCollectionPathURI();
+        } catch (final URISyntaxException e) {
+            throw new XPathException(this, ErrorCodes.FORG0001, "Invalid collection URI: " + args[0].getStringValue(), e);
+        }
+
+        int batchSize = BulkLoader.DEFAULT_BATCH_SIZE;
+        if (args.length == 3) {
+            batchSize = ((IntegerValue) args[2].itemAt(0)).getInt();
+            if (batchSize < 1) {
+                throw new XPathException(this, ErrorCodes.XPTY0004, "$batch-size must be a positive integer, but was: " + batchSize);
+            }
+        }
+
+        final BulkLoader.Result result;
+        try {
+            final BulkLoader loader = new BulkLoader(context.getBroker().getBrokerPool(), batchSize);
+            result = loader.load(context.getBroker(), collectionUri, Paths.get(args[1].getStringValue()));
+        } catch (final PermissionDeniedException | LockException | IOException | TransactionException e) {
+            logger.error("Unable to bulk load into collection {}: {}", collectionUri, e.getMessage(), e);
+            throw new XPathException(this, "Unable to bulk load into collection " + collectionUri + ": " + e.getMessage(), e);
+        }
+
+        context.pushDocumentContext();
+        try {
+            final MemTreeBuilder builder = context.getDocumentBuilder();
+            builder.startDocument();
+            builder.startElement(new QName("bulk-load", null, null), null);
+            builder.addAttribute(new QName("collection", null, null), result.getCollectionUri().toString());
+            builder.addAttribute(new QName("collections", null, null), Integer.toString(result.getCollections()));
+            builder.addAttribute(new QName("documents", null, null), Integer.toString(result.getDocuments()));
+            builder.addAttribute(new QName("failed", null, null), Integer.toString(result.getFailed()));
+            builder.addAttribute(new QName("skipped", null, null), Integer.toString(result.getSkipped()));
+            builder.addAttribute(new QName("duration", null, null), Long.toString(result.getDuration()));
+            builder.addAttribute(new QName("documents-per-second", null, null), String.format(Locale.ROOT, "%.1f", result.getDocumentsPerSecond()));
+            builder.addAttribute(new QName("checkpointed", null, null), Boolean.toString(result.isCheckpointed()));
+            builder.endElement();
+            builder.endDocument();
+
+            return (NodeValue) builder.getDocument().getDocumentElement();
+        } finally {
+            context.popDocumentContext();
+        }
+    }
+}
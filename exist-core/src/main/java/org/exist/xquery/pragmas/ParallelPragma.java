@@ -0,0 +1,106 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery.pragmas;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.xquery.*;
+import org.exist.xquery.value.Sequence;
+
+/**
+ * Evaluates the iterations of a FLWOR expression in parallel:
+ *
+ * <pre>(# exist:parallel #) { for $doc in collection('/db/data') return local:transform($doc) }</pre>
+ *
+ * The pragma applies to a for clause which is only followed by let, where and further for clauses,
+ * and whose return expression does not depend on the context item. The caller is responsible
+ * for the return expression being free of side effects, e.g. updates, and independent of the
+ * order of evaluation. Otherwise, or if the expression is part of a library module, the pragma
+ * is ignored.
+ *
+ * See {@link ForExpr#setParallel(boolean)} for the details of the evaluation.
+ */
+public class ParallelPragma extends Pragma {
+
+    private final static Logger LOG = LogManager.getLogger(ParallelPragma.class);
+
+    public final static QName PARALLEL_PRAGMA = new QName("parallel", Namespaces.EXIST_NS, "exist");
+
+    public ParallelPragma(QName qname, String contents) throws XPathException {
+        super(qname, contents);
+        if (contents != null && contents.length() > 0) {
+            throw new XPathException("Invalid content found for pragma " + PARALLEL_PRAGMA.getStringValue() +
+                    ": " + contents);
+        }
+    }
+
+    public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
+        final ForExpr forExpr = getForExpr(contextInfo.getParent());
+        if (forExpr == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Ignoring " + PARALLEL_PRAGMA.getStringValue() + ": expression is not a for clause");
+            }
+            return;
+        }
+        if (forExpr.getContext() instanceof ModuleContext) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Ignoring " + PARALLEL_PRAGMA.getStringValue() + " in library module at line " +
+                        forExpr.getLine());
+            }
+            return;
+        }
+        Expression next = forExpr.getReturnExpression();
+        while (next instanceof FLWORClause) {
+            switch (((FLWORClause) next).getType()) {
+                case FOR:
+                case LET:
+                case WHERE:
+                    break;
+                default:
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Ignoring " + PARALLEL_PRAGMA.getStringValue() + " at line " + forExpr.getLine() +
+                                ": unsupported clause " + ((FLWORClause) next).getType());
+                    }
+                    return;
+            }
+            next = ((FLWORClause) next).getReturnExpression();
+        }
+        forExpr.setParallel(true);
+    }
+
+    public void before(XQueryContext context, Expression expression, Sequence contextSequence) throws XPathException {
+    }
+
+    public void after(XQueryContext context, Expression expression) throws XPathException {
+    }
+
+    private static ForExpr getForExpr(final Expression parent) {
+        if (!(parent instanceof ExtensionExpression)) {
+            return null;
+        }
+        Expression expr = ((ExtensionExpression) parent).getExpression();
+        while (expr instanceof PathExpr && expr.getSubExpressionCount() == 1) {
+            expr = expr.getSubExpression(0);
+        }
+        return expr instanceof ForExpr ? (ForExpr) expr : null;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery.util;
+
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.numbering.NodeId;
+import org.exist.util.io.TemporaryFileManager;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A temporary file holding items which are evaluated by a query, but do not fit into memory,
+ * e.g. the groups of a group by clause or the sorted runs of an order by clause.
+ *
+ * The file is written first, and can then be read, from the start, any number of times.
+ * Only atomic values and persistent nodes can be written, see {@link #canSpill(Item)}.
+ * Persistent nodes are written as their document id and node id, and lose any full text
+ * matches. The documents are kept in memory, so that the nodes can be read back.
+ */
+public class SpillFile implements Closeable {
+
+    private static final byte ITEM_NODE = 0;
+    private static final byte ITEM_ATOMIC = 1;
+    private static final byte ITEM_DOUBLE = 2;
+    private static final byte ITEM_FLOAT = 3;
+    private static final byte ITEM_EMPTY = 4;
+
+    private final Map<Integer, DocumentImpl> documents = new HashMap<>();
+    private Path file = null;
+    private DataOutputStream output = null;
+    private DataInputStream input = null;
+
+    /**
+     * Check if the items of the sequence can be written to a spill file.
+     *
+     * @param seq the sequence to check
+     * @return true if all the items can be written
+     * @throws XPathException if the sequence cannot be iterated
+     */
+    public static boolean canSpill(final Sequence seq) throws XPathException {
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            if (!canSpill(i.nextItem())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if an item can be written to a spill file.
+     *
+     * @param item the item to check
+     * @return true if the item is a persistent node without full text matches,
+     *     or an atomic value which can be restored from its string value
+     */
+    public static boolean canSpill(final Item item) {
+        if (item instanceof NodeProxy) {
+            return ((NodeProxy) item).getMatches() == null;
+        }
+        if (item == AtomicValue.EMPTY_VALUE) {
+            return true;
+        }
+        if (!(item instanceof AtomicValue)) {
+            return false;
+        }
+        final int type = item.getType();
+        if (Type.subTypeOf(type, Type.STRING) || Type.subTypeOf(type, Type.NUMBER)) {
+            return true;
+        }
+        switch (type) {
+            case Type.UNTYPED_ATOMIC:
+            case Type.ANY_URI:
+            case Type.BOOLEAN:
+            case Type.DATE_TIME:
+            case Type.DATE:
+            case Type.TIME:
+            case Type.DURATION:
+            case Type.YEAR_MONTH_DURATION:
+            case Type.DAY_TIME_DURATION:
+            case Type.GYEAR:
+            case Type.GMONTH:
+            case Type.GDAY:
+            case Type.GYEARMONTH:
+            case Type.GMONTHDAY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Check if anything has been written to the file.
+     *
+     * @return true if the file has not been created yet
+     */
+    public boolean isEmpty() {
+        return file == null;
+    }
+
+    public void writeInt(final int value) throws IOException {
+        getOutput().writeInt(value);
+    }
+
+    public int readInt() throws IOException {
+        return getInput().readInt();
+    }
+
+    /**
+     * Write the items of a sequence, preceded by their count.
+     *
+     * @param seq the sequence to write
+     * @throws IOException if the file cannot be written
+     * @throws XPathException if the sequence cannot be iterated
+     */
+    public void writeSequence(final Sequence seq) throws IOException, XPathException {
+        writeInt(seq.getItemCount());
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            writeItem(i.nextItem());
+        }
+    }
+
+    public Sequence readSequence() throws IOException, XPathException {
+        final int count = readInt();
+        final ValueSequence seq = new ValueSequence(count);
+        for (int i = 0; i < count; i++) {
+            seq.add(readItem());
+        }
+        return seq;
+    }
+
+    /**
+     * Write an item, which must be accepted by {@link #canSpill(Item)}.
+     *
+     * @param item the item to write
+     * @throws IOException if the file cannot be written
+     * @throws XPathException if the string value of an atomic value cannot be determined
+     */
+    public void writeItem(final Item item) throws IOException, XPathException {
+        final DataOutputStream os = getOutput();
+        if (item instanceof NodeProxy) {
+            final NodeProxy node = (NodeProxy) item;
+            final DocumentImpl doc = node.getOwnerDocument();
+            documents.putIfAbsent(doc.getDocId(), doc);
+            os.writeByte(ITEM_NODE);
+            os.writeInt(doc.getDocId());
+            os.writeShort(node.getNodeType());
+            os.writeLong(node.getInternalAddress());
+            final NodeId nodeId = node.getNodeId();
+            if (nodeId == NodeId.DOCUMENT_NODE) {
+                os.writeInt(-1);
+            } else {
+                final byte[] data = new byte[nodeId.size()];
+                nodeId.serialize(data, 0);
+                os.writeInt(nodeId.units());
+                os.writeInt(data.length);
+                os.write(data);
+            }
+        } else if (item == AtomicValue.EMPTY_VALUE) {
+            os.writeByte(ITEM_EMPTY);
+        } else if (item.getType() == Type.DOUBLE) {
+            os.writeByte(ITEM_DOUBLE);
+            os.writeDouble(((DoubleValue) item).getDouble());
+        } else if (item.getType() == Type.FLOAT) {
+            os.writeByte(ITEM_FLOAT);
+            os.writeFloat(((FloatValue) item).getValue());
+        } else {
+            os.writeByte(ITEM_ATOMIC);
+            os.writeInt(item.getType());
+            final byte[] data = item.getStringValue().getBytes(StandardCharsets.UTF_8);
+            os.writeInt(data.length);
+            os.write(data);
+        }
+    }
+
+    public Item readItem() throws IOException, XPathException {
+        final DataInputStream is = getInput();
+        switch (is.readByte()) {
+            case ITEM_NODE:
+                final int docId = is.readInt();
+                final DocumentImpl doc = documents.get(docId);
+                if (doc == null) {
+                    throw new IOException("Unknown document id in spill file: " + docId);
+                }
+                final short nodeType = is.readShort();
+                final long address = is.readLong();
+                final int units = is.readInt();
+                final NodeId nodeId;
+                if (units < 0) {
+                    nodeId = NodeId.DOCUMENT_NODE;
+                } else {
+                    final byte[] data = new byte[is.readInt()];
+                    is.readFully(data);
+                    nodeId = doc.getBrokerPool().getNodeFactory().createFromData(units, data, 0);
+                }
+                return new NodeProxy(doc, nodeId, nodeType, address);
+
+            case ITEM_EMPTY:
+                return AtomicValue.EMPTY_VALUE;
+
+            case ITEM_DOUBLE:
+                return new DoubleValue(is.readDouble());
+
+            case ITEM_FLOAT:
+                return new FloatValue(is.readFloat());
+
+            case ITEM_ATOMIC:
+                final int type = is.readInt();
+                final byte[] data = new byte[is.readInt()];
+                is.readFully(data);
+                final String value = new String(data, StandardCharsets.UTF_8);
+                if (type == Type.UNTYPED_ATOMIC) {
+                    return new UntypedAtomicValue(value);
+                }
+                return new StringValue(value).convertTo(type);
+
+            default:
+                throw new IOException("Corrupt spill file: " + file);
+        }
+    }
+
+    /**
+     * Finish writing, and start reading the file from the start.
+     *
+     * @throws IOException if the file cannot be opened
+     */
+    public void startReading() throws IOException {
+        if (output != null) {
+            output.close();
+            output = null;
+        }
+        if (input != null) {
+            input.close();
+            input = null;
+        }
+        if (file != null) {
+            input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (output != null) {
+                output.close();
+            }
+            if (input != null) {
+                input.close();
+            }
+        } catch (final IOException e) {
+            // nothing to do, the file is deleted below
+        }
+        output = null;
+        input = null;
+        if (file != null) {
+            TemporaryFileManager.getInstance().returnTemporaryFile(file);
+            file = null;
+        }
+        documents.clear();
+    }
+
+    private DataOutputStream getOutput() throws IOException {
+        if (output == null) {
+            if (file != null) {
+                throw new IOException("Spill file has already been read: " + file);
+            }
+            file = TemporaryFileManager.getInstance().getTemporaryFile();
+            output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        }
+        return output;
+    }
+
+    private DataInputStream getInput() throws IOException {
+        if (input == null) {
+            throw new EOFException("Spill file has not been written: " + file);
+        }
+        return input;
+    }
+}
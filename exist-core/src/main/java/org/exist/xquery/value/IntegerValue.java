@@ -279,6 +279,15 @@ public class IntegerValue extends NumericValue {
         return value.longValue();
     }
 
+    /**
+     * Check if the value is returned by {@link #getLong()} without loss.
+     *
+     * @return true if the value is within the range of a long
+     */
+    public boolean fitsInLong() {
+        return value.bitLength() < Long.SIZE;
+    }
+
     @Override
     public double getDouble() {
         return value.doubleValue();
@@ -31,12 +31,13 @@ import org.exist.xquery.Constants;
 import org.exist.xquery.OrderSpec;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.util.SpillFile;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.stream.Stream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
 
 /**
  * A sequence that sorts its entries in the order specified by the order specs of
@@ -46,21 +47,59 @@ import java.util.stream.Stream;
  * all order expressions are evaluated once for each item in the sequence
  * <b>while</b> items are added.
  *
+ * If only the first items of the sorted sequence are needed, a limit can be set,
+ * and only that number of items is kept in a heap while items are added.
+ *
+ * If a spill threshold is set, at most that number of items is kept in memory.
+ * Once it is reached, the items are sorted and written, together with their
+ * order keys, to a temporary file. {@link #sort()} then merges these sorted runs.
+ * This requires that the items and order keys can be written,
+ * see {@link SpillFile#canSpill(Item)}, otherwise all items are kept in memory.
+ *
  * @author wolf
  */
-public class OrderedValueSequence extends AbstractSequence {
+public class OrderedValueSequence extends AbstractSequence implements Closeable {
 
     private final OrderSpec[] orderSpecs;
+    private final int limit;
+    private final int spillThreshold;
     private Entry[] items;
     private int count = 0;
     private int state = 0;
 
+    // the first items of the sorted sequence, if a limit is set
+    private PriorityQueue<Entry> topEntries = null;
+
+    // the sorted runs which have been written to temporary files
+    private List<SpillFile> runs = null;
+    private boolean spillable = true;
+    private int added = 0;
+
     // used to keep track of the type of added items.
     private int itemType = Type.ANY_TYPE;
 
     public OrderedValueSequence(final OrderSpec orderSpecs[], final int size) {
+        this(orderSpecs, size, 0, 0);
+    }
+
+    /**
+     * @param orderSpecs the order specs of the order by clause
+     * @param size the initial capacity
+     * @param limit if greater than 0, only the first limit items of the sorted sequence are kept.
+     *     The items can then only be read after {@link #sort()} has been called.
+     * @param spillThreshold if greater than 0, the number of items which are sorted in memory,
+     *     before they are written to a temporary file
+     */
+    public OrderedValueSequence(final OrderSpec orderSpecs[], final int size, final int limit, final int spillThreshold) {
         this.orderSpecs = orderSpecs;
-        this.items = new Entry[size == 0 ? 1 : size];
+        this.limit = limit;
+        this.spillThreshold = spillThreshold;
+        if (limit > 0) {
+            this.topEntries = new PriorityQueue<>(Math.min(limit, size == 0 ? 1 : size), Collections.reverseOrder());
+            this.items = new Entry[0];
+        } else {
+            this.items = new Entry[size == 0 ? 1 : size];
+        }
     }
 
     @Override
@@ -97,6 +136,21 @@ public class OrderedValueSequence extends AbstractSequence {
             hasOne = true;
         }
         isEmpty = false;
+        final Entry entry = new Entry(item, added++);
+        checkItemType(item.getType());
+        setHasChanged();
+
+        if (topEntries != null) {
+            // the heap holds the greatest of the items kept at its head
+            if (topEntries.size() < limit) {
+                topEntries.add(entry);
+            } else if (entry.compareTo(topEntries.peek()) < 0) {
+                topEntries.poll();
+                topEntries.add(entry);
+            }
+            return;
+        }
+
         if (count == 0 && items.length == 1) {
             items = new Entry[2];
         } else if (count == items.length) {
@@ -104,9 +158,15 @@ public class OrderedValueSequence extends AbstractSequence {
             System.arraycopy(items, 0, newItems, 0, count);
             items = newItems;
         }
-        items[count] = new Entry(item, count++);
-        checkItemType(item.getType());
-        setHasChanged();
+        items[count++] = entry;
+
+        if (spillThreshold > 0 && spillable) {
+            if (!entry.canSpill()) {
+                spillable = false;
+            } else if (count >= spillThreshold) {
+                spill();
+            }
+        }
     }
 
     @Override
@@ -123,13 +183,98 @@ public class OrderedValueSequence extends AbstractSequence {
         }
     }
 
-    public void sort() {
+    /**
+     * Sort the items. Must be called once, after all items have been added.
+     *
+     * @throws XPathException if the temporary files cannot be read
+     */
+    public void sort() throws XPathException {
 //		FastQSort.sort(items, 0, count - 1);
 
+        if (topEntries != null) {
+            items = topEntries.toArray(new Entry[0]);
+            count = items.length;
+            hasOne = count == 1;
+            topEntries = null;
+        }
         Arrays.parallelSort(items, 0, count);
+        if (runs != null) {
+            merge();
+        }
         Arrays.stream(items, 0, count).parallel().forEach(Entry::clear);
     }
 
+    /**
+     * Sort the items held in memory and write them to a temporary file.
+     */
+    private void spill() throws XPathException {
+        Arrays.parallelSort(items, 0, count);
+        final SpillFile run = new SpillFile();
+        try {
+            run.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                items[i].write(run);
+            }
+        } catch (final IOException e) {
+            run.close();
+            throw new XPathException("Unable to write order by run to temporary file: " + e.getMessage(), e);
+        }
+        if (runs == null) {
+            runs = new ArrayList<>();
+        }
+        runs.add(run);
+        Arrays.fill(items, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * Merge the sorted runs in the temporary files with the sorted items held in memory.
+     */
+    private void merge() throws XPathException {
+        final PriorityQueue<Run> queue = new PriorityQueue<>(runs.size() + 1);
+        try {
+            for (final SpillFile file : runs) {
+                file.startReading();
+                final Run run = new Run(file, file.readInt());
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+            final Run memoryRun = new Run(items, count);
+            if (memoryRun.next()) {
+                queue.add(memoryRun);
+            }
+
+            items = new Entry[added];
+            count = 0;
+            while (!queue.isEmpty()) {
+                final Run run = queue.poll();
+                final Entry entry = run.head;
+                if (run.next()) {
+                    queue.add(run);
+                }
+                // the order keys are not needed anymore
+                entry.clear();
+                items[count++] = entry;
+            }
+        } catch (final IOException e) {
+            throw new XPathException("Unable to read order by run from temporary file: " + e.getMessage(), e);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Delete the temporary files, if any.
+     */
+    @Override
+    public void close() {
+        if (runs != null) {
+            runs.forEach(SpillFile::close);
+            runs = null;
+        }
+    }
+
     @Override
     public Item itemAt(final int pos) {
         if (items != null && pos > -1 && pos < count) {
@@ -295,6 +440,20 @@ public class OrderedValueSequence extends AbstractSequence {
         AtomicValue values[];
         private final int pos;
 
+        /**
+         * Read an entry which has been written by {@link #write(SpillFile)}.
+         *
+         * @param file the temporary file
+         */
+        Entry(final SpillFile file) throws IOException, XPathException {
+            values = new AtomicValue[orderSpecs.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (AtomicValue) file.readItem();
+            }
+            pos = file.readInt();
+            item = file.readItem();
+        }
+
         /**
          * @param item     the item in the sequence
          * @param position the original position of the item in the result sequence
@@ -356,7 +515,7 @@ public class OrderedValueSequence extends AbstractSequence {
                             cmp = Constants.INFERIOR;
                         }
                     } else {
-                        cmp = a.compareTo(orderSpecs[i].getCollator(), b);
+                        cmp = orderSpecs[i].compare(a, b);
                     }
                     if ((orderSpecs[i].getModifiers() & OrderSpec.DESCENDING_ORDER) != 0) {
                         cmp = cmp * -1;
@@ -392,6 +551,64 @@ public class OrderedValueSequence extends AbstractSequence {
         public void clear() {
             values = null;
         }
+
+        boolean canSpill() {
+            if (!SpillFile.canSpill(item)) {
+                return false;
+            }
+            for (final AtomicValue value : values) {
+                if (!SpillFile.canSpill(value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void write(final SpillFile file) throws IOException, XPathException {
+            for (final AtomicValue value : values) {
+                file.writeItem(value);
+            }
+            file.writeInt(pos);
+            file.writeItem(item);
+        }
+    }
+
+    /**
+     * A sorted run of entries, either in a temporary file or in memory.
+     */
+    private class Run implements Comparable<Run> {
+        private final SpillFile file;
+        private final Entry[] entries;
+        private final int size;
+        private int pos = 0;
+        Entry head;
+
+        Run(final SpillFile file, final int size) {
+            this.file = file;
+            this.entries = null;
+            this.size = size;
+        }
+
+        Run(final Entry[] entries, final int size) {
+            this.file = null;
+            this.entries = entries;
+            this.size = size;
+        }
+
+        boolean next() throws IOException, XPathException {
+            if (pos == size) {
+                head = null;
+                return false;
+            }
+            head = file == null ? entries[pos] : new Entry(file);
+            pos++;
+            return true;
+        }
+
+        @Override
+        public int compareTo(final Run other) {
+            return head.compareTo(other.head);
+        }
     }
 
     private class OrderedValueSequenceIterator implements SequenceIterator {
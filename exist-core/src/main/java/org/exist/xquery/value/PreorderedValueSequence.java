@@ -165,7 +165,7 @@ public class PreorderedValueSequence extends AbstractSequence {
                             cmp = Constants.INFERIOR;
                         }
                     } else {
-                        cmp = a.compareTo(orderSpecs[i].getCollator(), b);
+                        cmp = orderSpecs[i].compare(a, b);
                     }
                     if ((orderSpecs[i].getModifiers() & OrderSpec.DESCENDING_ORDER) != 0) {
                         cmp = cmp * -1;
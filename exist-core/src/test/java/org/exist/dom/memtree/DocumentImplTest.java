@@ -23,6 +23,7 @@ package org.exist.dom.memtree;
 import com.googlecode.junittoolbox.ParallelRunner;
 import org.apache.xerces.dom.AttrNSImpl;
 import org.exist.Namespaces;
+import org.exist.dom.QName;
 import org.exist.util.ExistSAXParserFactory;
 import org.exist.util.io.FastByteArrayInputStream;
 import org.junit.Test;
@@ -37,6 +38,7 @@ import java.io.InputStream;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 @RunWith(ParallelRunner.class)
@@ -151,6 +153,46 @@ public class DocumentImplTest {
 //        assertEquals("http://exist-db.org/xquery/repo", attr2.getValue());
     }
 
+    @Test
+    public void attributeValues() {
+        final MemTreeBuilder builder = new MemTreeBuilder();
+        builder.startDocument();
+        builder.startElement(new QName("root", XMLConstants.NULL_NS_URI), null);
+        builder.addAttribute(new QName("a", XMLConstants.NULL_NS_URI), "first");
+        builder.addAttribute(new QName("b", XMLConstants.NULL_NS_URI), "second");
+        builder.characters("some");
+        final Element root = builder.getDocument().getDocumentElement();
+
+        // the new value is stored after the characters of the text node
+        root.getAttributeNode("a").setValue("changed");
+        builder.characters(" text");
+        builder.endElement();
+        builder.endDocument();
+
+        assertEquals("changed", root.getAttribute("a"));
+        assertEquals("second", root.getAttribute("b"));
+        assertEquals("some text", root.getFirstChild().getNodeValue());
+    }
+
+    @Test
+    public void attributeValueStringIsReused() {
+        final MemTreeBuilder builder = new MemTreeBuilder();
+        builder.startDocument();
+        builder.startElement(new QName("root", XMLConstants.NULL_NS_URI), null);
+        builder.addAttribute(new QName("a", XMLConstants.NULL_NS_URI), "first");
+        builder.endElement();
+        builder.endDocument();
+        final Element root = builder.getDocument().getDocumentElement();
+
+        final String value = root.getAttribute("a");
+        assertEquals("first", value);
+        assertSame(value, root.getAttributeNode("a").getValue());
+
+        root.getAttributeNode("a").setValue("changed");
+        assertEquals("changed", root.getAttribute("a"));
+        assertSame(root.getAttribute("a"), root.getAttributeNode("a").getValue());
+    }
+
     private Document parseXerces(final InputStream is) throws ParserConfigurationException, SAXException, IOException {
         final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
         factory.setNamespaceAware(true);
@@ -0,0 +1,214 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.storage.sync.Sync;
+import org.exist.test.ExistEmbeddedServer;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the fair queuing of threads waiting for a broker, and the acquire timeout.
+ */
+public class BrokerPoolAcquireTest {
+
+    private static final int MAX_BROKERS = 3;
+    private static final long ACQUIRE_TIMEOUT = 2_000;
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                    .put(BrokerPool.PROPERTY_MAX_CONNECTIONS, MAX_BROKERS)
+                    .put(BrokerPool.PROPERTY_BROKER_ACQUIRE_TIMEOUT, ACQUIRE_TIMEOUT)
+                    .build(),
+            true,
+            true);
+
+    @Test
+    public void timeout() throws InterruptedException, EXistException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final List<Thread> holders = leaseAll(pool, releaseLatch);
+        try {
+            final long timeouts = pool.getBrokerWaitStatistics().getTimeoutCount();
+            final long start = System.currentTimeMillis();
+            try (final DBBroker broker = pool.getBroker()) {
+                fail("Expected a timeout, but acquired broker: " + broker.getId());
+            } catch (final BrokerTimeoutException e) {
+                assertTrue(System.currentTimeMillis() - start >= ACQUIRE_TIMEOUT - 100);
+            }
+            assertEquals(timeouts + 1, pool.getBrokerWaitStatistics().getTimeoutCount());
+            assertEquals(0, pool.getBrokerWaitStatistics().getQueueDepth());
+        } finally {
+            releaseLatch.countDown();
+            for (final Thread holder : holders) {
+                holder.join();
+            }
+        }
+
+        // the brokers are available again
+        try (final DBBroker broker = pool.getBroker()) {
+            assertNotNull(broker);
+        }
+    }
+
+    @Test
+    public void firstComeFirstServed() throws InterruptedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final List<Thread> holders = leaseAll(pool, releaseLatch);
+
+        final Queue<String> acquired = new ConcurrentLinkedQueue<>();
+        final CountDownLatch waitersReleaseLatch = new CountDownLatch(1);
+        final List<Thread> waiters = new ArrayList<>();
+        try {
+            for (final String name : new String[] { "first", "second" }) {
+                final int queueDepth = pool.getBrokerWaitStatistics().getQueueDepth();
+                final Thread waiter = new Thread(() -> {
+                    try (final DBBroker broker = pool.getBroker()) {
+                        acquired.add(name);
+                        waitersReleaseLatch.await();
+                    } catch (final EXistException | InterruptedException e) {
+                        fail(e.getMessage());
+                    }
+                }, name + "-waiter");
+                waiters.add(waiter);
+                waiter.start();
+
+                // ensure that the waiters are queued in order
+                while (pool.getBrokerWaitStatistics().getQueueDepth() <= queueDepth) {
+                    Thread.sleep(10);
+                }
+            }
+            assertTrue(acquired.isEmpty());
+
+            // releasing a single broker serves the first waiter
+            holders.get(0).interrupt();
+            holders.get(0).join();
+            while (acquired.isEmpty()) {
+                Thread.sleep(10);
+            }
+            assertEquals("first", acquired.peek());
+            assertEquals(1, acquired.size());
+            assertTrue(pool.getBrokerWaitStatistics().getWaitCount() > 0);
+        } finally {
+            waitersReleaseLatch.countDown();
+            releaseLatch.countDown();
+            for (final Thread holder : holders) {
+                holder.join();
+            }
+            for (final Thread waiter : waiters) {
+                waiter.join();
+            }
+        }
+    }
+
+    /**
+     * Races the release of brokers, which may run a deferred sync, against threads
+     * waiting for a broker. A broker which is handed to a waiting thread must never
+     * be seen as neither active nor inactive, otherwise the pool would wrongly consider
+     * itself idle.
+     */
+    @Test
+    public void handOffDuringSync() throws InterruptedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final int threads = MAX_BROKERS * 3;
+        final int iterations = 200;
+
+        final Queue<String> errors = new ConcurrentLinkedQueue<>();
+        final CountDownLatch finished = new CountDownLatch(threads);
+        final List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final Thread worker = new Thread(() -> {
+                try {
+                    for (int j = 0; j < iterations; j++) {
+                        try (final DBBroker broker = pool.getBroker()) {
+                            if (pool.getActiveBrokers().get(Thread.currentThread()) != broker) {
+                                errors.add("Broker " + broker.getId() + " is not active for " + Thread.currentThread().getName());
+                            }
+                            Thread.yield();
+                        }
+                    }
+                } catch (final EXistException e) {
+                    errors.add(e.getMessage());
+                } finally {
+                    finished.countDown();
+                }
+            }, "broker-racer-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+
+        while (finished.getCount() > 0) {
+            pool.triggerSync(Sync.MAJOR);
+            synchronized (pool) {
+                final int active = pool.countActiveBrokers();
+                final int inactive = pool.available();
+                if (active + inactive != pool.total()) {
+                    errors.add(active + " active and " + inactive + " inactive brokers, but " + pool.total() + " brokers in total");
+                }
+            }
+            Thread.sleep(1);
+        }
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(0, pool.countActiveBrokers());
+        assertEquals(0, pool.getBrokerWaitStatistics().getQueueDepth());
+    }
+
+    /**
+     * Leases all of the brokers of the pool, each from its own thread. A thread
+     * releases its broker when the latch is counted down or it is interrupted.
+     */
+    private static List<Thread> leaseAll(final BrokerPool pool, final CountDownLatch releaseLatch) throws InterruptedException {
+        final int available = pool.getMax();
+        final CountDownLatch acquiredLatch = new CountDownLatch(available);
+        final List<Thread> holders = new ArrayList<>();
+        for (int i = 0; i < available; i++) {
+            final Thread holder = new Thread(() -> {
+                try (final DBBroker broker = pool.getBroker()) {
+                    acquiredLatch.countDown();
+                    releaseLatch.await();
+                } catch (final InterruptedException e) {
+                    // release the broker
+                } catch (final EXistException e) {
+                    fail(e.getMessage());
+                }
+            }, "broker-holder-" + i);
+            holders.add(holder);
+            holder.start();
+        }
+        acquiredLatch.await();
+        return holders;
+    }
+}
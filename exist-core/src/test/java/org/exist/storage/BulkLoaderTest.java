@@ -0,0 +1,208 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.txn.TransactionException;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.Sequence;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkLoaderTest {
+
+    @ClassRule
+    public static final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create("/db/bulk-load-test");
+    private static final String[] SUB_DIRECTORIES = { "a", "b", "c" };
+    private static final int DOCUMENTS_PER_DIRECTORY = 10;
+
+    private static Path directory;
+
+    @Test
+    public void load() throws EXistException, PermissionDeniedException, IOException, LockException, TransactionException, XPathException, DatabaseConfigurationException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final BulkLoader.Result result;
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            result = new BulkLoader(pool, 4).load(broker, TEST_COLLECTION, directory);
+        }
+
+        final int total = SUB_DIRECTORIES.length * DOCUMENTS_PER_DIRECTORY + 1;
+        assertEquals(total, result.getDocuments());
+        assertEquals(SUB_DIRECTORIES.length + 1, result.getCollections());
+        assertEquals(0, result.getFailed());
+        assertEquals(1, result.getSkipped());
+        assertTrue(result.isCheckpointed());
+        assertFalse(Files.exists(pool.getStoragePlace().resolve(BulkLoader.MARKER_FILE_NAME)));
+        checkDocuments(total);
+
+        // the documents must survive a restart, as they are not in the journal
+        existEmbeddedServer.restart();
+        checkDocuments(total);
+    }
+
+    @Test
+    public void loadIntoNonEmptyIndex() throws EXistException, PermissionDeniedException, IOException, LockException, TransactionException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final int total = SUB_DIRECTORIES.length * DOCUMENTS_PER_DIRECTORY + 1;
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            new BulkLoader(pool, 4).load(broker, TEST_COLLECTION, directory);
+            // the second load replaces the documents, whose keys are in the btree already
+            final BulkLoader.Result result = new BulkLoader(pool, 4).load(broker, TEST_COLLECTION, directory);
+            assertEquals(total, result.getDocuments());
+            assertEquals(0, result.getFailed());
+        }
+        checkDocuments(total);
+
+        existEmbeddedServer.restart();
+        checkDocuments(total);
+    }
+
+    @Test(expected = PermissionDeniedException.class)
+    public void onlyForDba() throws EXistException, PermissionDeniedException, IOException, LockException, TransactionException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getGuestSubject()))) {
+            new BulkLoader(pool).load(broker, TEST_COLLECTION, directory);
+        }
+    }
+
+    @Test
+    public void interrupted() throws IOException {
+        final Path dataDir = temporaryFolder.newFolder("interrupted").toPath();
+        try {
+            BulkLoader.checkInterrupted(dataDir);
+        } catch (final EXistException e) {
+            fail("No bulk load was interrupted: " + e.getMessage());
+        }
+
+        Files.write(dataDir.resolve(BulkLoader.MARKER_FILE_NAME), "bulk load".getBytes(StandardCharsets.UTF_8));
+        try {
+            BulkLoader.checkInterrupted(dataDir);
+            fail("An interrupted bulk load must be detected");
+        } catch (final EXistException e) {
+            assertTrue(e.getMessage().contains("restored from a backup"));
+        }
+    }
+
+    @Test
+    public void exclusive() throws TransactionException, InterruptedException, ExecutionException, TimeoutException {
+        final TransactionManager transactionManager = existEmbeddedServer.getBrokerPool().getTransactionManager();
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> other;
+            transactionManager.beginExclusive(1000);
+            try {
+                // the thread with exclusive access may still begin transactions
+                try (final Txn transaction = transactionManager.beginTransaction()) {
+                    transaction.commit();
+                }
+
+                other = executorService.submit(() -> {
+                    try (final Txn transaction = transactionManager.beginTransaction()) {
+                        transaction.commit();
+                    }
+                    return null;
+                });
+                try {
+                    other.get(200, TimeUnit.MILLISECONDS);
+                    fail("Another thread must not begin a transaction whilst a thread has exclusive access");
+                } catch (final TimeoutException e) {
+                    // expected
+                }
+            } finally {
+                transactionManager.endExclusive();
+            }
+            other.get(5, TimeUnit.SECONDS);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void storeBulkFunction() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Sequence seq = pool.getXQueryService().execute(broker,
+                    "xmldb:store-bulk('" + TEST_COLLECTION + "', '" + directory.toAbsolutePath().toString().replace("'", "''") + "', 7)/@documents/string()", null);
+            assertEquals(1, seq.getItemCount());
+            assertEquals(String.valueOf(SUB_DIRECTORIES.length * DOCUMENTS_PER_DIRECTORY + 1), seq.getStringValue());
+        }
+        checkDocuments(SUB_DIRECTORIES.length * DOCUMENTS_PER_DIRECTORY + 1);
+    }
+
+    private void checkDocuments(final int expected) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            Sequence seq = pool.getXQueryService().execute(broker, "collection('" + TEST_COLLECTION + "')//item", null);
+            assertEquals(expected, seq.getItemCount());
+
+            seq = pool.getXQueryService().execute(broker, "count(xmldb:get-child-collections('" + TEST_COLLECTION + "'))", null);
+            assertEquals(String.valueOf(SUB_DIRECTORIES.length), seq.getStringValue());
+
+            seq = pool.getXQueryService().execute(broker, "collection('" + TEST_COLLECTION.append("b") + "')//item[@id = 'b-3']/string()", null);
+            assertEquals("value b-3", seq.getStringValue());
+        }
+    }
+
+    @BeforeClass
+    public static void createFiles() throws IOException {
+        directory = temporaryFolder.newFolder("bulk-load").toPath();
+        Files.write(directory.resolve("root.xml"), "<items><item id='root'>value root</item></items>".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("readme.txt"), "not xml".getBytes(StandardCharsets.UTF_8));
+        for (final String subDirectory : SUB_DIRECTORIES) {
+            final Path dir = Files.createDirectory(directory.resolve(subDirectory));
+            for (int i = 0; i < DOCUMENTS_PER_DIRECTORY; i++) {
+                final String id = subDirectory + "-" + i;
+                Files.write(dir.resolve(id + ".xml"), ("<items><item id='" + id + "'>value " + id + "</item></items>").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationException;
+import org.exist.collections.CollectionConfigurationManager;
+import org.exist.collections.IndexInfo;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.lock.Lock;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class ParallelReindexTest {
+
+    @ClassRule
+    public static ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create("/db/parallel-reindex-test");
+    private static final String[] SUB_COLLECTIONS = { "a", "b", "c" };
+    private static final int DOCUMENTS_PER_COLLECTION = 20;
+
+    private static final String COLLECTION_CONFIG =
+            "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+            "   <index>" +
+            "       <create qname=\"item\" type=\"xs:string\"/>" +
+            "   </index>" +
+            "</collection>";
+
+    @Test
+    public void reindexWithWorkers() throws EXistException, PermissionDeniedException, IOException, LockException, XPathException {
+        checkIndexes();
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            broker.reindexCollection(transaction, TEST_COLLECTION, 4, 7);
+            transaction.commit();
+        }
+
+        checkIndexes();
+    }
+
+    private void checkIndexes() throws EXistException, PermissionDeniedException, XPathException {
+        final int total = SUB_COLLECTIONS.length * DOCUMENTS_PER_COLLECTION;
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+
+            // structural index
+            Sequence seq = xquery.execute(broker, "collection('" + TEST_COLLECTION + "')//items/item[@id]", null);
+            assertEquals(total, seq.getItemCount());
+
+            // range index
+            for (int i = 0; i < total; i += 7) {
+                seq = xquery.execute(broker, "collection('" + TEST_COLLECTION + "')//item[. = 'value-" + i + "']", null);
+                assertEquals(1, seq.getItemCount());
+            }
+
+            // range index keys shared by the documents of a batch
+            seq = xquery.execute(broker, "collection('" + TEST_COLLECTION + "')//item[@type = 'even']", null);
+            assertEquals(total / 2, seq.getItemCount());
+            seq = xquery.execute(broker, "collection('" + TEST_COLLECTION + "')//item[@type = 'odd']", null);
+            assertEquals(total / 2, seq.getItemCount());
+        }
+    }
+
+    @BeforeClass
+    public static void setup() throws EXistException, PermissionDeniedException, IOException, LockException, SAXException, CollectionConfigurationException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+
+            final Collection root = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            assertNotNull(root);
+            broker.saveCollection(transaction, root);
+
+            final CollectionConfigurationManager mgr = pool.getConfigurationManager();
+            mgr.addConfiguration(transaction, broker, root, COLLECTION_CONFIG);
+
+            int n = 0;
+            for (final String subCollection : SUB_COLLECTIONS) {
+                final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION.append(subCollection));
+                assertNotNull(collection);
+                broker.saveCollection(transaction, collection);
+
+                for (int i = 0; i < DOCUMENTS_PER_COLLECTION; i++, n++) {
+                    final String xml = "<items><item id='" + n + "' type='" + (n % 2 == 0 ? "even" : "odd") + "'>value-" + n + "</item></items>";
+                    final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create("doc-" + n + ".xml"), xml);
+                    assertNotNull(info);
+                    collection.store(transaction, broker, info, xml);
+                }
+            }
+
+            transaction.commit();
+        }
+    }
+
+    @AfterClass
+    public static void cleanup() throws EXistException, PermissionDeniedException, IOException, LockException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction();
+             final Collection collection = broker.openCollection(TEST_COLLECTION, Lock.LockMode.WRITE_LOCK)) {
+            if (collection != null) {
+                broker.removeCollection(transaction, collection);
+            }
+            transaction.commit();
+        }
+    }
+}
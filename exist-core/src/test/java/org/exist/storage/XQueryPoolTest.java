@@ -0,0 +1,211 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.persistent.BinaryDocument;
+import org.exist.security.Permission;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.DBSource;
+import org.exist.source.Source;
+import org.exist.source.StringSource;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.XQueryContext;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class XQueryPoolTest {
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create("/db/xquery-pool-test");
+    private static final XmldbURI MODULE = XmldbURI.create("module.xqm");
+    private static final XmldbURI MAIN = XmldbURI.create("main.xq");
+    private static final XmldbURI MODULES_COLLECTION = TEST_COLLECTION.append("modules");
+
+    private static final String MODULE_SOURCE =
+            "module namespace m = 'http://exist-db.org/test/xquery-pool';\n" +
+            "declare function m:f() { 'first' };";
+    private static final String MAIN_SOURCE =
+            "import module namespace m = 'http://exist-db.org/test/xquery-pool' at 'xmldb:exist://" + TEST_COLLECTION.append(MODULE) + "';\n" +
+            "m:f()";
+    private static final String MAIN_IMPORTING_COLLECTION_SOURCE =
+            "import module namespace m = 'http://exist-db.org/test/xquery-pool' at 'xmldb:exist://" + MODULES_COLLECTION.append(MODULE) + "';\n" +
+            "m:f()";
+
+    @Test
+    public void statistics() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQueryPool xqueryPool = pool.getXQueryPool();
+        final XQueryPool.Statistics before = xqueryPool.getStatistics();
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Source source = new StringSource("for $i in 1 to 10 return $i * 2");
+            assertNull(xqueryPool.borrowCompiledXQuery(broker, source));
+
+            final CompiledXQuery compiled = compile(broker, source);
+            xqueryPool.returnCompiledXQuery(source, compiled);
+
+            assertSame(compiled, xqueryPool.borrowCompiledXQuery(broker, new StringSource("for $i in 1 to 10 return $i * 2")));
+            xqueryPool.returnCompiledXQuery(source, compiled);
+        }
+
+        final XQueryPool.Statistics after = xqueryPool.getStatistics();
+        assertEquals(1, after.getHitCount() - before.getHitCount());
+        assertEquals(1, after.getMissCount() - before.getMissCount());
+        assertTrue(after.getCompileCount() > before.getCompileCount());
+        assertTrue(after.getTotalCompileTime() > before.getTotalCompileTime());
+        assertTrue(after.getWeight() > 0);
+    }
+
+    @Test
+    public void invalidatedWhenModuleIsStored() throws EXistException, PermissionDeniedException, XPathException, IOException, LockException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQueryPool xqueryPool = pool.getXQueryPool();
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            store(broker, TEST_COLLECTION, MODULE, MODULE_SOURCE);
+            store(broker, TEST_COLLECTION, MAIN, MAIN_SOURCE);
+
+            final CompiledXQuery compiled = compile(broker, mainSource(broker));
+            xqueryPool.returnCompiledXQuery(compiled.getSource(), compiled);
+            assertSame(compiled, xqueryPool.borrowCompiledXQuery(broker, mainSource(broker)));
+            xqueryPool.returnCompiledXQuery(compiled.getSource(), compiled);
+
+            final long invalidations = xqueryPool.getStatistics().getInvalidationCount();
+
+            // only the imported module is changed, the main query is unchanged
+            store(broker, TEST_COLLECTION, MODULE, MODULE_SOURCE.replace("first", "second"));
+
+            assertNull(xqueryPool.borrowCompiledXQuery(broker, mainSource(broker)));
+            assertEquals(invalidations + 1, xqueryPool.getStatistics().getInvalidationCount());
+
+            final CompiledXQuery recompiled = compile(broker, mainSource(broker));
+            assertEquals("second", pool.getXQueryService().execute(broker, recompiled, null).getStringValue());
+        }
+    }
+
+    @Test
+    public void notReturnedWhenModifiedWhilstCompiled() throws EXistException, PermissionDeniedException, XPathException, IOException, LockException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQueryPool xqueryPool = pool.getXQueryPool();
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            store(broker, TEST_COLLECTION, MODULE, MODULE_SOURCE);
+            store(broker, TEST_COLLECTION, MAIN, MAIN_SOURCE);
+
+            final CompiledXQuery compiled = compile(broker, mainSource(broker));
+
+            // the module changes after the query was compiled, but before it is returned
+            store(broker, TEST_COLLECTION, MODULE, MODULE_SOURCE.replace("first", "second"));
+            xqueryPool.returnCompiledXQuery(compiled.getSource(), compiled);
+
+            assertNull(xqueryPool.borrowCompiledXQuery(broker, mainSource(broker)));
+        }
+    }
+
+    @Test
+    public void invalidatedWhenModuleCollectionIsRemoved() throws EXistException, PermissionDeniedException, XPathException, IOException, LockException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQueryPool xqueryPool = pool.getXQueryPool();
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            store(broker, MODULES_COLLECTION, MODULE, MODULE_SOURCE);
+            store(broker, TEST_COLLECTION, MAIN, MAIN_IMPORTING_COLLECTION_SOURCE);
+            assertPooled(broker, xqueryPool);
+
+            try (final Txn transaction = pool.getTransactionManager().beginTransaction();
+                    final Collection collection = broker.openCollection(MODULES_COLLECTION, LockMode.WRITE_LOCK)) {
+                assertTrue(broker.removeCollection(transaction, collection));
+                transaction.commit();
+            }
+
+            assertNull(xqueryPool.borrowCompiledXQuery(broker, mainSource(broker)));
+        }
+    }
+
+    @Test
+    public void invalidatedWhenModuleCollectionIsMoved() throws EXistException, PermissionDeniedException, XPathException, IOException, LockException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQueryPool xqueryPool = pool.getXQueryPool();
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            store(broker, MODULES_COLLECTION, MODULE, MODULE_SOURCE);
+            store(broker, TEST_COLLECTION, MAIN, MAIN_IMPORTING_COLLECTION_SOURCE);
+            assertPooled(broker, xqueryPool);
+
+            try (final Txn transaction = pool.getTransactionManager().beginTransaction();
+                    final Collection source = broker.openCollection(MODULES_COLLECTION, LockMode.WRITE_LOCK);
+                    final Collection target = broker.openCollection(TEST_COLLECTION, LockMode.WRITE_LOCK)) {
+                broker.moveCollection(transaction, source, target, XmldbURI.create("moved"));
+                transaction.commit();
+            }
+
+            assertNull(xqueryPool.borrowCompiledXQuery(broker, mainSource(broker)));
+        }
+    }
+
+    /**
+     * Compiles the main query and checks that it is pooled.
+     */
+    private void assertPooled(final DBBroker broker, final XQueryPool xqueryPool) throws XPathException, PermissionDeniedException, IOException {
+        final CompiledXQuery compiled = compile(broker, mainSource(broker));
+        xqueryPool.returnCompiledXQuery(compiled.getSource(), compiled);
+        assertSame(compiled, xqueryPool.borrowCompiledXQuery(broker, mainSource(broker)));
+        xqueryPool.returnCompiledXQuery(compiled.getSource(), compiled);
+    }
+
+    private CompiledXQuery compile(final DBBroker broker, final Source source) throws XPathException, PermissionDeniedException, IOException {
+        final XQuery xquery = broker.getBrokerPool().getXQueryService();
+        final XQueryContext context = new XQueryContext(broker.getBrokerPool());
+        return xquery.compile(broker, context, source);
+    }
+
+    private DBSource mainSource(final DBBroker broker) throws PermissionDeniedException {
+        final BinaryDocument doc = (BinaryDocument) broker.getResource(TEST_COLLECTION.append(MAIN), Permission.READ);
+        return new DBSource(broker, doc, true);
+    }
+
+    private void store(final DBBroker broker, final XmldbURI collectionUri, final XmldbURI name, final String content) throws EXistException, PermissionDeniedException, IOException, LockException, TriggerException {
+        final BrokerPool pool = broker.getBrokerPool();
+        try (final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, collectionUri);
+            broker.saveCollection(transaction, collection);
+            collection.addBinaryResource(transaction, broker, name, content.getBytes(UTF_8), "application/xquery");
+            transaction.commit();
+        }
+    }
+}
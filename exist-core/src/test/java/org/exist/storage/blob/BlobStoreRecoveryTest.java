@@ -463,6 +463,8 @@ public class BlobStoreRecoveryTest {
         expect(mockConfiguration.getProperty(PROPERTY_RECOVERY_SYNC_ON_COMMIT, true)).andReturn(true);
         expect(mockConfiguration.getProperty(PROPERTY_RECOVERY_SIZE_MIN, 1)).andReturn(1);
         expect(mockConfiguration.getProperty(PROPERTY_RECOVERY_SIZE_LIMIT, 100)).andReturn(100);
+        expect(mockConfiguration.getProperty(PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW, DEFAULT_GROUP_COMMIT_WINDOW)).andReturn(DEFAULT_GROUP_COMMIT_WINDOW);
+        expect(mockConfiguration.getProperty(PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH, DEFAULT_GROUP_COMMIT_MAX_BATCH)).andReturn(DEFAULT_GROUP_COMMIT_MAX_BATCH);
         replay(mockConfiguration);
 
         final BrokerPool mockBrokerPool = createNiceMock(BrokerPool.class);
@@ -1,5 +1,6 @@
 package org.exist.storage.btree;
 
+import com.evolvedbinary.j8fu.tuple.Tuple2;
 import org.exist.EXistException;
 import org.exist.storage.BrokerPool;
 import org.exist.test.ExistEmbeddedServer;
@@ -18,6 +19,9 @@ import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
@@ -126,6 +130,180 @@ public class BTreeTest {
         }
     }
 
+    @Test
+    public void memoryMapped() throws DBException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final String prefixStr = "M";
+
+        pool.getConfiguration().setProperty(Paged.PROPERTY_MMAP_FILES, Collections.singleton(FileUtils.fileName(file)));
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            assertTrue(btree.isMemoryMapped());
+            btree.create((short) -1);
+
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value(prefixStr + Integer.toString(i)), i);
+            }
+            btree.flush();
+        } finally {
+            pool.getConfiguration().removeProperty(Paged.PROPERTY_MMAP_FILES);
+        }
+
+        // read back the pages written through the memory mapping by normal file access
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            assertFalse(btree.isMemoryMapped());
+            assertTrue(btree.open(BTREE_TEST_FILE_VERSION));
+
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value(prefixStr + Integer.toString(i))));
+            }
+        }
+    }
+
+    @Test
+    public void buildFromSortedKeys() throws DBException, IOException, TerminatedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final String prefixStr = "B";
+
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file);
+                final BTreeKeySorter sorter = new BTreeKeySorter(16 * 1024)) {
+            btree.create((short) -1);
+            assertTrue(btree.isEmpty());
+
+            // add the keys in random order, with a small memory limit so that several sorted runs are merged
+            final List<Integer> order = new ArrayList<>();
+            for (int i = 1; i <= COUNT; i++) {
+                order.add(i);
+            }
+            Collections.shuffle(order, new Random(42));
+            for (final int i : order) {
+                sorter.add(new Value(prefixStr + Integer.toString(i)), i);
+            }
+            // the pointer added last wins
+            sorter.add(new Value(prefixStr + "1"), -2);
+            sorter.add(new Value(prefixStr + "1"), 1);
+            assertTrue(sorter.getRuns() > 1);
+
+            assertEquals(COUNT, btree.build(sorter.sorted(), 1.0));
+            assertFalse(btree.isEmpty());
+
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value(prefixStr + Integer.toString(i))));
+            }
+
+            final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefixStr));
+            btree.query(query, new StringIndexCallback());
+            assertEquals(COUNT, count);
+
+            // the full pages have to be split by later inserts
+            for (int i = COUNT + 1; i <= COUNT * 2; i++) {
+                btree.addValue(new Value(prefixStr + Integer.toString(i)), i);
+            }
+            btree.flush();
+        }
+
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            assertTrue(btree.open(BTREE_TEST_FILE_VERSION));
+            for (int i = 1; i <= COUNT * 2; i++) {
+                assertEquals(i, btree.findValue(new Value(prefixStr + Integer.toString(i))));
+            }
+
+            final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefixStr));
+            btree.query(query, new StringIndexCallback());
+            assertEquals(COUNT * 2, count);
+        }
+    }
+
+    @Test
+    public void mergeIntoNonEmptyTree() throws DBException, IOException, TerminatedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final String prefixStr = "M";
+
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file);
+                final BTreeKeySorter sorter = new BTreeKeySorter(16 * 1024)) {
+            btree.create((short) -1);
+
+            // the odd numbers are in the tree, the even numbers are merged
+            for (int i = 1; i <= COUNT; i += 2) {
+                btree.addValue(new Value(prefixStr + Integer.toString(i)), i);
+            }
+            btree.addValue(new Value(prefixStr + "2"), -2);
+            for (int i = 2; i <= COUNT; i += 2) {
+                sorter.add(new Value(prefixStr + Integer.toString(i)), i);
+            }
+            // a merged key replaces the key in the tree
+            sorter.add(new Value(prefixStr + "1"), -1);
+            sorter.add(new Value(prefixStr + "1"), 1);
+
+            assertEquals(COUNT, btree.merge(sorter, BTree.DEFAULT_FILL_FACTOR));
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value(prefixStr + Integer.toString(i))));
+            }
+
+            final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefixStr));
+            btree.query(query, new StringIndexCallback());
+            assertEquals(COUNT, count);
+            btree.flush();
+        }
+
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            assertTrue(btree.open(BTREE_TEST_FILE_VERSION));
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value(prefixStr + Integer.toString(i))));
+            }
+        }
+    }
+
+    @Test
+    public void precedingAndFollowingValues() throws DBException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            assertNull(btree.findPrecedingValue(new Value("K")));
+            assertNull(btree.findFollowingValue(new Value("K")));
+
+            // only the even numbers are keys, enough of them to span several pages
+            for (int i = 0; i < COUNT; i += 2) {
+                btree.addValue(new Value(String.format("K%06d", i)), i);
+            }
+
+            for (int i = 0; i < COUNT; i++) {
+                final Value value = new Value(String.format("K%06d", i));
+                final Tuple2<Value, Long> preceding = btree.findPrecedingValue(value);
+                if (i == 0) {
+                    assertNull(preceding);
+                } else {
+                    final long expected = (i - 1) & ~1;
+                    assertEquals(new Value(String.format("K%06d", expected)), preceding._1);
+                    assertEquals(expected, (long) preceding._2);
+                }
+                final Tuple2<Value, Long> following = btree.findFollowingValue(value);
+                final long expected = (i + 2) & ~1;
+                if (expected >= COUNT) {
+                    assertNull(following);
+                } else {
+                    assertEquals(new Value(String.format("K%06d", expected)), following._1);
+                    assertEquals(expected, (long) following._2);
+                }
+            }
+
+            // values before and after all the keys
+            assertNull(btree.findPrecedingValue(new Value("A")));
+            assertEquals(0, (long) btree.findFollowingValue(new Value("A"))._2);
+            assertEquals(COUNT - 2, (long) btree.findPrecedingValue(new Value("Z"))._2);
+            assertNull(btree.findFollowingValue(new Value("Z")));
+        }
+    }
+
+    @Test(expected = BTreeException.class)
+    public void buildRequiresEmptyTree() throws DBException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            btree.addValue(new Value("K1"), 1);
+            btree.build(Collections.singletonList(new Tuple2<>(new Value("K2"), 2L)).iterator(), BTree.DEFAULT_FILL_FACTOR);
+        }
+    }
+
     @Test
     public void longStrings() throws DBException, IOException {
         // Test storage of long keys up to half of the page size (4k)
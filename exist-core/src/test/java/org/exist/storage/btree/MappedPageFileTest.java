@@ -0,0 +1,175 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MappedPageFileTest {
+
+    private static final int SEGMENT_SIZE = 8 * 1024;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void writeReadAcrossSegments() throws IOException {
+        final Path file = temporaryFolder.newFile("mapped.dbx").toPath();
+        final byte[] data = randomBytes(SEGMENT_SIZE * 2 + 100);
+        final long position = SEGMENT_SIZE - 50;
+
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            final MappedPageFile mapped = new MappedPageFile(raf.getChannel(), false, SEGMENT_SIZE);
+            mapped.write(position, data, 0, data.length);
+
+            final byte[] read = new byte[data.length];
+            mapped.read(position, read, 0, read.length);
+            assertArrayEquals(data, read);
+
+            assertTrue(mapped.force());
+            // nothing has changed since the last force
+            assertFalse(mapped.force());
+            mapped.close();
+        }
+
+        // check the data is visible through normal file access
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            final byte[] read = new byte[data.length];
+            raf.seek(position);
+            raf.readFully(read);
+            assertArrayEquals(data, read);
+        }
+    }
+
+    @Test
+    public void truncatedToEndOfWrite() throws IOException {
+        final Path file = temporaryFolder.newFile("mapped-grow.dbx").toPath();
+        final byte[] first = randomBytes(100);
+        final byte[] second = randomBytes(200);
+
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            final MappedPageFile mapped = new MappedPageFile(raf.getChannel(), false, SEGMENT_SIZE);
+
+            // reading does not grow the file
+            final byte[] empty = new byte[10];
+            mapped.read(0, empty, 0, empty.length);
+            assertEquals(0, raf.length());
+
+            // the file grows with the mapping of the segment
+            mapped.write(0, first, 0, first.length);
+            assertTrue(raf.length() >= 100);
+
+            mapped.write(SEGMENT_SIZE - 50, second, 0, second.length);
+            assertTrue(raf.length() >= SEGMENT_SIZE + 150);
+
+            final byte[] read = new byte[first.length];
+            mapped.read(0, read, 0, read.length);
+            assertArrayEquals(first, read);
+
+            final byte[] readSecond = new byte[second.length];
+            mapped.read(SEGMENT_SIZE - 50, readSecond, 0, readSecond.length);
+            assertArrayEquals(second, readSecond);
+
+            // the padding of the mappings is removed
+            mapped.close();
+            assertEquals(SEGMENT_SIZE + 150, raf.length());
+        }
+
+        // check the data written through the first mapping of the segment was not lost
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            final byte[] read = new byte[first.length];
+            raf.readFully(read);
+            assertArrayEquals(first, read);
+        }
+    }
+
+    @Test
+    public void appendingMapsGeometrically() throws IOException {
+        final int segmentSize = MappedPageFile.MIN_MAPPING_SIZE * 8;
+        final int pageSize = 4096;
+        final Path file = temporaryFolder.newFile("mapped-append.dbx").toPath();
+        final byte[] page = randomBytes(pageSize);
+
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            final MappedPageFile mapped = new MappedPageFile(raf.getChannel(), false, segmentSize);
+            for (long position = 0; position < segmentSize * 2L; position += pageSize) {
+                mapped.write(position, page, 0, pageSize);
+            }
+
+            // 1, 2, 4 and 8 MB for each of the two segments, rather than one mapping per page
+            assertEquals(8, mapped.getMappings());
+
+            mapped.close();
+            assertEquals(segmentSize * 2L, raf.length());
+        }
+    }
+
+    @Test
+    public void readOnlyBeyondEndOfFile() throws IOException {
+        final Path file = temporaryFolder.newFile("mapped-ro.dbx").toPath();
+        final byte[] data = randomBytes(100);
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.write(data);
+        }
+
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            final MappedPageFile mapped = new MappedPageFile(raf.getChannel(), true, SEGMENT_SIZE);
+
+            final byte[] read = new byte[200];
+            Arrays.fill(read, (byte) 0x7F);
+            mapped.read(0, read, 0, read.length);
+
+            assertArrayEquals(data, Arrays.copyOfRange(read, 0, 100));
+            assertArrayEquals(new byte[100], Arrays.copyOfRange(read, 100, 200));
+
+            final byte[] beyond = new byte[10];
+            Arrays.fill(beyond, (byte) 0x7F);
+            mapped.read(SEGMENT_SIZE * 3, beyond, 0, beyond.length);
+            assertArrayEquals(new byte[10], beyond);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void writeReadOnly() throws IOException {
+        final Path file = temporaryFolder.newFile("mapped-ro-write.dbx").toPath();
+        try (final RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            final MappedPageFile mapped = new MappedPageFile(raf.getChannel(), true, SEGMENT_SIZE);
+            mapped.write(0, new byte[10], 0, 10);
+        }
+    }
+
+    private static byte[] randomBytes(final int len) {
+        final byte[] data = new byte[len];
+        new Random(len).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentClockCacheTest {
+
+    @Test
+    public void addGetRemove() {
+        final ConcurrentClockCache<TestPage> cache = new ConcurrentClockCache<>("test", 16, 0, 1.0, Cache.CacheType.DATA);
+        final TestPage page = new TestPage(1);
+        cache.add(page);
+
+        assertSame(page, cache.get(1));
+        assertSame(page, cache.get(page));
+        assertNull(cache.get(2));
+        assertEquals(1, cache.getUsedBuffers());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getFails());
+
+        // adding an item with the same key replaces it
+        final TestPage replacement = new TestPage(1);
+        cache.add(replacement);
+        assertSame(replacement, cache.get(1));
+        assertEquals(1, cache.getUsedBuffers());
+
+        cache.remove(replacement);
+        assertNull(cache.get(1));
+        assertEquals(0, cache.getUsedBuffers());
+    }
+
+    @Test
+    public void evictionSyncsDirtyItems() {
+        final ConcurrentClockCache<TestPage> cache = new ConcurrentClockCache<>("test", 8, 0, 1.0, Cache.CacheType.DATA, 1);
+        final List<TestPage> pages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final TestPage page = new TestPage(i);
+            page.dirty = true;
+            pages.add(page);
+            cache.add(page);
+            assertTrue(cache.getUsedBuffers() <= 8);
+        }
+
+        int cached = 0;
+        for (final TestPage page : pages) {
+            if (cache.get(page.getKey()) != null) {
+                cached++;
+                assertEquals(0, page.syncs.get());
+            } else {
+                // evicted pages must have been written
+                assertEquals(1, page.syncs.get());
+                assertFalse(page.dirty);
+            }
+        }
+        assertEquals(8, cached);
+    }
+
+    @Test
+    public void frequentlyUsedItemsSurvive() {
+        final ConcurrentClockCache<TestPage> cache = new ConcurrentClockCache<>("test", 8, 0, 1.0, Cache.CacheType.DATA, 1);
+        final TestPage hot = new TestPage(1000);
+        cache.add(hot);
+        for (int i = 0; i < 20; i++) {
+            assertNotNull(cache.get(hot.getKey()));
+        }
+
+        // a scan of pages which are only accessed once
+        for (int i = 0; i < 50; i++) {
+            cache.add(new TestPage(i));
+        }
+
+        assertSame(hot, cache.get(hot.getKey()));
+    }
+
+    @Test
+    public void itemsWhichMayNotBeUnloadedAreKept() {
+        final ConcurrentClockCache<TestPage> cache = new ConcurrentClockCache<>("test", 4, 0, 1.0, Cache.CacheType.DATA, 1);
+        final List<TestPage> pinned = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final TestPage page = new TestPage(i);
+            page.allowUnload = false;
+            pinned.add(page);
+            cache.add(page);
+        }
+
+        // the cache has to grow as no item can be evicted
+        cache.add(new TestPage(4));
+        for (final TestPage page : pinned) {
+            assertSame(page, cache.get(page.getKey()));
+        }
+        assertEquals(5, cache.getUsedBuffers());
+    }
+
+    @Test
+    public void innerPagesArePreferred() {
+        final ConcurrentClockCache<TestPage> cache = new ConcurrentClockCache<>("test", 4, 0, 1.0, Cache.CacheType.BTREE, 1);
+        final TestPage inner = new TestPage(0);
+        inner.innerPage = true;
+        cache.add(inner);
+
+        for (int i = 1; i < 50; i++) {
+            cache.add(new TestPage(i));
+        }
+
+        assertSame(inner, cache.get(0));
+    }
+
+    @Test
+    public void shrink() {
+        final ConcurrentClockCache<TestPage> cache = new ConcurrentClockCache<>("test", 64, 0, 1.0, Cache.CacheType.DATA, 1);
+        final List<TestPage> pages = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            final TestPage page = new TestPage(i);
+            page.dirty = true;
+            pages.add(page);
+            cache.add(page);
+        }
+        assertEquals(64, cache.getUsedBuffers());
+
+        cache.resize(16);
+        assertEquals(16, cache.getBuffers());
+        assertEquals(16, cache.getUsedBuffers());
+
+        for (final TestPage page : pages) {
+            if (cache.get(page.getKey()) == null) {
+                assertFalse(page.dirty);
+            }
+        }
+
+        cache.resize(128);
+        for (int i = 64; i < 192; i++) {
+            cache.add(new TestPage(i));
+        }
+        assertEquals(128, cache.getUsedBuffers());
+    }
+
+    @Test
+    public void flush() {
+        final ConcurrentClockCache<TestPage> cache = new ConcurrentClockCache<>("test", 16, 0, 1.0, Cache.CacheType.DATA);
+        final TestPage page = new TestPage(1);
+        cache.add(page);
+        assertFalse(cache.hasDirtyItems());
+        assertFalse(cache.flush());
+
+        page.dirty = true;
+        assertTrue(cache.hasDirtyItems());
+        assertTrue(cache.flush());
+        assertFalse(cache.hasDirtyItems());
+    }
+
+    @Test
+    public void load() {
+        final ConcurrentClockCache<TestPage> cache = new ConcurrentClockCache<>("test", 16, 0, 1.0, Cache.CacheType.DATA);
+        cache.add(new TestPage(1));
+
+        // nothing was measured before the first call
+        assertEquals(Integer.MAX_VALUE, cache.getLoad());
+
+        // an idle cache has no load
+        assertEquals(0, cache.getLoad());
+        assertEquals(0, cache.getLoad());
+
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+        assertEquals(2, cache.getLoad());
+        assertEquals(0, cache.getLoad());
+    }
+
+    @Test
+    public void concurrentAccess() throws InterruptedException, ExecutionException {
+        final int threads = 8;
+        final int keys = 1024;
+        final ConcurrentClockCache<TestPage> cache = new ConcurrentClockCache<>("test", 256, 0, 1.0, Cache.CacheType.DATA, threads);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 100_000; i++) {
+                        final long key = random.nextInt(keys);
+                        final TestPage page = cache.get(key);
+                        if (page == null) {
+                            cache.add(new TestPage(key));
+                        } else {
+                            assertEquals(key, page.getKey());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(cache.getUsedBuffers() <= cache.getBuffers());
+    }
+
+    private static class TestPage implements BTreeCacheable {
+        private final long key;
+        private int refCount = 0;
+        private int timestamp = 0;
+        private volatile boolean dirty = false;
+        private boolean allowUnload = true;
+        private boolean innerPage = false;
+        private final AtomicInteger syncs = new AtomicInteger();
+
+        TestPage(final long key) {
+            this.key = key;
+        }
+
+        @Override
+        public long getKey() {
+            return key;
+        }
+
+        @Override
+        public int getReferenceCount() {
+            return refCount;
+        }
+
+        @Override
+        public int incReferenceCount() {
+            return ++refCount;
+        }
+
+        @Override
+        public int decReferenceCount() {
+            return --refCount;
+        }
+
+        @Override
+        public void setReferenceCount(final int count) {
+            this.refCount = count;
+        }
+
+        @Override
+        public void setTimestamp(final int timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean sync(final boolean syncJournal) {
+            if (dirty) {
+                syncs.incrementAndGet();
+                dirty = false;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean allowUnload() {
+            return allowUnload;
+        }
+
+        @Override
+        public boolean isDirty() {
+            return dirty;
+        }
+
+        @Override
+        public boolean isInnerPage() {
+            return innerPage;
+        }
+    }
+}
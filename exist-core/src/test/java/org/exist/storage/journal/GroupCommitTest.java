@@ -0,0 +1,245 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.journal;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.BrokerPoolConstants;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.storage.txn.TxnCommit;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.Configuration;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.xmldb.XmldbURI;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.exist.storage.journal.Journal.*;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that transactions committed concurrently with group commit
+ * enabled share journal syncs and are durable after a crash.
+ */
+public class GroupCommitTest {
+
+    private static final XmldbURI TEST_COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("group-commit-test");
+    private static final int THREADS = 8;
+    private static final int COMMITS_PER_THREAD = 25;
+
+    // we don't use @ClassRule/@Rule as we want to force corruption
+    private final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(createConfigProperties(), true, true);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void concurrentCommitsShareSyncs() throws Exception {
+        final Path journalDir = temporaryFolder.newFolder("journal").toPath();
+        final LatchedJournal journal = new LatchedJournal(createMockBrokerPool(journalDir), journalDir, THREADS);
+        journal.switchFiles();
+        try {
+            final ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+            try {
+                final List<Future<Void>> results = new ArrayList<>();
+                for (int i = 0; i < THREADS; i++) {
+                    final long transactionId = i;
+                    results.add(executorService.submit(() -> {
+                        final TxnCommit commit = new TxnCommit(transactionId);
+                        journal.writeToLog(commit);
+                        journal.committed.countDown();
+
+                        journal.flushToLogForCommit(commit.getLsn());
+
+                        // the commit record must be on disk before the committer returns
+                        assertTrue(journal.syncedLsn.get().compareTo(commit.getLsn()) >= 0);
+                        return null;
+                    }));
+                }
+                for (final Future<Void> result : results) {
+                    result.get();
+                }
+            } finally {
+                executorService.shutdown();
+            }
+
+            // the first sync is held back until every commit record has been written,
+            // so the remaining committers have to share a single sync
+            final long syncs = journal.getSyncCount();
+            assertTrue(syncs < THREADS);
+            assertTrue(syncs <= 2);
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void concurrentCommitsAreDurable() throws Exception {
+        BrokerPool.FORCE_CORRUPTION = true;
+        existEmbeddedServer.startDb();
+        BrokerPool pool = existEmbeddedServer.getBrokerPool();
+
+        final JournalManager journalManager = pool.getJournalManager().get();
+        assertTrue(journalManager.isGroupCommits());
+        final long commitsBefore = journalManager.getCommitCount();
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<Void>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                final int thread = i;
+                results.add(executorService.submit(() -> {
+                    for (int j = 0; j < COMMITS_PER_THREAD; j++) {
+                        createCollection(existEmbeddedServer.getBrokerPool(), collectionUri(thread, j));
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        final long commits = journalManager.getCommitCount() - commitsBefore;
+        assertTrue(commits >= THREADS * COMMITS_PER_THREAD);
+
+        // simulate a crash, recovery must replay every committed transaction
+        BrokerPool.FORCE_CORRUPTION = false;
+        existEmbeddedServer.restart(false);
+        pool = existEmbeddedServer.getBrokerPool();
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            for (int i = 0; i < THREADS; i++) {
+                for (int j = 0; j < COMMITS_PER_THREAD; j++) {
+                    assertNotNull(broker.getCollection(collectionUri(i, j)));
+                }
+            }
+        }
+    }
+
+    private static XmldbURI collectionUri(final int thread, final int commit) {
+        return TEST_COLLECTION_URI.append("t" + thread + "-" + commit);
+    }
+
+    private static void createCollection(final BrokerPool pool, final XmldbURI uri) throws Exception {
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, uri);
+            broker.saveCollection(transaction, collection);
+            transact.commit(transaction);
+        }
+    }
+
+    private static BrokerPool createMockBrokerPool(final Path journalDir) {
+        final Configuration mockConfiguration = createNiceMock(Configuration.class);
+        expect(mockConfiguration.getProperty(PROPERTY_RECOVERY_JOURNAL_DIR)).andReturn(journalDir).anyTimes();
+        expect(mockConfiguration.getProperty(PROPERTY_RECOVERY_SYNC_ON_COMMIT, true)).andReturn(true).anyTimes();
+        expect(mockConfiguration.getProperty(PROPERTY_RECOVERY_SIZE_MIN, 1)).andReturn(1).anyTimes();
+        expect(mockConfiguration.getProperty(PROPERTY_RECOVERY_SIZE_LIMIT, DEFAULT_MAX_SIZE)).andReturn(DEFAULT_MAX_SIZE).anyTimes();
+        expect(mockConfiguration.getProperty(PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW, DEFAULT_GROUP_COMMIT_WINDOW)).andReturn(DEFAULT_GROUP_COMMIT_WINDOW).anyTimes();
+        expect(mockConfiguration.getProperty(PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH, DEFAULT_GROUP_COMMIT_MAX_BATCH)).andReturn(DEFAULT_GROUP_COMMIT_MAX_BATCH).anyTimes();
+        replay(mockConfiguration);
+
+        final TransactionManager mockTransactionManager = createNiceMock(TransactionManager.class);
+        replay(mockTransactionManager);
+
+        final BrokerPool mockBrokerPool = createNiceMock(BrokerPool.class);
+        expect(mockBrokerPool.getConfiguration()).andReturn(mockConfiguration).anyTimes();
+        expect(mockBrokerPool.getTransactionManager()).andReturn(mockTransactionManager).anyTimes();
+        replay(mockBrokerPool);
+        return mockBrokerPool;
+    }
+
+    private static Properties createConfigProperties() {
+        final Properties configProperties = new Properties();
+        configProperties.put(BrokerPoolConstants.PROPERTY_RECOVERY_GROUP_COMMIT, Boolean.TRUE);
+        configProperties.put(Journal.PROPERTY_RECOVERY_SYNC_ON_COMMIT, Boolean.TRUE);
+        configProperties.put(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW, 1);
+        return configProperties;
+    }
+
+    @After
+    public void cleanup() throws EXistException, IOException, DatabaseConfigurationException {
+        BrokerPool.FORCE_CORRUPTION = false;
+        if (existEmbeddedServer.getBrokerPool() != null) {
+            existEmbeddedServer.stopDb();
+        }
+    }
+
+    /**
+     * A journal whose syncs wait until all committers have written
+     * their commit records, and which records the LSN covered by each sync.
+     */
+    private static class LatchedJournal extends Journal {
+        private final CountDownLatch committed;
+        private final AtomicReference<Lsn> syncedLsn = new AtomicReference<>(Lsn.LSN_INVALID);
+
+        LatchedJournal(final BrokerPool pool, final Path directory, final int committers) throws EXistException {
+            super(pool, directory);
+            this.committed = new CountDownLatch(committers);
+        }
+
+        @Override
+        void forceChannel(final FileChannel channel) throws IOException {
+            final Lsn covered;
+            synchronized (this) {
+                covered = lastWrittenLsn();
+            }
+
+            try {
+                if (!committed.await(1, TimeUnit.MINUTES)) {
+                    throw new IOException("Timed out waiting for the commit records");
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+
+            super.forceChannel(channel);
+            syncedLsn.accumulateAndGet(covered, (a, b) -> a.compareTo(b) >= 0 ? a : b);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.serializers;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.serializer.XQuerySerializer;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.Sequence;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import javax.xml.transform.OutputKeys;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Optional;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests the serialization of persistent nodes, which are streamed
+ * from the DOM file unless the receiver needs the stored nodes.
+ */
+public class NativeSerializerTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create("/db/native-serializer-test");
+    private static final XmldbURI DOC_NAME = XmldbURI.create("test.xml");
+
+    private static final String ITEM_1 = "<b:item xmlns:b=\"urn:b\" id=\"1\">first <sub>x</sub><!-- comment --><?pi data?></b:item>";
+    private static final String ITEM_2 = "<b:item xmlns:b=\"urn:b\" id=\"2\"><entry xmlns=\"urn:e\" n=\"a\">second</entry></b:item>";
+    private static final String ITEM_3 = "<b:item xmlns:b=\"urn:b\" id=\"3\"/>";
+    private static final String XML =
+            "<root xmlns:b=\"urn:b\">" +
+                    ITEM_1.replace(" xmlns:b=\"urn:b\"", "") +
+                    ITEM_2.replace(" xmlns:b=\"urn:b\"", "") +
+                    ITEM_3.replace(" xmlns:b=\"urn:b\"", "") +
+            "</root>";
+
+    @BeforeClass
+    public static void storeDocument() throws EXistException, PermissionDeniedException, IOException, TriggerException, LockException, SAXException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            broker.saveCollection(transaction, collection);
+            final IndexInfo indexInfo = collection.validateXMLResource(transaction, broker, DOC_NAME, XML);
+            collection.store(transaction, broker, indexInfo, XML);
+            transaction.commit();
+        }
+    }
+
+    @Test
+    public void document() throws EXistException, PermissionDeniedException, SAXException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final LockedDocument lockedDocument = broker.getXMLResource(TEST_COLLECTION.append(DOC_NAME), Lock.LockMode.READ_LOCK)) {
+            assertNotNull(lockedDocument);
+            final DocumentImpl doc = lockedDocument.getDocument();
+
+            final Serializer serializer = broker.getSerializer();
+            serializer.reset();
+            serializer.setProperties(outputProperties());
+            assertEquals(XML, serializer.serialize(doc));
+        }
+    }
+
+    @Test
+    public void elements() throws EXistException, PermissionDeniedException, SAXException, XPathException, IOException {
+        assertEquals(ITEM_1 + ITEM_2 + ITEM_3, query("//b:item", 1, 3));
+    }
+
+    @Test
+    public void descendantWithDefaultNamespace() throws EXistException, PermissionDeniedException, SAXException, XPathException, IOException {
+        assertEquals("<entry xmlns=\"urn:e\" n=\"a\">second</entry>", query("//*:entry", 1, 1));
+    }
+
+    @Test
+    public void fromStart() throws EXistException, PermissionDeniedException, SAXException, XPathException, IOException {
+        assertEquals(ITEM_2 + ITEM_3, query("//b:item", 2, 2));
+        assertEquals(ITEM_3, query("//b:item", 3, 5));
+    }
+
+    private String query(final String path, final int start, final int howmany) throws EXistException, PermissionDeniedException, SAXException, XPathException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final String query = "declare namespace b = 'urn:b'; doc('" + TEST_COLLECTION.append(DOC_NAME) + "')" + path;
+            final Sequence result = pool.getXQueryService().execute(broker, query, null);
+            try (final StringWriter writer = new StringWriter()) {
+                final XQuerySerializer serializer = new XQuerySerializer(broker, outputProperties(), writer);
+                serializer.serialize(result, start, Math.min(howmany, result.getItemCount() - start + 1), false, false, 0, 0);
+                return writer.toString();
+            }
+        }
+    }
+
+    private static Properties outputProperties() {
+        final Properties outputProperties = new Properties();
+        outputProperties.setProperty(OutputKeys.METHOD, "xml");
+        outputProperties.setProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        outputProperties.setProperty(OutputKeys.INDENT, "no");
+        outputProperties.setProperty(OutputKeys.ENCODING, "UTF-8");
+        return outputProperties;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.statistics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void duplicates() {
+        final HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("value" + (i % 10));
+        }
+        assertEquals(10, sketch.estimate());
+    }
+
+    @Test
+    public void largeCount() {
+        final HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 100000; i++) {
+            sketch.add(Integer.toString(i));
+        }
+        final long estimate = sketch.estimate();
+        assertTrue("estimate: " + estimate, Math.abs(estimate - 100000) < 5000);
+    }
+
+    @Test
+    public void merge() {
+        final HyperLogLog first = new HyperLogLog();
+        final HyperLogLog second = new HyperLogLog();
+        for (int i = 0; i < 50; i++) {
+            first.add("a" + i);
+            second.add("b" + i);
+            second.add("a" + i);
+        }
+        first.merge(second);
+        assertEquals(second.estimate(), first.estimate());
+        assertTrue("estimate: " + first.estimate(), Math.abs(first.estimate() - 100) <= 5);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.storage.statistics;
+
+import org.exist.EXistException;
+import org.exist.dom.QName;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.StringSource;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.Sequence;
+import org.junit.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the statistics on element and attribute values, and their use
+ * by the query optimizer to order predicates.
+ */
+public class ValueStatisticsTest {
+
+    private static final String DATA =
+            "<items>{ for $i in 1 to 100 return " +
+            "<item id='{$i}' type='{if ($i = 7) then 'rare' else 'common'}'><name>n{$i mod 10}</name></item> }" +
+            "</items>";
+
+    private static Path configFile;
+
+    @BeforeClass
+    public static void prepare() throws URISyntaxException {
+        final ClassLoader loader = ValueStatisticsTest.class.getClassLoader();
+        final char separator = System.getProperty("file.separator").charAt(0);
+        final String packagePath = ValueStatisticsTest.class.getPackage().getName().replace('.', separator);
+
+        configFile = Paths.get(loader.getResource(packagePath + separator + "conf.xml").toURI());
+    }
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer("db1", configFile, null, true);
+
+    @Test
+    public void storeAndRemove() throws EXistException, PermissionDeniedException, XPathException {
+        storeData();
+        final ValueStatistics stats = getValueStatistics();
+        assertEquals(100, stats.getNodeCount(new QName("id"), ElementValue.ATTRIBUTE));
+        assertEquals(1, stats.getDocumentCount(new QName("id"), ElementValue.ATTRIBUTE));
+        final long distinctIds = stats.getDistinctValues(new QName("id"), ElementValue.ATTRIBUTE);
+        assertTrue("distinct ids: " + distinctIds, distinctIds >= 95 && distinctIds <= 100);
+        assertEquals(2, stats.getDistinctValues(new QName("type"), ElementValue.ATTRIBUTE));
+        assertEquals(100, stats.getNodeCount(new QName("name"), ElementValue.ELEMENT));
+        assertEquals(10, stats.getDistinctValues(new QName("name"), ElementValue.ELEMENT));
+        // the root element has no text of its own
+        assertEquals(1, stats.getNodeCount(new QName("items"), ElementValue.ELEMENT));
+        assertEquals(0, stats.getDistinctValues(new QName("items"), ElementValue.ELEMENT));
+        // elements and attributes are counted separately
+        assertEquals(0, stats.getNodeCount(new QName("id"), ElementValue.ELEMENT));
+
+        execute("xmldb:remove('/db/value-stats-test', 'data.xml')");
+        assertEquals(0, stats.getNodeCount(new QName("id"), ElementValue.ATTRIBUTE));
+        assertEquals(0, stats.getDocumentCount(new QName("name"), ElementValue.ELEMENT));
+    }
+
+    @Test
+    public void xqueryFunction() throws EXistException, PermissionDeniedException, XPathException {
+        storeData();
+        assertEquals("100 2", execute(
+                "declare namespace exist='http://exist.sourceforge.net/NS/exist';\n" +
+                "let $type := system:get-value-statistics()/exist:attribute[@name = 'type']\n" +
+                "return $type/@node-count || ' ' || $type/@distinct-values"));
+    }
+
+    @Test
+    public void orderPredicates() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        storeData();
+        final String[] queries = {
+                "collection('/db/value-stats-test')//item[@type = 'common'][@id = '7']/name/string()",
+                "collection('/db/value-stats-test')//item[@type = 'common' and @id = '7']/name/string()",
+                "collection('/db/value-stats-test')//item[@id = '7'][@type = 'common']/name/string()"
+        };
+        for (final String query : queries) {
+            final String dump = compile(query);
+            assertTrue(dump, dump.indexOf("\"7\"") < dump.indexOf("\"common\""));
+            assertEquals("", execute(query));
+        }
+        assertEquals("n3", execute(
+                "collection('/db/value-stats-test')//item[@type = 'common'][name = 'n3'][@id = '13']/name/string()"));
+    }
+
+    private void storeData() throws EXistException, PermissionDeniedException, XPathException {
+        execute("xmldb:create-collection('/db', 'value-stats-test'), " +
+                "xmldb:store('/db/value-stats-test', 'data.xml', " + DATA + ")");
+    }
+
+    private ValueStatistics getValueStatistics() {
+        final IndexStatistics index = (IndexStatistics) existEmbeddedServer.getBrokerPool().getIndexManager()
+                .getIndexById(IndexStatistics.ID);
+        return index.getValueStatistics();
+    }
+
+    private String compile(final String query)
+            throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final CompiledXQuery compiled = pool.getXQueryService().compile(broker, new XQueryContext(pool),
+                    new StringSource(query));
+            final StringWriter writer = new StringWriter();
+            compiled.dump(writer);
+            return writer.toString();
+        }
+    }
+
+    private String execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Sequence result = pool.getXQueryService().execute(broker, query, null);
+            return result.getStringValue();
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.exist.dom.QName;
 import org.exist.storage.ElementValue;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 
@@ -32,4 +33,20 @@ public class NamePoolTest {
         qr = pool.getSharedName(q3);
         assertSame(q1, qr);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getSharedNameWithType() throws Exception {
+        NamePool pool = new NamePool();
+        QName q1 = new QName("n1", "http://exist-db.org", "x", ElementValue.ELEMENT);
+        QName qr1 = pool.getSharedName(q1, ElementValue.ATTRIBUTE);
+        assertNotSame(q1, qr1);
+        assertEquals(ElementValue.ATTRIBUTE, qr1.getNameType());
+
+        // a second lookup of the same name returns the same shared name
+        assertSame(qr1, pool.getSharedName(q1, ElementValue.ATTRIBUTE));
+        assertSame(q1, pool.getSharedName(q1));
+
+        QName q2 = new QName("n1", "http://exist-db.org", "x", ElementValue.ATTRIBUTE);
+        assertSame(qr1, pool.getSharedName(q2));
+    }
+}
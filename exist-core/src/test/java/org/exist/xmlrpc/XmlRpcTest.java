@@ -391,6 +391,23 @@ public class XmlRpcTest {
         assertFalse(b);
     }
 
+    @Test
+    public void testReindexCollectionWithWorkers() throws XmlRpcException, MalformedURLException {
+        storeData();
+        XmlRpcClient xmlrpc = getClient();
+        List<Object> params = new ArrayList<>(3);
+        params.add(TARGET_COLLECTION.toString());
+        params.add(2);
+        params.add(10);
+        Boolean b = (Boolean) xmlrpc.execute("reindexCollection", params);
+        assertTrue(b);
+
+        params.clear();
+        params.add(TARGET_RESOURCE.toString());
+        b = (Boolean) xmlrpc.execute("hasDocument", params);
+        assertTrue(b);
+    }
+
     @Test
     public void testRetrieveDoc() throws XmlRpcException, MalformedURLException {
         storeData();
@@ -0,0 +1,155 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.StringSource;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.value.Sequence;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the rewriting of equi-join predicates in for clauses into a {@link HashJoin},
+ * which must return the same results as the nested loop.
+ */
+public class HashJoinTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final String DISABLE_OPTIMIZER = "declare option exist:optimize \"enable=no\";\n";
+
+    private static final String DATA =
+            "<data>" +
+            "<customer id='1' name='Alice'><tag>a</tag><tag>b</tag></customer>" +
+            "<customer id='2' name='Bob'><tag>b</tag></customer>" +
+            "<customer id='3' name='Carol'><tag>c</tag><tag>c</tag></customer>" +
+            "<customer id='02' name='Dave'/>" +
+            "<order no='10' cust='1'/>" +
+            "<order no='11' cust='3'/>" +
+            "<order no='12' cust='1'/>" +
+            "<order no='13' cust='4'/>" +
+            "<order no='14'/>" +
+            "<order no='15' cust='2'/>" +
+            "</data>";
+
+    @BeforeClass
+    public static void storeData() throws EXistException, PermissionDeniedException, XPathException {
+        execute("xmldb:create-collection('/db', 'hash-join-test'), " +
+                "xmldb:store('/db/hash-join-test', 'data.xml', " + DATA + ")");
+    }
+
+    @Test
+    public void attributes() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        assertJoin(
+                "string-join(\n" +
+                "    for $a in collection('/db/hash-join-test')//order,\n" +
+                "        $c in collection('/db/hash-join-test')//customer[@id = $a/@cust]\n" +
+                "    return $a/@no || ':' || $c/@name, ',')",
+                "10:Alice,11:Carol,12:Alice,15:Bob");
+    }
+
+    @Test
+    public void numbers() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        // untyped keys are compared to numbers as xs:double, so id '02' matches 2
+        assertJoin(
+                "string-join(\n" +
+                "    for $n in (1, 2.0, 5e0),\n" +
+                "        $c in collection('/db/hash-join-test')//customer[@id = $n]\n" +
+                "    return $n || ':' || $c/@name, ',')",
+                "1:Alice,2:Bob,2:Dave");
+    }
+
+    @Test
+    public void severalKeys() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        assertJoin(
+                "string-join(\n" +
+                "    for $t in (('a', 'b'), 'c', ('c', 'b'))\n" +
+                "    let $tags := if ($t = 'a') then ('a', 'b') else $t\n" +
+                "    for $c in collection('/db/hash-join-test')//customer[tag = $tags]\n" +
+                "    return $t || ':' || $c/@name, ',')",
+                "a:Alice,a:Bob,b:Alice,b:Bob,c:Carol,c:Carol,b:Alice,b:Bob");
+    }
+
+    @Test
+    public void positionalVariable() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        assertJoin(
+                "string-join(\n" +
+                "    for $a in collection('/db/hash-join-test')//order,\n" +
+                "        $c at $p in collection('/db/hash-join-test')//customer[tag][@id = $a/@cust]\n" +
+                "    return $a/@no || ':' || $c/@name || ':' || $p, ',')",
+                "10:Alice:1,11:Carol:1,12:Alice:1,15:Bob:1");
+    }
+
+    @Test
+    public void dependentInput() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final String query =
+                "string-join(\n" +
+                "    for $a in collection('/db/hash-join-test')//order,\n" +
+                "        $c in $a/../customer[@id = $a/@cust]\n" +
+                "    return $a/@no || ':' || $c/@name, ',')";
+        assertFalse(compile(query).contains("hash-join("));
+        assertEquals("10:Alice,11:Carol,12:Alice,15:Bob", execute(query));
+    }
+
+    /**
+     * Check that the query is rewritten into a hash join, and returns the same
+     * result with and without the optimizer.
+     */
+    private static void assertJoin(final String query, final String expected)
+            throws EXistException, PermissionDeniedException, XPathException, IOException {
+        assertTrue(compile(query).contains("hash-join("));
+        assertEquals(expected, execute(DISABLE_OPTIMIZER + query));
+        assertEquals(expected, execute(query));
+    }
+
+    private static String compile(final String query)
+            throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final CompiledXQuery compiled = pool.getXQueryService().compile(broker, new XQueryContext(pool),
+                    new StringSource(query));
+            final StringWriter writer = new StringWriter();
+            compiled.dump(writer);
+            return writer.toString();
+        }
+    }
+
+    private static String execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Sequence result = pool.getXQueryService().execute(broker, query, null);
+            return result.getStringValue();
+        }
+    }
+}
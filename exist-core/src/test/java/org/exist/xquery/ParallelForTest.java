@@ -0,0 +1,208 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.security.Subject;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.value.Sequence;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the parallel evaluation of for expressions marked by the exist:parallel pragma,
+ * which must return the same results as the sequential evaluation.
+ */
+public class ParallelForTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final String PRAGMA = "(# exist:parallel #) ";
+
+    @Test
+    public void positionalVariable() throws EXistException, PermissionDeniedException, XPathException {
+        assertParallel("string-join(%s for $i at $p in reverse(1 to 500) return $i || ':' || $p %s, ',')");
+        assertEquals("3:1,2:2,1:3", execute(
+                "string-join(" + PRAGMA + "{ for $i at $p in (3, 2, 1) return $i || ':' || $p }, ',')"));
+    }
+
+    @Test
+    public void variablesInScope() throws EXistException, PermissionDeniedException, XPathException {
+        assertParallel(
+                "declare variable $local:offset := 100;\n" +
+                "declare variable $local:items := (1 to 10) ! ('item' || .);\n" +
+                "declare function local:transform($i, $n) { $i * $n + $local:offset };\n" +
+                "let $n := 3\n" +
+                "return\n" +
+                "    string-join(%s\n" +
+                "        for $i in 1 to 1000\n" +
+                "        let $j := $i mod 10 + 1\n" +
+                "        where $i mod 2 = 0\n" +
+                "        return local:transform($i, $n) || $local:items[$j]\n" +
+                "    %s, ',')");
+    }
+
+    @Test
+    public void nestedFor() throws EXistException, PermissionDeniedException, XPathException {
+        assertParallel("string-join(%s for $i in 1 to 100 for $j in 1 to $i mod 5 return $i * $j %s, ',')");
+    }
+
+    @Test
+    public void constructedNodes() throws EXistException, PermissionDeniedException, XPathException {
+        assertParallel(
+                "let $doc := <root>{ for $i in 1 to 200 return <a n='{$i}'>{$i * $i}</a> }</root>\n" +
+                "let $items := %s for $a in $doc/a return <b n='{$a/@n}'>{$a/string()}</b> %s\n" +
+                "return string-join($items ! (@n || '=' || .), ',')");
+    }
+
+    @Test
+    public void functionItemInScope() throws EXistException, PermissionDeniedException, XPathException {
+        // evaluated sequentially, as the function item is bound to the calling thread
+        assertSameResult(
+                "let $f := function($i) { $i + 1 }\n" +
+                "return string-join(%s for $i in 1 to 100 return $f($i) %s, ',')");
+    }
+
+    @Test
+    public void currentDateTime() throws EXistException, PermissionDeniedException, XPathException {
+        assertParallel("count(distinct-values(%s for $i in 1 to 1000 return string(current-dateTime()) %s))");
+    }
+
+    @Test
+    public void reusedCopies() throws EXistException, PermissionDeniedException, XPathException {
+        assertParallel(
+                "declare function local:sum($n) { sum(%s for $i in 1 to $n return $i * $i %s) };\n" +
+                "string-join((1 to 20) ! local:sum(. * 10), ',')");
+    }
+
+    /**
+     * The partitions are evaluated by the calling thread if no broker is available,
+     * instead of waiting for a broker, which the calling thread would never release.
+     */
+    @Test(timeout = 60_000)
+    public void noBrokerAvailable() throws EXistException, PermissionDeniedException, XPathException, InterruptedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Optional<Subject> subject = Optional.of(pool.getSecurityManager().getSystemSubject());
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final List<Thread> holders = new ArrayList<>();
+        try (final DBBroker broker = pool.get(subject)) {
+            // lease all of the other brokers
+            while (true) {
+                final CountDownLatch acquiredLatch = new CountDownLatch(1);
+                final AtomicBoolean leased = new AtomicBoolean();
+                final Thread holder = new Thread(() -> {
+                    try {
+                        final Optional<DBBroker> held = pool.tryGet(subject);
+                        leased.set(held.isPresent());
+                        acquiredLatch.countDown();
+                        if (held.isPresent()) {
+                            try (final DBBroker heldBroker = held.get()) {
+                                releaseLatch.await();
+                            }
+                        }
+                    } catch (final EXistException | InterruptedException e) {
+                        // release the broker
+                    } finally {
+                        acquiredLatch.countDown();
+                    }
+                }, "broker-holder-" + holders.size());
+                holder.start();
+                acquiredLatch.await();
+                if (!leased.get()) {
+                    holder.join();
+                    break;
+                }
+                holders.add(holder);
+            }
+
+            final long taskPartitions = ParallelFor.getTaskPartitionCount();
+            final Sequence result = pool.getXQueryService().execute(broker,
+                    "string-join(" + PRAGMA + "{ for $i in 1 to 100 return $i * 2 }, ',')", null);
+            assertEquals(execute("string-join(for $i in 1 to 100 return $i * 2, ',')"), result.getStringValue());
+            assertEquals(taskPartitions, ParallelFor.getTaskPartitionCount());
+        } finally {
+            releaseLatch.countDown();
+            for (final Thread holder : holders) {
+                holder.join();
+            }
+        }
+    }
+
+    @Test
+    public void error() throws EXistException, PermissionDeniedException {
+        try {
+            execute(PRAGMA + "{ for $i in 1 to 1000 return if ($i = 777) then error(xs:QName('local:failed'), 'failed at 777') else $i }");
+            fail("Expected the error raised by an iteration");
+        } catch (final XPathException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("failed at 777"));
+        }
+    }
+
+    @Test(expected = XPathException.class)
+    public void invalidContents() throws EXistException, PermissionDeniedException, XPathException {
+        execute("(# exist:parallel foo #) { for $i in 1 to 10 return $i }");
+    }
+
+    /**
+     * Check that a query returns the same result with and without the pragma,
+     * and that partitions were evaluated in parallel.
+     *
+     * @param query the query, with %s placeholders for the start and end of the expression
+     *     to evaluate in parallel
+     */
+    private static void assertParallel(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final long taskPartitions = ParallelFor.getTaskPartitionCount();
+        assertSameResult(query);
+        assertTrue("No partition was evaluated in parallel", ParallelFor.getTaskPartitionCount() > taskPartitions);
+    }
+
+    /**
+     * Check that a query returns the same result with and without the pragma.
+     *
+     * @param query the query, with %s placeholders for the start and end of the expression
+     *     to evaluate in parallel
+     */
+    private static void assertSameResult(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final String expected = execute(String.format(query, "(", ")"));
+        assertEquals(expected, execute(String.format(query, PRAGMA + "{", "}")));
+    }
+
+    private static String execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Sequence result = pool.getXQueryService().execute(broker, query, null);
+            return result.getStringValue();
+        }
+    }
+}
@@ -22,6 +22,9 @@ package org.exist.xquery;
 import org.exist.storage.DBBroker;
 import org.exist.security.Subject;
 import org.exist.xquery.value.BinaryValue;
+import org.exist.xquery.value.DateTimeValue;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.StringValue;
 import org.junit.Test;
 import org.easymock.EasyMock;
 
@@ -32,6 +35,9 @@ import java.util.List;
 
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * @author <a href="mailto:adam.retter@googlemail.com">Adam Retter</a>
@@ -162,6 +168,39 @@ public class XQueryContextTest {
         verify(mockBin1, mockBin2, mockBin3, mockBin4, mockBin5, mockBin6, mockBin7, mockWatchdog);
     }
 
+    /**
+     * Test to ensure that the state of an execution
+     * does not leak into the next use of the context
+     */
+    @Test
+    public void reset_clearsDynamicContext() throws XPathException {
+        final XQueryContext context = new XQueryContext();
+        final XQueryWatchDog mockWatchdog = createMock(XQueryWatchDog.class);
+        context.setWatchDog(mockWatchdog);
+
+        mockWatchdog.reset();
+        expectLastCall().times(2);
+        replay(mockWatchdog);
+
+        for (int i = 0; i < 2; i++) {
+            context.setContextItem(new StringValue("item"));
+            context.setContextSequencePosition(3, new StringValue("sequence"));
+            context.setCalendar(new DateTimeValue("2000-01-01T00:00:00Z").calendar);
+            assertEquals(3, context.getContextPosition());
+            assertEquals(2000, context.getCalendar().getYear());
+
+            context.reset();
+
+            assertSame(Sequence.EMPTY_SEQUENCE, context.getContextItem());
+            assertEquals(0, context.getContextPosition());
+            assertNull(context.getContextSequence());
+            assertNull(context.getRealUser());
+            assertNotEquals(2000, context.getCalendar().getYear());
+        }
+
+        verify(mockWatchdog);
+    }
+
     private int countBinaryValueInstances(final XQueryContext context) throws NoSuchFieldException, IllegalAccessException {
         final Field fldBinaryValueInstances = context.getClass().getDeclaredField("binaryValueInstances");
         fldBinaryValueInstances.setAccessible(true);
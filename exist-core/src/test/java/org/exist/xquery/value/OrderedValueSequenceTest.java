@@ -20,6 +20,8 @@
 
 package org.exist.xquery.value;
 
+import com.ibm.icu.text.Collator;
+import org.easymock.IExpectationSetters;
 import org.exist.xquery.Expression;
 import org.exist.xquery.OrderSpec;
 import org.exist.xquery.XPathException;
@@ -94,6 +96,76 @@ public class OrderedValueSequenceTest {
         assertEquals(69, count);
     }
 
+    @Test
+    public void sort() throws XPathException {
+        final OrderedValueSequence orderedValueSequence = orderedValueSequence(KEYS, 0, 0);
+        orderedValueSequence.sort();
+        assertItems(orderedValueSequence, 3, 1, 4, 0, 5, 2);
+    }
+
+    @Test
+    public void sort_limit() throws XPathException {
+        final OrderedValueSequence orderedValueSequence = orderedValueSequence(KEYS, 3, 0);
+        orderedValueSequence.sort();
+        assertItems(orderedValueSequence, 3, 1, 4);
+    }
+
+    @Test
+    public void sort_limit_greater_than_size() throws XPathException {
+        final OrderedValueSequence orderedValueSequence = orderedValueSequence(KEYS, 10, 0);
+        orderedValueSequence.sort();
+        assertItems(orderedValueSequence, 3, 1, 4, 0, 5, 2);
+    }
+
+    @Test
+    public void sort_spill() throws XPathException {
+        // runs of two items, all of them written to temporary files
+        OrderedValueSequence orderedValueSequence = orderedValueSequence(KEYS, 0, 2);
+        orderedValueSequence.sort();
+        assertItems(orderedValueSequence, 3, 1, 4, 0, 5, 2);
+
+        // one run written to a temporary file, and one held in memory
+        orderedValueSequence = orderedValueSequence(KEYS, 0, 4);
+        orderedValueSequence.sort();
+        assertItems(orderedValueSequence, 3, 1, 4, 0, 5, 2);
+    }
+
+    private static final int[] KEYS = { 5, 3, 9, 1, 3, 7 };
+
+    /**
+     * Creates a sequence of the integers 0 to keys.length - 1, which
+     * are ordered by the corresponding key.
+     */
+    private static OrderedValueSequence orderedValueSequence(final int[] keys, final int limit, final int spillThreshold) throws XPathException {
+        final Expression mockSortExpr = createMock(Expression.class);
+        IExpectationSetters<Sequence> expectation = expect(mockSortExpr.eval(null));
+        for (final int key : keys) {
+            expectation = expectation.andReturn(new IntegerValue(key));
+        }
+        replay(mockSortExpr);
+
+        final OrderSpec orderSpec = new OrderSpec(null, mockSortExpr) {
+            @Override
+            public Collator getCollator() {
+                return null;
+            }
+        };
+        final OrderedValueSequence orderedValueSequence = new OrderedValueSequence(new OrderSpec[] { orderSpec }, keys.length, limit, spillThreshold);
+        for (int i = 0; i < keys.length; i++) {
+            orderedValueSequence.add(new IntegerValue(i));
+        }
+        return orderedValueSequence;
+    }
+
+    private static void assertItems(final Sequence seq, final int... expected) throws XPathException {
+        assertEquals(expected.length, seq.getItemCount());
+        int i = 0;
+        for (final SequenceIterator it = seq.iterate(); it.hasNext(); i++) {
+            assertEquals(expected[i], ((IntegerValue) it.nextItem()).getInt());
+        }
+        assertEquals(expected.length, i);
+    }
+
     private static OrderedValueSequence mockOrderedValueSequence(final int size) throws XPathException {
         final Expression mockSortExpr = createMock(Expression.class);
         expect(mockSortExpr.eval(null)).andReturn(Sequence.EMPTY_SEQUENCE).anyTimes();
@@ -0,0 +1,90 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.indexing.lucene;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+public class IndexRefresh implements IndexRefreshMXBean {
+
+    private final String instanceId;
+    private final LuceneIndex index;
+
+    public IndexRefresh(final String instanceId, final LuceneIndex index) {
+        this.instanceId = instanceId;
+        this.index = index;
+    }
+
+    public static String getAllInstancesQuery() {
+        return "org.exist.management.*:type=IndexRefresh,*";
+    }
+
+    @Override
+    public ObjectName getName() throws MalformedObjectNameException {
+        return new ObjectName("org.exist.management." + instanceId + ":type=IndexRefresh,name=" + index.getDirName());
+    }
+
+    @Override
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    @Override
+    public String getIndexName() {
+        return index.getDirName();
+    }
+
+    @Override
+    public long getRefreshInterval() {
+        return index.getRefreshInterval();
+    }
+
+    @Override
+    public long getRefreshCount() {
+        return index.getRefreshCount();
+    }
+
+    @Override
+    public double getAverageRefreshTime() {
+        final long count = index.getRefreshCount();
+        return count == 0 ? 0 : index.getRefreshNanos() / (count * 1_000_000.0);
+    }
+
+    @Override
+    public double getMaxRefreshTime() {
+        return index.getMaxRefreshNanos() / 1_000_000.0;
+    }
+
+    @Override
+    public long getLastRefresh() {
+        return index.getLastRefresh();
+    }
+
+    @Override
+    public long getPendingChanges() {
+        return index.getPendingChanges();
+    }
+
+    @Override
+    public long getStaleness() {
+        final long since = index.getPendingSince();
+        return since == 0 ? 0 : System.currentTimeMillis() - since;
+    }
+}
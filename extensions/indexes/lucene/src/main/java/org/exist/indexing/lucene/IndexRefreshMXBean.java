@@ -0,0 +1,70 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.indexing.lucene;
+
+import org.exist.management.impl.PerInstanceMBean;
+
+/**
+ * JMX MXBean interface for examining how quickly changes to a Lucene based index
+ * become visible to queries.
+ */
+public interface IndexRefreshMXBean extends PerInstanceMBean {
+
+    /**
+     * @return the name of the index, i.e. its directory name
+     */
+    String getIndexName();
+
+    /**
+     * @return the configured maximum time in milliseconds before changes become
+     *     visible, or 0 if the readers are refreshed synchronously by queries
+     */
+    long getRefreshInterval();
+
+    /**
+     * @return the number of times the readers were refreshed
+     */
+    long getRefreshCount();
+
+    /**
+     * @return the average time in milliseconds taken to refresh the readers
+     */
+    double getAverageRefreshTime();
+
+    /**
+     * @return the maximum time in milliseconds taken to refresh the readers
+     */
+    double getMaxRefreshTime();
+
+    /**
+     * @return the time of the last refresh, in milliseconds since the epoch, or 0
+     */
+    long getLastRefresh();
+
+    /**
+     * @return the number of changes not yet visible to queries
+     */
+    long getPendingChanges();
+
+    /**
+     * @return the age in milliseconds of the oldest change not yet visible to queries, or 0
+     */
+    long getStaleness();
+}
@@ -26,6 +26,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.queryparser.classic.QueryParserBase;
+import org.apache.lucene.search.SortField;
 import org.exist.dom.QName;
 import org.exist.indexing.lucene.analyzers.NoDiacriticsStandardAnalyzer;
 import org.exist.storage.NodePath;
@@ -34,6 +35,8 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
+
 public class LuceneConfig {
 
     public final static LuceneConfig DEFAULT_CONFIG = new LuceneConfig();
@@ -75,6 +78,9 @@ public class LuceneConfig {
 
     protected FacetsConfig facetsConfig = new FacetsConfig();
 
+    // fields declared as sortable, with the type of their doc values
+    protected Map<String, SortField.Type> sortableFields = new HashMap<>();
+
     public LuceneConfig() {
     }
 
@@ -98,6 +104,7 @@ public class LuceneConfig {
     	this.boost = other.boost;
     	this.analyzers = other.analyzers;
     	this.facetsConfig = other.facetsConfig;
+    	this.sortableFields = other.sortableFields;
     }
     
     public boolean matches(NodePath path) {
@@ -255,6 +262,16 @@ public class LuceneConfig {
         return fieldTypes.get(name);
     }
 
+    /**
+     * Get the type by which a field is sorted.
+     *
+     * @param field the name of the field
+     * @return the type of the field's doc values, or null if the field is not sortable
+     */
+    public @Nullable SortField.Type getSortType(String field) {
+        return sortableFields.get(field);
+    }
+
     protected Optional<List<ModuleImport>> getImports() {
         return Optional.ofNullable(imports);
     }
@@ -23,6 +23,8 @@ package org.exist.indexing.lucene;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.*;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.BytesRef;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.NodeProxy;
 import org.exist.numbering.NodeId;
@@ -52,6 +54,10 @@ import java.util.Optional;
  *
  * A field may also be associated with an analyzer, could have a type and may be stored or not.
  *
+ * If the sortable attribute is set, the first value of the field is also stored as doc values,
+ * so query results can be sorted by the field within Lucene, see the sort option of ft:query.
+ * The doc values are stored in a separate field for each sort type, see {@link #getSortFieldName(String, SortField.Type)}.
+ *
  * @author Wolfgang Meier
  */
 public class LuceneFieldConfig extends AbstractFieldConfig {
@@ -61,10 +67,17 @@ public class LuceneFieldConfig extends AbstractFieldConfig {
     private final static String ATTR_STORE = "store";
     private final static String ATTR_ANALYZER = "analyzer";
     private final static String ATTR_IF = "if";
+    private final static String ATTR_SORTABLE = "sortable";
+
+    // sorted doc values are limited to 32766 bytes
+    private final static int MAX_SORT_CHARS = 8000;
+
+    private final static char SORT_FIELD_SEPARATOR = '#';
 
     protected String fieldName;
     protected int type = Type.STRING;
     protected boolean store = true;
+    protected boolean sortable = false;
     protected Analyzer analyzer= null;
     protected Optional<String> condition = Optional.empty();
     protected CompiledXQuery compiledCondition = null;
@@ -91,6 +104,14 @@ public class LuceneFieldConfig extends AbstractFieldConfig {
             this.store = storeStr.equalsIgnoreCase("yes") || storeStr.equalsIgnoreCase("true");
         }
 
+        final String sortableStr = configElement.getAttribute(ATTR_SORTABLE);
+        if (StringUtils.isNotEmpty(sortableStr)) {
+            this.sortable = sortableStr.equalsIgnoreCase("yes") || sortableStr.equalsIgnoreCase("true");
+            if (sortable) {
+                config.sortableFields.put(fieldName, getSortType());
+            }
+        }
+
         final String analyzerOpt = configElement.getAttribute(ATTR_ANALYZER);
         if (StringUtils.isNotEmpty(analyzerOpt)) {
             analyzer = analyzers.getAnalyzerById(analyzerOpt);
@@ -159,22 +180,92 @@ public class LuceneFieldConfig extends AbstractFieldConfig {
     @Override
     protected void processResult(Sequence result, Document luceneDoc) throws XPathException {
         for (SequenceIterator i = result.unorderedIterator(); i.hasNext(); ) {
-            final String text = i.nextItem().getStringValue();
-            final Field field = convertToField(text);
-            if (field != null) {
-                luceneDoc.add(field);
-            }
+            addField(i.nextItem().getStringValue(), luceneDoc);
         }
     }
 
     @Override
     protected void processText(CharSequence text, Document luceneDoc) {
-        final Field field = convertToField(text.toString());
+        addField(text.toString(), luceneDoc);
+    }
+
+    private void addField(String content, Document luceneDoc) {
+        final Field field = convertToField(content);
         if (field != null) {
+            // a document may only have one doc value per field: sort by the first value
+            if (sortable && luceneDoc.getField(fieldName) == null) {
+                try {
+                    luceneDoc.add(convertToDocValues(field, content));
+                } catch (XPathException e) {
+                    LOG.trace("Cannot convert field " + fieldName + " to a sort value. Content was: " + content);
+                }
+            }
             luceneDoc.add(field);
         }
     }
 
+    /**
+     * Get the name of the field holding the doc values by which a field is sorted.
+     *
+     * All collections share one Lucene index, which only allows one type of doc values
+     * per field, whereas the configurations of different collections may declare fields
+     * with the same name but different types. The name of the sort type is therefore
+     * appended to the name of the field.
+     *
+     * @param field the name of the field
+     * @param type the type of the field's doc values
+     * @return the name of the doc values field
+     */
+    static String getSortFieldName(String field, SortField.Type type) {
+        return field + SORT_FIELD_SEPARATOR + type.name();
+    }
+
+    private SortField.Type getSortType() {
+        switch (type) {
+            case Type.INTEGER:
+            case Type.LONG:
+            case Type.UNSIGNED_LONG:
+            case Type.DATE:
+            case Type.TIME:
+            case Type.DATE_TIME:
+                return SortField.Type.LONG;
+            case Type.INT:
+            case Type.UNSIGNED_INT:
+            case Type.SHORT:
+            case Type.UNSIGNED_SHORT:
+                return SortField.Type.INT;
+            case Type.DECIMAL:
+            case Type.DOUBLE:
+                return SortField.Type.DOUBLE;
+            case Type.FLOAT:
+                return SortField.Type.FLOAT;
+            default:
+                return SortField.Type.STRING;
+        }
+    }
+
+    private Field convertToDocValues(Field field, String content) throws XPathException {
+        final SortField.Type sortType = getSortType();
+        final String sortFieldName = getSortFieldName(fieldName, sortType);
+        switch (sortType) {
+            case LONG:
+                if (type == Type.DATE_TIME) {
+                    // the indexed string does not sort chronologically
+                    return new NumericDocValuesField(sortFieldName, new DateTimeValue(content).getTimeInMillis());
+                }
+                return new NumericDocValuesField(sortFieldName, field.numericValue().longValue());
+            case INT:
+                return new NumericDocValuesField(sortFieldName, field.numericValue().intValue());
+            case DOUBLE:
+                return new DoubleDocValuesField(sortFieldName, field.numericValue().doubleValue());
+            case FLOAT:
+                return new FloatDocValuesField(sortFieldName, field.numericValue().floatValue());
+            default:
+                final String value = content.length() > MAX_SORT_CHARS ? content.substring(0, MAX_SORT_CHARS) : content;
+                return new SortedDocValuesField(sortFieldName, new BytesRef(value));
+        }
+    }
+
     private Field convertToField(String content) {
         try {
             switch (type) {
@@ -36,11 +36,14 @@ import org.exist.backup.RawDataBackup;
 import org.exist.indexing.AbstractIndex;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.RawBackupSupport;
+import org.exist.management.Agent;
+import org.exist.management.AgentFactory;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.btree.DBException;
 import org.exist.util.DatabaseConfigurationException;
 import org.exist.util.FileUtils;
+import org.exist.util.NamedThreadFactory;
 import org.exist.xquery.XPathException;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -49,7 +52,31 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Lucene based full text index, also used by the range index.
+ *
+ * Changes to the index become visible to queries when the near real-time readers
+ * are refreshed. By default the readers are refreshed synchronously by the first
+ * query after a change. If a <code>refresh-interval</code> (in milliseconds) is configured,
+ * they are refreshed by a background thread instead, one interval after the first
+ * change which is not yet visible, and queries use the current readers without waiting. Index workers still
+ * see their own changes: a query refreshes synchronously if the readers are
+ * older than the last change made through the same worker, see
+ * {@link #withSearcher(long, Function2E)}.
+ *
+ * Changes are committed to disk before a checkpoint is written to the journal, as
+ * changes made after the last checkpoint are recovered by re-indexing the database.
+ * Other syncs only commit if the journal is disabled, or if a <code>commit-interval</code>
+ * (in milliseconds) has passed or <code>commit-changes</code> changes were made since
+ * the last commit. Committing less often avoids creating many small segments,
+ * which have to be merged again, during bulk loads.
+ */
 public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     
     public final static Version LUCENE_VERSION_IN_USE = Version.LUCENE_4_10_4;
@@ -68,12 +95,52 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
     protected double bufferSize = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
 
+    // segments per tier and maximum size in MB of merged segments, or 0 for the defaults
+    protected int mergeFactor = 0;
+    protected double maxMergedSegment = 0;
+
+    /**
+     * Minimum time in milliseconds, or number of changes, after which a sync commits the
+     * index even if no checkpoint is made. 0 to only commit at checkpoints.
+     */
+    protected long commitInterval = 0;
+    protected long commitChanges = 0;
+
+    private long lastCommit = System.currentTimeMillis();
+    private long committedChanges = 0;
+
     protected IndexWriter cachedWriter = null;
     protected DirectoryTaxonomyWriter cachedTaxonomyWriter = null;
 
     protected SearcherTaxonomyManager searcherManager = null;
     protected ReaderManager readerManager = null;
 
+    /**
+     * Maximum time in milliseconds before changes become visible to queries,
+     * or 0 to refresh the readers synchronously.
+     */
+    protected long refreshInterval = 0;
+
+    private ScheduledExecutorService refresher = null;
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean(false);
+    private final Object refreshLock = new Object();
+
+    // number of changes made to the index, and the number visible to the readers
+    private final AtomicLong changes = new AtomicLong();
+    private volatile long refreshedChanges = 0;
+
+    // guards changes being counted, and the times below
+    private final Object changeLock = new Object();
+    // time of the oldest change which is not yet visible
+    private long pendingSince = 0;
+    // time of the first change made since the current or last refresh started
+    private long changedSince = 0;
+
+    private volatile long lastRefresh = 0;
+    private volatile long refreshCount = 0;
+    private volatile long refreshNanos = 0;
+    private volatile long maxRefreshNanos = 0;
+
     public String getDirName() {
         return DIR_NAME;
     }
@@ -94,6 +161,16 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
         if (LOG.isDebugEnabled())
             LOG.debug("Using buffer size: " + bufferSize);
+
+        refreshInterval = getLongParam(config, "refresh-interval", refreshInterval);
+        commitInterval = getLongParam(config, "commit-interval", commitInterval);
+        commitChanges = getLongParam(config, "commit-changes", commitChanges);
+        maxMergedSegment = getLongParam(config, "max-merged-segment", 0);
+        mergeFactor = (int) getLongParam(config, "merge-factor", 0);
+        if (mergeFactor == 1) {
+            LOG.warn("Invalid merge factor setting for lucene index: 1. Must be at least 2.");
+            mergeFactor = 0;
+        }
         
         NodeList nl = config.getElementsByTagName("analyzer");
         if (nl.getLength() > 0) {
@@ -107,6 +184,18 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
             LOG.debug("Using default analyzer: " + defaultAnalyzer.getClass().getName());
     }
 
+    private static long getLongParam(final Element config, final String name, final long defaultValue) {
+        final String param = config.getAttribute(name);
+        if (param != null && !param.isEmpty()) {
+            try {
+                return Math.max(0, Long.parseLong(param));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid " + name + " setting for lucene index: " + param, e);
+            }
+        }
+        return defaultValue;
+    }
+
     @Override
     public void open() throws DatabaseConfigurationException {
         Path dir = getDataDir().resolve(getDirName());
@@ -129,11 +218,28 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
             final IndexWriterConfig idxWriterConfig = new IndexWriterConfig(LUCENE_VERSION_IN_USE, defaultAnalyzer);
             idxWriterConfig.setRAMBufferSizeMB(bufferSize);
+            if (mergeFactor > 0 || maxMergedSegment > 0) {
+                final TieredMergePolicy mergePolicy = new TieredMergePolicy();
+                if (mergeFactor > 0) {
+                    mergePolicy.setSegmentsPerTier(mergeFactor);
+                    mergePolicy.setMaxMergeAtOnce(mergeFactor);
+                }
+                if (maxMergedSegment > 0) {
+                    mergePolicy.setMaxMergedSegmentMB(maxMergedSegment);
+                }
+                idxWriterConfig.setMergePolicy(mergePolicy);
+            }
             cachedWriter = new IndexWriter(directory, idxWriterConfig);
             cachedTaxonomyWriter = new DirectoryTaxonomyWriter(taxoDirectory);
 
             searcherManager = new SearcherTaxonomyManager(cachedWriter, true, null, cachedTaxonomyWriter);
             readerManager = new ReaderManager(cachedWriter, true);
+
+            if (refreshInterval > 0) {
+                refresher = Executors.newSingleThreadScheduledExecutor(
+                        new NamedThreadFactory(pool, getDirName() + "-index.refresh"));
+            }
+            registerMBean();
         } catch (IOException e) {
             throw new DatabaseConfigurationException("Exception while reading lucene index directory: " +
                 e.getMessage(), e);
@@ -145,6 +251,15 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     @Override
     public synchronized void close() throws DBException {
         try {
+            if (refresher != null) {
+                refresher.shutdownNow();
+                try {
+                    refresher.awaitTermination(refreshInterval, TimeUnit.MILLISECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                refresher = null;
+            }
             if (searcherManager != null) {
                 searcherManager.close();
                 searcherManager = null;
@@ -170,8 +285,27 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
     @Override
     public synchronized void sync() throws DBException {
-        //Nothing special to do
-        commit();
+        // without a journal, the database will not be re-indexed after a crash
+        if (!pool.isRecoveryEnabled() || isCommitDue()) {
+            commit();
+        }
+    }
+
+    @Override
+    public synchronized void checkpoint() throws DBException {
+        if (!needsCommit) {
+            return;
+        }
+        try {
+            doCommit();
+        } catch (IOException e) {
+            throw new DBException("Failed to commit lucene index before checkpoint: " + e.getMessage());
+        }
+    }
+
+    private boolean isCommitDue() {
+        return (commitInterval > 0 && System.currentTimeMillis() - lastCommit >= commitInterval)
+                || (commitChanges > 0 && changes.get() - committedChanges >= commitChanges);
     }
 
     @Override
@@ -216,10 +350,106 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         return cachedTaxonomyWriter;
     }
 
-    public synchronized void releaseWriter(IndexWriter writer) {
+    /**
+     * Called by the index workers after changing the index.
+     *
+     * @param writer the writer returned by {@link #getWriter()}
+     * @return the number of changes made to the index so far, for
+     *     {@link #withSearcher(long, Function2E)}
+     */
+    public long releaseWriter(IndexWriter writer) {
         if (writer == null)
+            return changes.get();
+        synchronized (this) {
+            needsCommit = true;
+        }
+        final long change;
+        synchronized (changeLock) {
+            final long now = System.currentTimeMillis();
+            if (pendingSince == 0) {
+                pendingSince = now;
+            }
+            if (changedSince == 0) {
+                changedSince = now;
+            }
+            change = changes.incrementAndGet();
+        }
+        if (refresher != null) {
+            scheduleRefresh();
+        }
+        return change;
+    }
+
+    /**
+     * Get the number of changes made to the index so far. Passing it to
+     * {@link #withSearcher(long, Function2E)} makes all changes visible to the query.
+     *
+     * @return the number of changes
+     */
+    public long getChanges() {
+        return changes.get();
+    }
+
+    /**
+     * Schedule a refresh of the readers in the background, {@link #refreshInterval}
+     * after the first change which is not yet visible. Changes made while a refresh
+     * is scheduled are included in it.
+     */
+    private void scheduleRefresh() {
+        if (refreshScheduled.compareAndSet(false, true)) {
+            try {
+                refresher.schedule(() -> {
+                    refreshScheduled.set(false);
+                    try {
+                        refresh(changes.get());
+                    } catch (final IOException e) {
+                        LOG.error("Failed to refresh the readers of the " + getDirName() + " index: " + e.getMessage(), e);
+                    }
+                }, refreshInterval, TimeUnit.MILLISECONDS);
+            } catch (final java.util.concurrent.RejectedExecutionException e) {
+                // the index is being closed
+                refreshScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Make sure the readers include at least the given number of changes.
+     *
+     * @param minChanges the number of changes which must be visible
+     * @throws IOException if the readers cannot be reopened
+     */
+    private void refresh(final long minChanges) throws IOException {
+        if (refreshedChanges >= minChanges) {
             return;
-        needsCommit = true;
+        }
+        synchronized (refreshLock) {
+            if (refreshedChanges >= minChanges) {
+                return;
+            }
+            // changes made from now on may or may not be picked up
+            final long target;
+            synchronized (changeLock) {
+                target = changes.get();
+                changedSince = 0;
+            }
+            final long start = System.nanoTime();
+            searcherManager.maybeRefreshBlocking();
+            readerManager.maybeRefreshBlocking();
+            final long time = System.nanoTime() - start;
+
+            refreshedChanges = target;
+            synchronized (changeLock) {
+                // only the changes made since the target was taken may still be invisible
+                pendingSince = changedSince;
+            }
+            lastRefresh = System.currentTimeMillis();
+            refreshCount++;
+            refreshNanos += time;
+            if (time > maxRefreshNanos) {
+                maxRefreshNanos = time;
+            }
+        }
     }
 
     protected void commit() {
@@ -227,14 +457,7 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
             return;
         }
         try {
-            if(LOG.isDebugEnabled()) {
-                LOG.debug("Committing lucene index");
-            }
-        	if (cachedWriter != null) {
-                cachedTaxonomyWriter.commit();
-                cachedWriter.commit();
-            }
-            needsCommit = false;
+            doCommit();
         } catch(CorruptIndexException cie) {
             LOG.error("Detected corrupt Lucence index on writer release and commit: " + cie.getMessage(), cie);
         } catch(IOException ioe) {
@@ -242,8 +465,43 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         }
     }
 
+    private void doCommit() throws IOException {
+        if(LOG.isDebugEnabled()) {
+            LOG.debug("Committing lucene index");
+        }
+        final long target = changes.get();
+        if (cachedWriter != null) {
+            cachedTaxonomyWriter.commit();
+            cachedWriter.commit();
+        }
+        needsCommit = false;
+        committedChanges = target;
+        lastCommit = System.currentTimeMillis();
+    }
+
+    /**
+     * @return true if changes were made which have not yet been committed to disk
+     */
+    synchronized boolean hasUncommittedChanges() {
+        return needsCommit;
+    }
+
     public <R> R withReader(FunctionE<IndexReader, R, IOException> fn) throws IOException {
-        readerManager.maybeRefreshBlocking();
+        return withReader(0, fn);
+    }
+
+    /**
+     * Run the function with the current index reader.
+     *
+     * @param <R> the type of the result
+     * @param minChanges the number of changes, as returned by {@link #releaseWriter(IndexWriter)},
+     *     which must be visible to the reader
+     * @param fn the function to run
+     * @return the result of the function
+     * @throws IOException if the reader cannot be accessed
+     */
+    public <R> R withReader(final long minChanges, FunctionE<IndexReader, R, IOException> fn) throws IOException {
+        refreshForQuery(minChanges);
         final DirectoryReader reader = readerManager.acquire();
         try {
             return fn.apply(reader);
@@ -253,7 +511,22 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     }
 
     public <R> R withSearcher(Function2E<SearcherTaxonomyManager.SearcherAndTaxonomy, R, IOException, XPathException> consumer) throws IOException, XPathException {
-        searcherManager.maybeRefreshBlocking();
+        return withSearcher(0, consumer);
+    }
+
+    /**
+     * Run the function with the current index searcher.
+     *
+     * @param <R> the type of the result
+     * @param minChanges the number of changes, as returned by {@link #releaseWriter(IndexWriter)},
+     *     which must be visible to the searcher. Pass {@link #getChanges()} to see all changes.
+     * @param consumer the function to run
+     * @return the result of the function
+     * @throws IOException if the searcher cannot be accessed
+     * @throws XPathException if the function fails
+     */
+    public <R> R withSearcher(final long minChanges, Function2E<SearcherTaxonomyManager.SearcherAndTaxonomy, R, IOException, XPathException> consumer) throws IOException, XPathException {
+        refreshForQuery(minChanges);
         final SearcherTaxonomyManager.SearcherAndTaxonomy searcher = searcherManager.acquire();
         try {
             return consumer.apply(searcher);
@@ -262,8 +535,60 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         }
     }
 
+    private void refreshForQuery(final long minChanges) throws IOException {
+        if (refresher == null) {
+            // no background refresh: all changes must be visible
+            refresh(changes.get());
+        } else {
+            refresh(minChanges);
+        }
+    }
+
+    private void registerMBean() {
+        final Agent agent = AgentFactory.getInstance();
+        try {
+            agent.addMBean(new IndexRefresh(pool.getId(), this));
+        } catch (final DatabaseConfigurationException e) {
+            LOG.warn("Exception while registering JMX IndexRefresh MBean.", e);
+        }
+    }
+
+    long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    long getRefreshCount() {
+        return refreshCount;
+    }
+
+    long getRefreshNanos() {
+        return refreshNanos;
+    }
+
+    long getMaxRefreshNanos() {
+        return maxRefreshNanos;
+    }
+
+    long getLastRefresh() {
+        return lastRefresh;
+    }
+
+    long getPendingChanges() {
+        return Math.max(0, changes.get() - refreshedChanges);
+    }
+
+    long getPendingSince() {
+        synchronized (changeLock) {
+            return pendingSince;
+        }
+    }
+
 	@Override
 	public void backupToArchive(final RawDataBackup backup) throws IOException {
+        synchronized (this) {
+            // the backup only contains committed changes
+            commit();
+        }
 		for (final String name : directory.listAll()) {
 			final String path = getDirName() + "/" + name;
 
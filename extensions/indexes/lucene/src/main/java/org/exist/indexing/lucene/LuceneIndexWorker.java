@@ -62,6 +62,7 @@ import org.exist.util.Occurrences;
 import org.exist.util.pool.NodePool;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
+import org.exist.xquery.modules.lucene.LuceneModule;
 import org.exist.xquery.modules.lucene.QueryOptions;
 import org.exist.xquery.value.*;
 import org.w3c.dom.*;
@@ -111,6 +112,9 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     private Document pendingDoc = null;
     private boolean canFlush = false;
 
+    // the number of changes made to the index through this worker, which must be visible to its queries
+    private long lastChange = 0;
+
     private int cachedNodesSize = 0;
 
     private int maxCachedNodesSize = 4096 * 1024;
@@ -147,7 +151,18 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
 
+    @Override
+    public boolean supportsBatchFlush() {
+        // pending nodes are stored with their document, so the nodes of a batch
+        // are written with a single acquisition of the index writer, see write()
+        return true;
+    }
+
     public void flush() {
+        if (mode != ReindexMode.STORE) {
+            // the nodes of a batch must be written before nodes are removed
+            write();
+        }
         switch (mode) {
             case STORE:
                 write();
@@ -192,11 +207,11 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         this.mode = mode;
         switch (mode) {
             case STORE:
-                if (nodesToWrite == null)
+                // the nodes of previous documents are kept if flushes are batched, see supportsBatchFlush()
+                if (nodesToWrite == null) {
                     nodesToWrite = new ArrayList<>();
-                else
-                    nodesToWrite.clear();
-                cachedNodesSize = 0;
+                    cachedNodesSize = 0;
+                }
                 break;
             case REMOVE_SOME_NODES:
                 nodesToRemove = new TreeSet<>();
@@ -315,7 +330,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("Error while removing lucene index: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            lastChange = index.releaseWriter(writer);
             mode = ReindexMode.STORE;
         }
     }
@@ -330,7 +345,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("Error while removing lucene index: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            lastChange = index.releaseWriter(writer);
             mode = ReindexMode.STORE;
         }
     }
@@ -352,7 +367,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException | PermissionDeniedException | LockException e) {
             LOG.error("Error while removing lucene index: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            lastChange = index.releaseWriter(writer);
             if (reindex) {
                 try {
                     index.sync();
@@ -400,7 +415,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("Error while deleting lucene index entries: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            lastChange = index.releaseWriter(writer);
             nodesToRemove = null;
         }
     }
@@ -428,7 +443,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet query(int contextId, DocumentSet docs, NodeSet contextSet,
                          List<QName> qnames, String queryStr, int axis, QueryOptions options)
             throws IOException, ParseException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(minChanges(options), searcher -> {
             final List<QName> definedIndexes = getDefinedIndexes(qnames);
             final NodeSet resultSet = new NewArrayNodeSet();
             final boolean returnAncestor = axis == NodeSet.ANCESTOR;
@@ -449,7 +464,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                     query = drilldown(facets.get(), query, config);
                 }
                 searchAndProcess(contextId, qname, docs, contextSet, resultSet,
-                        returnAncestor, searcher, query, options.getFields(), config);
+                        returnAncestor, searcher, query, options.getFields(), options, config);
             }
             return resultSet;
         });
@@ -478,7 +493,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet query(int contextId, DocumentSet docs, NodeSet contextSet,
                          List<QName> qnames, Element queryRoot, int axis, QueryOptions options)
             throws IOException, ParseException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(minChanges(options), searcher -> {
             final List<QName> definedIndexes = getDefinedIndexes(qnames);
             final NodeSet resultSet = new NewArrayNodeSet();
             final boolean returnAncestor = axis == NodeSet.ANCESTOR;
@@ -493,7 +508,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 }
                 if (query != null) {
                     searchAndProcess(contextId, qname, docs, contextSet, resultSet,
-                            returnAncestor, searcher, query, options.getFields(), config);
+                            returnAncestor, searcher, query, options.getFields(), options, config);
                 }
             }
             return resultSet;
@@ -503,7 +518,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet queryField(int contextId, DocumentSet docs, NodeSet contextSet,
                               String field, Element queryRoot, int axis, QueryOptions options)
             throws IOException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(minChanges(options), searcher -> {
             final NodeSet resultSet = new NewArrayNodeSet();
             final boolean returnAncestor = axis == NodeSet.ANCESTOR;
             final LuceneConfig config = getLuceneConfig(broker, docs);
@@ -511,12 +526,20 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             final Query query = queryTranslator.parse(field, queryRoot, analyzer, options);
             if (query != null) {
                 searchAndProcess(contextId, null, docs, contextSet, resultSet,
-                        returnAncestor, searcher, query, null, config);
+                        returnAncestor, searcher, query, null, options, config);
             }
             return resultSet;
         });
     }
 
+    /**
+     * Get the number of changes which must be visible to a query: the changes made
+     * through this worker, or all changes if the query options ask for a refresh.
+     */
+    private long minChanges(final QueryOptions options) {
+        return options != null && options.refresh() ? index.getChanges() : lastChange;
+    }
+
     private Query drilldown(Map<String, QueryOptions.FacetQuery> facets, Query baseQuery, LuceneConfig config) {
         final DrillDownQuery drillDownQuery = new DrillDownQuery(config.facetsConfig, baseQuery);
         for (final Map.Entry<String, QueryOptions.FacetQuery> facet : facets.entrySet()) {
@@ -529,16 +552,64 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     private void searchAndProcess(int contextId, QName qname, DocumentSet docs,
                                   NodeSet contextSet, NodeSet resultSet, boolean returnAncestor,
                                   SearcherTaxonomyManager.SearcherAndTaxonomy searcher, Query query,
-                                  @Nullable Set<String> fields, LuceneConfig config) throws IOException {
+                                  @Nullable Set<String> fields, @Nullable QueryOptions options, LuceneConfig config)
+            throws IOException, XPathException {
         final LuceneFacets facets = new LuceneFacets();
         final FacetsCollector facetsCollector = new FacetsCollector();
-        final LuceneHitCollector collector = new LuceneHitCollector(qname, query, docs, contextSet, resultSet, returnAncestor, contextId, facets, facetsCollector, fields);
+        final TopDocsCollector<?> topDocsCollector = createTopDocsCollector(options, config);
+        final LuceneHitCollector collector = new LuceneHitCollector(qname, query, docs, contextSet, resultSet, returnAncestor, contextId, facets, facetsCollector, topDocsCollector, fields);
         searcher.searcher.search(query, collector);
+        if (topDocsCollector != null) {
+            collector.addTopDocs(searcher.searcher.getIndexReader());
+        }
 
         // compute facets
         facets.compute(searcher.taxonomyReader, config.facetsConfig, facetsCollector);
     }
 
+    /**
+     * If the options limit the number of hits, create a collector which selects the best hits
+     * while searching, either by score or by the sort fields given in the options. Only the
+     * selected hits are then resolved to nodes. Sort fields must be declared sortable, so they
+     * can be read from the doc values.
+     *
+     * Note that the result is a node set in document order: the sort order only
+     * determines which hits are kept.
+     *
+     * @param options the query options
+     * @param config the index configuration
+     * @return a collector or null if all hits should be returned
+     */
+    private @Nullable TopDocsCollector<?> createTopDocsCollector(@Nullable QueryOptions options, @Nullable LuceneConfig config)
+            throws IOException, XPathException {
+        if (options == null || options.getLimit() == 0) {
+            return null;
+        }
+        final List<String> sortSpecs = options.getSort();
+        if (sortSpecs == null || sortSpecs.isEmpty()) {
+            return TopScoreDocCollector.create(options.getLimit(), true);
+        }
+        final SortField[] sortFields = new SortField[sortSpecs.size()];
+        for (int i = 0; i < sortFields.length; i++) {
+            final String[] spec = sortSpecs.get(i).split("\\s+");
+            final boolean descending = spec.length > 1 && spec[1].equalsIgnoreCase("descending");
+            if (spec.length > 2 || (spec.length == 2 && !descending && !spec[1].equalsIgnoreCase("ascending"))) {
+                throw new XPathException(LuceneModule.EXXQDYFT0004, "Invalid sort key: " + sortSpecs.get(i));
+            }
+            if (spec[0].equals("score")) {
+                // scores sort in descending order by default
+                sortFields[i] = new SortField(null, SortField.Type.SCORE, spec.length > 1 && !descending);
+            } else {
+                final SortField.Type type = config == null ? null : config.getSortType(spec[0]);
+                if (type == null) {
+                    throw new XPathException(LuceneModule.EXXQDYFT0004, "Field " + spec[0] + " is not sortable");
+                }
+                sortFields[i] = new SortField(LuceneFieldConfig.getSortFieldName(spec[0], type), type, descending);
+            }
+        }
+        return TopFieldCollector.create(new Sort(sortFields), options.getLimit(), false, true, false, true);
+    }
+
     /**
      * Wrapper around Lucene {@link Facets}, which are computed after the search has finished.
      */
@@ -568,7 +639,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet queryField(XQueryContext context, int contextId, DocumentSet docs, NodeSet contextSet,
             String field, String queryString, int axis, QueryOptions options)
             throws IOException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(minChanges(options), searcher -> {
             NodeSet resultSet = new NewArrayNodeSet();
             boolean returnAncestor = axis == NodeSet.ANCESTOR;
             LuceneConfig config = getLuceneConfig(context.getBroker(), docs);
@@ -578,7 +649,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             options.configureParser(parser.getConfiguration());
             Query query = parser.parse(queryString);
             searchAndProcess(contextId, null, docs, contextSet, resultSet,
-                    returnAncestor, searcher, query, null, config);
+                    returnAncestor, searcher, query, null, options, config);
             return resultSet;
         });
     }
@@ -665,7 +736,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             LOG.warn("An exception was caught while indexing document: " + e.getMessage(), e);
 
         } finally {
-            index.releaseWriter(writer);
+            lastChange = index.releaseWriter(writer);
             pendingDoc = null;
             cachedNodesSize = 0;
         }
@@ -686,7 +757,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
      */
     public NodeImpl search(final XQueryContext context, final List<String> toBeMatchedURIs, String queryText, String[] fieldsToGet, QueryOptions options) throws XPathException, IOException {
 
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(minChanges(options), searcher -> {
             // Get analyzer : to be retrieved from configuration
             final Analyzer searchAnalyzer = new StandardAnalyzer(LuceneIndex.LUCENE_VERSION_IN_USE);
 
@@ -822,7 +893,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         NumericUtils.intToPrefixCoded(docId, 0, bytes);
         Term dt = new Term(FIELD_DOC_ID, bytes.toBytesRef());
 
-        return index.withReader(reader -> {
+        return index.withReader(lastChange, reader -> {
             List<AtomicReaderContext> leaves = reader.leaves();
             for (AtomicReaderContext context : leaves) {
                 AtomicReader atomicReader = context.reader();
@@ -844,7 +915,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         NumericUtils.intToPrefixCoded(docId, 0, bytes);
         Term dt = new Term(FIELD_DOC_ID, bytes.toBytesRef());
 
-        return index.withReader(reader -> {
+        return index.withReader(lastChange, reader -> {
             boolean found = false;
             List<AtomicReaderContext> leaves = reader.leaves();
             for (AtomicReaderContext context : leaves) {
@@ -903,9 +974,10 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         private final Query query;
         private final LuceneFacets facets;
         private final FacetsCollector chainedCollector;
+        private final TopDocsCollector<?> topDocsCollector;
         private final Set<String> fields;
 
-        private LuceneHitCollector(QName qname, Query query, DocumentSet docs, NodeSet contextSet, NodeSet resultSet, boolean returnAncestor, int contextId, LuceneFacets facets, FacetsCollector nextCollector, @Nullable Set<String> fields) {
+        private LuceneHitCollector(QName qname, Query query, DocumentSet docs, NodeSet contextSet, NodeSet resultSet, boolean returnAncestor, int contextId, LuceneFacets facets, FacetsCollector nextCollector, @Nullable TopDocsCollector<?> topDocsCollector, @Nullable Set<String> fields) {
             this.qname = qname;
             this.docs = docs;
             this.contextSet = contextSet;
@@ -915,6 +987,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             this.query = query;
             this.facets = facets;
             this.chainedCollector = nextCollector;
+            this.topDocsCollector = topDocsCollector;
             this.fields = fields;
         }
 
@@ -922,14 +995,24 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         public void setScorer(Scorer scorer) throws IOException {
             this.scorer = scorer;
             chainedCollector.setScorer(scorer);
+            if (topDocsCollector != null) {
+                topDocsCollector.setScorer(scorer);
+            }
         }
 
         @Override
         public void setNextReader(AtomicReaderContext atomicReaderContext) throws IOException {
-            this.reader = atomicReaderContext.reader();
+            setReader(atomicReaderContext.reader());
+            chainedCollector.setNextReader(atomicReaderContext);
+            if (topDocsCollector != null) {
+                topDocsCollector.setNextReader(atomicReaderContext);
+            }
+        }
+
+        private void setReader(AtomicReader reader) throws IOException {
+            this.reader = reader;
             this.docIdValues = this.reader.getNumericDocValues(FIELD_DOC_ID);
             this.nodeIdValues = this.reader.getBinaryDocValues(LuceneUtil.FIELD_NODE_ID);
-            chainedCollector.setNextReader(atomicReaderContext);
         }
 
         @Override
@@ -940,47 +1023,17 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         @Override
         public void collect(int doc) {
             try {
-                float score = scorer.score();
-                int docId = (int) this.docIdValues.get(doc);
-                DocumentImpl storedDocument = docs.getDoc(docId);
-                if (storedDocument == null)
-                    return;
-                final BytesRef ref = this.nodeIdValues.get(doc);
-                int units = ByteConversion.byteToShort(ref.bytes, ref.offset);
-                NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromData(units, ref.bytes, ref.offset + 2);
-                //LOG.info("doc: " + docId + "; node: " + nodeId.toString() + "; units: " + units);
-
-                NodeProxy storedNode = new NodeProxy(storedDocument, nodeId);
-                if (qname != null)
-                    storedNode.setNodeType(qname.getNameType() == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node.ELEMENT_NODE);
-                // if a context set is specified, we can directly check if the
-                // matching node is a descendant of one of the nodes
-                // in the context set.
-                if (contextSet != null) {
-                    int sizeHint = contextSet.getSizeHint(storedDocument);
-                    if (returnAncestor) {
-                        NodeProxy parentNode = contextSet.get(storedNode);
-                        // NodeProxy parentNode = contextSet.parentWithChild(storedNode, false, true, NodeProxy.UNKNOWN_NODE_LEVEL);
-                        if (parentNode != null) {
-                            LuceneMatch match = createMatch(doc, score, nodeId);
-                            parentNode.addMatch(match);
-                            resultSet.add(parentNode, sizeHint);
-                            if (Expression.NO_CONTEXT_ID != contextId) {
-                                parentNode.deepCopyContext(storedNode, contextId);
-                            } else
-                                parentNode.copyContext(storedNode);
-                            chainedCollector.collect(doc);
-                        }
-                    } else {
-                        LuceneMatch match = createMatch(doc, score, nodeId);
-                        storedNode.addMatch(match);
-                        resultSet.add(storedNode, sizeHint);
-                        chainedCollector.collect(doc);
+                final boolean accepted;
+                if (topDocsCollector != null) {
+                    // only select the hit here, the best hits are added by addTopDocs
+                    accepted = process(doc, 0, false);
+                    if (accepted) {
+                        topDocsCollector.collect(doc);
                     }
                 } else {
-                    LuceneMatch match = createMatch(doc, score, nodeId);
-                    storedNode.addMatch(match);
-                    resultSet.add(storedNode);
+                    accepted = process(doc, scorer.score(), true);
+                }
+                if (accepted) {
                     chainedCollector.collect(doc);
                 }
             } catch (IOException e) {
@@ -988,6 +1041,74 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             }
         }
 
+        /**
+         * Add the hits selected by the top docs collector to the result.
+         *
+         * @param indexReader the reader which was searched
+         */
+        private void addTopDocs(IndexReader indexReader) throws IOException {
+            final List<AtomicReaderContext> leaves = indexReader.leaves();
+            for (final ScoreDoc hit : topDocsCollector.topDocs().scoreDocs) {
+                final AtomicReaderContext leaf = leaves.get(ReaderUtil.subIndex(hit.doc, leaves));
+                setReader(leaf.reader());
+                process(hit.doc - leaf.docBase, hit.score, true);
+            }
+        }
+
+        /**
+         * Check if the hit is in the documents and context set of the query,
+         * and add it to the result if requested.
+         *
+         * @param doc the Lucene document number within the current reader
+         * @param score the score of the hit
+         * @param add true if the hit should be added to the result
+         * @return true if the hit belongs to the result
+         */
+        private boolean process(int doc, float score, boolean add) throws IOException {
+            int docId = (int) this.docIdValues.get(doc);
+            DocumentImpl storedDocument = docs.getDoc(docId);
+            if (storedDocument == null)
+                return false;
+            final BytesRef ref = this.nodeIdValues.get(doc);
+            int units = ByteConversion.byteToShort(ref.bytes, ref.offset);
+            NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromData(units, ref.bytes, ref.offset + 2);
+            //LOG.info("doc: " + docId + "; node: " + nodeId.toString() + "; units: " + units);
+
+            NodeProxy storedNode = new NodeProxy(storedDocument, nodeId);
+            if (qname != null)
+                storedNode.setNodeType(qname.getNameType() == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node.ELEMENT_NODE);
+            // if a context set is specified, we can directly check if the
+            // matching node is a descendant of one of the nodes
+            // in the context set.
+            if (contextSet != null) {
+                if (returnAncestor) {
+                    NodeProxy parentNode = contextSet.get(storedNode);
+                    // NodeProxy parentNode = contextSet.parentWithChild(storedNode, false, true, NodeProxy.UNKNOWN_NODE_LEVEL);
+                    if (parentNode == null) {
+                        return false;
+                    }
+                    if (add) {
+                        LuceneMatch match = createMatch(doc, score, nodeId);
+                        parentNode.addMatch(match);
+                        resultSet.add(parentNode, contextSet.getSizeHint(storedDocument));
+                        if (Expression.NO_CONTEXT_ID != contextId) {
+                            parentNode.deepCopyContext(storedNode, contextId);
+                        } else
+                            parentNode.copyContext(storedNode);
+                    }
+                } else if (add) {
+                    LuceneMatch match = createMatch(doc, score, nodeId);
+                    storedNode.addMatch(match);
+                    resultSet.add(storedNode, contextSet.getSizeHint(storedDocument));
+                }
+            } else if (add) {
+                LuceneMatch match = createMatch(doc, score, nodeId);
+                storedNode.addMatch(match);
+                resultSet.add(storedNode);
+            }
+            return true;
+        }
+
         private LuceneMatch createMatch(int docId, float score, NodeId nodeId) throws IOException {
             final LuceneMatch match = new LuceneMatch(contextId, nodeId, query, facets);
             match.setScore(score);
@@ -1028,7 +1149,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     private List<QName> getDefinedIndexesFor(QName qname, final List<QName> indexes) throws IOException {
-        return index.withReader(reader -> {
+        return index.withReader(lastChange, reader -> {
             for (FieldInfo info: MultiFields.getMergedFieldInfos(reader)) {
                 if (!FIELD_DOC_ID.equals(info.name)) {
                     QName name = LuceneUtil.decodeQName(info.name, index.getBrokerPool().getSymbols());
@@ -1175,7 +1296,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     private Occurrences[] scanIndexByQName(List<QName> qnames, DocumentSet docs, NodeSet nodes, String start, String end, long max) throws IOException {
         final TreeMap<String, Occurrences> map = new TreeMap<>();
-        index.withReader(reader -> {
+        index.withReader(lastChange, reader -> {
             for (QName qname : qnames) {
                 String field = LuceneUtil.encodeQName(qname, index.getBrokerPool().getSymbols());
                 doScanIndex(docs, nodes, start, end, max, map, reader, field);
@@ -1188,7 +1309,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     private Occurrences[] scanIndexByField(String field, DocumentSet docs, NodeSet nodes, String start, String end, long max) throws IOException {
         final TreeMap<String, Occurrences> map = new TreeMap<>();
-        index.withReader(reader -> {
+        index.withReader(lastChange, reader -> {
             doScanIndex(docs, nodes, start, end, max, map, reader, field);
             return null;
         });
@@ -1271,7 +1392,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
      * @param content the content of the node
      */
     protected void indexText(final NodeId nodeId, final QName qname, final NodePath path, final LuceneIndexConfig config, final CharSequence content) {
-        final PendingDoc pending = new PendingDoc(nodeId, qname, path, content, config.getBoost(), config);
+        final PendingDoc pending = new PendingDoc(currentDoc, this.config, nodeId, qname, path, content, config.getBoost(), config);
         addPending(pending);
     }
 
@@ -1287,7 +1408,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
      * @param content the content of the node
      */
     protected void indexText(final java.util.Collection<AttrImpl> attribs, final NodeId nodeId, final QName qname, final NodePath path, final LuceneIndexConfig config, final CharSequence content) {
-        final PendingDoc pending = new PendingDoc(nodeId, qname, path, content, config.getAttrBoost(attribs), config);
+        final PendingDoc pending = new PendingDoc(currentDoc, this.config, nodeId, qname, path, content, config.getAttrBoost(attribs), config);
         addPending(pending);
     }
     
@@ -1299,7 +1420,14 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 	    }
     }
 
+    /**
+     * A node to be written to the index. The node keeps its document and the configuration
+     * of the document's collection, as the nodes of several documents are written at once
+     * when flushes are batched, see {@link LuceneIndexWorker#supportsBatchFlush()}.
+     */
     private static class PendingDoc {
+        private final DocumentImpl document;
+        private final LuceneConfig config;
         private final NodeId nodeId;
         private final QName qname;
         private final NodePath path;
@@ -1307,8 +1435,10 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         private final float boost;
         private final LuceneIndexConfig idxConf;
 
-        private PendingDoc(final NodeId nodeId, final QName qname, final NodePath path, final CharSequence text,
-                final float boost, final LuceneIndexConfig idxConf) {
+        private PendingDoc(final DocumentImpl document, final LuceneConfig config, final NodeId nodeId, final QName qname,
+                final NodePath path, final CharSequence text, final float boost, final LuceneIndexConfig idxConf) {
+            this.document = document;
+            this.config = config;
             this.nodeId = nodeId;
             this.qname = qname;
             this.path = path;
@@ -1359,10 +1489,10 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
                 List<AbstractFieldConfig> facetConfigs = pending.idxConf.getFacetsAndFields();
                 facetConfigs.forEach(config ->
-                    config.build(broker, currentDoc, pending.nodeId, doc, pending.text)
+                    config.build(broker, pending.document, pending.nodeId, doc, pending.text)
                 );
 
-                fDocId.setLongValue(currentDoc.getDocId());
+                fDocId.setLongValue(pending.document.getDocId());
                 doc.add(fDocId);
 
                 // store the node id
@@ -1391,30 +1521,30 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                     Field fld = new Field(contentField, pending.text.toString(), Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.YES);
                     if (pending.boost > 0) {
                         fld.setBoost(pending.boost);
-                    } else if (config.getBoost() > 0) {
-                        fld.setBoost(config.getBoost());
+                    } else if (pending.config.getBoost() > 0) {
+                        fld.setBoost(pending.config.getBoost());
                     }
 
                     doc.add(fld);
                 }
 
-                fDocIdIdx.setIntValue(currentDoc.getDocId());
+                fDocIdIdx.setIntValue(pending.document.getDocId());
                 doc.add(fDocIdIdx);
 
-                final byte[] docNodeId = LuceneUtil.createId(currentDoc.getDocId(), pending.nodeId);
+                final byte[] docNodeId = LuceneUtil.createId(pending.document.getDocId(), pending.nodeId);
                 final Field fDocNodeId = new StoredField("docNodeId", docNodeId);
                 doc.add(fDocNodeId);
 
                 if (pending.idxConf.getAnalyzer() == null) {
-                    writer.addDocument(config.facetsConfig.build(index.getTaxonomyWriter(), doc));
+                    writer.addDocument(pending.config.facetsConfig.build(index.getTaxonomyWriter(), doc));
                 } else {
-                    writer.addDocument(config.facetsConfig.build(index.getTaxonomyWriter(), doc), pending.idxConf.getAnalyzer());
+                    writer.addDocument(pending.config.facetsConfig.build(index.getTaxonomyWriter(), doc), pending.idxConf.getAnalyzer());
 		        }
 	        }
         } catch (final IOException e) {
             LOG.warn("An exception was caught while indexing document: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            lastChange = index.releaseWriter(writer);
             nodesToWrite = new ArrayList<>();
             cachedNodesSize = 0;
         }
@@ -1433,7 +1563,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("An exception was caught while optimizing the lucene index: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            lastChange = index.releaseWriter(writer);
         }
     }
 
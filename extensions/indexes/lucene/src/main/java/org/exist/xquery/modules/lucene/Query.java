@@ -86,7 +86,11 @@ public class Query extends Function implements Optimizable {
                         "   <phrase-slop>number</phrase-slop>\n" +
                         "   <leading-wildcard>yes|no</leading-wildcard>\n" +
                         "   <filter-rewrite>yes|no</filter-rewrite>\n" +
-                        "</options>")
+                        "   <limit>number</limit>\n" +
+                        "   <sort>score|field [ascending|descending], ...</sort>\n" +
+                        "</options>\n" +
+                        "If a limit is given, only the best hits by score, or by the given sortable fields, are " +
+                        "returned. The result is still in document order. A sort requires a limit.")
             },
             new FunctionReturnSequenceType(Type.NODE, Cardinality.ZERO_OR_MORE,
                 "all nodes from the input node set matching the query. match highlighting information " +
@@ -53,6 +53,9 @@ public class QueryOptions {
     public static final String OPTION_FACETS = "facets";
     public static final String OPTION_FIELDS = "fields";
     public static final String OPTION_QUERY_ANALYZER_ID = "query-analyzer-id";
+    public static final String OPTION_REFRESH = "refresh";
+    public static final String OPTION_SORT = "sort";
+    public static final String OPTION_LIMIT = "limit";
 
     protected enum DefaultOperator {
         OR,
@@ -68,6 +71,9 @@ public class QueryOptions {
     protected boolean lowercaseExpandedTerms = false;
     protected Optional<Map<String, FacetQuery>> facets = Optional.empty();
     protected Set<String> fields = null;
+    protected boolean refresh = false;
+    protected List<String> sort = null;
+    protected int limit = 0;
 
     public QueryOptions() {
         // default options
@@ -95,6 +101,7 @@ public class QueryOptions {
         } catch (XMLStreamException | IOException e) {
             throw new XPathException(LuceneModule.EXXQDYFT0004, "Error while parsing options to ft:query: " + e.getMessage(), e);
         }
+        checkSort();
     }
 
     public QueryOptions(AbstractMapType map) throws XPathException {
@@ -120,10 +127,25 @@ public class QueryOptions {
                     tf.put(facet.key().getStringValue(), values);
                 }
                 facets = Optional.of(tf);
+            } else if (key.equals(OPTION_SORT)) {
+                for (SequenceIterator i = entry.value().iterate(); i.hasNext(); ) {
+                    set(key, i.nextItem().getStringValue());
+                }
             } else {
                 set(key, entry.value().getStringValue());
             }
         }
+        checkSort();
+    }
+
+    /**
+     * The sort keys only select the hits to keep, so a sort
+     * without a limit would have no effect.
+     */
+    private void checkSort() throws XPathException {
+        if (sort != null && !sort.isEmpty() && limit == 0) {
+            throw new XPathException(LuceneModule.EXXQDYFT0004, "Option " + OPTION_SORT + " requires option " + OPTION_LIMIT);
+        }
     }
 
     /**
@@ -207,6 +229,30 @@ public class QueryOptions {
         return filterRewrite;
     }
 
+    /**
+     * @return true if the query must see all changes made to the index so far,
+     *     even if the index is configured to refresh in the background
+     */
+    public boolean refresh() {
+        return refresh;
+    }
+
+    /**
+     * @return the sort keys selecting the hits to keep if a {@link #getLimit() limit} is given:
+     *     the name of a sortable field or "score", each optionally followed by "ascending"
+     *     or "descending"; or null to keep the hits with the highest score
+     */
+    public @Nullable List<String> getSort() {
+        return sort;
+    }
+
+    /**
+     * @return the maximum number of hits to return, or 0 to return all hits
+     */
+    public int getLimit() {
+        return limit;
+    }
+
     private void set(String key, String value) throws XPathException {
         switch (key) {
             case OPTION_DEFAULT_OPERATOR:
@@ -230,6 +276,29 @@ public class QueryOptions {
             case OPTION_LOWERCASE_EXPANDED_TERMS:
                 lowercaseExpandedTerms = value.equalsIgnoreCase("yes");
                 break;
+            case OPTION_REFRESH:
+                refresh = value.equalsIgnoreCase("yes");
+                break;
+            case OPTION_SORT:
+                if (sort == null) {
+                    sort = new ArrayList<>();
+                }
+                for (final String spec : value.split(",")) {
+                    if (!spec.trim().isEmpty()) {
+                        sort.add(spec.trim());
+                    }
+                }
+                break;
+            case OPTION_LIMIT:
+                try {
+                    limit = Integer.parseInt(value.trim());
+                } catch (NumberFormatException e) {
+                    limit = -1;
+                }
+                if (limit < 1) {
+                    throw new XPathException(LuceneModule.EXXQDYFT0004, "Option " + OPTION_LIMIT + " must be a positive integer");
+                }
+                break;
             case OPTION_QUERY_ANALYZER_ID:
                 queryAnalyzerId = value;
             default:
@@ -0,0 +1,158 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.indexing.lucene;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationException;
+import org.exist.collections.CollectionConfigurationManager;
+import org.exist.collections.IndexInfo;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.test.TestConstants;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.Sequence;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the visibility of changes when the lucene index is configured
+ * with a <code>refresh-interval</code>, which is long enough for the
+ * readers not to be refreshed in the background during the test.
+ */
+public class LuceneIndexRefreshTest {
+
+    private static final long REFRESH_INTERVAL = 60000;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(null, getConfigFile(), null, true, true);
+
+    private static final String COLLECTION_CONFIG =
+        "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+        "   <index>" +
+        "       <lucene>" +
+        "           <text qname=\"p\"/>" +
+        "       </lucene>" +
+        "   </index>" +
+        "</collection>";
+
+    private static Path getConfigFile() {
+        try {
+            final URL url = LuceneIndexRefreshTest.class.getResource("conf.xml");
+            return Paths.get(url.toURI());
+        } catch (final URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void refreshInterval() throws EXistException, PermissionDeniedException, CollectionConfigurationException, SAXException, LockException, IOException, XPathException, InterruptedException, ExecutionException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final LuceneIndex index = (LuceneIndex) pool.getIndexManager().getIndexById(LuceneIndex.ID);
+        assertEquals(REFRESH_INTERVAL, index.getRefreshInterval());
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            configureAndStore(broker, COLLECTION_CONFIG, "test1.xml", "<test><p>alpha</p></test>");
+
+            // another broker does not see the change before the interval has passed
+            assertTrue(index.getPendingChanges() > 0);
+            assertTrue(index.getPendingSince() > 0);
+            assertEquals(0, queryInOtherBroker(pool, "ft:query(., 'alpha')"));
+
+            // the broker which made the change does see it
+            assertEquals(1, query(broker, "ft:query(., 'alpha')"));
+
+            configureAndStore(broker, null, "test2.xml", "<test><p>beta</p></test>");
+            assertTrue(index.getPendingChanges() > 0);
+            assertEquals(0, queryInOtherBroker(pool, "ft:query(., 'beta')"));
+
+            // a query can ask to see all changes
+            assertEquals(1, queryInOtherBroker(pool, "ft:query(., 'beta', map { 'refresh': 'yes' })"));
+            assertEquals(0, index.getPendingChanges());
+            assertEquals(0, index.getPendingSince());
+        }
+    }
+
+    private static void configureAndStore(final DBBroker broker, final String configuration, final String docName, final String data) throws EXistException, PermissionDeniedException, CollectionConfigurationException, SAXException, LockException, IOException {
+        final BrokerPool pool = broker.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final Txn transaction = transact.beginTransaction()) {
+            final Collection root = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI);
+            assertNotNull(root);
+            broker.saveCollection(transaction, root);
+
+            if (configuration != null) {
+                final CollectionConfigurationManager mgr = pool.getConfigurationManager();
+                mgr.addConfiguration(transaction, broker, root, configuration);
+            }
+
+            final IndexInfo info = root.validateXMLResource(transaction, broker, XmldbURI.create(docName), data);
+            assertNotNull(info);
+            root.store(transaction, broker, info, data);
+
+            transact.commit(transaction);
+        }
+    }
+
+    private static int query(final DBBroker broker, final String predicate) throws EXistException, PermissionDeniedException, XPathException {
+        final Sequence seq = broker.getBrokerPool().getXQueryService().execute(broker,
+                "collection('" + TestConstants.TEST_COLLECTION_URI + "')//p[" + predicate + "]", null);
+        assertNotNull(seq);
+        return seq.getItemCount();
+    }
+
+    /**
+     * Run the query from another thread, so that it uses a different
+     * broker and index worker whilst the caller holds its broker.
+     */
+    private static int queryInOtherBroker(final BrokerPool pool, final String predicate) throws InterruptedException, ExecutionException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return executor.submit(() -> {
+                try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+                    return query(broker, predicate);
+                }
+            }).get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -22,6 +22,7 @@ package org.exist.indexing.lucene;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.exist.util.PropertiesBuilder.propertiesBuilder;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
 import java.io.IOException;
@@ -49,6 +50,7 @@ import org.exist.security.PermissionDeniedException;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.ElementValue;
+import org.exist.storage.sync.Sync;
 import org.exist.storage.txn.TransactionManager;
 import org.exist.storage.txn.Txn;
 import org.exist.test.ExistEmbeddedServer;
@@ -839,6 +841,21 @@ public class LuceneIndexTest {
         }
     }
 
+    @Test
+    public void commitAtCheckpoint() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, LockException, IOException {
+        configureAndStore(COLLECTION_CONFIG1, XML1, "test.xml");
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final LuceneIndex index = (LuceneIndex) pool.getIndexManager().getIndexById(LuceneIndex.ID);
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            // with a journal, the changes are only committed at the next checkpoint
+            broker.sync(Sync.MAJOR);
+            assertEquals(pool.isRecoveryEnabled(), index.hasUncommittedChanges());
+
+            pool.sync(broker, Sync.MAJOR);
+            assertFalse(index.hasUncommittedChanges());
+        }
+    }
+
     @Test
     public void reindex() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, LockException, IOException, QName.IllegalQNameException {
         final DocumentSet docs = configureAndStore(COLLECTION_CONFIG1, XML1, "dropDocument.xml");
@@ -863,6 +880,30 @@ public class LuceneIndexTest {
         }
     }
 
+    @Test
+    public void reindexWithWorkers() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, LockException, IOException {
+        final MutableDocumentSet docs = new DefaultDocumentSet();
+        docs.addAll(configureAndStore(COLLECTION_CONFIG1, XML1, "parallel-0.xml"));
+        for (int i = 1; i < 5; i++) {
+            docs.addAll(configureAndStore(null, XML1, "parallel-" + i + ".xml"));
+        }
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+
+            // several documents per batch share one index writer
+            broker.reindexCollection(transaction, TestConstants.TEST_COLLECTION_URI, 2, 3);
+
+            checkIndex(docs, broker, new QName[] { new QName("head") }, "title", 1);
+            final Occurrences[] o = checkIndex(docs, broker, new QName[]{new QName("p")}, "with", 1);
+            assertEquals(10, o[0].getOccurrences());
+            assertEquals(5, o[0].getDocuments());
+
+            transaction.commit();
+        }
+    }
+
     /**
      * Remove nodes from different levels of the tree and check if the index is
      * correctly updated.
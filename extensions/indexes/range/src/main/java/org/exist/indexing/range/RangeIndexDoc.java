@@ -21,25 +21,40 @@
  */
 package org.exist.indexing.range;
 
+import org.apache.lucene.analysis.Analyzer;
 import org.exist.dom.QName;
 import org.exist.numbering.NodeId;
 import org.exist.storage.NodePath;
 
 public class RangeIndexDoc {
 
+    private int docId;
     private NodeId nodeId;
     private QName qname;
     private NodePath path;
     private TextCollector collector;
     private RangeIndexConfigElement config;
+    private Analyzer defaultAnalyzer;
     private long address = -1;
 
-    public RangeIndexDoc(NodeId nodeId, QName qname, NodePath path, TextCollector collector, RangeIndexConfigElement config) {
+    /**
+     * @param docId the id of the document of the node
+     * @param nodeId the id of the node
+     * @param qname the name of the node
+     * @param path the path of the node
+     * @param collector the content of the node
+     * @param config the configuration of the index on the node
+     * @param defaultAnalyzer the default analyzer of the collection of the document
+     */
+    public RangeIndexDoc(int docId, NodeId nodeId, QName qname, NodePath path, TextCollector collector, RangeIndexConfigElement config,
+            Analyzer defaultAnalyzer) {
+        this.docId = docId;
         this.nodeId = nodeId;
         this.qname = qname;
         this.path = path;
         this.collector = collector;
         this.config = config;
+        this.defaultAnalyzer = defaultAnalyzer;
     }
 
     public void setAddress(long address) {
@@ -50,6 +65,10 @@ public class RangeIndexDoc {
         return address;
     }
 
+    public int getDocId() {
+        return docId;
+    }
+
     public NodeId getNodeId() {
         return nodeId;
     }
@@ -69,4 +88,8 @@ public class RangeIndexDoc {
     public RangeIndexConfigElement getConfig() {
         return config;
     }
+
+    public Analyzer getDefaultAnalyzer() {
+        return defaultAnalyzer;
+    }
 }
\ No newline at end of file
@@ -101,6 +101,9 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     private List<RangeIndexDoc> nodesToWrite;
     private Set<NodeId> nodesToRemove = null;
     private RangeIndexConfig config = null;
+
+    // the number of changes made to the index through this worker, which must be visible to its queries
+    private long lastChange = 0;
     private RangeIndexListener listener = new RangeIndexListener();
     private Deque<TextCollector> contentStack = null;
     private int cachedNodesSize = 0;
@@ -266,11 +269,11 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         this.mode = mode;
         switch (mode) {
             case STORE:
-                if (nodesToWrite == null)
+                // the nodes of previous documents are kept if flushes are batched, see supportsBatchFlush()
+                if (nodesToWrite == null) {
                     nodesToWrite = new ArrayList<>();
-                else
-                    nodesToWrite.clear();
-                cachedNodesSize = 0;
+                    cachedNodesSize = 0;
+                }
                 break;
             case REMOVE_SOME_NODES:
                 nodesToRemove = new TreeSet<>();
@@ -339,8 +342,19 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         return null;
     }
 
+    @Override
+    public boolean supportsBatchFlush() {
+        // pending nodes are stored with their document, so the nodes of a batch
+        // are written with a single acquisition of the index writer, see write()
+        return true;
+    }
+
     @Override
     public void flush() {
+        if (mode != ReindexMode.STORE) {
+            // the nodes of a batch must be written before nodes are removed
+            write();
+        }
         switch (mode) {
             case STORE:
                 write();
@@ -371,7 +385,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException | PermissionDeniedException | LockException e) {
             LOG.error("Error while removing lucene index: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            lastChange = index.releaseWriter(writer);
             if (reindex) {
                 try {
                     index.sync();
@@ -396,7 +410,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("Error while removing lucene index: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            lastChange = index.releaseWriter(writer);
             mode = ReindexMode.STORE;
         }
     }
@@ -428,7 +442,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             LOG.warn("Error while deleting lucene index entries: " + e.getMessage(), e);
         } finally {
             nodesToRemove = null;
-            index.releaseWriter(writer);
+            lastChange = index.releaseWriter(writer);
         }
     }
 
@@ -438,7 +452,9 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     protected void indexText(NodeHandle nodeHandle, QName qname, NodePath path, RangeIndexConfigElement config, TextCollector collector) {
-        RangeIndexDoc pending = new RangeIndexDoc(nodeHandle.getNodeId(), qname, path, collector, config);
+        // the document and its default analyzer are kept, as the nodes of several documents are written at once if flushes are batched
+        RangeIndexDoc pending = new RangeIndexDoc(currentDoc.getDocId(), nodeHandle.getNodeId(), qname, path, collector, config,
+                this.config == null ? null : this.config.getDefaultAnalyzer());
         pending.setAddress(nodeHandle.getInternalAddress());
         nodesToWrite.add(pending);
         cachedNodesSize += collector.length();
@@ -462,7 +478,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             for (RangeIndexDoc pending : nodesToWrite) {
                 Document doc = new Document();
 
-                fDocId.setIntValue(currentDoc.getDocId());
+                fDocId.setIntValue(pending.getDocId());
                 doc.add(fDocId);
 
                 // store the node id
@@ -480,7 +496,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
                 // add separate index for node id
                 byte[] idData = new byte[nodeIdLen + 4];
-                ByteConversion.intToByteH(currentDoc.getDocId(), idData, 0);
+                ByteConversion.intToByteH(pending.getDocId(), idData, 0);
                 pending.getNodeId().serialize(idData, 4);
                 BinaryTokenStream bts = new BinaryTokenStream(new BytesRef(idData));
                 Field fNodeIdIdx = new Field(FIELD_ID, bts, LuceneIndexWorker.TYPE_NODE_ID);
@@ -497,26 +513,26 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                         doc.add(fld);
                     }
                 }
-                fDocIdIdx.setIntValue(currentDoc.getDocId());
+                fDocIdIdx.setIntValue(pending.getDocId());
                 doc.add(fDocIdIdx);
 
                 Analyzer analyzer = pending.getConfig().getAnalyzer();
                 if (analyzer == null) {
-                    analyzer = config.getDefaultAnalyzer();
+                    analyzer = pending.getDefaultAnalyzer();
                 }
                 writer.addDocument(doc, analyzer);
             }
         } catch (IOException e) {
             LOG.warn("An exception was caught while indexing document: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            lastChange = index.releaseWriter(writer);
             nodesToWrite = new ArrayList<RangeIndexDoc>();
             cachedNodesSize = 0;
         }
     }
 
     public NodeSet query(int contextId, DocumentSet docs, NodeSet contextSet, List<QName> qnames, AtomicValue[] keys, RangeIndex.Operator operator, int axis) throws IOException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(lastChange, searcher -> {
             List<QName> definedIndexes = getDefinedIndexes(qnames);
             NodeSet resultSet = new NewArrayNodeSet();
             for (QName qname : definedIndexes) {
@@ -541,7 +557,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     public NodeSet queryField(int contextId, DocumentSet docs, NodeSet contextSet, Sequence fields, Sequence[] keys, RangeIndex.Operator[] operators, int axis) throws IOException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(lastChange, searcher -> {
             BooleanQuery query = new BooleanQuery();
             int j = 0;
             for (SequenceIterator i = fields.iterate(); i.hasNext(); j++) {
@@ -709,7 +725,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     private List<QName> getDefinedIndexesFor(QName qname, final List<QName> indexes) throws IOException {
-        return index.withReader(reader -> {
+        return index.withReader(lastChange, reader -> {
             for (FieldInfo info: MultiFields.getMergedFieldInfos(reader)) {
                 if (!FIELD_DOC_ID.equals(info.name)) {
                     QName name = LuceneUtil.decodeQName(info.name, index.getBrokerPool().getSymbols());
@@ -913,7 +929,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("An exception was caught while optimizing the lucene index: " + e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            lastChange = index.releaseWriter(writer);
         }
     }
 
@@ -956,7 +972,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     public Occurrences[] scanIndexByField(String field, DocumentSet docs, String start, long max) {
         try {
-            return index.withReader(reader -> {
+            return index.withReader(lastChange, reader -> {
                 TreeMap<String, Occurrences> map = new TreeMap<String, Occurrences>();
                 scan(docs, null, start, null, max, map, reader, field);
 
@@ -970,7 +986,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     private Occurrences[] scanIndexByQName(List<QName> qnames, DocumentSet docs, NodeSet nodes, String start, String end, long max) throws IOException {
-        return index.withReader(reader -> {
+        return index.withReader(lastChange, reader -> {
             TreeMap<String, Occurrences> map = new TreeMap<String, Occurrences>();
             for (QName qname : qnames) {
                 String field = LuceneUtil.encodeQName(qname, index.getBrokerPool().getSymbols());
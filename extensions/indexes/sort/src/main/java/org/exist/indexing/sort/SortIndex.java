@@ -18,6 +18,9 @@ import org.exist.util.LockException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -30,6 +33,17 @@ import java.util.concurrent.locks.ReentrantLock;
  *
  * Every sort index has an id by which it is identified and distinguished from other indexes
  * on the same node set.
+ *
+ * Sort indexes can also be defined in collection.xconf, e.g. <code>&lt;sort qname="title"/&gt;</code>,
+ * see {@link SortIndexConfig}. These are maintained by the database whenever documents are stored,
+ * updated or removed. Instead of positions, they map the nodes to codes taken from a dictionary
+ * of the values, which compare like the values. An order by clause whose order key is a path
+ * to the indexed nodes, possibly cast to the type of the index, looks up the codes instead of
+ * comparing the values, if it uses the codepoint collation. If the dictionary changes while
+ * the keys are looked up, the order by clause compares the values instead, see {@link #getVersion(String)}.
+ * A NaN value of an index of type <code>xs:double</code> sorts like the empty sequence, as it does
+ * in an order by clause without an index. This differs from the XQuery specification, which orders
+ * NaN between the empty sequence and all other values.
  */
 public class SortIndex extends AbstractIndex implements RawBackupSupport {
 
@@ -40,6 +54,11 @@ public class SortIndex extends AbstractIndex implements RawBackupSupport {
     protected static final Logger LOG = LogManager.getLogger(SortIndex.class);
     protected BTreeStore btree;
 
+    /**
+     * The versions of the dictionaries of the declarative sort indexes by index name.
+     */
+    private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
     @Override
     public void open() throws DatabaseConfigurationException {
         final Path file = getDataDir().resolve(FILE_NAME);
@@ -80,9 +99,32 @@ public class SortIndex extends AbstractIndex implements RawBackupSupport {
         btree.closeAndRemove();
     }
 
+    /**
+     * Get the version of the dictionary of a declarative sort index. It changes whenever
+     * a value is added to the dictionary, the codes are renumbered or the index is removed,
+     * as order keys looked up before may then no longer compare like the values.
+     *
+     * @param name the name of the index
+     * @return the version of its dictionary
+     */
+    public long getVersion(final String name) {
+        final AtomicLong version = versions.get(name);
+        return version == null ? 0 : version.get();
+    }
+
+    /**
+     * Change the version of the dictionary of a declarative sort index, while holding
+     * the write lock on the index.
+     *
+     * @param name the name of the index
+     */
+    void incrementVersion(final String name) {
+        versions.computeIfAbsent(name, key -> new AtomicLong()).incrementAndGet();
+    }
+
     @Override
     public IndexWorker getWorker(final DBBroker broker) {
-        return new SortIndexWorker(this);
+        return new SortIndexWorker(this, broker);
     }
 
     @Override
@@ -0,0 +1,248 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.indexing.sort;
+
+import org.exist.dom.QName;
+import org.exist.storage.ElementValue;
+import org.exist.util.ByteConversion;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.DoubleValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.StringValue;
+import org.exist.xquery.value.Type;
+import org.exist.xquery.value.UntypedAtomicValue;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * Configuration of a sort index maintained by the database, defined in collection.xconf by
+ *
+ * <pre>&lt;sort qname="title"/&gt;
+ * &lt;sort qname="@price" type="xs:double"/&gt;</pre>
+ *
+ * The values of the elements or attributes are converted to the type, which may be
+ * <code>xs:string</code> (the default) or <code>xs:double</code>. Every configuration
+ * is stored as a sort index with a name derived from the qname and the type, see
+ * {@link #getIndexName(QName, boolean, int)}. The same index name is used for all
+ * collections configuring the same qname and type.
+ */
+public class SortIndexConfig {
+
+    public static final String SORT_ELEMENT = "sort";
+    public static final String QNAME_ATTR = "qname";
+    public static final String TYPE_ATTR = "type";
+
+    private final QName qname;
+    private final boolean attribute;
+    private final int type;
+    private final String indexName;
+
+    public SortIndexConfig(final QName qname, final boolean attribute, final int type) {
+        this.qname = qname;
+        this.attribute = attribute;
+        this.type = type;
+        this.indexName = getIndexName(qname, attribute, type);
+    }
+
+    public SortIndexConfig(final Map<String, String> namespaces, String name, @Nullable final String typeName)
+            throws DatabaseConfigurationException {
+        if (name == null || name.isEmpty()) {
+            throw new DatabaseConfigurationException("Configuration error: element " + SORT_ELEMENT +
+                    " must have an attribute " + QNAME_ATTR);
+        }
+        attribute = name.startsWith("@");
+        if (attribute) {
+            name = name.substring(1);
+        }
+        try {
+            final String prefix = QName.extractPrefix(name);
+            final String localName = QName.extractLocalName(name);
+            String namespaceURI = "";
+            if (prefix != null) {
+                namespaceURI = namespaces.get(prefix);
+                if (namespaceURI == null) {
+                    throw new DatabaseConfigurationException("Sort index config: no namespace defined for prefix: " +
+                            prefix + " in index definition");
+                }
+            }
+            qname = attribute ? new QName(localName, namespaceURI, prefix, ElementValue.ATTRIBUTE) :
+                    new QName(localName, namespaceURI, prefix);
+        } catch (final QName.IllegalQNameException e) {
+            throw new DatabaseConfigurationException("Sort index configuration: " + e.getMessage(), e);
+        }
+
+        if (typeName == null || typeName.isEmpty()) {
+            type = Type.STRING;
+        } else {
+            try {
+                type = Type.getType(typeName);
+            } catch (final XPathException e) {
+                throw new DatabaseConfigurationException("Sort index configuration: " + e.getMessage(), e);
+            }
+            if (!isSupportedType(type)) {
+                throw new DatabaseConfigurationException("Sort index configuration: unsupported type " + typeName +
+                        ", expected xs:string or xs:double");
+            }
+        }
+        indexName = getIndexName(qname, attribute, type);
+    }
+
+    /**
+     * Get the name of the sort index for the given node name and type.
+     *
+     * @param qname the name of the element or attribute
+     * @param attribute true if the index is defined on attributes
+     * @param type the type of the values
+     * @return the name of the index
+     */
+    public static String getIndexName(final QName qname, final boolean attribute, final int type) {
+        return (attribute ? "@" : "") + "Q{" + qname.getNamespaceURI() + "}" + qname.getLocalPart() + "#" +
+                Type.getTypeName(type);
+    }
+
+    public static boolean isSupportedType(final int type) {
+        return type == Type.STRING || type == Type.DOUBLE;
+    }
+
+    public QName getQName() {
+        return qname;
+    }
+
+    public boolean isAttribute() {
+        return attribute;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    /**
+     * Check if the index is defined on the element or attribute.
+     *
+     * @param name the name of the node
+     * @param isAttribute true if the node is an attribute
+     * @return true if the node is indexed
+     */
+    public boolean matches(final QName name, final boolean isAttribute) {
+        return attribute == isAttribute && qname.equals(name);
+    }
+
+    /**
+     * Convert the value of a node to the type of the index.
+     *
+     * @param value the string value of the node
+     * @return the converted value, or null if it is NaN
+     * @throws XPathException if the value cannot be converted
+     */
+    public @Nullable AtomicValue convert(final String value) throws XPathException {
+        return convert(new UntypedAtomicValue(value));
+    }
+
+    /**
+     * Convert an item to the type of the index, like a cast.
+     *
+     * @param item the item
+     * @return the converted value, or null if it is NaN
+     * @throws XPathException if the value cannot be converted
+     */
+    public @Nullable AtomicValue convert(final Item item) throws XPathException {
+        if (type == Type.STRING) {
+            return new StringValue(item.getStringValue());
+        }
+        final AtomicValue value = item.atomize().convertTo(type);
+        return ((DoubleValue) value).isNaN() ? null : value;
+    }
+
+    /**
+     * Serialize a value so that the serialized values compare like the values,
+     * when compared as unsigned bytes. Strings are serialized as UTF-16 characters,
+     * which compare like the codepoint collation, doubles by their sortable bits.
+     *
+     * @param value the value, as returned by {@link #convert(Item)}
+     * @return the serialized value
+     * @throws XPathException if the value cannot be read
+     */
+    public byte[] serialize(final AtomicValue value) throws XPathException {
+        if (type == Type.STRING) {
+            final String s = value.getStringValue();
+            final byte[] data = new byte[s.length() * 2];
+            for (int i = 0; i < s.length(); i++) {
+                final char ch = s.charAt(i);
+                data[i * 2] = (byte) (ch >>> 8);
+                data[i * 2 + 1] = (byte) ch;
+            }
+            return data;
+        }
+        return ByteConversion.longToByte(sortableBits(((DoubleValue) value).getDouble()));
+    }
+
+    /**
+     * Get a string for a value, which compares like the values by the codepoint collation.
+     *
+     * @param value the value, as returned by {@link #convert(Item)}
+     * @return the string
+     * @throws XPathException if the value cannot be read
+     */
+    public String toSortableString(final AtomicValue value) throws XPathException {
+        if (type == Type.STRING) {
+            return value.getStringValue();
+        }
+        return toHex(sortableBits(((DoubleValue) value).getDouble()));
+    }
+
+    /**
+     * Map a double to a long, which compares as unsigned long like the doubles,
+     * with -0.0 equal to 0.0.
+     */
+    private static long sortableBits(final double value) {
+        final long bits = Double.doubleToLongBits(value == 0.0 ? 0.0 : value);
+        return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Format a long as 16 hex digits, which compare like the unsigned longs.
+     *
+     * @param value the value
+     * @return the hex digits
+     */
+    public static String toHex(final long value) {
+        final String hex = Long.toHexString(value);
+        if (hex.length() == 16) {
+            return hex;
+        }
+        final StringBuilder buf = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; i++) {
+            buf.append('0');
+        }
+        return buf.append(hex).toString();
+    }
+
+    @Override
+    public String toString() {
+        return SORT_ELEMENT + "(" + indexName + ")";
+    }
+}
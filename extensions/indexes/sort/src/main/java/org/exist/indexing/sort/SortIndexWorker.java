@@ -1,14 +1,20 @@
 package org.exist.indexing.sort;
 
+import com.evolvedbinary.j8fu.tuple.Tuple2;
 import org.exist.EXistException;
 import org.exist.collections.Collection;
+import org.exist.dom.QName;
 import org.exist.dom.persistent.*;
+import org.exist.indexing.AbstractStreamListener;
 import org.exist.indexing.IndexController;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.MatchListener;
 import org.exist.indexing.StreamListener;
 import org.exist.indexing.StreamListener.ReindexMode;
+import org.exist.numbering.NodeId;
+import org.exist.security.PermissionDeniedException;
 import org.exist.storage.DBBroker;
+import org.exist.storage.IndexSpec;
 import org.exist.storage.NodePath;
 import org.exist.storage.btree.BTreeCallback;
 import org.exist.storage.btree.BTreeException;
@@ -16,33 +22,71 @@ import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.lock.LockManager;
 import org.exist.storage.lock.ManagedLock;
+import org.exist.storage.txn.Txn;
 import org.exist.util.*;
 import org.exist.xquery.QueryRewriter;
 import org.exist.xquery.TerminatedException;
+import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
+import org.exist.xquery.modules.sort.SortQueryRewriter;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.Item;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class SortIndexWorker implements IndexWorker {
 
+    /**
+     * The gap between the codes of values appended to the end of a dictionary,
+     * leaving room for values inserted later.
+     */
+    private static final long CODE_GAP = 1L << 24;
+
+    /**
+     * The largest code, chosen so that an order key computed from a code, see
+     * {@link #getOrderKey(SortIndexConfig, Item)}, does not overflow.
+     */
+    private static final long MAX_CODE = Long.MAX_VALUE / 4;
+
+    /**
+     * The number of characters of an order key, which encode the code it starts with.
+     */
+    public static final int CODE_LENGTH = 16;
+
     private ReindexMode mode = ReindexMode.STORE;
     private DocumentImpl document = null;
     private SortIndex index;
+    private final DBBroker broker;
     private final LockManager lockManager;
 
-    public SortIndexWorker(final SortIndex index) {
+    private List<SortIndexConfig> config = null;
+    private final Deque<XMLString> contentStack = new ArrayDeque<>();
+    private final List<PendingNode> pending = new ArrayList<>();
+    private final SortStreamListener listener = new SortStreamListener();
+
+    public SortIndexWorker(final SortIndex index, final DBBroker broker) {
         this.index = index;
+        this.broker = broker;
         this.lockManager = index.getBrokerPool().getLockManager();
     }
 
+    @SuppressWarnings("unchecked")
     public void setDocument(final DocumentImpl doc, final ReindexMode mode) {
         this.document = doc;
         this.mode = mode;
+        this.config = null;
+        contentStack.clear();
+        pending.clear();
+        final IndexSpec indexConf = doc.getCollection().getIndexConfiguration(broker);
+        if (indexConf != null) {
+            config = (List<SortIndexConfig>) indexConf.getCustomIndexSpec(SortIndex.ID);
+        }
     }
 
     public String getIndexId() {
@@ -55,16 +99,23 @@ public class SortIndexWorker implements IndexWorker {
 
     @Override
     public QueryRewriter getQueryRewriter(final XQueryContext context) {
-        return null;
+        return new SortQueryRewriter(context, this);
     }
 
     @Override
     public void flush() {
         switch (mode) {
+            case STORE:
+                storePending();
+                break;
+            case REMOVE_SOME_NODES:
+                removePending();
+                break;
             case REMOVE_ALL_NODES:
                 remove(document);
                 break;
         }
+        pending.clear();
     }
 
     /**
@@ -132,8 +183,10 @@ public class SortIndexWorker implements IndexWorker {
             final byte[] toKey = computeKey((short) (id + 1));
             final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
             index.btree.remove(query, null);
+            index.btree.remove(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(computeValueKey(id))), null);
 
             removeId(name);
+            index.incrementVersion(name);
         } catch (final BTreeException | TerminatedException | IOException e) {
             throw new EXistException("Exception caught while deleting sort index: " + e.getMessage(), e);
         }
@@ -245,6 +298,15 @@ public class SortIndexWorker implements IndexWorker {
         return data;
     }
 
+    private byte[] computeKey(final short id, final int docId, final NodeId nodeId) {
+        final byte[] data = new byte[7 + nodeId.size()];
+        data[0] = 0;
+        ByteConversion.shortToByteH(id, data, 1);
+        ByteConversion.intToByteH(docId, data, 3);
+        nodeId.serialize(data, 7);
+        return data;
+    }
+
     private byte[] computeKey(final short id, final int docId) {
         final byte[] data = new byte[7];
         data[0] = 0;
@@ -260,8 +322,36 @@ public class SortIndexWorker implements IndexWorker {
         return data;
     }
 
+    private byte[] computeValueKey(final short id, final byte[] value) {
+        final byte[] data = new byte[3 + value.length];
+        data[0] = 2;
+        ByteConversion.shortToByteH(id, data, 1);
+        System.arraycopy(value, 0, data, 3, value.length);
+        return data;
+    }
+
+    private byte[] computeValueKey(final short id) {
+        final byte[] data = new byte[3];
+        data[0] = 2;
+        ByteConversion.shortToByteH(id, data, 1);
+        return data;
+    }
+
     public Object configure(final IndexController controller, final NodeList configNodes, final Map<String, String> namespaces) throws DatabaseConfigurationException {
-        return null;
+        final List<SortIndexConfig> configs = new ArrayList<>();
+        for (int i = 0; i < configNodes.getLength(); i++) {
+            final Node node = configNodes.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE && SortIndexConfig.SORT_ELEMENT.equals(node.getLocalName())) {
+                final SortIndexConfig config = new SortIndexConfig(namespaces,
+                        ((Element) node).getAttribute(SortIndexConfig.QNAME_ATTR),
+                        ((Element) node).getAttribute(SortIndexConfig.TYPE_ATTR));
+                if (SortIndex.LOG.isTraceEnabled()) {
+                    SortIndex.LOG.trace("Sort index defined on " + config.getIndexName());
+                }
+                configs.add(config);
+            }
+        }
+        return configs.isEmpty() ? null : configs;
     }
 
     public DocumentImpl getDocument() {
@@ -269,7 +359,7 @@ public class SortIndexWorker implements IndexWorker {
     }
 
     public void setDocument(final DocumentImpl doc) {
-        this.document = doc;
+        setDocument(doc, ReindexMode.UNKNOWN);
     }
 
     @Override
@@ -281,19 +371,257 @@ public class SortIndexWorker implements IndexWorker {
         this.mode = mode;
     }
 
-    public IStoredNode getReindexRoot(final IStoredNode node, final NodePath path, final boolean insert, final boolean includeSelf) {
+    /**
+     * Returns the top-most element indexed by a declarative sort index which contains the node,
+     * as its value changes. Otherwise nodes to be removed are removed from user defined
+     * sort indexes.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends IStoredNode> IStoredNode getReindexRoot(final IStoredNode<T> node, final NodePath path,
+            final boolean insert, final boolean includeSelf) {
+        final IndexSpec indexConf = node.getOwnerDocument().getCollection().getIndexConfiguration(broker);
+        final List<SortIndexConfig> configs = indexConf == null ? null :
+                (List<SortIndexConfig>) indexConf.getCustomIndexSpec(SortIndex.ID);
+        if (configs != null) {
+            IStoredNode topMost = null;
+            IStoredNode<T> currentNode = node.getNodeType() == Node.ELEMENT_NODE && !includeSelf ?
+                    node.getParentStoredNode() : node;
+            while (currentNode != null && currentNode.getNodeType() != Node.DOCUMENT_NODE) {
+                if (isIndexed(configs, currentNode.getQName(), currentNode.getNodeType() == Node.ATTRIBUTE_NODE)) {
+                    topMost = currentNode;
+                }
+                if (currentNode.getOwnerDocument().getCollection().isTempCollection() && currentNode.getNodeId().getTreeLevel() == 2) {
+                    break;
+                }
+                currentNode = currentNode.getParentStoredNode();
+            }
+            if (topMost != null) {
+                return topMost;
+            }
+        }
         return insert ? null : node;
     }
 
+    private static boolean isIndexed(final List<SortIndexConfig> configs, final QName qname, final boolean attribute) {
+        for (final SortIndexConfig config : configs) {
+            if (config.matches(qname, attribute)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public StreamListener getListener() {
-        return null;
+        return config == null || mode == ReindexMode.REMOVE_ALL_NODES ? null : listener;
     }
 
     public MatchListener getMatchListener(final DBBroker broker, final NodeProxy proxy) {
         return null;
     }
 
-    public void removeCollection(final Collection collection, final DBBroker broker, final boolean reindex) {
+    /**
+     * Remove the entries of all documents in the collection. On reindex, the entries of user
+     * defined sort indexes are kept, while those of declarative indexes are replaced.
+     */
+    public void removeCollection(final Collection collection, final DBBroker broker, final boolean reindex)
+            throws PermissionDeniedException {
+        if (reindex || index.btree == null) {
+            return;
+        }
+        try {
+            for (final Iterator<DocumentImpl> i = collection.iterator(broker); i.hasNext(); ) {
+                remove(i.next());
+            }
+        } catch (final LockException e) {
+            SortIndex.LOG.warn("Failed to acquire lock while removing sort index entries of collection " +
+                    collection.getURI(), e);
+        }
+    }
+
+    /**
+     * Compute the key by which an item is ordered using a declarative sort index. The item is
+     * converted to the type of the index, which may fail like a cast. If the value is in the
+     * dictionary of the index, the key starts with its code, otherwise with the code of the
+     * preceding value, see {@link #CODE_LENGTH}. It ends with the value itself, see
+     * {@link SortIndexConfig#toSortableString(AtomicValue)}. The keys of all items compare like
+     * the values by the codepoint collation, as long as they are computed for the same version
+     * of the index, see {@link #getVersion(SortIndexConfig)}. Otherwise only the values compare.
+     *
+     * @param config the configuration of the index
+     * @param item the item to order
+     *
+     * @return the order key, or null if the value of the item is NaN, which sorts like the empty sequence
+     *
+     * @throws EXistException if an error occurs with the database
+     * @throws LockException if a locking error occurs
+     * @throws XPathException if the item cannot be converted to the type of the index
+     */
+    public @Nullable String getOrderKey(final SortIndexConfig config, final Item item)
+            throws EXistException, LockException, XPathException {
+        final short id = getId(config.getIndexName());
+        final AtomicValue value = config.convert(item);
+        if (value == null) {
+            return null;
+        }
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+            // codes of values in the dictionary are even, codes following the preceding value odd
+            long code = 1;
+            if (id >= 0) {
+                final Value key = new Value(computeValueKey(id, config.serialize(value)));
+                final long found = index.btree.findValue(key);
+                if (found >= 0) {
+                    code = found * 2;
+                } else {
+                    final Tuple2<Value, Long> precedingValue = index.btree.findPrecedingValue(key);
+                    if (precedingValue != null && precedingValue._1.startsWith(new Value(computeValueKey(id)))) {
+                        code = precedingValue._2 * 2 + 1;
+                    }
+                }
+            }
+            return SortIndexConfig.toHex(code) + config.toSortableString(value);
+        } catch (final IOException | BTreeException e) {
+            throw new EXistException("Exception caught while reading sort index: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get the version of a declarative sort index, which changes whenever the order keys
+     * computed by {@link #getOrderKey(SortIndexConfig, Item)} may change.
+     *
+     * @param config the configuration of the index
+     * @return the version of the index
+     */
+    public long getVersion(final SortIndexConfig config) {
+        return index.getVersion(config.getIndexName());
+    }
+
+    private void storePending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+            final Map<String, Short> ids = new HashMap<>();
+            for (final PendingNode node : pending) {
+                final AtomicValue value;
+                try {
+                    value = node.config.convert(node.value);
+                } catch (final XPathException e) {
+                    if (SortIndex.LOG.isDebugEnabled()) {
+                        SortIndex.LOG.debug("Value of node " + node.nodeId + " is not indexed in " +
+                                node.config.getIndexName() + ": " + e.getMessage());
+                    }
+                    continue;
+                }
+                if (value == null) {
+                    continue;
+                }
+                Short id = ids.get(node.config.getIndexName());
+                if (id == null) {
+                    id = getOrRegisterId(node.config.getIndexName());
+                    ids.put(node.config.getIndexName(), id);
+                }
+                final long code = getOrCreateCode(node.config.getIndexName(), id, node.config.serialize(value));
+                index.btree.addValue(new Value(computeKey(id, document.getDocId(), node.nodeId)), code);
+            }
+        } catch (final EXistException | LockException | XPathException | IOException | BTreeException |
+                TerminatedException e) {
+            SortIndex.LOG.warn("Exception caught while updating sort index: " + e.getMessage(), e);
+        }
+    }
+
+    private void removePending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+            final Map<String, Short> ids = new HashMap<>();
+            for (final PendingNode node : pending) {
+                Short id = ids.get(node.config.getIndexName());
+                if (id == null) {
+                    id = getId(node.config.getIndexName());
+                    ids.put(node.config.getIndexName(), id);
+                }
+                if (id >= 0) {
+                    index.btree.removeValue(new Value(computeKey(id, document.getDocId(), node.nodeId)));
+                }
+            }
+        } catch (final EXistException | LockException | IOException | BTreeException e) {
+            SortIndex.LOG.warn("Exception caught while updating sort index: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get the code of a value in the dictionary of a declarative sort index, which maps
+     * each value to a long, so that the codes compare like the values. A new value gets
+     * a code between the codes of its neighbours. If there is no room left between them,
+     * the codes of the index are renumbered. Either changes the version of the index.
+     */
+    private long getOrCreateCode(final String name, final short id, final byte[] value)
+            throws IOException, BTreeException, TerminatedException {
+        final Value key = new Value(computeValueKey(id, value));
+        final long code = index.btree.findValue(key);
+        if (code >= 0) {
+            return code;
+        }
+
+        final Value prefix = new Value(computeValueKey(id));
+        final Tuple2<Value, Long> preceding = index.btree.findPrecedingValue(key);
+        final long low = preceding != null && preceding._1.startsWith(prefix) ? preceding._2 : 0;
+        final Tuple2<Value, Long> following = index.btree.findFollowingValue(key);
+        final boolean last = following == null || !following._1.startsWith(prefix);
+        final long high = last ? MAX_CODE : following._2;
+
+        final long newCode;
+        if (last && high - low > CODE_GAP) {
+            newCode = low + CODE_GAP;
+        } else if (high - low > 1) {
+            newCode = low + (high - low) / 2;
+        } else {
+            renumber(name, id);
+            return getOrCreateCode(name, id, value);
+        }
+        index.btree.addValue(key, newCode);
+        index.incrementVersion(name);
+        return newCode;
+    }
+
+    /**
+     * Assign new codes to the values of a declarative sort index, which are evenly spaced,
+     * and update the entries of the nodes. Values no longer used by any node are dropped.
+     */
+    private void renumber(final String name, final short id) throws IOException, BTreeException, TerminatedException {
+        final IndexQuery nodesQuery = new IndexQuery(IndexQuery.RANGE, new Value(computeKey(id)),
+                new Value(computeKey((short) (id + 1))));
+        final IndexQuery valuesQuery = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(computeValueKey(id)));
+        final CollectEntriesCallback nodes = new CollectEntriesCallback();
+        index.btree.query(nodesQuery, nodes);
+        final Set<Long> used = new HashSet<>(nodes.pointers);
+
+        final CollectEntriesCallback values = new CollectEntriesCallback();
+        index.btree.query(valuesQuery, values);
+
+        final long step = Math.max(1, Math.min(CODE_GAP, MAX_CODE / (used.size() + 2)));
+        final Map<Long, Long> codes = new HashMap<>();
+        for (int i = 0; i < values.keys.size(); i++) {
+            final long oldCode = values.pointers.get(i);
+            if (used.contains(oldCode)) {
+                final long newCode = step * (codes.size() + 1);
+                codes.put(oldCode, newCode);
+                index.btree.addValue(values.keys.get(i), newCode);
+            } else {
+                index.btree.removeValue(values.keys.get(i));
+            }
+        }
+        for (int i = 0; i < nodes.keys.size(); i++) {
+            final Long newCode = codes.get(nodes.pointers.get(i));
+            if (newCode != null) {
+                index.btree.addValue(nodes.keys.get(i), newCode);
+            }
+        }
+        index.incrementVersion(name);
+        if (SortIndex.LOG.isDebugEnabled()) {
+            SortIndex.LOG.debug("Renumbered " + codes.size() + " values of sort index " + name);
+        }
     }
 
     public boolean checkIndex(final DBBroker broker) {
@@ -321,4 +649,82 @@ public class SortIndexWorker implements IndexWorker {
             return true;
         }
     }
+
+    private final static class CollectEntriesCallback implements BTreeCallback {
+        final List<Value> keys = new ArrayList<>();
+        final List<Long> pointers = new ArrayList<>();
+
+        public boolean indexInfo(final Value value, final long pointer) throws TerminatedException {
+            keys.add(value);
+            pointers.add(pointer);
+            return true;
+        }
+    }
+
+    /**
+     * A node to be stored in or removed from a declarative sort index on flush.
+     */
+    private final static class PendingNode {
+        final SortIndexConfig config;
+        final NodeId nodeId;
+        final String value;
+
+        private PendingNode(final SortIndexConfig config, final NodeId nodeId, @Nullable final String value) {
+            this.config = config;
+            this.nodeId = nodeId;
+            this.value = value;
+        }
+    }
+
+    private class SortStreamListener extends AbstractStreamListener {
+
+        @Override
+        public void startElement(final Txn transaction, final ElementImpl element, final NodePath path) {
+            if (config != null && isIndexed(config, element.getQName(), false)) {
+                contentStack.push(new XMLString());
+            }
+            super.startElement(transaction, element, path);
+        }
+
+        @Override
+        public void attribute(final Txn transaction, final AttrImpl attrib, final NodePath path) {
+            if (config != null) {
+                for (final SortIndexConfig conf : config) {
+                    if (conf.matches(attrib.getQName(), true)) {
+                        pending.add(new PendingNode(conf, attrib.getNodeId(), attrib.getValue()));
+                    }
+                }
+            }
+            super.attribute(transaction, attrib, path);
+        }
+
+        @Override
+        public void endElement(final Txn transaction, final ElementImpl element, final NodePath path) {
+            if (config != null && isIndexed(config, element.getQName(), false)) {
+                final XMLString content = contentStack.pop();
+                for (final SortIndexConfig conf : config) {
+                    if (conf.matches(element.getQName(), false)) {
+                        pending.add(new PendingNode(conf, element.getNodeId(), content.toString()));
+                    }
+                }
+                content.reset();
+            }
+            super.endElement(transaction, element, path);
+        }
+
+        @Override
+        public void characters(final Txn transaction, final AbstractCharacterData text, final NodePath path) {
+            if (!contentStack.isEmpty()) {
+                for (final Iterator<XMLString> it = contentStack.descendingIterator(); it.hasNext(); ) {
+                    it.next().append(text.getXMLString());
+                }
+            }
+            super.characters(transaction, text, path);
+        }
+
+        @Override
+        public IndexWorker getWorker() {
+            return SortIndexWorker.this;
+        }
+    }
 }
@@ -0,0 +1,176 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery.modules.sort;
+
+import org.exist.EXistException;
+import org.exist.indexing.sort.SortIndex;
+import org.exist.indexing.sort.SortIndexConfig;
+import org.exist.indexing.sort.SortIndexWorker;
+import org.exist.util.LockException;
+import org.exist.xquery.*;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.StringValue;
+import org.exist.xquery.value.Type;
+
+/**
+ * Replaces the order key of an order by clause, which selects nodes indexed by a
+ * declarative sort index, see {@link SortQueryRewriter}. Instead of the value of the
+ * node, it returns a string looked up in the index, which compares like the value by the
+ * codepoint collation, see {@link SortIndexWorker#getOrderKey(SortIndexConfig, Item)}.
+ *
+ * The keys only compare like the values if they are looked up in the same version of the
+ * index. If the index changes while the order by clause is evaluated, e.g. because the
+ * query stores a document, the keys are compared by the values they end with instead,
+ * see {@link #compareValues(AtomicValue, AtomicValue)}.
+ *
+ * If the path does not select exactly one item, the original order key is evaluated,
+ * so that the same errors are raised.
+ */
+public class OrderKeyLookup extends AbstractExpression {
+
+    private final SortIndexConfig config;
+    private final Expression orderKey;
+    private final Expression path;
+
+    /**
+     * The version of the index the keys have been looked up in, or -1 if none has been looked up yet.
+     */
+    private long version = -1;
+
+    /**
+     * Set if keys have been looked up in different versions of the index.
+     */
+    private boolean changed = false;
+
+    /**
+     * @param context the query context
+     * @param config the sort index to use
+     * @param orderKey the original order key
+     * @param path the path selecting the indexed nodes, which is the order key or the operand of a cast
+     */
+    public OrderKeyLookup(final XQueryContext context, final SortIndexConfig config, final Expression orderKey,
+            final Expression path) {
+        super(context);
+        this.config = config;
+        this.orderKey = orderKey;
+        this.path = path;
+        setLocation(orderKey.getLine(), orderKey.getColumn());
+    }
+
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        contextInfo.setParent(this);
+        orderKey.analyze(contextInfo);
+    }
+
+    @Override
+    public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+        final Sequence seq = path.eval(contextSequence, contextItem);
+        if (!seq.hasOne()) {
+            return path == orderKey ? seq : orderKey.eval(contextSequence, contextItem);
+        }
+        final SortIndexWorker worker = (SortIndexWorker)
+                context.getBroker().getIndexController().getWorkerByIndexId(SortIndex.ID);
+        final long start = System.currentTimeMillis();
+        try {
+            // the version did not change while the key was looked up if it is the same before and after
+            final long before = worker.getVersion(config);
+            final String key = worker.getOrderKey(config, seq.itemAt(0));
+            final long after = worker.getVersion(config);
+            if (before != after || (version >= 0 && version != after)) {
+                changed = true;
+            } else if (version < 0) {
+                version = after;
+            }
+            if (context.getProfiler().traceFunctions()) {
+                context.getProfiler().traceIndexUsage(context, "sort", this, PerformanceStats.OPTIMIZED_INDEX,
+                        System.currentTimeMillis() - start);
+            }
+            return key == null ? Sequence.EMPTY_SEQUENCE : new StringValue(key);
+        } catch (final EXistException e) {
+            throw new XPathException(this, e.getMessage(), e);
+        } catch (final LockException e) {
+            throw new XPathException(this, "Caught lock error while searching index. Giving up.", e);
+        }
+    }
+
+    /**
+     * Check if the keys have been looked up in different versions of the index since
+     * the last reset, in which case they must be compared by {@link #compareValues(AtomicValue, AtomicValue)}.
+     *
+     * @return true if the version of the index changed
+     */
+    public boolean hasChanged() {
+        return changed;
+    }
+
+    /**
+     * Compare two keys returned by this expression by the values they end with,
+     * which compare like the original order keys.
+     *
+     * @param a the first key
+     * @param b the second key
+     * @return the result of the comparison
+     * @throws XPathException if the keys cannot be compared
+     */
+    public static int compareValues(final AtomicValue a, final AtomicValue b) throws XPathException {
+        final int cmp = a.getStringValue().substring(SortIndexWorker.CODE_LENGTH)
+                .compareTo(b.getStringValue().substring(SortIndexWorker.CODE_LENGTH));
+        return cmp == 0 ? Constants.EQUAL : cmp < 0 ? Constants.INFERIOR : Constants.SUPERIOR;
+    }
+
+    @Override
+    public int returnsType() {
+        return Type.STRING;
+    }
+
+    @Override
+    public Cardinality getCardinality() {
+        return Cardinality.ZERO_OR_ONE;
+    }
+
+    @Override
+    public int getDependencies() {
+        return orderKey.getDependencies();
+    }
+
+    @Override
+    public void dump(final ExpressionDumper dumper) {
+        dumper.display("sort:order-key(\"" + config.getIndexName() + "\", ");
+        orderKey.dump(dumper);
+        dumper.display(")");
+    }
+
+    @Override
+    public String toString() {
+        return "sort:order-key(\"" + config.getIndexName() + "\", " + orderKey.toString() + ")";
+    }
+
+    @Override
+    public void resetState(final boolean postOptimization) {
+        super.resetState(postOptimization);
+        orderKey.resetState(postOptimization);
+        version = -1;
+        changed = false;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery.modules.sort;
+
+import org.exist.xquery.OrderSpec;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.AtomicValue;
+
+/**
+ * Order spec replacing an order spec rewritten by {@link SortQueryRewriter}. Its keys are
+ * compared as strings, or by their values if the index changed while they were looked up,
+ * see {@link OrderKeyLookup#hasChanged()}.
+ */
+public class OrderKeySpec extends OrderSpec {
+
+    private final OrderKeyLookup lookup;
+
+    public OrderKeySpec(final XQueryContext context, final OrderKeyLookup lookup) {
+        super(context, lookup);
+        this.lookup = lookup;
+    }
+
+    @Override
+    public int compare(final AtomicValue a, final AtomicValue b) throws XPathException {
+        return lookup.hasChanged() ? OrderKeyLookup.compareValues(a, b) : super.compare(a, b);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.xquery.modules.sort;
+
+import org.exist.EXistException;
+import org.exist.indexing.sort.SortIndexConfig;
+import org.exist.indexing.sort.SortIndexWorker;
+import org.exist.util.LockException;
+import org.exist.xquery.*;
+import org.exist.xquery.value.Type;
+
+import javax.annotation.Nullable;
+
+/**
+ * Query rewriter for the sort index. Replaces the order key of an order by clause like
+ * <code>order by $b/title</code> or <code>order by xs:double($b/@price)</code> with
+ * an {@link OrderKeyLookup}, if a sort index is defined on <code>title</code> or on
+ * <code>@price</code> with type <code>xs:double</code> in any collection.
+ */
+public class SortQueryRewriter extends QueryRewriter {
+
+    private final SortIndexWorker worker;
+
+    public SortQueryRewriter(final XQueryContext context, final SortIndexWorker worker) {
+        super(context);
+        this.worker = worker;
+    }
+
+    @Override
+    public OrderSpec rewriteOrderSpec(final OrderSpec orderSpec) throws XPathException {
+        // the keys of the index compare like the values by the codepoint collation only
+        if (orderSpec.getCollator() != null) {
+            return null;
+        }
+        final Expression sortExpr = unwrap(orderSpec.getSortExpression());
+        Expression path = sortExpr;
+        int type = Type.STRING;
+        if (sortExpr instanceof CastExpression) {
+            type = sortExpr.returnsType();
+            path = unwrap(((CastExpression) sortExpr).getInnerExpression());
+        }
+        if (!SortIndexConfig.isSupportedType(type)) {
+            return null;
+        }
+
+        final LocationStep step = getLastStep(path);
+        if (step == null || step.hasPredicates() || step.getTest().isWildcardTest() || step.getTest().getName() == null) {
+            return null;
+        }
+        final int axis = step.getAxis();
+        final boolean attribute = axis == Constants.ATTRIBUTE_AXIS || axis == Constants.DESCENDANT_ATTRIBUTE_AXIS;
+        if (!(attribute || ((axis == Constants.CHILD_AXIS || axis == Constants.DESCENDANT_AXIS ||
+                axis == Constants.DESCENDANT_SELF_AXIS) && step.getTest().getType() == Type.ELEMENT))) {
+            return null;
+        }
+
+        final SortIndexConfig config = new SortIndexConfig(step.getTest().getName(), attribute, type);
+        try {
+            if (!worker.hasIndex(config.getIndexName())) {
+                return null;
+            }
+        } catch (final EXistException | LockException e) {
+            throw new XPathException(sortExpr, "Exception caught while reading sort index: " + e.getMessage(), e);
+        }
+        final OrderSpec rewritten = new OrderKeySpec(getContext(),
+                new OrderKeyLookup(getContext(), config, orderSpec.getSortExpression(), path));
+        rewritten.setModifiers(orderSpec.getModifiers());
+        return rewritten;
+    }
+
+    private static Expression unwrap(Expression expr) {
+        while (expr instanceof PathExpr && ((PathExpr) expr).getSubExpressionCount() == 1) {
+            expr = ((PathExpr) expr).getExpression(0);
+        }
+        return expr;
+    }
+
+    private static @Nullable LocationStep getLastStep(final Expression path) {
+        if (path instanceof LocationStep) {
+            return (LocationStep) path;
+        } else if (path instanceof PathExpr) {
+            final Expression last = ((PathExpr) path).getLastExpression();
+            if (last instanceof LocationStep) {
+                return (LocationStep) last;
+            }
+        }
+        return null;
+    }
+}
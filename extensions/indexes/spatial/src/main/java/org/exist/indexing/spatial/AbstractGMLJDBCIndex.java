@@ -31,7 +31,6 @@ import java.util.Iterator;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.exist.indexing.AbstractIndex;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.StreamListener.ReindexMode;
 import org.exist.storage.BrokerPool;
@@ -42,14 +41,7 @@ import org.w3c.dom.Element;
 
 /**
  */
-public abstract class AbstractGMLJDBCIndex extends AbstractIndex {
-
-    /**
-     * Holds the index ID. Notice that we delegate this task to the abstract JDBC class,
-     * not to the concrete HSQL (or whatever) one. This allows spatial functions to use
-     * the available JDBC index, whatever its underlying engine is.
-     */
-    public final static String ID = AbstractGMLJDBCIndex.class.getName();	
+public abstract class AbstractGMLJDBCIndex extends AbstractGMLIndex {
 
     @SuppressWarnings("unused")
     private final static Logger LOG = LogManager.getLogger(AbstractGMLJDBCIndex.class);
@@ -64,24 +56,6 @@ public abstract class AbstractGMLJDBCIndex extends AbstractIndex {
      */
     protected Connection conn = null;
 
-    /**
-     * The spatial operators to test spatial relationshipds beween geometries.
-     * See http://www.vividsolutions.com/jts/bin/JTS%20Technical%20Specs.pdf (chapter 11).
-     */
-    public interface SpatialOperator { 
-        public static int UNKNOWN = -1;
-        public static int EQUALS = 1;
-        public static int DISJOINT = 2;
-        public static int INTERSECTS = 3;
-        public static int TOUCHES = 4;
-        public static int CROSSES = 5;
-        public static int WITHIN = 6;
-        public static int CONTAINS = 7;
-        public static int OVERLAPS = 8;
-    }
-
-    protected int max_docs_in_context_to_refine_query = 10;
-
     @Override
     public void configure(BrokerPool pool, Path dataDir, Element config) throws DatabaseConfigurationException {
         super.configure(pool, dataDir, config);
@@ -94,10 +68,6 @@ public abstract class AbstractGMLJDBCIndex extends AbstractIndex {
         }
     }
 
-    public int getMaxDocsInContextToRefineQuery() {
-        return max_docs_in_context_to_refine_query;
-    }
-
     @Override
     public void open() throws DatabaseConfigurationException {
         //Nothing particular to do : the connection will be opened on request      
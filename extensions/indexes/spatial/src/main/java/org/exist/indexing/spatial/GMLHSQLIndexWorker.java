@@ -32,7 +32,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.collections.Collection;
 import org.exist.dom.persistent.*;
-import org.exist.indexing.spatial.AbstractGMLJDBCIndex.SpatialOperator;
+import org.exist.indexing.spatial.AbstractGMLIndex.SpatialOperator;
 import org.exist.numbering.DLN;
 import org.exist.numbering.NodeId;
 import org.exist.security.PermissionDeniedException;
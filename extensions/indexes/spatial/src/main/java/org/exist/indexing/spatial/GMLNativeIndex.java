@@ -0,0 +1,259 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.indexing.spatial;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.backup.RawDataBackup;
+import org.exist.indexing.IndexWorker;
+import org.exist.indexing.RawBackupSupport;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.btree.BTree;
+import org.exist.storage.btree.BTreeException;
+import org.exist.storage.btree.BTreeKeySorter;
+import org.exist.storage.btree.DBException;
+import org.exist.storage.btree.Value;
+import org.exist.storage.index.BFile;
+import org.exist.storage.lock.LockManager;
+import org.exist.storage.lock.ManagedLock;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.FileUtils;
+import org.exist.util.LockException;
+import org.exist.xquery.TerminatedException;
+import org.w3c.dom.Element;
+
+/**
+ * A spatial index which stores the geometries in a paged file of the database
+ * instead of an external JDBC database.
+ *
+ * The bounding boxes of the geometries are kept in the keys of a B+-tree,
+ * ordered by their cells in an {@link XZOrdering}, so that spatial queries are
+ * answered by a few range scans, and only the geometries of the candidates
+ * whose bounding boxes match are read to check the exact spatial relationship.
+ * The geometries are stored once, and are also found by the document and node id.
+ *
+ * To use it instead of {@link GMLHSQLIndex}, configure the module in conf.xml:
+ * <pre>
+ * &lt;module id="spatial-index" class="org.exist.indexing.spatial.GMLNativeIndex"/&gt;
+ * </pre>
+ */
+public class GMLNativeIndex extends AbstractGMLIndex implements RawBackupSupport {
+
+    private final static Logger LOG = LogManager.getLogger(GMLNativeIndex.class);
+
+    public static final String FILE_NAME = "spatial.dbx";
+    public static final short FILE_FORMAT_VERSION_ID = 1;
+    public static final String FILL_FACTOR_ATTRIBUTE = "fill-factor";
+
+    protected BFile db;
+    private Path dataFile = null;
+    private LockManager lockManager;
+
+    /** The fill factor of the pages when the btree is built from sorted keys */
+    private double fillFactor = BTree.DEFAULT_FILL_FACTOR;
+
+    /** The keys collected during a repair, guarded by the btree lock, see {@link #beginRepair()} */
+    private BTreeKeySorter repairKeys = null;
+
+    /** The number of calls of {@link #beginRepair()} not yet followed by {@link #endRepair()}, guarded by the btree lock */
+    private int repairs = 0;
+
+    @Override
+    public void configure(BrokerPool pool, Path dataDir, Element config) throws DatabaseConfigurationException {
+        super.configure(pool, dataDir, config);
+        lockManager = pool.getLockManager();
+        String fileName = FILE_NAME;
+        if (config.hasAttribute("file")) {
+            fileName = config.getAttribute("file");
+        }
+        dataFile = dataDir.resolve(fileName);
+
+        if (config.hasAttribute(FILL_FACTOR_ATTRIBUTE)) {
+            try {
+                fillFactor = Double.parseDouble(config.getAttribute(FILL_FACTOR_ATTRIBUTE));
+            } catch (final NumberFormatException e) {
+                throw new DatabaseConfigurationException("Attribute " + FILL_FACTOR_ATTRIBUTE + " of the spatial index must be a number: " + e.getMessage());
+            }
+            if (fillFactor < 0.1 || fillFactor > 1) {
+                throw new DatabaseConfigurationException("Attribute " + FILL_FACTOR_ATTRIBUTE + " of the spatial index must be between 0.1 and 1.0, but was: " + fillFactor);
+            }
+        }
+    }
+
+    @Override
+    public void open() throws DatabaseConfigurationException {
+        try {
+            db = new BFile(pool, (byte) 0, FILE_FORMAT_VERSION_ID, false, dataFile, pool.getCacheManager(), 1.4, 0.07);
+        } catch (final DBException e) {
+            throw new DatabaseConfigurationException("Failed to create index file: " + dataFile.toAbsolutePath().toString() + ": " +
+                e.getMessage());
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Created spatial index: " + dataFile.toAbsolutePath().toString());
+        }
+    }
+
+    @Override
+    public void close() throws DBException {
+        db.close();
+        db = null;
+    }
+
+    @Override
+    public void sync() throws DBException {
+        if (db == null) {
+            return;
+        }
+        try (final ManagedLock<ReentrantLock> dbLock = lockManager.acquireBtreeWriteLock(db.getLockName())) {
+            db.flush();
+        } catch (final LockException e) {
+            LOG.warn("Failed to acquire lock for '" + FileUtils.fileName(db.getFile()) + "'", e);
+        }
+    }
+
+    @Override
+    public void remove() throws DBException {
+        db.closeAndRemove();
+    }
+
+    /**
+     * The workers store the geometries and collect their keys, and the btree
+     * is built bottom-up by merging the sorted keys with the keys it already
+     * contains, when {@link #endRepair()} is called or as soon as a worker
+     * removes geometries, see {@link #buildRepairKeys()}. The new keys are not
+     * visible until then, so this must only be used while the database is used
+     * exclusively, i.e. during a repair or a bulk load.
+     */
+    @Override
+    public void beginRepair() throws DBException {
+        try (final ManagedLock<ReentrantLock> dbLock = lockManager.acquireBtreeWriteLock(db.getLockName())) {
+            if (repairs++ == 0) {
+                repairKeys = new BTreeKeySorter();
+            }
+        } catch (final LockException e) {
+            throw new DBException("Failed to acquire lock for '" + FileUtils.fileName(db.getFile()) + "': " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void endRepair() throws DBException {
+        try (final ManagedLock<ReentrantLock> dbLock = lockManager.acquireBtreeWriteLock(db.getLockName())) {
+            if (repairs > 0) {
+                repairs--;
+            }
+            if (repairs == 0) {
+                buildRepairKeys();
+            }
+        } catch (final LockException e) {
+            throw new DBException("Failed to acquire lock for '" + FileUtils.fileName(db.getFile()) + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * Merge the keys collected so far, if any, into the btree. Afterwards the keys
+     * are inserted into the btree. Workers call this before they remove geometries,
+     * whose keys may not have been added to the btree yet. As long as no keys have
+     * been collected, there is nothing to merge and the keys are still collected.
+     * The caller must hold the write lock of the btree.
+     *
+     * @throws DBException if the btree can not be built
+     */
+    void buildRepairKeys() throws DBException {
+        if (repairKeys == null || (repairs > 0 && repairKeys.getCount() == 0)) {
+            return;
+        }
+        try (final BTreeKeySorter keys = repairKeys) {
+            repairKeys = null;
+            if (keys.getCount() == 0) {
+                return;
+            }
+            final long start = System.currentTimeMillis();
+            final long count = db.merge(keys, fillFactor);
+            LOG.info("Built spatial index from {} collected keys in {} ms, {} keys in total, sorted in {} runs",
+                    keys.getCount(), System.currentTimeMillis() - start, count, keys.getRuns());
+        } catch (final IOException | UncheckedIOException | BTreeException | TerminatedException e) {
+            LOG.error("Failed to build spatial index: " + e.getMessage(), e);
+            throw new DBException("Failed to build spatial index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Add a key to the keys collected during a repair. The caller
+     * must hold the write lock of the btree.
+     *
+     * @param key the key
+     * @param pointer the address of the stored geometry
+     *
+     * @return true if the key was collected, false if the index is not being repaired
+     *
+     * @throws IOException if the collected keys can not be written to a temporary file
+     */
+    boolean addRepairKey(final Value key, final long pointer) throws IOException {
+        if (repairKeys == null) {
+            return false;
+        }
+        repairKeys.add(key, pointer);
+        return true;
+    }
+
+    /**
+     * @return true if the index is being repaired, and the keys are collected
+     */
+    boolean isRepairing() {
+        return repairKeys != null;
+    }
+
+    LockManager getLockManager() {
+        return lockManager;
+    }
+
+    @Override
+    public IndexWorker getWorker(DBBroker broker) {
+        return new GMLNativeIndexWorker(this, broker);
+    }
+
+    @Override
+    public boolean checkIndex(DBBroker broker) {
+        return ((GMLNativeIndexWorker) getWorker(broker)).checkIndex(broker);
+    }
+
+    @Override
+    public BTree getStorage() {
+        return db;
+    }
+
+    @Override
+    public void backupToArchive(final RawDataBackup backup) throws IOException {
+        // do not use try-with-resources here, closing the OutputStream will close the entire backup
+        try {
+            final OutputStream os = backup.newEntry(FileUtils.fileName(db.getFile()));
+            db.backupToStream(os);
+        } finally {
+            backup.closeEntry();
+        }
+    }
+}
@@ -0,0 +1,739 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.indexing.spatial;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.*;
+import org.exist.indexing.Index;
+import org.exist.indexing.StreamListener.ReindexMode;
+import org.exist.indexing.spatial.AbstractGMLIndex.SpatialOperator;
+import org.exist.numbering.NodeId;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.DBBroker;
+import org.exist.storage.IndexSpec;
+import org.exist.storage.NodePath;
+import org.exist.storage.btree.BTree;
+import org.exist.storage.btree.BTreeException;
+import org.exist.storage.btree.DBException;
+import org.exist.storage.btree.IndexQuery;
+import org.exist.storage.btree.Value;
+import org.exist.storage.index.BFile;
+import org.exist.storage.io.VariableByteInput;
+import org.exist.storage.io.VariableByteOutputStream;
+import org.exist.storage.lock.ManagedLock;
+import org.exist.util.ByteConversion;
+import org.exist.util.FileUtils;
+import org.exist.util.LockException;
+import org.exist.util.Occurrences;
+import org.exist.util.io.FastByteArrayInputStream;
+import org.exist.xquery.QueryRewriter;
+import org.exist.xquery.TerminatedException;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.Base64BinaryValueType;
+import org.exist.xquery.value.BinaryValueFromInputStream;
+import org.exist.xquery.value.BooleanValue;
+import org.exist.xquery.value.DoubleValue;
+import org.exist.xquery.value.StringValue;
+import org.exist.xquery.value.ValueSequence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The worker of {@link GMLNativeIndex}.
+ *
+ * The index file has two kinds of keys, which both point to the stored geometry:
+ * <ul>
+ *     <li>the geometry keys: the level and Z-order code of the {@link XZOrdering} cell of the
+ *     bounding box, the bounding box in EPSG:4326, and the collection, document and node id</li>
+ *     <li>the node keys: the collection, document and node id</li>
+ * </ul>
+ * The stored geometry consists of its SRS name, and its WKB in the original SRS and in EPSG:4326.
+ */
+public class GMLNativeIndexWorker extends AbstractGMLIndexWorker {
+
+    private static final Logger LOG = LogManager.getLogger(GMLNativeIndexWorker.class);
+
+    static final byte GEOMETRY_KEY = 0;
+    static final byte NODE_KEY = 1;
+
+    private static final int BOX_OFFSET = 1 + 1 + 8;
+    private static final int IDS_OFFSET = BOX_OFFSET + 4 * 8;
+
+    private final GMLNativeIndex index;
+    private final VariableByteOutputStream os = new VariableByteOutputStream(256);
+
+    public GMLNativeIndexWorker(GMLNativeIndex index, DBBroker broker) {
+        super(broker);
+        this.index = index;
+    }
+
+    @Override
+    public Index getIndex() {
+        return index;
+    }
+
+    @Override
+    public void flush() {
+        if (!isDocumentGMLAware)
+            //Not concerned
+            return;
+        //Is the job already done ?
+        if (currentMode == ReindexMode.REMOVE_ALL_NODES && documentDeleted)
+            return;
+        try (final ManagedLock<ReentrantLock> dbLock = index.getLockManager().acquireBtreeWriteLock(index.db.getLockName())) {
+            switch (currentMode) {
+                case STORE :
+                    saveDocumentNodes();
+                    break;
+                case REMOVE_SOME_NODES :
+                    index.buildRepairKeys();
+                    dropDocumentNodes();
+                    break;
+                case REMOVE_ALL_NODES:
+                    index.buildRepairKeys();
+                    removeDocument();
+                    documentDeleted = true;
+                    break;
+            }
+        } catch (final LockException e) {
+            LOG.warn("Failed to acquire lock for '" + FileUtils.fileName(index.db.getFile()) + "'", e);
+        } catch (final IOException | TerminatedException | DBException e) {
+            LOG.error("Document: " + currentDoc + " NodeID: " + currentNodeId, e);
+        } finally {
+            geometries.clear();
+        }
+    }
+
+    private void saveDocumentNodes() throws IOException, BTreeException {
+        for (final Map.Entry<NodeId, SRSGeometry> entry : geometries.entrySet()) {
+            try {
+                saveGeometryNode(entry.getValue().getGeometry(), entry.getValue().getSRSName(), currentDoc, entry.getKey());
+            } catch (final SpatialIndexException e) {
+                LOG.error("Unable to save geometry for node: " + entry.getKey(), e);
+            }
+        }
+    }
+
+    private void saveGeometryNode(final Geometry geometry, final String srsName, final DocumentImpl doc,
+            final NodeId nodeId) throws SpatialIndexException, IOException, BTreeException {
+        final Geometry EPSG4326_geometry = transformGeometry(geometry, srsName, "EPSG:4326");
+        final Value nodeKey = getNodeKey(doc.getCollection().getId(), doc.getDocId(), nodeId);
+        final Value geometryKey = getGeometryKey(EPSG4326_geometry.getEnvelopeInternal(), nodeKey);
+
+        os.clear();
+        os.writeUTF(srsName);
+        writeBytes(wkbWriter.write(geometry));
+        writeBytes(wkbWriter.write(EPSG4326_geometry));
+
+        if (index.isRepairing()) {
+            //The keys are added to the btree when the repair ends
+            final long pointer = index.db.storeValue(null, os.data());
+            index.addRepairKey(nodeKey, pointer);
+            index.addRepairKey(geometryKey, pointer);
+        } else {
+            //Both keys must point to the same geometry
+            if (index.db.containsKey(nodeKey)) {
+                removeNode(nodeKey, index.db.findValue(nodeKey));
+            }
+            final long pointer = index.db.put(null, nodeKey, os.data(), false);
+            if (pointer == BFile.UNKNOWN_ADDRESS) {
+                throw new SpatialIndexException("Unable to store geometry for node " + nodeId);
+            }
+            index.db.addValue(geometryKey, pointer);
+        }
+    }
+
+    private void writeBytes(final byte[] data) {
+        os.writeInt(data.length);
+        os.write(data);
+    }
+
+    private void dropDocumentNodes() throws IOException, BTreeException {
+        //The geometries of the removed nodes have been collected as well
+        final Set<NodeId> nodeIds = new TreeSet<>(geometries.keySet());
+        if (currentNodeId != null) {
+            nodeIds.add(currentNodeId);
+        }
+        try {
+            for (final NodeId nodeId : nodeIds) {
+                final Value nodeKey = getNodeKey(currentDoc.getCollection().getId(), currentDoc.getDocId(), nodeId);
+                final long pointer = index.db.findValue(nodeKey);
+                if (pointer == BTree.KEY_NOT_FOUND) {
+                    continue;
+                }
+                removeNode(nodeKey, pointer);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Dropped data for node " + nodeId.toString() + " from GML index");
+            }
+        } finally {
+            currentNodeId = null;
+        }
+    }
+
+    private void removeDocument() throws IOException, BTreeException, TerminatedException {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Dropping GML index for document " + currentDoc.getURI());
+        final int nodeCount = removeNodes(getNodeKeyPrefix(currentDoc.getCollection().getId(), currentDoc.getDocId()));
+        if (LOG.isDebugEnabled())
+            LOG.debug("Dropped " + nodeCount + " nodes from GML index");
+    }
+
+    @Override
+    public void removeCollection(Collection collection, DBBroker broker, boolean reindex) {
+        boolean isCollectionGMLAware = false;
+        IndexSpec idxConf = collection.getIndexConfiguration(broker);
+        if (idxConf != null) {
+            Map collectionConfig = (Map) idxConf.getCustomIndexSpec(AbstractGMLIndex.ID);
+            isCollectionGMLAware = (collectionConfig != null);
+        }
+        if (!isCollectionGMLAware)
+            return;
+
+        try (final ManagedLock<ReentrantLock> dbLock = index.getLockManager().acquireBtreeWriteLock(index.db.getLockName())) {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Dropping GML index for collection " + collection.getURI());
+            index.buildRepairKeys();
+            final int nodeCount = removeNodes(getNodeKeyPrefix(collection.getId()));
+            if (LOG.isDebugEnabled())
+                LOG.debug("Dropped " + nodeCount + " nodes from GML index");
+        } catch (final LockException e) {
+            LOG.warn("Failed to acquire lock for '" + FileUtils.fileName(index.db.getFile()) + "'", e);
+        } catch (final IOException | TerminatedException | DBException e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Remove the geometries of all the nodes whose keys start with the prefix.
+     * The caller must hold the write lock of the btree.
+     */
+    private int removeNodes(final Value prefix) throws IOException, BTreeException, TerminatedException {
+        final List<Value> keys = new ArrayList<>();
+        final List<Long> pointers = new ArrayList<>();
+        index.db.query(new IndexQuery(IndexQuery.TRUNC_RIGHT, prefix), (key, pointer) -> {
+            keys.add(key);
+            pointers.add(pointer);
+            return true;
+        });
+        for (int i = 0; i < keys.size(); i++) {
+            removeNode(keys.get(i), pointers.get(i));
+        }
+        return keys.size();
+    }
+
+    /**
+     * Remove the geometry of a node and both its keys. The geometry key
+     * is computed from the bounding box of the stored geometry.
+     * The caller must hold the write lock of the btree.
+     */
+    private void removeNode(final Value nodeKey, final long pointer) throws IOException, BTreeException {
+        try {
+            final Geometry EPSG4326_geometry = readGeometry(pointer, true);
+            index.db.removeValue(null, getGeometryKey(EPSG4326_geometry.getEnvelopeInternal(), nodeKey));
+        } catch (final SpatialIndexException e) {
+            LOG.error("Unable to read geometry of node key " + nodeKey + ", its geometry key is left in the index", e);
+        }
+        index.db.remove(null, nodeKey);
+    }
+
+    @Override
+    public NodeSet search(DBBroker broker, NodeSet contextSet, Geometry EPSG4326_geometry, int spatialOp)
+            throws SpatialIndexException {
+        final Envelope envelope = EPSG4326_geometry.getEnvelopeInternal();
+        final List<Candidate> candidates = new ArrayList<>();
+        final BoxFilter filter = new BoxFilter(broker, contextSet, envelope, spatialOp, candidates);
+        int disjointPostFiltered = 0;
+        try (final ManagedLock<ReentrantLock> dbLock = index.getLockManager().acquireBtreeReadLock(index.db.getLockName())) {
+            if (spatialOp == SpatialOperator.DISJOINT) {
+                //Nothing much we can do with the BBox at this stage
+                index.db.query(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(new byte[] { GEOMETRY_KEY })), filter);
+            } else {
+                //Only a few levels can contain geometries with equal, larger or smaller bounding boxes
+                final int level = XZOrdering.getLevel(envelope);
+                final int minLevel = spatialOp == SpatialOperator.EQUALS || spatialOp == SpatialOperator.WITHIN ? level : 0;
+                final int maxLevel = spatialOp == SpatialOperator.EQUALS || spatialOp == SpatialOperator.CONTAINS ? level : XZOrdering.MAX_LEVEL;
+                for (int l = minLevel; l <= maxLevel; l++) {
+                    for (final long[] range : XZOrdering.getRanges(envelope, l)) {
+                        index.db.query(new IndexQuery(IndexQuery.BW, getCellKey(l, range[0]), getCellKey(l, range[1] + 1)), filter);
+                    }
+                }
+            }
+
+            //Possible matches : check the geometries
+            for (final Iterator<Candidate> i = candidates.iterator(); i.hasNext(); ) {
+                final Candidate candidate = i.next();
+                if (candidate.matches) {
+                    //No BBox intersection : obviously disjoint
+                    disjointPostFiltered++;
+                } else if (!matches(readGeometry(candidate.pointer, true), EPSG4326_geometry, spatialOp)) {
+                    i.remove();
+                }
+            }
+        } catch (final LockException e) {
+            throw new SpatialIndexException("Failed to acquire lock for '" + FileUtils.fileName(index.db.getFile()) + "'");
+        } catch (final IOException | BTreeException | TerminatedException e) {
+            throw new SpatialIndexException(e);
+        }
+
+        final NodeSet result = new ExtArrayNodeSet();
+        for (final Candidate candidate : candidates) {
+            NodeProxy p = candidate.node;
+            if (p == null) {
+                //contextSet == null should be used to scan the whole index
+                final DocumentImpl doc = filter.getDocument(candidate.collectionId, candidate.docId);
+                if (doc == null) {
+                    continue;
+                }
+                p = new NodeProxy(doc, candidate.nodeId);
+            }
+            result.add(p);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(filter.eligible + " eligible geometries, " + result.getItemCount() + " selected" +
+                (spatialOp == SpatialOperator.DISJOINT ? " (" + disjointPostFiltered + " post filtered)" : ""));
+        }
+        return result;
+    }
+
+    private static boolean matches(final Geometry geometry, final Geometry EPSG4326_geometry, final int spatialOp) {
+        switch (spatialOp) {
+            case SpatialOperator.EQUALS:
+                return geometry.equals(EPSG4326_geometry);
+            case SpatialOperator.DISJOINT:
+                return geometry.disjoint(EPSG4326_geometry);
+            case SpatialOperator.INTERSECTS:
+                return geometry.intersects(EPSG4326_geometry);
+            case SpatialOperator.TOUCHES:
+                return geometry.touches(EPSG4326_geometry);
+            case SpatialOperator.CROSSES:
+                return geometry.crosses(EPSG4326_geometry);
+            case SpatialOperator.WITHIN:
+                return geometry.within(EPSG4326_geometry);
+            case SpatialOperator.CONTAINS:
+                return geometry.contains(EPSG4326_geometry);
+            case SpatialOperator.OVERLAPS:
+                return geometry.overlaps(EPSG4326_geometry);
+            default:
+                throw new IllegalArgumentException("Unsupported spatial operator:" + spatialOp);
+        }
+    }
+
+    /**
+     * Filters the geometry keys by the bounding box and the context set,
+     * and collects the candidates whose geometries have to be checked.
+     */
+    private class BoxFilter implements org.exist.storage.btree.BTreeCallback {
+        private final DBBroker broker;
+        private final NodeSet contextSet;
+        private final Envelope envelope;
+        private final int spatialOp;
+        private final List<Candidate> candidates;
+        private final Map<Long, DocumentImpl> documents = new HashMap<>();
+        private int eligible = 0;
+
+        BoxFilter(final DBBroker broker, final NodeSet contextSet, final Envelope envelope, final int spatialOp,
+                final List<Candidate> candidates) {
+            this.broker = broker;
+            this.contextSet = contextSet;
+            this.envelope = envelope;
+            this.spatialOp = spatialOp;
+            this.candidates = candidates;
+        }
+
+        @Override
+        public boolean indexInfo(final Value key, final long pointer) throws TerminatedException {
+            final byte[] data = key.getData();
+            final Envelope box = getBox(data);
+            final boolean boxesIntersect = box.intersects(envelope);
+            switch (spatialOp) {
+                //BBoxes are equal
+                case SpatialOperator.EQUALS:
+                    if (!box.equals(envelope))
+                        return true;
+                    break;
+                //BBoxes intersect themselves
+                case SpatialOperator.INTERSECTS:
+                case SpatialOperator.TOUCHES:
+                case SpatialOperator.CROSSES:
+                case SpatialOperator.OVERLAPS:
+                    if (!boxesIntersect)
+                        return true;
+                    break;
+                //BBox is fully within
+                case SpatialOperator.WITHIN:
+                    if (!envelope.contains(box))
+                        return true;
+                    break;
+                //BBox fully contains
+                case SpatialOperator.CONTAINS:
+                    if (!box.contains(envelope))
+                        return true;
+                    break;
+            }
+            eligible++;
+
+            final int collectionId = ByteConversion.byteToIntH(data, IDS_OFFSET);
+            final int docId = ByteConversion.byteToIntH(data, IDS_OFFSET + 4);
+            final short units = ByteConversion.byteToShortH(data, IDS_OFFSET + 8);
+            final NodeId nodeId = broker.getBrokerPool().getNodeFactory().createFromData(units, data, IDS_OFFSET + 10);
+            NodeProxy p = null;
+            if (contextSet != null) {
+                final DocumentImpl doc = contextSet.getDocumentSet().getDoc(docId);
+                if (doc == null) {
+                    return true;
+                }
+                p = new NodeProxy(doc, nodeId);
+                //Node is in the context : check if it is accurate
+                //contextSet.contains(p) would have made more sense but there is a problem with
+                //VirtualNodeSet when on the DESCENDANT_OR_SELF axis
+                if (contextSet.get(p) == null) {
+                    return true;
+                }
+            }
+            candidates.add(new Candidate(collectionId, docId, nodeId, p, pointer,
+                    spatialOp == SpatialOperator.DISJOINT && !boxesIntersect));
+            return true;
+        }
+
+        DocumentImpl getDocument(final int collectionId, final int docId) {
+            final long id = ((long) collectionId << 32) | (docId & 0xFFFFFFFFL);
+            if (documents.containsKey(id)) {
+                return documents.get(id);
+            }
+            DocumentImpl doc = null;
+            try {
+                doc = broker.getResourceById(collectionId, DocumentImpl.XML_FILE, docId);
+            } catch (final PermissionDeniedException e) {
+                LOG.debug(e);
+                //Ignore since the broker has no right on the document
+            }
+            documents.put(id, doc);
+            return doc;
+        }
+    }
+
+    private static class Candidate {
+        final int collectionId;
+        final int docId;
+        final NodeId nodeId;
+        final NodeProxy node;
+        final long pointer;
+        final boolean matches;
+
+        Candidate(final int collectionId, final int docId, final NodeId nodeId, final NodeProxy node,
+                final long pointer, final boolean matches) {
+            this.collectionId = collectionId;
+            this.docId = docId;
+            this.nodeId = nodeId;
+            this.node = node;
+            this.pointer = pointer;
+            this.matches = matches;
+        }
+    }
+
+    @Override
+    public Geometry getGeometryForNode(DBBroker broker, NodeProxy p, boolean getEPSG4326)
+            throws SpatialIndexException {
+        final StoredGeometry stored = getStoredGeometry(p);
+        if (stored == null) {
+            return null;
+        }
+        return getEPSG4326 ? stored.EPSG4326_geometry : stored.geometry;
+    }
+
+    @Override
+    protected Geometry[] getGeometriesForNodes(DBBroker broker, NodeSet contextSet, boolean getEPSG4326)
+            throws SpatialIndexException {
+        final Geometry[] result = new Geometry[contextSet.getLength()];
+        int i = 0;
+        for (final NodeProxy p : contextSet) {
+            result[i++] = getGeometryForNode(broker, p, getEPSG4326);
+        }
+        return result;
+    }
+
+    @Override
+    public AtomicValue getGeometricPropertyForNode(XQueryContext context, NodeProxy p, String propertyName)
+            throws SpatialIndexException {
+        final StoredGeometry stored = getStoredGeometry(p);
+        if (stored == null) {
+            //Nothing returned
+            return AtomicValue.EMPTY_VALUE;
+        }
+        if ("SRS_NAME".equals(propertyName)) {
+            return new StringValue(stored.srsName);
+        }
+        final boolean EPSG4326 = propertyName.startsWith("EPSG4326_");
+        final Geometry geometry = EPSG4326 ? stored.EPSG4326_geometry : stored.geometry;
+        switch (EPSG4326 ? propertyName.substring("EPSG4326_".length()) : propertyName) {
+            case "GEOMETRY_TYPE":
+                return new StringValue(geometry.getGeometryType());
+            case "WKT":
+                return new StringValue(wktWriter.write(geometry));
+            case "WKB":
+                try {
+                    return BinaryValueFromInputStream.getInstance(context, new Base64BinaryValueType(),
+                            new FastByteArrayInputStream(wkbWriter.write(geometry)));
+                } catch (final XPathException e) {
+                    throw new SpatialIndexException(e);
+                }
+            case "MINX":
+                return new DoubleValue(geometry.getEnvelopeInternal().getMinX());
+            case "MAXX":
+                return new DoubleValue(geometry.getEnvelopeInternal().getMaxX());
+            case "MINY":
+                return new DoubleValue(geometry.getEnvelopeInternal().getMinY());
+            case "MAXY":
+                return new DoubleValue(geometry.getEnvelopeInternal().getMaxY());
+            case "CENTROID_X":
+                return new DoubleValue(geometry.getCentroid().getCoordinate().x);
+            case "CENTROID_Y":
+                return new DoubleValue(geometry.getCentroid().getCoordinate().y);
+            case "AREA":
+                return new DoubleValue(geometry.getArea());
+            //As discussed earlier, all instances of SFS geometry classes
+            //are topologically closed by definition.
+            //For empty Curves, isClosed is defined to have the value false.
+            case "IS_CLOSED":
+                return new BooleanValue(!geometry.isEmpty());
+            case "IS_SIMPLE":
+                return new BooleanValue(geometry.isSimple());
+            case "IS_VALID":
+                return new BooleanValue(geometry.isValid());
+            default:
+                throw new SpatialIndexException("Unknown spatial property: " + propertyName);
+        }
+    }
+
+    @Override
+    public ValueSequence getGeometricPropertyForNodes(XQueryContext context, NodeSet contextSet, String propertyName)
+            throws SpatialIndexException {
+        final ValueSequence result = new ValueSequence(contextSet.getLength());
+        for (final NodeProxy p : contextSet) {
+            final AtomicValue value = getGeometricPropertyForNode(context, p, propertyName);
+            if (!value.isEmpty()) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    private StoredGeometry getStoredGeometry(final NodeProxy p) throws SpatialIndexException {
+        final DocumentImpl doc = p.getOwnerDocument();
+        final Value nodeKey = getNodeKey(doc.getCollection().getId(), doc.getDocId(), p.getNodeId());
+        try (final ManagedLock<ReentrantLock> dbLock = index.getLockManager().acquireBtreeReadLock(index.db.getLockName())) {
+            final long pointer = index.db.findValue(nodeKey);
+            if (pointer == BTree.KEY_NOT_FOUND) {
+                return null;
+            }
+            final VariableByteInput is = index.db.getAsStream(pointer);
+            final String srsName = is.readUTF();
+            final Geometry geometry = wkbReader.read(readBytes(is));
+            final Geometry EPSG4326_geometry = wkbReader.read(readBytes(is));
+            return new StoredGeometry(srsName, geometry, EPSG4326_geometry);
+        } catch (final LockException e) {
+            throw new SpatialIndexException("Failed to acquire lock for '" + FileUtils.fileName(index.db.getFile()) + "'");
+        } catch (final IOException | BTreeException | ParseException e) {
+            throw new SpatialIndexException(e);
+        }
+    }
+
+    private static class StoredGeometry {
+        final String srsName;
+        final Geometry geometry;
+        final Geometry EPSG4326_geometry;
+
+        StoredGeometry(final String srsName, final Geometry geometry, final Geometry EPSG4326_geometry) {
+            this.srsName = srsName;
+            this.geometry = geometry;
+            this.EPSG4326_geometry = EPSG4326_geometry;
+        }
+    }
+
+    /**
+     * Read a stored geometry. The caller must hold a lock of the btree.
+     *
+     * @param pointer the address of the stored geometry
+     * @param getEPSG4326 true to get the geometry in EPSG:4326, false to get the original one
+     */
+    private Geometry readGeometry(final long pointer, final boolean getEPSG4326) throws IOException, SpatialIndexException {
+        final VariableByteInput is = index.db.getAsStream(pointer);
+        is.readUTF();
+        if (getEPSG4326) {
+            is.skipBytes(is.readInt());
+        }
+        try {
+            return wkbReader.read(readBytes(is));
+        } catch (final ParseException e) {
+            throw new SpatialIndexException(e);
+        }
+    }
+
+    private static byte[] readBytes(final VariableByteInput is) throws IOException {
+        final byte[] data = new byte[is.readInt()];
+        int offset = 0;
+        while (offset < data.length) {
+            final int read = is.read(data, offset, data.length - offset);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of stored geometry");
+            }
+            offset += read;
+        }
+        return data;
+    }
+
+    /**
+     * Checks that every geometry key points to the geometry of a node key.
+     */
+    @Override
+    public boolean checkIndex(DBBroker broker) {
+        final Set<Long> nodePointers = new HashSet<>();
+        final Set<Long> geometryPointers = new HashSet<>();
+        try (final ManagedLock<ReentrantLock> dbLock = index.getLockManager().acquireBtreeReadLock(index.db.getLockName())) {
+            index.db.query(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(new byte[] { NODE_KEY })), (key, pointer) -> {
+                nodePointers.add(pointer);
+                return true;
+            });
+            index.db.query(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(new byte[] { GEOMETRY_KEY })), (key, pointer) -> {
+                geometryPointers.add(pointer);
+                return true;
+            });
+        } catch (final LockException | IOException | BTreeException | TerminatedException e) {
+            LOG.error(e.getMessage(), e);
+            return false;
+        }
+        return nodePointers.equals(geometryPointers);
+    }
+
+    @Override
+    public Occurrences[] scanIndex(XQueryContext context, DocumentSet docs, NodeSet contextSet, Map<?, ?> hints) {
+        //TODO : try to use contextSet
+        final Map<Geometry, Occurrences> occurences = new TreeMap<>();
+        try (final ManagedLock<ReentrantLock> dbLock = index.getLockManager().acquireBtreeReadLock(index.db.getLockName())) {
+            //Collect the (normalized) geometries for each document
+            for (final Iterator<DocumentImpl> iDoc = docs.getDocumentIterator(); iDoc.hasNext(); ) {
+                final DocumentImpl doc = iDoc.next();
+                final List<Long> pointers = new ArrayList<>();
+                index.db.query(new IndexQuery(IndexQuery.TRUNC_RIGHT, getNodeKeyPrefix(doc.getCollection().getId(), doc.getDocId())),
+                        (key, pointer) -> {
+                            pointers.add(pointer);
+                            return true;
+                        });
+                for (final long pointer : pointers) {
+                    final Geometry key = readGeometry(pointer, true);
+                    //Aggregate the occurences between different documents
+                    Occurrences oc = occurences.get(key);
+                    if (oc == null) {
+                        //Create a new occurence with EPSG4326_WKT as "term"
+                        oc = new Occurrences(wktWriter.write(key));
+                        occurences.put(key, oc);
+                    }
+                    oc.addOccurrences(1);
+                    oc.addDocument(doc);
+                }
+            }
+        } catch (final LockException | IOException | BTreeException | TerminatedException | SpatialIndexException e) {
+            LOG.error(e.getMessage(), e);
+            return null;
+        }
+        final Occurrences[] result = new Occurrences[occurences.size()];
+        occurences.values().toArray(result);
+        return result;
+    }
+
+    @Override
+    public <T extends IStoredNode> IStoredNode getReindexRoot(IStoredNode<T> node, NodePath path, boolean insert, boolean includeSelf) {
+        return null;
+    }
+
+    @Override
+    public QueryRewriter getQueryRewriter(XQueryContext context) {
+        return null;
+    }
+
+    static Value getNodeKeyPrefix(final int collectionId) {
+        final byte[] data = new byte[1 + 4];
+        data[0] = NODE_KEY;
+        ByteConversion.intToByteH(collectionId, data, 1);
+        return new Value(data);
+    }
+
+    static Value getNodeKeyPrefix(final int collectionId, final int docId) {
+        final byte[] data = new byte[1 + 4 + 4];
+        data[0] = NODE_KEY;
+        ByteConversion.intToByteH(collectionId, data, 1);
+        ByteConversion.intToByteH(docId, data, 5);
+        return new Value(data);
+    }
+
+    static Value getNodeKey(final int collectionId, final int docId, final NodeId nodeId) {
+        final byte[] data = new byte[1 + 4 + 4 + 2 + nodeId.size()];
+        data[0] = NODE_KEY;
+        ByteConversion.intToByteH(collectionId, data, 1);
+        ByteConversion.intToByteH(docId, data, 5);
+        ByteConversion.shortToByteH((short) nodeId.units(), data, 9);
+        nodeId.serialize(data, 11);
+        return new Value(data);
+    }
+
+    /**
+     * The geometry key of a node: the cell of the bounding box, the bounding box,
+     * and the ids of the node key.
+     */
+    static Value getGeometryKey(final Envelope box, final Value nodeKey) {
+        final int level = XZOrdering.getLevel(box);
+        final byte[] data = new byte[IDS_OFFSET + nodeKey.getLength() - 1];
+        data[0] = GEOMETRY_KEY;
+        data[1] = (byte) level;
+        ByteConversion.longToByte(XZOrdering.getCode(box, level), data, 2);
+        ByteConversion.longToByte(Double.doubleToLongBits(box.getMinX()), data, BOX_OFFSET);
+        ByteConversion.longToByte(Double.doubleToLongBits(box.getMaxX()), data, BOX_OFFSET + 8);
+        ByteConversion.longToByte(Double.doubleToLongBits(box.getMinY()), data, BOX_OFFSET + 16);
+        ByteConversion.longToByte(Double.doubleToLongBits(box.getMaxY()), data, BOX_OFFSET + 24);
+        System.arraycopy(nodeKey.data(), nodeKey.start() + 1, data, IDS_OFFSET, nodeKey.getLength() - 1);
+        return new Value(data);
+    }
+
+    static Envelope getBox(final byte[] data) {
+        return new Envelope(
+                Double.longBitsToDouble(ByteConversion.byteToLong(data, BOX_OFFSET)),
+                Double.longBitsToDouble(ByteConversion.byteToLong(data, BOX_OFFSET + 8)),
+                Double.longBitsToDouble(ByteConversion.byteToLong(data, BOX_OFFSET + 16)),
+                Double.longBitsToDouble(ByteConversion.byteToLong(data, BOX_OFFSET + 24)));
+    }
+
+    private static Value getCellKey(final int level, final long code) {
+        final byte[] data = new byte[1 + 1 + 8];
+        data[0] = GEOMETRY_KEY;
+        data[1] = (byte) level;
+        ByteConversion.longToByte(code, data, 2);
+        return new Value(data);
+    }
+}
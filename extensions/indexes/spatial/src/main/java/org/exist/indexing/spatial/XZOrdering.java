@@ -0,0 +1,213 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.indexing.spatial;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Maps the bounding boxes of geometries in EPSG:4326 to the cells of a quadtree
+ * over the whole world, ordered along a Z-order curve, so that they can be
+ * stored in a B+-tree and found by a few range scans.
+ *
+ * This is the XZ-ordering of B&ouml;hm, Klump and Kriegel: a bounding box is
+ * assigned to the deepest level at which it is not larger than a cell, and to
+ * the cell containing its lower left corner. The box then lies within the
+ * enlarged cell, which extends the cell by its own size to the right and to the
+ * top. A query thus has to scan, at each level, the cells whose enlarged cells
+ * intersect the query box, i.e. the cells covered by the query box extended by
+ * one cell to the left and to the bottom.
+ */
+final class XZOrdering {
+
+    /**
+     * The deepest level of the quadtree. The cells at this level are about 38
+     * by 19 meters at the equator, and the Z-order codes fit into a long.
+     */
+    static final int MAX_LEVEL = 20;
+
+    /**
+     * The maximum number of ranges of Z-order codes scanned at a single level.
+     * If a query box can not be covered exactly by that many ranges, some
+     * quadrants are scanned as a whole, which costs a few more bounding boxes
+     * to filter out, but fewer seeks.
+     */
+    static final int MAX_RANGES = 64;
+
+    private static final double MIN_X = -180;
+    private static final double MAX_X = 180;
+    private static final double MIN_Y = -90;
+    private static final double MAX_Y = 90;
+
+    private XZOrdering() {
+    }
+
+    /**
+     * Get the level of the quadtree a bounding box is assigned to.
+     *
+     * @param envelope the bounding box, in EPSG:4326
+     *
+     * @return the level, from 0 to {@link #MAX_LEVEL}
+     */
+    static int getLevel(final Envelope envelope) {
+        int level = MAX_LEVEL;
+        while (level > 0 && (envelope.getWidth() > getCellWidth(level) || envelope.getHeight() > getCellHeight(level))) {
+            level--;
+        }
+        return level;
+    }
+
+    /**
+     * Get the Z-order code of the cell a bounding box is assigned to.
+     *
+     * @param envelope the bounding box, in EPSG:4326
+     * @param level the level of the bounding box, see {@link #getLevel(Envelope)}
+     *
+     * @return the code of the cell containing the lower left corner of the box
+     */
+    static long getCode(final Envelope envelope, final int level) {
+        return interleave(getCellX(envelope.getMinX(), level), getCellY(envelope.getMinY(), level));
+    }
+
+    /**
+     * Get the ranges of Z-order codes to scan at a level for the bounding boxes
+     * which may intersect a query box.
+     *
+     * @param query the query box, in EPSG:4326
+     * @param level the level
+     *
+     * @return the ranges, as pairs of inclusive lower and upper codes, in ascending order
+     */
+    static List<long[]> getRanges(final Envelope query, final int level) {
+        // two cells to the left and to the bottom leave a margin for rounding errors
+        final long minX = Math.max(0, getCellX(query.getMinX(), level) - 2);
+        final long minY = Math.max(0, getCellY(query.getMinY(), level) - 2);
+        final long maxX = getCellX(query.getMaxX(), level);
+        final long maxY = getCellY(query.getMaxY(), level);
+        return getRanges(level, minX, minY, maxX, maxY, MAX_RANGES);
+    }
+
+    /**
+     * Cover a rectangle of cells by ranges of Z-order codes, descending the
+     * quadtree level by level, as long as the number of ranges does not
+     * exceed the maximum.
+     */
+    static List<long[]> getRanges(final int level, final long minX, final long minY, final long maxX,
+            final long maxY, final int maxRanges) {
+        final List<long[]> ranges = new ArrayList<>();
+        // the quadrants at the current depth which partially overlap the rectangle
+        List<long[]> partial = new ArrayList<>();
+        partial.add(new long[] { 0, 0 });
+        for (int depth = 0; depth <= level && !partial.isEmpty(); depth++) {
+            final int shift = level - depth;
+            final List<long[]> overlapping = new ArrayList<>();
+            for (final long[] quadrant : partial) {
+                final long qMinX = quadrant[0] << shift;
+                final long qMinY = quadrant[1] << shift;
+                final long qMaxX = ((quadrant[0] + 1) << shift) - 1;
+                final long qMaxY = ((quadrant[1] + 1) << shift) - 1;
+                if (qMinX > maxX || qMaxX < minX || qMinY > maxY || qMaxY < minY) {
+                    continue;
+                }
+                if (qMinX >= minX && qMaxX <= maxX && qMinY >= minY && qMaxY <= maxY) {
+                    ranges.add(getRange(quadrant, shift));
+                } else {
+                    overlapping.add(quadrant);
+                }
+            }
+            if (depth == level || ranges.size() + overlapping.size() * 4 > maxRanges) {
+                for (final long[] quadrant : overlapping) {
+                    ranges.add(getRange(quadrant, shift));
+                }
+                break;
+            }
+            partial = new ArrayList<>(overlapping.size() * 4);
+            for (final long[] quadrant : overlapping) {
+                final long x = quadrant[0] << 1;
+                final long y = quadrant[1] << 1;
+                partial.add(new long[] { x, y });
+                partial.add(new long[] { x + 1, y });
+                partial.add(new long[] { x, y + 1 });
+                partial.add(new long[] { x + 1, y + 1 });
+            }
+        }
+        return merge(ranges);
+    }
+
+    private static long[] getRange(final long[] quadrant, final int shift) {
+        final long first = interleave(quadrant[0], quadrant[1]) << (2 * shift);
+        return new long[] { first, first + (1L << (2 * shift)) - 1 };
+    }
+
+    private static List<long[]> merge(final List<long[]> ranges) {
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        final List<long[]> merged = new ArrayList<>(ranges.size());
+        for (final long[] range : ranges) {
+            final long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    static double getCellWidth(final int level) {
+        return (MAX_X - MIN_X) / (1L << level);
+    }
+
+    static double getCellHeight(final int level) {
+        return (MAX_Y - MIN_Y) / (1L << level);
+    }
+
+    private static long getCellX(final double x, final int level) {
+        return getCell(x, MIN_X, getCellWidth(level), level);
+    }
+
+    private static long getCellY(final double y, final int level) {
+        return getCell(y, MIN_Y, getCellHeight(level), level);
+    }
+
+    /**
+     * Coordinates outside of the world, e.g. after a lenient transformation,
+     * are assigned to the cells at its border.
+     */
+    private static long getCell(final double coordinate, final double min, final double cellSize, final int level) {
+        final long cell = (long) Math.floor((coordinate - min) / cellSize);
+        return Math.max(0, Math.min(cell, (1L << level) - 1));
+    }
+
+    /**
+     * Interleave the bits of the cell coordinates, the bits of x
+     * at the even positions, the bits of y at the odd positions.
+     */
+    static long interleave(final long x, final long y) {
+        long code = 0;
+        for (int i = 0; i < MAX_LEVEL; i++) {
+            code |= ((x >>> i) & 1L) << (2 * i);
+            code |= ((y >>> i) & 1L) << (2 * i + 1);
+        }
+        return code;
+    }
+}
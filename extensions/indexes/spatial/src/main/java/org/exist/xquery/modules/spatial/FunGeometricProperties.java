@@ -28,8 +28,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.dom.persistent.NodeProxy;
 import org.exist.dom.QName;
-import org.exist.indexing.spatial.AbstractGMLJDBCIndex;
-import org.exist.indexing.spatial.AbstractGMLJDBCIndexWorker;
+import org.exist.indexing.spatial.AbstractGMLIndex;
+import org.exist.indexing.spatial.AbstractGMLIndexWorker;
 import org.exist.indexing.spatial.SpatialIndexException;
 import org.exist.util.io.FastByteArrayInputStream;
 import org.exist.xquery.BasicFunction;
@@ -264,8 +264,8 @@ public class FunGeometricProperties extends BasicFunction implements IndexUseRep
             try {
                 Geometry geometry = null;
                 String sourceCRS = null;
-                AbstractGMLJDBCIndexWorker indexWorker = 
-                    (AbstractGMLJDBCIndexWorker)context.getBroker().getIndexController().getWorkerByIndexId(AbstractGMLJDBCIndex.ID);
+                AbstractGMLIndexWorker indexWorker = 
+                    (AbstractGMLIndexWorker)context.getBroker().getIndexController().getWorkerByIndexId(AbstractGMLIndex.ID);
                 if (indexWorker == null) {
                     logger.error("Unable to find a spatial index worker");
                     throw new XPathException(this, "Unable to find a spatial index worker");
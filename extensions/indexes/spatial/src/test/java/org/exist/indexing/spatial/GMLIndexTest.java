@@ -29,11 +29,13 @@ import java.io.StringReader;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Optional;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -48,8 +50,10 @@ import org.exist.collections.IndexInfo;
 import org.exist.collections.triggers.TriggerException;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.LockedDocument;
+import org.exist.dom.persistent.NodeProxy;
 import org.exist.dom.persistent.NodeSet;
-import org.exist.indexing.spatial.AbstractGMLJDBCIndex.SpatialOperator;
+import org.exist.indexing.IndexWorker;
+import org.exist.indexing.spatial.AbstractGMLIndex.SpatialOperator;
 import org.exist.dom.memtree.SAXAdapter;
 import org.exist.security.PermissionDeniedException;
 import org.exist.storage.BrokerPool;
@@ -67,6 +71,9 @@ import org.geotools.gml.GMLFilterDocument;
 import org.geotools.gml.GMLFilterGeometry;
 import org.geotools.gml.GMLHandlerJTS;
 import org.junit.*;
+import org.junit.rules.RuleChain;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 import org.xml.sax.*;
 import org.xml.sax.helpers.XMLFilterImpl;
 
@@ -74,10 +81,32 @@ import com.vividsolutions.jts.geom.Geometry;
 
 import static org.junit.Assert.*;
 
+/**
+ * Tests the spatial index stored in HSQL, see {@link GMLHSQLIndex}, and the spatial index
+ * stored in a file of the database, see {@link GMLNativeIndex}, each in its own database instance.
+ */
+@RunWith(Parameterized.class)
 public class GMLIndexTest {
 
+    private static final ExistEmbeddedServer HSQL_SERVER = new ExistEmbeddedServer("hsql", null, null, true, true);
+    private static final ExistEmbeddedServer NATIVE_SERVER = new ExistEmbeddedServer("native", getConfigFile(), null, true, true);
+
     @ClassRule
-    public static final ExistEmbeddedServer server = new ExistEmbeddedServer(true, true);
+    public static final RuleChain servers = RuleChain.outerRule(HSQL_SERVER).around(NATIVE_SERVER);
+
+    @Parameterized.Parameters(name = "{0}")
+    public static java.util.Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                { "hsql", HSQL_SERVER },
+                { "native", NATIVE_SERVER }
+        });
+    }
+
+    @Parameterized.Parameter
+    public String indexName;
+
+    @Parameterized.Parameter(value = 1)
+    public ExistEmbeddedServer server;
 
     private static final String FILES[] = { "15385-SS7886-5i1.gml" };
 
@@ -109,47 +138,64 @@ public class GMLIndexTest {
 
     private Geometry currentGeometry;
 
+    private static Path getConfigFile() {
+        try {
+            final URL url = GMLIndexTest.class.getResource("conf.xml");
+            return Paths.get(url.toURI());
+        } catch (final URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     @BeforeClass
     public static void setup() throws EXistException, PermissionDeniedException, IOException, SAXException, CollectionConfigurationException, URISyntaxException, LockException {
-        final BrokerPool pool = server.getBrokerPool();
-        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
-             final Txn transaction = pool.getTransactionManager().beginTransaction();
-             final Collection testCollection = broker.getOrCreateCollection(transaction, TEST_COLLECTION_URI)) {
-
-            final CollectionConfigurationManager mgr = pool.getConfigurationManager();
-            mgr.addConfiguration(transaction, broker, testCollection, COLLECTION_CONFIG);
-
-            for (int i = 0; i < FILES.length; i++) {
-                final URL url = GMLIndexTest.class.getResource("/" + FILES[i]);
-                final IndexInfo indexInfo;
-                try (final InputStream is = Files.newInputStream(Paths.get(url.toURI()))) {
-                    final InputSource source = new InputSource();
-                    source.setByteStream(is);
-                    indexInfo = testCollection.validateXMLResource(transaction, broker, XmldbURI.create(FILES[i]), source);
-                }
-                try (final InputStream is = Files.newInputStream(Paths.get(url.toURI()))) {
-                    final InputSource source = new InputSource();
-                    source.setByteStream(is);
-                    testCollection.store(transaction, broker, indexInfo, source);
-                }
+        for (final ExistEmbeddedServer server : new ExistEmbeddedServer[] { HSQL_SERVER, NATIVE_SERVER }) {
+            final BrokerPool pool = server.getBrokerPool();
+            try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                 final Txn transaction = pool.getTransactionManager().beginTransaction();
+                 final Collection testCollection = broker.getOrCreateCollection(transaction, TEST_COLLECTION_URI)) {
+
+                final CollectionConfigurationManager mgr = pool.getConfigurationManager();
+                mgr.addConfiguration(transaction, broker, testCollection, COLLECTION_CONFIG);
+
+                storeFiles(broker, transaction, testCollection);
+
+                transaction.commit();
             }
+        }
+    }
 
-            transaction.commit();
+    private static void storeFiles(final DBBroker broker, final Txn transaction, final Collection collection) throws EXistException, PermissionDeniedException, IOException, SAXException, URISyntaxException, LockException {
+        for (int i = 0; i < FILES.length; i++) {
+            final URL url = GMLIndexTest.class.getResource("/" + FILES[i]);
+            final IndexInfo indexInfo;
+            try (final InputStream is = Files.newInputStream(Paths.get(url.toURI()))) {
+                final InputSource source = new InputSource();
+                source.setByteStream(is);
+                indexInfo = collection.validateXMLResource(transaction, broker, XmldbURI.create(FILES[i]), source);
+            }
+            try (final InputStream is = Files.newInputStream(Paths.get(url.toURI()))) {
+                final InputSource source = new InputSource();
+                source.setByteStream(is);
+                collection.store(transaction, broker, indexInfo, source);
+            }
         }
     }
 
     @AfterClass
     public static void tearDown() throws EXistException, PermissionDeniedException, IOException, TriggerException {
-        final BrokerPool pool = server.getBrokerPool();
-        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
-             final Txn transaction = pool.getTransactionManager().beginTransaction();
-             final Collection testCollection = broker.openCollection(TEST_COLLECTION_URI, Lock.LockMode.WRITE_LOCK)) {
+        for (final ExistEmbeddedServer server : new ExistEmbeddedServer[] { HSQL_SERVER, NATIVE_SERVER }) {
+            final BrokerPool pool = server.getBrokerPool();
+            try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                 final Txn transaction = pool.getTransactionManager().beginTransaction();
+                 final Collection testCollection = broker.openCollection(TEST_COLLECTION_URI, Lock.LockMode.WRITE_LOCK)) {
 
-            if (testCollection != null) {
-                broker.removeCollection(transaction, testCollection);
-            }
+                if (testCollection != null) {
+                    broker.removeCollection(transaction, testCollection);
+                }
 
-            transaction.commit();
+                transaction.commit();
+            }
         }
     }
 
@@ -179,9 +225,10 @@ public class GMLIndexTest {
 //                }
 //            }
 
-            GMLHSQLIndexWorker indexWorker = (GMLHSQLIndexWorker) broker.getIndexController().getWorkerByIndexId(AbstractGMLJDBCIndex.ID);
-            //Unplugged
-            if (indexWorker != null) {
+            final IndexWorker worker = broker.getIndexController().getWorkerByIndexId(AbstractGMLIndex.ID);
+            //Unplugged, or not stored in HSQL
+            if (worker instanceof GMLHSQLIndexWorker) {
+                final GMLHSQLIndexWorker indexWorker = (GMLHSQLIndexWorker) worker;
                 Connection conn = null;
                 try {
                     conn = indexWorker.acquireConnection();
@@ -215,11 +262,9 @@ public class GMLIndexTest {
     public void checkIndex() throws EXistException {
         final BrokerPool pool = server.getBrokerPool();
         try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
-            AbstractGMLJDBCIndex index = (AbstractGMLJDBCIndex) pool.getIndexManager().getIndexById(AbstractGMLJDBCIndex.ID);
-            //Unplugged
-            if (index != null) {
-                assertTrue(index.checkIndex(broker));
-            }
+            AbstractGMLIndexWorker indexWorker = (AbstractGMLIndexWorker) broker.getIndexController().getWorkerByIndexId(AbstractGMLIndex.ID);
+            assertNotNull("The spatial index is not configured", indexWorker);
+            assertTrue(indexWorker.checkIndex(broker));
         }
     }
 
@@ -255,7 +300,7 @@ public class GMLIndexTest {
 
         final BrokerPool pool = server.getBrokerPool();
         try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
-            AbstractGMLJDBCIndexWorker indexWorker = (AbstractGMLJDBCIndexWorker) broker.getIndexController().getWorkerByIndexId(AbstractGMLJDBCIndex.ID);
+            AbstractGMLIndexWorker indexWorker = (AbstractGMLIndexWorker) broker.getIndexController().getWorkerByIndexId(AbstractGMLIndex.ID);
             //Unplugged
             if (indexWorker != null) {
                 SAXParserFactory factory = ExistSAXParserFactory.getSAXParserFactory();
@@ -987,6 +1032,146 @@ public class GMLIndexTest {
         }
     }    
 
+    @Test
+    public void geometryForNode() throws EXistException, SAXException, ParserConfigurationException, SpatialIndexException, IOException {
+        final BrokerPool pool = server.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            AbstractGMLIndexWorker indexWorker = (AbstractGMLIndexWorker) broker.getIndexController().getWorkerByIndexId(AbstractGMLIndex.ID);
+            assertNotNull("The spatial index is not configured", indexWorker);
+            NodeSet ns = searchIntersecting(broker, indexWorker);
+            assertTrue(ns.getLength() > 0);
+            NodeProxy p = ns.get(0);
+            Geometry geometry = indexWorker.getGeometryForNode(broker, p, false);
+            assertNotNull(geometry);
+            Geometry EPSG4326_geometry = indexWorker.getGeometryForNode(broker, p, true);
+            assertNotNull(EPSG4326_geometry);
+            assertEquals(geometry.getNumPoints(), EPSG4326_geometry.getNumPoints());
+        }
+    }
+
+    @Test
+    public void removeDocument() throws EXistException, PermissionDeniedException, TriggerException, IOException, SAXException, URISyntaxException, LockException, ParserConfigurationException, SpatialIndexException {
+        final XmldbURI copyUri = TEST_COLLECTION_URI.append("copy");
+        final BrokerPool pool = server.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            AbstractGMLIndexWorker indexWorker = (AbstractGMLIndexWorker) broker.getIndexController().getWorkerByIndexId(AbstractGMLIndex.ID);
+            assertNotNull("The spatial index is not configured", indexWorker);
+            final int count = searchIntersecting(broker, indexWorker).getLength();
+            assertTrue(count > 0);
+
+            try (final Txn transaction = pool.getTransactionManager().beginTransaction();
+                 final Collection copyCollection = broker.getOrCreateCollection(transaction, copyUri)) {
+                storeFiles(broker, transaction, copyCollection);
+                transaction.commit();
+            }
+            assertEquals(count * 2, searchIntersecting(broker, indexWorker).getLength());
+
+            try (final Txn transaction = pool.getTransactionManager().beginTransaction();
+                 final Collection copyCollection = broker.openCollection(copyUri, Lock.LockMode.WRITE_LOCK)) {
+                for (int i = 0; i < FILES.length; i++) {
+                    copyCollection.removeXMLResource(transaction, broker, XmldbURI.create(FILES[i]));
+                }
+                transaction.commit();
+            }
+            assertEquals(count, searchIntersecting(broker, indexWorker).getLength());
+            assertTrue(indexWorker.checkIndex(broker));
+        } finally {
+            removeCollection(copyUri);
+        }
+    }
+
+    @Test
+    public void removeCollection() throws EXistException, PermissionDeniedException, TriggerException, IOException, SAXException, URISyntaxException, LockException, ParserConfigurationException, SpatialIndexException {
+        final XmldbURI copyUri = TEST_COLLECTION_URI.append("copy-collection");
+        final BrokerPool pool = server.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            AbstractGMLIndexWorker indexWorker = (AbstractGMLIndexWorker) broker.getIndexController().getWorkerByIndexId(AbstractGMLIndex.ID);
+            assertNotNull("The spatial index is not configured", indexWorker);
+            final int count = searchIntersecting(broker, indexWorker).getLength();
+            assertTrue(count > 0);
+
+            try (final Txn transaction = pool.getTransactionManager().beginTransaction();
+                 final Collection copyCollection = broker.getOrCreateCollection(transaction, copyUri.append("child"))) {
+                storeFiles(broker, transaction, copyCollection);
+                transaction.commit();
+            }
+            assertEquals(count * 2, searchIntersecting(broker, indexWorker).getLength());
+
+            removeCollection(copyUri);
+            assertEquals(count, searchIntersecting(broker, indexWorker).getLength());
+            assertTrue(indexWorker.checkIndex(broker));
+        }
+    }
+
+    @Test
+    public void repair() throws EXistException, PermissionDeniedException, IOException, LockException, SAXException, ParserConfigurationException, SpatialIndexException {
+        final BrokerPool pool = server.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            AbstractGMLIndexWorker indexWorker = (AbstractGMLIndexWorker) broker.getIndexController().getWorkerByIndexId(AbstractGMLIndex.ID);
+            assertNotNull("The spatial index is not configured", indexWorker);
+            final int count = searchIntersecting(broker, indexWorker).getLength();
+            assertTrue(count > 0);
+
+            // rebuilds the index from scratch, for the native index through beginRepair/endRepair
+            broker.repair();
+
+            indexWorker = (AbstractGMLIndexWorker) broker.getIndexController().getWorkerByIndexId(AbstractGMLIndex.ID);
+            assertNotNull(indexWorker);
+            assertEquals(count, searchIntersecting(broker, indexWorker).getLength());
+            assertTrue(indexWorker.checkIndex(broker));
+        }
+    }
+
+    @Test
+    public void reindex() throws EXistException, PermissionDeniedException, IOException, LockException, SAXException, ParserConfigurationException, SpatialIndexException {
+        final BrokerPool pool = server.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            AbstractGMLIndexWorker indexWorker = (AbstractGMLIndexWorker) broker.getIndexController().getWorkerByIndexId(AbstractGMLIndex.ID);
+            assertNotNull("The spatial index is not configured", indexWorker);
+            final int count = searchIntersecting(broker, indexWorker).getLength();
+            assertTrue(count > 0);
+
+            try (final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+                broker.reindexCollection(transaction, TEST_COLLECTION_URI);
+                transaction.commit();
+            }
+
+            assertEquals(count, searchIntersecting(broker, indexWorker).getLength());
+            assertTrue(indexWorker.checkIndex(broker));
+        }
+    }
+
+    private NodeSet searchIntersecting(final DBBroker broker, final AbstractGMLIndexWorker indexWorker) throws SAXException, ParserConfigurationException, SpatialIndexException, IOException {
+        GMLHandlerJTS geometryHandler = new GeometryHandler();
+        GMLFilterGeometry geometryFilter = new GMLFilterGeometry(geometryHandler);
+        GMLFilterDocument handler = new GMLFilterDocument(geometryFilter);
+
+        SAXParserFactory factory = ExistSAXParserFactory.getSAXParserFactory();
+        factory.setNamespaceAware(true);
+        XMLReader reader = factory.newSAXParser().getXMLReader();
+        reader.setContentHandler(handler);
+        reader.setProperty("http://xml.org/sax/properties/lexical-handler", new SAXAdapter());
+        reader.parse(new InputSource(new StringReader(IN_MEMORY_GML)));
+
+        Geometry EPSG4326_geometry = indexWorker.transformGeometry(currentGeometry, "osgb:BNG", "EPSG:4326");
+        assertNotNull(EPSG4326_geometry);
+        return indexWorker.search(broker, null, EPSG4326_geometry, SpatialOperator.INTERSECTS);
+    }
+
+    private void removeCollection(final XmldbURI uri) throws EXistException, PermissionDeniedException, IOException, TriggerException {
+        final BrokerPool pool = server.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction();
+             final Collection collection = broker.openCollection(uri, Lock.LockMode.WRITE_LOCK)) {
+
+            if (collection != null) {
+                broker.removeCollection(transaction, collection);
+            }
+
+            transaction.commit();
+        }
+    }
+
     @Ignore("Spatial Index does not currently work with XQuery Update / XUpdate")
     @Test
     public void update() throws PermissionDeniedException, XPathException, EXistException {
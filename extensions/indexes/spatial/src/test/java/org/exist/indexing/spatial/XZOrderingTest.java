@@ -0,0 +1,101 @@
+/*
+ * eXist Open Source Native XML Database
+ * Copyright (C) 2001-2020 The eXist Project
+ * http://exist-db.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.exist.indexing.spatial;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the ranges of {@link XZOrdering} codes scanned for a query box
+ * cover all the bounding boxes intersecting it.
+ */
+public class XZOrderingTest {
+
+    @Test
+    public void interleave() {
+        assertEquals(0, XZOrdering.interleave(0, 0));
+        assertEquals(1, XZOrdering.interleave(1, 0));
+        assertEquals(2, XZOrdering.interleave(0, 1));
+        assertEquals(0b1101, XZOrdering.interleave(0b11, 0b10));
+    }
+
+    @Test
+    public void level() {
+        assertEquals(0, XZOrdering.getLevel(new Envelope(-180, 180, -90, 90)));
+        assertEquals(1, XZOrdering.getLevel(new Envelope(0, 180, 0, 90)));
+        assertEquals(XZOrdering.MAX_LEVEL, XZOrdering.getLevel(new Envelope(2.35, 2.35, 48.85, 48.85)));
+    }
+
+    @Test
+    public void rangesCoverIntersectingBoxes() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            final Envelope query = randomEnvelope(random);
+            final Envelope box = randomEnvelope(random);
+            final int level = XZOrdering.getLevel(box);
+            if (!box.intersects(query)) {
+                continue;
+            }
+            final long code = XZOrdering.getCode(box, level);
+            assertTrue("box " + box + " not found for query " + query, contains(XZOrdering.getRanges(query, level), code));
+        }
+    }
+
+    @Test
+    public void rangesAreSortedAndDisjoint() {
+        final Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            final List<long[]> ranges = XZOrdering.getRanges(randomEnvelope(random), random.nextInt(XZOrdering.MAX_LEVEL + 1));
+            assertTrue(ranges.size() <= XZOrdering.MAX_RANGES);
+            for (int j = 0; j < ranges.size(); j++) {
+                assertTrue(ranges.get(j)[0] <= ranges.get(j)[1]);
+                if (j > 0) {
+                    assertTrue(ranges.get(j - 1)[1] + 1 < ranges.get(j)[0]);
+                }
+            }
+        }
+    }
+
+    private static boolean contains(final List<long[]> ranges, final long code) {
+        for (final long[] range : ranges) {
+            if (code >= range[0] && code <= range[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Boxes of all sizes, from points to a large part of the world.
+     */
+    private static Envelope randomEnvelope(final Random random) {
+        final double width = 360 * Math.pow(random.nextDouble(), 4);
+        final double height = 180 * Math.pow(random.nextDouble(), 4);
+        final double x = -180 + random.nextDouble() * (360 - width);
+        final double y = -90 + random.nextDouble() * (180 - height);
+        return new Envelope(x, x + width, y, y + height);
+    }
+}